@@ -1,9 +1,19 @@
 package org.lms;
 
+import org.lms.audit.AuditLog;
+import org.lms.batch.NightlyBatch;
+import org.lms.circulation.BorrowingPolicy;
+import org.lms.circulation.CirculationStatistics;
+import org.lms.circulation.ReservationService;
 import org.lms.view.MainFrame;
 
 public class Main {
     public static void main(String[] args) {
+        AuditLog.start();
+        ReservationService.start();
+        BorrowingPolicy.start();
+        CirculationStatistics.start();
+        NightlyBatch.start();
         MainFrame.open();
     }
 }
@@ -0,0 +1,97 @@
+package org.lms.audit;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The AuditEvent class records one change to the catalog or to a visitor account.
+ * Events are immutable: each carries the full state of the changed book or account after the change,
+ * so replaying them in order over an earlier state gives the state at any later point.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class AuditEvent {
+    /**
+     * The kinds of changes recorded, mirroring the catalog and visitor change events.
+     */
+    public enum Type {
+        BOOK_ADDED,
+        BOOK_EDITED,
+        BOOK_DELETED,
+        COPIES_ADDED,
+        COPY_DELETED,
+        COPY_STATUS_CHANGED,
+        VISITOR_ADDED,
+        VISITOR_EDITED,
+        VISITOR_DELETED
+    }
+
+    private final long seq;            // Position of the event in the log, starting at 1
+    private final long time;           // Time of the change in epoch millis; never decreases along the log
+    private final Type type;           // The kind of change
+    private final String key;          // ISBN of the book or ID of the visitor
+    private final String previousKey;  // Former ISBN when a book's ISBN was changed, otherwise null
+    private final JsonNode data;       // State of the book or account after the change, null for deletions
+
+    /**
+     * Constructor to create an event, also used for JSON deserialization.
+     *
+     * @param seq         The position of the event in the log
+     * @param time        The time of the change
+     * @param type        The kind of change
+     * @param key         The ISBN of the book or ID of the visitor
+     * @param previousKey The former ISBN of the book, or null
+     * @param data        The state after the change, or null for deletions
+     */
+    @JsonCreator
+    public AuditEvent(@JsonProperty("seq") long seq,
+                      @JsonProperty("time") long time,
+                      @JsonProperty("type") Type type,
+                      @JsonProperty("key") String key,
+                      @JsonProperty("previousKey") String previousKey,
+                      @JsonProperty("data") JsonNode data) {
+        this.seq = seq;
+        this.time = time;
+        this.type = type;
+        this.key = key;
+        this.previousKey = previousKey;
+        this.data = data;
+    }
+
+    // Getters for the event fields
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPreviousKey() {
+        return previousKey;
+    }
+
+    public JsonNode getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditEvent{" +
+                "seq=" + seq +
+                ", time=" + time +
+                ", type=" + type +
+                ", key='" + key + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,542 @@
+package org.lms.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorChangeEvent;
+import org.lms.user.VisitorChangeListener;
+import org.lms.user.VisitorDatabase;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton class keeping an append-only log of every change to the catalog and to visitor accounts,
+ * so that the state of a copy or an account can be looked up as of any past time.
+ *
+ * Each change is appended to {@link #LOG_FILE} as an {@link AuditEvent}, one JSON object per line,
+ * through a channel kept open for the life of the application. Every {@link #SNAPSHOT_INTERVAL} events
+ * the full {@link AuditState} is appended to {@link #SNAPSHOT_FILE}, and its position is listed in
+ * {@link #SNAPSHOT_INDEX_FILE}. A point-in-time query loads the last snapshot taken before that time
+ * and replays the events that follow it.
+ *
+ * Snapshots are written by a background thread, which keeps its own copy of the current state by
+ * applying each event handed to it, so recording a change never reads the log or writes a snapshot.
+ * The most recent {@link #RECENT_SNAPSHOTS} snapshots are all kept. Older ones are thinned out, so
+ * that no more than {@link #MAX_SNAPSHOT_GAP} events separate two snapshots, and the snapshot file is
+ * rewritten without the others. A query at any time since the log started therefore replays at most
+ * {@link #MAX_SNAPSHOT_GAP} events, while the number of snapshots grows with the length of the log at a
+ * fraction of the rate they are taken.
+ *
+ * The log starts from a snapshot of the databases the first time it is opened.
+ */
+public class AuditLog implements CatalogChangeListener, VisitorChangeListener {
+    public static final int SNAPSHOT_INTERVAL = 500;  // Events between two snapshots
+    public static final int RECENT_SNAPSHOTS = 32;    // Most recent snapshots that are never thinned out
+    public static final int MAX_SNAPSHOT_GAP = 8 * SNAPSHOT_INTERVAL;  // Most events between two snapshots kept
+
+    private static final String LOG_FILE = "AuditLog.jsonl";
+    private static final String SNAPSHOT_FILE = "AuditSnapshots.jsonl";
+    private static final String SNAPSHOT_INDEX_FILE = "AuditSnapshots.index.json";
+    private static final String COMPACTED_SUFFIX = ".tmp";  // Suffix of the files a compaction is written to
+
+    private static AuditLog instance;  // Singleton instance of AuditLog
+
+    // Writes the snapshots in the background, in event order
+    private static final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit-snapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<BookBase, String> recordedIsbns = new IdentityHashMap<>();  // Last ISBN logged for each book
+    private final Object snapshotLock = new Object();  // Guards the snapshot list and the snapshot file positions
+    private List<SnapshotEntry> snapshots = new ArrayList<>();  // Snapshots in log order
+    private FileChannel logChannel;   // The log file, open for appending
+    private long lastSeq;             // Sequence number of the last event
+    private long lastTime;            // Time of the last event
+    private long logLength;           // Length of the log file in bytes
+
+    // Owned by the snapshot writer once the log is open
+    private AuditState snapshotState;  // State after the last event handed to the snapshot writer
+    private int eventsSinceSnapshot;   // Events applied to that state after the last snapshot
+    private int thinnedSnapshots;      // Leading snapshots already thinned out by a compaction
+
+    private AuditLog() {
+    }
+
+    /**
+     * Returns the singleton instance, opening the log and subscribing to changes on first use.
+     *
+     * @return The audit log
+     */
+    public static synchronized AuditLog getInstance() {
+        if (instance == null) {
+            instance = new AuditLog();
+            instance.open();
+        }
+        return instance;
+    }
+
+    /**
+     * Opens the log at application start, so that every change from then on is recorded.
+     */
+    public static void start() {
+        getInstance();
+    }
+
+    /**
+     * Gets the catalog and visitor accounts as they were at a point in time.
+     *
+     * @param time The time in epoch millis
+     * @return The state after the last change made at or before that time,
+     *         or null if the time is before the log started
+     */
+    public AuditState asOf(long time) {
+        try {
+            AuditState state;
+            long offset;
+            synchronized (snapshotLock) {
+                SnapshotEntry snapshot = findSnapshot(time);
+                if (snapshot == null) {
+                    return null;
+                }
+                state = readSnapshot(snapshot);
+                offset = snapshot.getLogOffset();
+            }
+            long end;
+            synchronized (this) {
+                end = logLength;
+            }
+            replay(state, offset, end, time);
+            return state;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Gets the time the log started from.
+     *
+     * @return The time in epoch millis, or 0 if the log could not be opened
+     */
+    public long getStartTime() {
+        synchronized (snapshotLock) {
+            return snapshots.isEmpty() ? 0 : snapshots.get(0).getTime();
+        }
+    }
+
+    /**
+     * Records a catalog change with the state of the book after it.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onCatalogChanged(CatalogChangeEvent event) {
+        BookBase book = event.getBook();
+        AuditEvent.Type type = AuditEvent.Type.valueOf(event.getType().name());
+        synchronized (this) {
+            String previousIsbn = type == AuditEvent.Type.BOOK_DELETED ? recordedIsbns.remove(book) : recordedIsbns.put(book, book.getIsbn());
+            String previousKey = previousIsbn == null || previousIsbn.equals(book.getIsbn()) ? null : previousIsbn;
+            append(type, book.getIsbn(), previousKey, type == AuditEvent.Type.BOOK_DELETED ? null : objectMapper.valueToTree(book));
+        }
+    }
+
+    /**
+     * Records an account change with the state of the account after it.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onVisitorChanged(VisitorChangeEvent event) {
+        AuditEvent.Type type = AuditEvent.Type.valueOf(event.getType().name());
+        Visitor visitor = event.getVisitor();
+        synchronized (this) {
+            append(type, String.valueOf(visitor.getVisitorId()), null,
+                    type == AuditEvent.Type.VISITOR_DELETED ? null : accountOf(visitor));
+        }
+    }
+
+    /**
+     * Reads the snapshot index and the events after the last snapshot, and subscribes to changes.
+     * If there is no log yet, it is started from a snapshot of the databases. Both databases are held
+     * meanwhile, so that no change is missed or recorded twice.
+     */
+    private void open() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        // Same lock order as VisitorDatabase.borrowBook, which reads the book database
+        synchronized (visitorDatabase) {
+            synchronized (bookDatabase) {
+                synchronized (this) {
+                    List<BookBase> books = bookDatabase.getAllBooks();
+                    for (BookBase book : books) {
+                        recordedIsbns.put(book, book.getIsbn());
+                    }
+                    try {
+                        finishCompaction();
+                        File indexFile = new File(SNAPSHOT_INDEX_FILE);
+                        if (indexFile.exists()) {
+                            snapshots = new ArrayList<>(List.of(objectMapper.readValue(indexFile, SnapshotEntry[].class)));
+                        }
+                        if (snapshots.isEmpty()) {
+                            startLog(books, visitorDatabase.getAllVisitors());
+                        } else {
+                            recover();
+                        }
+                        logChannel = FileChannel.open(new File(LOG_FILE).toPath(),
+                                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                    bookDatabase.addChangeListener(this);
+                    visitorDatabase.addVisitorChangeListener(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new log from the current content of the databases.
+     */
+    private void startLog(List<BookBase> books, List<Visitor> visitors) throws IOException {
+        new File(LOG_FILE).delete();
+        new File(SNAPSHOT_FILE).delete();
+        AuditState state = new AuditState();
+        for (BookBase book : books) {
+            state.getBooks().put(book.getIsbn(), objectMapper.valueToTree(book));
+        }
+        for (Visitor visitor : visitors) {
+            state.getVisitors().put(visitor.getVisitorId(), accountOf(visitor));
+        }
+        lastTime = System.currentTimeMillis();
+        state.setTime(lastTime);
+        writeSnapshot(state, 0);
+        snapshotState = state;
+    }
+
+    /**
+     * Rebuilds the current state from the last snapshot and the events logged after it, and finds
+     * where the log ends. A last line left incomplete by a crash is cut off.
+     */
+    private void recover() throws IOException {
+        SnapshotEntry last = snapshots.get(snapshots.size() - 1);
+        AuditState state = readSnapshot(last);
+        long offset = last.getLogOffset();
+        File file = new File(LOG_FILE);
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                in.getChannel().position(offset);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    AuditEvent event;
+                    try {
+                        event = objectMapper.readValue(line, AuditEvent.class);
+                    } catch (IOException e) {
+                        break;
+                    }
+                    state.apply(event);
+                    eventsSinceSnapshot++;
+                    offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset);
+            }
+        }
+        lastSeq = state.getSeq();
+        lastTime = state.getTime();
+        logLength = offset;
+        snapshotState = state;
+    }
+
+    /**
+     * Appends an event to the log, and hands it to the snapshot writer.
+     */
+    private void append(AuditEvent.Type type, String key, String previousKey, JsonNode data) {
+        lastTime = Math.max(lastTime, System.currentTimeMillis());  // Keep times ordered along the log
+        AuditEvent event = new AuditEvent(lastSeq + 1, lastTime, type, key, previousKey, data);
+        try {
+            ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(event) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                logChannel.write(line);
+            }
+            lastSeq++;
+            logLength += line.limit();
+            long logOffset = logLength;
+            snapshotWriter.execute(() -> advance(event, logOffset));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies an event to the state of the snapshot writer, and takes a snapshot when the interval is reached.
+     * Runs on the snapshot writer.
+     *
+     * @param logOffset The position in the log after the event
+     */
+    private void advance(AuditEvent event, long logOffset) {
+        snapshotState.apply(event);
+        if (++eventsSinceSnapshot < SNAPSHOT_INTERVAL) {
+            return;
+        }
+        try {
+            writeSnapshot(snapshotState, logOffset);
+            // Compacted once the snapshots not yet thinned reach twice the recent ones
+            if (snapshots.size() - thinnedSnapshots >= 2 * RECENT_SNAPSHOTS) {
+                compactSnapshots();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the last snapshot taken at or before a time.
+     *
+     * @return The snapshot, or null if the time is before the first one
+     */
+    private SnapshotEntry findSnapshot(long time) {
+        int low = 0;
+        int high = snapshots.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (snapshots.get(mid).getTime() <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? null : snapshots.get(found);
+    }
+
+    /**
+     * Applies the logged events from a position of the log up to a time, without reading past the end
+     * known to be complete.
+     */
+    private void replay(AuditState state, long offset, long end, long untilTime) throws IOException {
+        File file = new File(LOG_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            long remaining = end - offset;
+            String line;
+            while (remaining > 0 && (line = reader.readLine()) != null) {
+                remaining -= line.getBytes(StandardCharsets.UTF_8).length + 1;
+                AuditEvent event = objectMapper.readValue(line, AuditEvent.class);
+                if (event.getTime() > untilTime) {
+                    break;
+                }
+                state.apply(event);
+            }
+        }
+    }
+
+    /**
+     * Appends a snapshot of a state and lists it in the snapshot index.
+     *
+     * @param logOffset The position in the log of the first event after the state
+     */
+    private void writeSnapshot(AuditState state, long logOffset) throws IOException {
+        File file = new File(SNAPSHOT_FILE);
+        byte[] line = (objectMapper.writeValueAsString(state) + "\n").getBytes(StandardCharsets.UTF_8);
+        long offset = file.length();
+        Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        List<SnapshotEntry> listed;
+        synchronized (snapshotLock) {
+            snapshots.add(new SnapshotEntry(state.getSeq(), state.getTime(), offset, line.length - 1, logOffset));
+            listed = new ArrayList<>(snapshots);
+        }
+        objectMapper.writeValue(new File(SNAPSHOT_INDEX_FILE), listed);
+        eventsSinceSnapshot = 0;
+    }
+
+    /**
+     * Thins out the snapshots older than the {@link #RECENT_SNAPSHOTS} most recent ones, and rewrites the
+     * snapshot file with the rest. The first snapshot is kept, and each older snapshot is dropped only if the
+     * snapshots kept on either side of it are at most {@link #MAX_SNAPSHOT_GAP} events apart, so thinning
+     * again leaves the snapshots already thinned as they are. The new index and file are written aside first; the index is then
+     * moved into place, and {@link #finishCompaction()} completes the move of the file if it was interrupted.
+     * Runs on the snapshot writer, the only thread that changes the snapshot list.
+     */
+    private void compactSnapshots() throws IOException {
+        List<SnapshotEntry> kept = new ArrayList<>();
+        int recentFrom = snapshots.size() - RECENT_SNAPSHOTS;
+        long offset = 0;
+        long keptSeq = 0;  // Last event of the last snapshot kept
+        for (int i = 0; i < snapshots.size(); i++) {
+            SnapshotEntry entry = snapshots.get(i);
+            if (i == 0 || i >= recentFrom || snapshots.get(i + 1).getSeq() - keptSeq > MAX_SNAPSHOT_GAP) {
+                kept.add(new SnapshotEntry(entry.getSeq(), entry.getTime(), offset, entry.getLength(), entry.getLogOffset()));
+                offset += entry.getLength() + 1;
+                keptSeq = entry.getSeq();
+            }
+        }
+
+        File compactedIndex = new File(SNAPSHOT_INDEX_FILE + COMPACTED_SUFFIX);
+        File compacted = new File(SNAPSHOT_FILE + COMPACTED_SUFFIX);
+        objectMapper.writeValue(compactedIndex, kept);
+        try (RandomAccessFile in = new RandomAccessFile(SNAPSHOT_FILE, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(compacted))) {
+            int k = 0;
+            for (SnapshotEntry entry : snapshots) {
+                if (k < kept.size() && kept.get(k).getSeq() == entry.getSeq()) {
+                    byte[] line = new byte[entry.getLength()];
+                    in.seek(entry.getOffset());
+                    in.readFully(line);
+                    out.write(line);
+                    out.write('\n');
+                    k++;
+                }
+            }
+        }
+
+        synchronized (snapshotLock) {
+            Files.move(compactedIndex.toPath(), new File(SNAPSHOT_INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(compacted.toPath(), new File(SNAPSHOT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            snapshots = kept;
+        }
+        thinnedSnapshots = kept.size() - RECENT_SNAPSHOTS;
+    }
+
+    /**
+     * Completes a compaction interrupted after its index was moved into place, and discards one
+     * interrupted before that.
+     */
+    private void finishCompaction() throws IOException {
+        File compactedIndex = new File(SNAPSHOT_INDEX_FILE + COMPACTED_SUFFIX);
+        File compacted = new File(SNAPSHOT_FILE + COMPACTED_SUFFIX);
+        if (compacted.exists() && !compactedIndex.exists()) {
+            Files.move(compacted.toPath(), new File(SNAPSHOT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        compacted.delete();
+        compactedIndex.delete();
+    }
+
+    /**
+     * Reads a snapshot, checking that it is the one the index entry describes.
+     */
+    private AuditState readSnapshot(SnapshotEntry snapshot) throws IOException {
+        byte[] line = new byte[snapshot.getLength()];
+        try (RandomAccessFile raf = new RandomAccessFile(SNAPSHOT_FILE, "r")) {
+            raf.seek(snapshot.getOffset());
+            raf.readFully(line);
+        }
+        AuditState state = objectMapper.readValue(line, AuditState.class);
+        if (state.getSeq() != snapshot.getSeq()) {
+            throw new IOException("Snapshot index does not match " + SNAPSHOT_FILE);
+        }
+        return state;
+    }
+
+    /**
+     * Converts a visitor to the account state kept in the log, without borrow history or password.
+     */
+    private ObjectNode accountOf(Visitor visitor) {
+        ObjectNode account = objectMapper.valueToTree(visitor);
+        account.remove("bookBorrows");
+        account.remove("password");
+        return account;
+    }
+
+    /**
+     * The position of one snapshot, as listed in the snapshot index.
+     */
+    public static class SnapshotEntry {
+        private long seq;        // Last event included in the snapshot
+        private long time;       // Time of that event, or of the start of the log
+        private long offset;     // Position of the snapshot in the snapshot file
+        private int length;      // Length of the snapshot in bytes, without the line break
+        private long logOffset;  // Position in the log of the first event after the snapshot
+
+        /**
+         * Default constructor for JSON deserialization.
+         */
+        public SnapshotEntry() {
+        }
+
+        public SnapshotEntry(long seq, long time, long offset, int length, long logOffset) {
+            this.seq = seq;
+            this.time = time;
+            this.offset = offset;
+            this.length = length;
+            this.logOffset = logOffset;
+        }
+
+        // Getters and setters for JSON serialization
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public void setSeq(long seq) {
+            this.seq = seq;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public void setTime(long time) {
+            this.time = time;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        public long getLogOffset() {
+            return logOffset;
+        }
+
+        public void setLogOffset(long logOffset) {
+            this.logOffset = logOffset;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.lms.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookStatus;
+import org.lms.user.Visitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The AuditState class holds the catalog and the visitor accounts as they were after a given event.
+ * Books are kept with their copies, including the status and borrower of each copy, so the loans open
+ * at that point can be read from the state. Accounts are kept without their borrow history and password.
+ *
+ * The state is also the content of a snapshot, and is written and read as JSON.
+ */
+public class AuditState {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private long seq;   // Last event applied, 0 for the state the log started from
+    private long time;  // Time of the last event applied, or of the start of the log
+    private Map<String, JsonNode> books = new HashMap<>();      // Books by ISBN
+    private Map<Integer, JsonNode> visitors = new HashMap<>();  // Visitor accounts by ID
+
+    /**
+     * Default constructor for JSON deserialization.
+     */
+    public AuditState() {
+    }
+
+    /**
+     * Applies an event on top of this state.
+     *
+     * @param event The next event of the log
+     */
+    public void apply(AuditEvent event) {
+        switch (event.getType()) {
+            case BOOK_DELETED:
+                books.remove(event.getKey());
+                break;
+            case VISITOR_ADDED:
+            case VISITOR_EDITED:
+                visitors.put(Integer.parseInt(event.getKey()), event.getData());
+                break;
+            case VISITOR_DELETED:
+                visitors.remove(Integer.parseInt(event.getKey()));
+                break;
+            default:
+                if (event.getPreviousKey() != null) {
+                    books.remove(event.getPreviousKey());
+                }
+                books.put(event.getKey(), event.getData());
+                break;
+        }
+        seq = event.getSeq();
+        time = event.getTime();
+    }
+
+    /**
+     * Gets a book as it was.
+     *
+     * @param isbn The ISBN of the book
+     * @return The book with its copies, or null if it was not in the catalog
+     */
+    public BookBase getBook(String isbn) {
+        return toBook(books.get(isbn));
+    }
+
+    /**
+     * Finds the book a copy belonged to.
+     *
+     * @param copyId The ID of the copy
+     * @return The book with its copies, or null if no book had the copy
+     */
+    public BookBase findBookOfCopy(String copyId) {
+        for (JsonNode book : books.values()) {
+            for (JsonNode copy : book.path("copies")) {
+                if (copyId.equals(copy.path("copyId").asText())) {
+                    return toBook(book);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a visitor account as it was. The borrow history of the returned visitor is empty.
+     *
+     * @param visitorId The ID of the visitor
+     * @return The visitor, or null if the account did not exist
+     */
+    public Visitor getVisitor(int visitorId) {
+        JsonNode visitor = visitors.get(visitorId);
+        if (visitor == null) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.treeToValue(visitor, Visitor.class);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Lists the copies a visitor had borrowed and not yet returned.
+     *
+     * @param visitorId The ID of the visitor
+     * @return The books of the borrowed copies, each with only those copies
+     */
+    public List<BookBase> findBorrowedBy(int visitorId) {
+        List<BookBase> borrowed = new ArrayList<>();
+        for (JsonNode node : books.values()) {
+            boolean holds = false;
+            for (JsonNode copy : node.path("copies")) {
+                if (copy.path("borrowVisitorId").asInt() == visitorId
+                        && BookStatus.UNAVAILABLE.name().equals(copy.path("status").asText())) {
+                    holds = true;
+                    break;
+                }
+            }
+            if (holds) {
+                BookBase book = toBook(node);
+                book.getCopies().removeIf(copy -> copy.getStatus() != BookStatus.UNAVAILABLE
+                        || copy.getBorrowVisitorId() != visitorId);
+                borrowed.add(book);
+            }
+        }
+        return borrowed;
+    }
+
+    private static BookBase toBook(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.treeToValue(node, BookBase.class);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Getters and setters for JSON serialization
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public Map<String, JsonNode> getBooks() {
+        return books;
+    }
+
+    public void setBooks(Map<String, JsonNode> books) {
+        this.books = books;
+    }
+
+    public Map<Integer, JsonNode> getVisitors() {
+        return visitors;
+    }
+
+    public void setVisitors(Map<Integer, JsonNode> visitors) {
+        this.visitors = visitors;
+    }
+}
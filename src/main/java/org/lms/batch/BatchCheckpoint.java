@@ -0,0 +1,143 @@
+package org.lms.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The BatchCheckpoint class records the progress of a batch run: the jobs and start time of the run,
+ * and the updates computed for every visitor of every partition that has finished, including the empty
+ * ones, which still record the revision each visitor was processed at. It is written to disk after each
+ * partition, so a run that was interrupted can skip the finished partitions when it is resumed.
+ */
+public class BatchCheckpoint {
+    private long runTime;  // Start time of the run in epoch millis
+    private List<String> jobNames = new ArrayList<>();  // Names of the jobs of the run, in order
+    private Map<Integer, List<VisitorUpdate>> completedPartitions = new TreeMap<>();  // Updates of each finished partition, one per visitor
+
+    /**
+     * Default constructor for JSON deserialization.
+     */
+    public BatchCheckpoint() {
+    }
+
+    /**
+     * Constructor to start the checkpoint of a new run.
+     *
+     * @param runTime  The start time of the run
+     * @param jobNames The names of the jobs of the run
+     */
+    public BatchCheckpoint(long runTime, List<String> jobNames) {
+        this.runTime = runTime;
+        this.jobNames = new ArrayList<>(jobNames);
+    }
+
+    /**
+     * Records the updates of a finished partition and writes the checkpoint to disk.
+     *
+     * @param partition The partition number
+     * @param updates   The updates computed for the visitors of the partition
+     * @param file      The checkpoint file
+     */
+    public synchronized void complete(int partition, List<VisitorUpdate> updates, File file) {
+        completedPartitions.put(partition, updates);
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            objectMapper.writeValue(file, this);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Checks whether a partition already finished in this run.
+     *
+     * @param partition The partition number
+     * @return true if its updates are recorded
+     */
+    public synchronized boolean isCompleted(int partition) {
+        return completedPartitions.containsKey(partition);
+    }
+
+    /**
+     * Gets the updates of a finished partition.
+     *
+     * @param partition The partition number
+     * @return The updates, or null if the partition has not finished
+     */
+    public synchronized List<VisitorUpdate> getUpdates(int partition) {
+        return completedPartitions.get(partition);
+    }
+
+    /**
+     * Forgets a finished partition, so that it is processed again.
+     *
+     * @param partition The partition number
+     */
+    public synchronized void discard(int partition) {
+        completedPartitions.remove(partition);
+    }
+
+    /**
+     * Gets the updates of all finished partitions.
+     *
+     * @return The updates in partition order
+     */
+    public synchronized List<VisitorUpdate> allUpdates() {
+        List<VisitorUpdate> updates = new ArrayList<>();
+        for (List<VisitorUpdate> partitionUpdates : completedPartitions.values()) {
+            updates.addAll(partitionUpdates);
+        }
+        return updates;
+    }
+
+    /**
+     * Reads a checkpoint from disk.
+     *
+     * @param file The checkpoint file
+     * @return The checkpoint, or null if there is none or it cannot be read
+     */
+    public static BatchCheckpoint load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            return objectMapper.readValue(file, BatchCheckpoint.class);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Getters and setters used for the JSON file
+
+    public long getRunTime() {
+        return runTime;
+    }
+
+    public void setRunTime(long runTime) {
+        this.runTime = runTime;
+    }
+
+    public List<String> getJobNames() {
+        return jobNames;
+    }
+
+    public void setJobNames(List<String> jobNames) {
+        this.jobNames = jobNames;
+    }
+
+    public synchronized Map<Integer, List<VisitorUpdate>> getCompletedPartitions() {
+        return completedPartitions;
+    }
+
+    public synchronized void setCompletedPartitions(Map<Integer, List<VisitorUpdate>> completedPartitions) {
+        this.completedPartitions = new TreeMap<>(completedPartitions);
+    }
+}
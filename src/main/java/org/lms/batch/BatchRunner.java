@@ -0,0 +1,213 @@
+package org.lms.batch;
+
+import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The BatchRunner runs a list of {@link VisitorJob}s over all visitors.
+ *
+ * Visitors are split into partitions by ID range, and the partitions are processed in parallel on a
+ * fork/join pool. Loans change the borrow histories on the event dispatch thread meanwhile, so the jobs of
+ * a partition read copies of its visitors taken under the visitor database lock. Each finished partition is recorded in a {@link BatchCheckpoint}; if the run is
+ * interrupted, the next run of the same jobs resumes from the checkpoint with the original run time.
+ * A finished partition with a visitor changed or registered since it was processed is processed again.
+ *
+ * Once every partition has finished, all updates are applied to the visitor database in one commit,
+ * while the database is held. Each update carries the revision of the visitor it was computed from; a visitor
+ * changed since, for example by a loan or a renewed registration, is processed again at the commit, so the
+ * commit never overwrites a newer change with values computed from an older state.
+ */
+public class BatchRunner {
+    private static final int PARTITION_SIZE = 256;  // Range of visitor IDs per partition
+    private static final String CHECKPOINT_FILE = "BatchCheckpoint.json";  // Path to the checkpoint of an unfinished run
+
+    private final List<VisitorJob> jobs;  // Jobs to run for every visitor, in order
+    private final File checkpointFile;    // Where progress is recorded
+
+    /**
+     * Constructor to create a runner for the given jobs.
+     *
+     * @param jobs The jobs to run for every visitor, in order
+     */
+    public BatchRunner(List<VisitorJob> jobs) {
+        this(jobs, new File(CHECKPOINT_FILE));
+    }
+
+    /**
+     * Constructor to create a runner with its own checkpoint file.
+     *
+     * @param jobs           The jobs to run for every visitor, in order
+     * @param checkpointFile The checkpoint file
+     */
+    public BatchRunner(List<VisitorJob> jobs, File checkpointFile) {
+        this.jobs = new ArrayList<>(jobs);
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Checks whether an interrupted run of these jobs is waiting to be resumed.
+     *
+     * @return true if a matching checkpoint exists
+     */
+    public boolean hasUnfinishedRun() {
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile);
+        return checkpoint != null && checkpoint.getJobNames().equals(jobNames());
+    }
+
+    /**
+     * Runs the jobs, resuming an interrupted run of the same jobs if there is one.
+     *
+     * @return The number of visitors changed by the run
+     */
+    public int run() {
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile);
+        if (checkpoint == null || !checkpoint.getJobNames().equals(jobNames())) {
+            checkpoint = new BatchCheckpoint(System.currentTimeMillis(), jobNames());
+        }
+
+        // Partition by ID range, so partitions stay the same when visitors register between runs
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        Map<Integer, List<Visitor>> partitions = new TreeMap<>();
+        List<Integer> pending = new ArrayList<>();
+        synchronized (visitorDatabase) {
+            for (Visitor visitor : visitorDatabase.getAllVisitors()) {
+                partitions.computeIfAbsent(visitor.getVisitorId() / PARTITION_SIZE, p -> new ArrayList<>()).add(visitor);
+            }
+            for (Map.Entry<Integer, List<Visitor>> partition : partitions.entrySet()) {
+                // A resumed partition whose visitors changed since is processed again
+                if (checkpoint.isCompleted(partition.getKey())
+                        && !isCurrent(checkpoint.getUpdates(partition.getKey()), partition.getValue())) {
+                    checkpoint.discard(partition.getKey());
+                }
+                if (!checkpoint.isCompleted(partition.getKey())) {
+                    pending.add(partition.getKey());
+                }
+            }
+        }
+
+        BatchCheckpoint progress = checkpoint;
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new PartitionTask(pending, 0, pending.size(), partitions, progress));
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<Integer, VisitorUpdate> computed = new HashMap<>();
+        for (VisitorUpdate update : progress.allUpdates()) {
+            computed.put(update.getVisitorId(), update);
+        }
+        int changed;
+        synchronized (visitorDatabase) {
+            Map<Integer, VisitorUpdate> updates = new HashMap<>();
+            for (Visitor visitor : visitorDatabase.getAllVisitors()) {
+                VisitorUpdate update = computed.get(visitor.getVisitorId());
+                if (update == null || update.getRevision() != visitor.getRevision()) {
+                    // Changed or registered after its partition was processed; the jobs only read the visitor
+                    update = process(visitor, progress.getRunTime());
+                }
+                if (!update.isEmpty()) {
+                    updates.put(visitor.getVisitorId(), update);
+                }
+            }
+            changed = visitorDatabase.updateVisitors(updates);
+        }
+        if (!checkpointFile.delete() && checkpointFile.exists()) {
+            System.err.println("Could not delete batch checkpoint " + checkpointFile);
+        }
+        return changed;
+    }
+
+    /**
+     * Runs the jobs for one visitor.
+     *
+     * @return The update computed, empty if the visitor needs no change
+     */
+    private VisitorUpdate process(Visitor visitor, long runTime) {
+        VisitorUpdate update = new VisitorUpdate(visitor.getVisitorId(), visitor.getRevision());
+        for (VisitorJob job : jobs) {
+            job.process(visitor, runTime, update);
+        }
+        return update;
+    }
+
+    /**
+     * Checks that the updates of a finished partition were computed from the current revision of each of its visitors.
+     */
+    private static boolean isCurrent(List<VisitorUpdate> updates, List<Visitor> visitors) {
+        Map<Integer, Long> revisions = new HashMap<>();
+        for (VisitorUpdate update : updates) {
+            revisions.put(update.getVisitorId(), update.getRevision());
+        }
+        for (Visitor visitor : visitors) {
+            Long revision = revisions.get(visitor.getVisitorId());
+            if (revision == null || revision != visitor.getRevision()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> jobNames() {
+        List<String> names = new ArrayList<>();
+        for (VisitorJob job : jobs) {
+            names.add(job.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Processes a range of pending partitions, splitting it until a single partition remains.
+     */
+    private class PartitionTask extends RecursiveAction {
+        private final List<Integer> pending;
+        private final int from;
+        private final int to;
+        private final Map<Integer, List<Visitor>> partitions;
+        private final BatchCheckpoint checkpoint;
+
+        PartitionTask(List<Integer> pending, int from, int to, Map<Integer, List<Visitor>> partitions, BatchCheckpoint checkpoint) {
+            this.pending = pending;
+            this.from = from;
+            this.to = to;
+            this.partitions = partitions;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PartitionTask(pending, from, middle, partitions, checkpoint),
+                        new PartitionTask(pending, middle, to, partitions, checkpoint));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            int partition = pending.get(from);
+            List<Visitor> visitors = new ArrayList<>();
+            VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+            synchronized (visitorDatabase) {
+                for (Visitor visitor : partitions.get(partition)) {
+                    visitors.add(visitor.copy());
+                }
+            }
+            // Empty updates are kept too, for the revision each visitor was processed at
+            List<VisitorUpdate> updates = new ArrayList<>();
+            for (Visitor visitor : visitors) {
+                updates.add(process(visitor, checkpoint.getRunTime()));
+            }
+            checkpoint.complete(partition, updates, checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.lms.batch;
+
+import org.lms.circulation.LoanPolicy;
+import org.lms.user.BorrowHistory;
+import org.lms.user.Visitor;
+
+/**
+ * FineJob recomputes the late fines of a visitor from the loan history:
+ * loans returned after their due date, and open loans that are overdue at the run time.
+ */
+public class FineJob implements VisitorJob {
+
+    @Override
+    public String getName() {
+        return "fines";
+    }
+
+    @Override
+    public void process(Visitor visitor, long runTime, VisitorUpdate update) {
+        LoanPolicy policy = LoanPolicy.getInstance();
+        BorrowHistory history = visitor.getBorrowHistory();
+        long fineCents = 0;
+        for (int i = 0; i < history.size(); i++) {
+            long endTime = history.isReturned(i) ? history.getReturnTime(i) : runTime;
+            fineCents += policy.fineCents(history.getDueTime(i), endTime);
+        }
+        if (fineCents != visitor.getFineCents()) {
+            update.setFineCents(fineCents);
+        }
+    }
+}
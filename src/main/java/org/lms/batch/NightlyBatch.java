@@ -0,0 +1,68 @@
+package org.lms.batch;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class that schedules the nightly account batch: fines, over-limit flags and expiry of
+ * stale registrations. A run interrupted by a shutdown is resumed when the application starts.
+ */
+public final class NightlyBatch {
+    private static final LocalTime RUN_AT = LocalTime.of(2, 0);  // Time of day the batch runs
+    private static final int REGISTRATION_EXPIRY_DAYS = 365;     // Days without activity before a registration expires
+
+    private static ScheduledExecutorService scheduler;  // Runs the batch in the background
+
+    private NightlyBatch() {
+    }
+
+    /**
+     * Creates the runner for the nightly jobs.
+     *
+     * @return The batch runner
+     */
+    public static BatchRunner createRunner() {
+        return new BatchRunner(Arrays.asList(
+                new FineJob(),
+                new OverLimitJob(),
+                new StaleRegistrationJob(REGISTRATION_EXPIRY_DAYS)));
+    }
+
+    /**
+     * Starts the schedule: resumes an unfinished run right away, then runs every night.
+     */
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nightly-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (createRunner().hasUnfinishedRun()) {
+            scheduler.execute(NightlyBatch::runOnce);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(NightlyBatch::runOnce,
+                Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    private static void runOnce() {
+        try {
+            createRunner().run();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the checkpoint lets the next run resume
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.lms.batch;
+
+import org.lms.circulation.LoanPolicy;
+import org.lms.user.Visitor;
+
+/**
+ * OverLimitJob flags accounts with more open loans or higher fines than the loan policy allows.
+ * It reads the fines computed by {@link FineJob} in the same run when present.
+ */
+public class OverLimitJob implements VisitorJob {
+
+    @Override
+    public String getName() {
+        return "over-limit";
+    }
+
+    @Override
+    public void process(Visitor visitor, long runTime, VisitorUpdate update) {
+        LoanPolicy policy = LoanPolicy.getInstance();
+        long fineCents = update.getFineCents() != null ? update.getFineCents() : visitor.getFineCents();
+        boolean overLimit = visitor.getBorrowHistory().countOpen() > policy.getMaxOpenLoans()
+                || fineCents > policy.getMaxFineCents();
+        if (overLimit != visitor.isOverLimit()) {
+            update.setOverLimit(overLimit);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.lms.batch;
+
+import org.lms.user.BorrowHistory;
+import org.lms.user.Visitor;
+
+/**
+ * StaleRegistrationJob expires the registration of visitors without open loans whose last activity,
+ * their registration or their latest borrow or return, lies further back than the expiry period.
+ * Visitors with no recorded activity at all are left alone, as their age is unknown.
+ */
+public class StaleRegistrationJob implements VisitorJob {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final int expiryDays;  // Days without activity after which a registration expires
+
+    /**
+     * Constructor to create the job.
+     *
+     * @param expiryDays The number of days without activity after which a registration expires
+     */
+    public StaleRegistrationJob(int expiryDays) {
+        this.expiryDays = expiryDays;
+    }
+
+    @Override
+    public String getName() {
+        return "stale-registrations";
+    }
+
+    @Override
+    public void process(Visitor visitor, long runTime, VisitorUpdate update) {
+        if (visitor.isExpired()) {
+            return;
+        }
+        BorrowHistory history = visitor.getBorrowHistory();
+        if (history.countOpen() > 0) {
+            return;
+        }
+        long lastActivity = visitor.getRegisteredTime();
+        for (int i = 0; i < history.size(); i++) {
+            lastActivity = Math.max(lastActivity, Math.max(history.getBorrowTime(i), history.getReturnTime(i)));
+        }
+        if (lastActivity > 0 && runTime - lastActivity > expiryDays * DAY_MILLIS) {
+            update.setExpired(true);
+        }
+    }
+}
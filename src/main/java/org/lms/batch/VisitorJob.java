@@ -0,0 +1,29 @@
+package org.lms.batch;
+
+import org.lms.user.Visitor;
+
+/**
+ * The VisitorJob interface is one step of the nightly batch, run once for every visitor.
+ * Jobs are given a copy of the visitor taken under the visitor database lock, only read it, and record the
+ * changes they want in a {@link VisitorUpdate}; the changes of all jobs and visitors are applied together
+ * once the whole run has finished.
+ * Jobs are called from several threads at once and must not keep state between calls.
+ */
+public interface VisitorJob {
+    /**
+     * Gets the name of the job, used to recognize a checkpoint of the same batch.
+     *
+     * @return The job name
+     */
+    String getName();
+
+    /**
+     * Computes the changes for one visitor.
+     *
+     * @param visitor The visitor to process
+     * @param runTime The time the batch run started, in epoch millis; used instead of the clock
+     *                so that a resumed run computes the same results
+     * @param update  Receives the changes for the visitor
+     */
+    void process(Visitor visitor, long runTime, VisitorUpdate update);
+}
@@ -0,0 +1,117 @@
+package org.lms.batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.lms.user.Visitor;
+
+import java.util.function.Consumer;
+
+/**
+ * The VisitorUpdate class collects the changes the batch jobs computed for one visitor, with the revision
+ * of the visitor they were computed from, so an update made stale by a later change can be recognised.
+ * Fields left null are not changed. Updates are saved in checkpoints, so the class is a plain JSON bean.
+ */
+public class VisitorUpdate implements Consumer<Visitor> {
+    private int visitorId;      // The ID of the visitor to update
+    private long revision;      // Revision of the visitor the update was computed from
+    private Long fineCents;     // New accrued fines in cents, or null to keep them
+    private Boolean overLimit;  // New over-limit flag, or null to keep it
+    private Boolean expired;    // New expiry flag, or null to keep it
+
+    /**
+     * Default constructor for JSON deserialization.
+     */
+    public VisitorUpdate() {
+    }
+
+    /**
+     * Constructor to create an empty update for a visitor.
+     *
+     * @param visitorId The ID of the visitor
+     * @param revision  The revision of the visitor the update is computed from
+     */
+    public VisitorUpdate(int visitorId, long revision) {
+        this.visitorId = visitorId;
+        this.revision = revision;
+    }
+
+    /**
+     * Checks whether the update changes anything.
+     *
+     * @return true if no field is set
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return fineCents == null && overLimit == null && expired == null;
+    }
+
+    /**
+     * Applies the update to a visitor.
+     *
+     * @param visitor The visitor to change
+     */
+    @Override
+    public void accept(Visitor visitor) {
+        if (fineCents != null) {
+            visitor.setFineCents(fineCents);
+        }
+        if (overLimit != null) {
+            visitor.setOverLimit(overLimit);
+        }
+        if (expired != null) {
+            visitor.setExpired(expired);
+        }
+    }
+
+    // Getters and setters for the update fields
+
+    public int getVisitorId() {
+        return visitorId;
+    }
+
+    public void setVisitorId(int visitorId) {
+        this.visitorId = visitorId;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public Long getFineCents() {
+        return fineCents;
+    }
+
+    public void setFineCents(Long fineCents) {
+        this.fineCents = fineCents;
+    }
+
+    public Boolean getOverLimit() {
+        return overLimit;
+    }
+
+    public void setOverLimit(Boolean overLimit) {
+        this.overLimit = overLimit;
+    }
+
+    public Boolean getExpired() {
+        return expired;
+    }
+
+    public void setExpired(Boolean expired) {
+        this.expired = expired;
+    }
+
+    @Override
+    public String toString() {
+        return "VisitorUpdate{" +
+                "visitorId=" + visitorId +
+                ", revision=" + revision +
+                ", fineCents=" + fineCents +
+                ", overLimit=" + overLimit +
+                ", expired=" + expired +
+                '}';
+    }
+}
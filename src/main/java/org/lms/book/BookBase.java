@@ -1,5 +1,7 @@
 package org.lms.book;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,6 +16,8 @@ public class BookBase {
     private BookType type;  // The type/category of the book
     private Section section;  // The section of the library where the book belongs
     private List<BookCopy> copies;  // List of copies of this book available in the library
+    private long isbnKey;  // Cached canonical key of the ISBN
+    private boolean isbnKeyValid;  // Whether the cached key matches the current ISBN
 
     /**
      * Default constructor for BookBase.
@@ -78,6 +82,23 @@ public class BookBase {
         }
     }
 
+    /**
+     * Checks whether the title, author or ISBN of the book contains the query, ignoring case.
+     * An empty query matches every book.
+     *
+     * @param query The search query, already trimmed
+     * @return True if the book matches the query, false otherwise
+     */
+    public boolean matchesQuery(String query) {
+        if (query.isEmpty()) {
+            return true;
+        }
+        String lowerQuery = query.toLowerCase();
+        return title.toLowerCase().contains(lowerQuery) ||
+                author.toLowerCase().contains(lowerQuery) ||
+                isbn.toLowerCase().contains(lowerQuery);
+    }
+
     // Getter and Setter methods for all fields
 
     /**
@@ -132,6 +153,21 @@ public class BookBase {
      */
     public void setIsbn(String isbn) {
         this.isbn = isbn;
+        this.isbnKeyValid = false;
+    }
+
+    /**
+     * Gets the canonical numeric key of the ISBN, used by the database indexes.
+     *
+     * @return The ISBN key of the book
+     */
+    @JsonIgnore
+    public long getIsbnKey() {
+        if (!isbnKeyValid) {
+            isbnKey = Isbn.toKey(isbn);
+            isbnKeyValid = true;
+        }
+        return isbnKey;
     }
 
     /**
@@ -1,19 +1,66 @@
 package org.lms.book;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lms.book.search.CatalogBitmaps;
+import org.lms.book.search.QueryCache;
+import org.lms.book.search.QueryNode;
+import org.lms.book.search.QueryParser;
+import org.lms.book.search.QueryPlanner;
+import org.lms.book.search.RankedSearch;
+import org.lms.book.search.SearchHit;
+import org.lms.book.search.Suggestion;
+import org.lms.book.search.SuggestionTrie;
+import org.lms.book.search.TokenIndex;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 /**
  * A singleton class representing a book database.
  * This class provides methods to manage books, including adding, editing, deleting, borrowing, and returning books.
+ *
+ * Changes are made while holding the lock of this object. Searches never take that lock, so a long search
+ * does not hold up a borrow or an edit: full scans run over an immutable snapshot of the catalog that is
+ * republished after every change to a title, author or ISBN, and index lookups hold the read lock of the
+ * indexes, which a change holds only while it updates them in memory.
  */
 public class BookDatabase {
     private static BookDatabase instance;  // Singleton instance of BookDatabase
     private List<BookBase> bookBases;  // List to store all the books in the database
+    private final Map<Long, BookBase> isbnIndex = new ConcurrentHashMap<>();  // Books indexed by their canonical ISBN key, read without locking
+    private final NavigableMap<Long, BookBase> isbnOrder = new TreeMap<>();  // Books in ISBN key order, for paging
+    private final TokenIndex tokenIndex = new TokenIndex();  // Search terms of titles, authors and ISBNs
+    private final RankedSearch rankedSearch = new RankedSearch(tokenIndex);  // Relevance ranking over the token index
+    private final SuggestionTrie suggestionTrie = new SuggestionTrie();  // Title and author completions ranked by copies
+    private final CatalogBitmaps catalogBitmaps = new CatalogBitmaps();  // Book IDs with type, section and availability bitmaps
+    private final QueryPlanner queryPlanner = new QueryPlanner(tokenIndex, catalogBitmaps, isbnIndex::get);  // Plans structured queries
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();  // Guards the search indexes and copies while searches read them
+    private volatile CatalogSnapshot snapshot;  // The books as of the last text change, scanned without locking
+    private final StringPool stringPool = new StringPool();  // Shared instances of repeated authors and titles
+    private final List<CatalogChangeListener> listeners = new CopyOnWriteArrayList<>();  // Subscribers to catalog changes
+    private volatile HoldAllocator holdAllocator;  // Gives copies that become free to waiting visitors, or null
+    private volatile long version;  // Incremented on every change, so readers can tell whether a result is outdated
+    private long textVersion;  // Incremented when a title, author or ISBN is added, edited or removed
+    private final QueryCache<List<BookBase>> searchCache = new QueryCache<>(SEARCH_CACHE_SIZE);  // Recent searchBooks results, stamped with textVersion
+    private final QueryCache<List<SearchHit>> rankedCache = new QueryCache<>(SEARCH_CACHE_SIZE);  // Recent ranked results, stamped with version
+    private static final int SEARCH_CACHE_SIZE = 64;  // Number of recent queries kept per cache
     private static final String DATABASE_FILE = "BookDatabase.json";  // Path to the configuration file storing the books
 
     /**
@@ -22,6 +69,8 @@ public class BookDatabase {
     private BookDatabase() {
         bookBases = new ArrayList<>();
         loadFromFile();
+        rebuildIndex();
+        publishSnapshot();
     }
 
     /**
@@ -43,44 +92,64 @@ public class BookDatabase {
      *
      * @param bookBase The book to be added to the database
      */
-    public void addBook(BookBase bookBase) {
-        boolean exists = false;
-        for (BookBase existingBookBase : bookBases) {
-            if (existingBookBase.getIsbn().equals(bookBase.getIsbn())) {
-                // Find the highest existing copy ID and generate new ones for the new copies
-                int maxId = 0;
-                for (BookCopy copy : existingBookBase.getCopies()) {
-                    try {
-                        String[] split = copy.getCopyId().split("-");
-                        int id = Integer.parseInt(split[split.length - 1]);
-                        if (id > maxId) {
-                            maxId = id;
-                        }
-                    } catch (NumberFormatException ignored) {
-
+    public synchronized void addBook(BookBase bookBase) {
+        internStrings(bookBase);
+        BookBase existingBookBase = isbnIndex.get(bookBase.getIsbnKey());
+        if (existingBookBase != null) {
+            // Find the highest existing copy ID and generate new ones for the new copies
+            int maxId = 0;
+            for (BookCopy copy : existingBookBase.getCopies()) {
+                try {
+                    String[] split = copy.getCopyId().split("-");
+                    int id = Integer.parseInt(split[split.length - 1]);
+                    if (id > maxId) {
+                        maxId = id;
                     }
-                }
+                } catch (NumberFormatException ignored) {
 
-                // Add new copies to the existing book
-                for (int i = 0; i < bookBase.getCopies().size(); i++) {
-                    BookCopy bookCopy = new BookCopy();
-                    String copyId = existingBookBase.getIsbn() + "-" + (maxId + i + 1);
-                    bookCopy.setCopyId(copyId);
-                    bookCopy.setStatus(BookStatus.AVAILABLE);
-                    existingBookBase.getCopies().add(bookCopy);
                 }
-
-                exists = true;
-                break;
             }
-        }
 
-        // If the book doesn't exist, add it as a new entry
-        if (!exists) {
-            bookBases.add(bookBase);
+            // Add new copies to the existing book
+            List<BookCopy> newCopies = new ArrayList<>();
+            for (int i = 0; i < bookBase.getCopies().size(); i++) {
+                BookCopy bookCopy = new BookCopy();
+                String copyId = existingBookBase.getIsbn() + "-" + (maxId + i + 1);
+                bookCopy.setCopyId(copyId);
+                // A new copy of a reserved book goes straight on hold for the next visitor waiting
+                int holder = allocateHold(existingBookBase);
+                bookCopy.setStatus(holder == 0 ? BookStatus.AVAILABLE : BookStatus.ON_HOLD);
+                bookCopy.setBorrowVisitorId(holder);
+                newCopies.add(bookCopy);
+            }
+            indexLock.writeLock().lock();
+            try {
+                existingBookBase.getCopies().addAll(newCopies);
+                suggestionTrie.add(existingBookBase);
+                catalogBitmaps.update(existingBookBase);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            saveToFile();
+            fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.COPIES_ADDED,
+                    existingBookBase, null, -1, bookBase.getCopies().size()));
+        } else {
+            // If the book doesn't exist, add it as a new entry
+            indexLock.writeLock().lock();
+            try {
+                bookBases.add(bookBase);
+                isbnIndex.put(bookBase.getIsbnKey(), bookBase);
+                isbnOrder.put(bookBase.getIsbnKey(), bookBase);
+                tokenIndex.add(bookBase);
+                suggestionTrie.add(bookBase);
+                catalogBitmaps.update(bookBase);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            saveToFile();
+            fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_ADDED,
+                    bookBase, null, -1, bookBase.getCopies().size()));
         }
-
-        saveToFile();
     }
 
     /**
@@ -90,14 +159,33 @@ public class BookDatabase {
      * @param editedBookBase The edited book details
      * @return true if the book was successfully edited, false otherwise
      */
-    public boolean editBook(BookBase editedBookBase) {
+    public synchronized boolean editBook(BookBase editedBookBase) {
         BookBase bookBase = findBookByIsbn(editedBookBase.getIsbn());
+        if (bookBase == null && bookBases.contains(editedBookBase)) {
+            // The stored book itself had its ISBN changed, so its index entry is stale
+            indexLock.writeLock().lock();
+            try {
+                rebuildIndex();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            bookBase = editedBookBase;
+        }
         if (bookBase != null) {
-            bookBase.setAuthor(editedBookBase.getAuthor());
-            bookBase.setTitle(editedBookBase.getTitle());
-            bookBase.setType(editedBookBase.getType());
-            bookBase.setSection(editedBookBase.getSection());
+            indexLock.writeLock().lock();
+            try {
+                bookBase.setAuthor(stringPool.intern(editedBookBase.getAuthor()));
+                bookBase.setTitle(stringPool.intern(editedBookBase.getTitle()));
+                bookBase.setType(editedBookBase.getType());
+                bookBase.setSection(editedBookBase.getSection());
+                tokenIndex.add(bookBase);
+                suggestionTrie.add(bookBase);
+                catalogBitmaps.update(bookBase);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
             saveToFile();
+            fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_EDITED, bookBase, null, -1, 0));
             return true;
         }
         return false;
@@ -110,12 +198,35 @@ public class BookDatabase {
      * @return The BookBase object if found, otherwise null
      */
     public BookBase findBookByIsbn(String isbn) {
-        for (BookBase bookBase : bookBases) {
-            if (bookBase.getIsbn().equals(isbn)) {
-                return bookBase;
+        return isbnIndex.get(Isbn.toKey(isbn));
+    }
+
+    /**
+     * Finds a book by the canonical key of its ISBN.
+     *
+     * @param isbnKey The ISBN key of the book to search for
+     * @return The BookBase object if found, otherwise null
+     */
+    public BookBase findBookByIsbnKey(long isbnKey) {
+        return isbnIndex.get(isbnKey);
+    }
+
+    /**
+     * Finds the books for a batch of ISBN keys through the index, without taking the database lock.
+     * Keys without a book in the catalog are left out of the result.
+     *
+     * @param isbnKeys The ISBN keys to resolve; duplicates are allowed
+     * @return A map from ISBN key to book for every key found
+     */
+    public Map<Long, BookBase> findBooksByIsbnKeys(long[] isbnKeys) {
+        Map<Long, BookBase> found = new HashMap<>();
+        for (long isbnKey : isbnKeys) {
+            BookBase bookBase = isbnIndex.get(isbnKey);
+            if (bookBase != null) {
+                found.put(isbnKey, bookBase);
             }
         }
-        return null;
+        return found;
     }
 
     /**
@@ -123,10 +234,188 @@ public class BookDatabase {
      *
      * @return A list of all books in the database
      */
-    public List<BookBase> getAllBooks() {
+    public synchronized List<BookBase> getAllBooks() {
         return new ArrayList<>(bookBases);
     }
 
+    /**
+     * Finds all books whose title, author or ISBN contains the query, ignoring case.
+     * Recent results are cached until a title, author or ISBN in the catalog changes.
+     * The scan runs over the catalog snapshot, without taking the database lock.
+     *
+     * @param query The search query, already trimmed; an empty query returns every book
+     * @return A list of matching books in catalog order
+     * @throws CancellationException if the calling thread is interrupted during the search
+     */
+    public List<BookBase> searchBooks(String query) {
+        // Which books match depends on their text only, so loans and copy changes keep the entry valid
+        CatalogSnapshot catalog = snapshot;
+        synchronized (searchCache) {
+            List<BookBase> cached = searchCache.get(query, catalog.textVersion);
+            if (cached != null) {
+                return new ArrayList<>(cached);
+            }
+        }
+        List<BookBase> matchingBooks = new ArrayList<>();
+        for (int i = 0; i < catalog.books.length; i++) {
+            // Let a live search abandon a query that a newer keystroke made stale
+            if ((i & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search cancelled");
+            }
+            BookBase bookBase = catalog.books[i];
+            if (bookBase.matchesQuery(query)) {
+                matchingBooks.add(bookBase);
+            }
+        }
+        synchronized (searchCache) {
+            searchCache.put(query, catalog.textVersion, new ArrayList<>(matchingBooks));
+        }
+        return matchingBooks;
+    }
+
+    /**
+     * Finds the books most relevant to a free-text query, one hit per book with its copy counts.
+     * Title matches rank above author matches, which rank above ISBN matches; see {@link RankedSearch}.
+     *
+     * @param query The free-text query
+     * @param limit The maximum number of hits
+     * @return Up to limit hits, best first
+     * @throws CancellationException if the calling thread is interrupted during the search
+     */
+    public List<SearchHit> searchRanked(String query, int limit) {
+        // Scores depend on availability, so any change invalidates the entry
+        String key = limit + ":" + query;
+        // Read before searching, so a result that may predate a change is never stamped as newer
+        long stamp = version;
+        List<SearchHit> hits;
+        synchronized (rankedCache) {
+            hits = rankedCache.get(key, stamp);
+        }
+        if (hits == null) {
+            indexLock.readLock().lock();
+            try {
+                hits = rankedSearch.search(query, limit, isbnIndex::get);
+            } finally {
+                indexLock.readLock().unlock();
+            }
+            synchronized (rankedCache) {
+                rankedCache.put(key, stamp, hits);
+            }
+        }
+        return new ArrayList<>(hits);
+    }
+
+    /**
+     * Finds the books matching a structured query such as {@code author:tolkien type:FICTION status:available}.
+     * See {@link QueryParser} for the syntax and {@link QueryPlanner} for how indexes are chosen.
+     *
+     * @param query The query text
+     * @return The matching books
+     */
+    public List<BookBase> searchStructured(String query) {
+        QueryNode parsed = QueryParser.parse(query);
+        indexLock.readLock().lock();
+        try {
+            return queryPlanner.plan(parsed).execute();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the books matching a structured query and describes how it was run, with the estimated rows
+     * and cost of every step. The query is planned once for both, so a caller showing the plan next to
+     * the results does not plan it again.
+     *
+     * @param query The query text
+     * @return The matching books, with the plan one step per line
+     */
+    public SearchResult searchStructuredExplained(String query) {
+        QueryNode parsed = QueryParser.parse(query);
+        indexLock.readLock().lock();
+        try {
+            QueryPlanner.Plan plan = queryPlanner.plan(parsed);
+            return new SearchResult(plan.execute(), plan.explain());
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the hit, miss, eviction and invalidation counts of the plain search cache.
+     *
+     * @return A snapshot of the cache statistics
+     */
+    public QueryCache.Stats getSearchCacheStats() {
+        synchronized (searchCache) {
+            return searchCache.getStats();
+        }
+    }
+
+    /**
+     * Gets the hit, miss, eviction and invalidation counts of the ranked search cache.
+     *
+     * @return A snapshot of the cache statistics
+     */
+    public QueryCache.Stats getRankedCacheStats() {
+        synchronized (rankedCache) {
+            return rankedCache.getStats();
+        }
+    }
+
+    /**
+     * Suggests titles and authors completing what the user has typed, ranked by their number of copies.
+     *
+     * @param prefix The typed text
+     * @param limit  The maximum number of suggestions
+     * @return The suggestions, best first
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        // The trie has its own lock, so typing never waits for a change being saved
+        return suggestionTrie.suggest(prefix, limit);
+    }
+
+    /**
+     * Finds one page of books matching the query, in ISBN key order.
+     * A page holds whole books and stops once it contains at least the requested number of copies,
+     * so paging is stable even when books are added or removed between requests.
+     * The scan runs over the catalog snapshot, without taking the database lock.
+     *
+     * @param query    The search query, already trimmed; an empty query matches every book
+     * @param cursor   The cursor returned with the previous page, or {@link CatalogPage#START} for the first page
+     * @param minRows  The number of copies (table rows) the page should contain
+     * @return The page of matching books
+     * @throws CancellationException if the calling thread is interrupted during the search
+     */
+    public CatalogPage findBooksPage(String query, long cursor, int minRows) {
+        CatalogSnapshot catalog = snapshot;
+        List<BookBase> pageBooks = new ArrayList<>();
+        int rows = 0;
+        int scanned = 0;
+        long nextCursor = cursor;
+        int start = 0;
+        if (cursor != CatalogPage.START) {
+            // First key after the cursor
+            start = Arrays.binarySearch(catalog.isbnKeys, cursor);
+            start = start >= 0 ? start + 1 : -start - 1;
+        }
+        for (int i = start; i < catalog.isbnKeys.length; i++) {
+            if (rows >= minRows) {
+                return new CatalogPage(pageBooks, nextCursor, true);
+            }
+            if ((++scanned & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search cancelled");
+            }
+            BookBase bookBase = catalog.byIsbnKey[i];
+            nextCursor = catalog.isbnKeys[i];
+            if (bookBase.matchesQuery(query)) {
+                pageBooks.add(bookBase);
+                rows += bookBase.getCopies().size();
+            }
+        }
+        return new CatalogPage(pageBooks, nextCursor, false);
+    }
+
     /**
      * Deletes a book or a specific copy of a book from the database.
      * If all copies of a book are removed, the entire book is deleted.
@@ -135,17 +424,37 @@ public class BookDatabase {
      * @param copyId The ID of the copy to delete
      * @return true if the book or copy was successfully deleted, false otherwise
      */
-    public boolean deleteBook(String isbn, String copyId) {
+    public synchronized boolean deleteBook(String isbn, String copyId) {
         BookBase bookBase = findBookByIsbn(isbn);
         if (bookBase != null) {
             List<BookCopy> copies = bookBase.getCopies();
-            for (BookCopy copy : copies) {
+            for (int i = 0; i < copies.size(); i++) {
+                BookCopy copy = copies.get(i);
                 if (copy.getCopyId().equals(copyId)) {
-                    copies.remove(copy);
-                    if (copies.isEmpty()) {
-                        bookBases.remove(bookBase);
+                    boolean bookRemoved;
+                    indexLock.writeLock().lock();
+                    try {
+                        copies.remove(i);
+                        bookRemoved = copies.isEmpty();
+                        if (bookRemoved) {
+                            bookBases.remove(bookBase);
+                            isbnIndex.remove(bookBase.getIsbnKey());
+                            isbnOrder.remove(bookBase.getIsbnKey());
+                            tokenIndex.remove(bookBase);
+                            suggestionTrie.remove(bookBase);
+                            catalogBitmaps.remove(bookBase);
+                        } else {
+                            suggestionTrie.add(bookBase);
+                            catalogBitmaps.update(bookBase);
+                        }
+                    } finally {
+                        indexLock.writeLock().unlock();
                     }
                     saveToFile();
+                    fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_DELETED, bookBase, copy, i, 0));
+                    if (bookRemoved) {
+                        fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_DELETED, bookBase, null, -1, 0));
+                    }
                     return true;
                 }
             }
@@ -153,6 +462,132 @@ public class BookDatabase {
         return false;
     }
 
+    /**
+     * Gets the version of the catalog, which changes every time the catalog is modified.
+     *
+     * @return The current catalog version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Registers a listener to be notified after every change to the catalog.
+     *
+     * @param listener The listener to add
+     */
+    public void addChangeListener(CatalogChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered change listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeChangeListener(CatalogChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies all registered listeners of a change.
+     *
+     * @param event The change that was applied
+     */
+    private void fireChange(CatalogChangeEvent event) {
+        if (countChange(event)) {
+            publishSnapshot();
+        }
+        for (CatalogChangeListener listener : listeners) {
+            listener.onCatalogChanged(event);
+        }
+    }
+
+    /**
+     * Notifies all registered listeners of a batch of changes saved together.
+     *
+     * @param events The changes that were applied, in order
+     */
+    private void fireChanges(List<CatalogChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        boolean textChanged = false;
+        for (CatalogChangeEvent event : events) {
+            textChanged |= countChange(event);
+        }
+        if (textChanged) {
+            publishSnapshot();
+        }
+        List<CatalogChangeEvent> batch = Collections.unmodifiableList(events);
+        for (CatalogChangeListener listener : listeners) {
+            listener.onCatalogChanges(batch);
+        }
+    }
+
+    /**
+     * Advances the catalog versions for a change.
+     *
+     * @param event The change that was applied
+     * @return true if the change may have added, edited or removed a title, author or ISBN
+     */
+    private boolean countChange(CatalogChangeEvent event) {
+        version++;
+        switch (event.getType()) {
+            case BOOK_ADDED:
+            case BOOK_EDITED:
+            case BOOK_DELETED:
+                textVersion++;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Publishes a new snapshot of the books for searches to scan. Copy changes do not need one,
+     * since a snapshot refers to the books themselves.
+     */
+    private void publishSnapshot() {
+        long[] isbnKeys = new long[isbnOrder.size()];
+        BookBase[] byIsbnKey = new BookBase[isbnKeys.length];
+        int i = 0;
+        for (Map.Entry<Long, BookBase> entry : isbnOrder.entrySet()) {
+            isbnKeys[i] = entry.getKey();
+            byIsbnKey[i] = entry.getValue();
+            i++;
+        }
+        snapshot = new CatalogSnapshot(bookBases.toArray(new BookBase[0]), isbnKeys, byIsbnKey, textVersion);
+    }
+
+    /**
+     * Rebuilds the ISBN and token indexes from the list of books.
+     */
+    private void rebuildIndex() {
+        isbnIndex.clear();
+        isbnOrder.clear();
+        tokenIndex.clear();
+        suggestionTrie.clear();
+        catalogBitmaps.clear();
+        for (BookBase bookBase : bookBases) {
+            isbnIndex.put(bookBase.getIsbnKey(), bookBase);
+            isbnOrder.put(bookBase.getIsbnKey(), bookBase);
+            tokenIndex.add(bookBase);
+            catalogBitmaps.update(bookBase);
+        }
+        suggestionTrie.addAll(bookBases);
+    }
+
+    /**
+     * Replaces the author and title of a book with their pooled instances.
+     *
+     * @param bookBase The book whose strings should be interned
+     */
+    private void internStrings(BookBase bookBase) {
+        bookBase.setAuthor(stringPool.intern(bookBase.getAuthor()));
+        bookBase.setTitle(stringPool.intern(bookBase.getTitle()));
+    }
+
     /**
      * Saves the current state of the book database to a JSON file.
      */
@@ -178,6 +613,9 @@ public class BookDatabase {
                         objectMapper.getTypeFactory()
                                 .constructCollectionType(List.class, BookBase.class)
                 );
+                for (BookBase bookBase : bookBases) {
+                    internStrings(bookBase);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -186,25 +624,37 @@ public class BookDatabase {
 
     /**
      * Borrows a book by changing the status of the specified copy to UNAVAILABLE and associating it with a visitor.
+     * A copy on hold can only be borrowed by the visitor it is held for.
      *
      * @param isbn      The ISBN of the book to borrow
      * @param copyId    The copy ID of the book to borrow
      * @param visitorId The ID of the visitor borrowing the book
      * @return true if the book was successfully borrowed, false otherwise
      */
-    public boolean borrowBook(String isbn, String copyId, int visitorId) {
-        for (BookBase bookBase : bookBases) {
-            if (bookBase.getIsbn().equals(isbn)) {
-                for (BookCopy copy : bookBase.getCopies()) {
-                    if (copy.getCopyId().equals(copyId)) {
-                        if (copy.getStatus() == BookStatus.AVAILABLE) {
+    public synchronized boolean borrowBook(String isbn, String copyId, int visitorId) {
+        BookBase bookBase = findBookByIsbn(isbn);
+        if (bookBase != null) {
+            List<BookCopy> copies = bookBase.getCopies();
+            for (int i = 0; i < copies.size(); i++) {
+                BookCopy copy = copies.get(i);
+                if (copy.getCopyId().equals(copyId)) {
+                    BookStatus previousStatus = copy.getStatus();
+                    if (previousStatus == BookStatus.AVAILABLE
+                            || previousStatus == BookStatus.ON_HOLD && copy.getBorrowVisitorId() == visitorId) {
+                        indexLock.writeLock().lock();
+                        try {
                             copy.setStatus(BookStatus.UNAVAILABLE);
                             copy.setBorrowVisitorId(visitorId);
-                            saveToFile();
-                            return true;
-                        } else {
-                            break;
+                            catalogBitmaps.update(bookBase);
+                        } finally {
+                            indexLock.writeLock().unlock();
                         }
+                        saveToFile();
+                        fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_STATUS_CHANGED,
+                                bookBase, copy, i, 0, previousStatus));
+                        return true;
+                    } else {
+                        break;
                     }
                 }
             }
@@ -214,27 +664,280 @@ public class BookDatabase {
 
     /**
      * Returns a borrowed book by changing the status of the specified copy to AVAILABLE.
+     * If visitors are waiting for the book, the copy is put on hold for the first of them instead,
+     * and the reservation is taken in the same change.
      *
      * @param isbn   The ISBN of the book being returned
      * @param copyId The copy ID of the book being returned
      * @return true if the book was successfully returned, false otherwise
      */
-    public boolean returnBook(String isbn, String copyId) {
-        for (BookBase bookBase : bookBases) {
-            if (bookBase.getIsbn().equals(isbn)) {
-                for (BookCopy copy : bookBase.getCopies()) {
-                    if (copy.getCopyId().equals(copyId)) {
-                        if (copy.getStatus() == BookStatus.UNAVAILABLE) {
-                            copy.setStatus(BookStatus.AVAILABLE);
-                            saveToFile();
-                            return true;
-                        } else {
-                            break;
+    public synchronized boolean returnBook(String isbn, String copyId) {
+        BookBase bookBase = findBookByIsbn(isbn);
+        if (bookBase != null) {
+            List<BookCopy> copies = bookBase.getCopies();
+            for (int i = 0; i < copies.size(); i++) {
+                BookCopy copy = copies.get(i);
+                if (copy.getCopyId().equals(copyId)) {
+                    if (copy.getStatus() == BookStatus.UNAVAILABLE) {
+                        int holder = allocateHold(bookBase);
+                        indexLock.writeLock().lock();
+                        try {
+                            if (holder == 0) {
+                                copy.setStatus(BookStatus.AVAILABLE);
+                            } else {
+                                copy.setStatus(BookStatus.ON_HOLD);
+                                copy.setBorrowVisitorId(holder);
+                            }
+                            catalogBitmaps.update(bookBase);
+                        } finally {
+                            indexLock.writeLock().unlock();
                         }
+                        saveToFile();
+                        fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_STATUS_CHANGED,
+                                bookBase, copy, i, 0, BookStatus.UNAVAILABLE));
+                        return true;
+                    } else {
+                        break;
                     }
                 }
             }
         }
         return false;
     }
+
+    /**
+     * Releases a copy on hold, for example when the visitor it is held for does not pick it up.
+     * The copy is put on hold for the next visitor waiting for the book, or back on the shelf.
+     *
+     * @param isbn   The ISBN of the book
+     * @param copyId The copy ID of the copy on hold
+     * @return true if the hold was released, false if the copy is not on hold
+     */
+    public synchronized boolean releaseHold(String isbn, String copyId) {
+        BookBase bookBase = findBookByIsbn(isbn);
+        if (bookBase != null) {
+            List<BookCopy> copies = bookBase.getCopies();
+            for (int i = 0; i < copies.size(); i++) {
+                BookCopy copy = copies.get(i);
+                if (copy.getCopyId().equals(copyId)) {
+                    if (copy.getStatus() != BookStatus.ON_HOLD) {
+                        break;
+                    }
+                    int holder = allocateHold(bookBase);
+                    indexLock.writeLock().lock();
+                    try {
+                        copy.setStatus(holder == 0 ? BookStatus.AVAILABLE : BookStatus.ON_HOLD);
+                        copy.setBorrowVisitorId(holder);
+                        catalogBitmaps.update(bookBase);
+                    } finally {
+                        indexLock.writeLock().unlock();
+                    }
+                    saveToFile();
+                    fireChange(new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_STATUS_CHANGED,
+                            bookBase, copy, i, 0, BookStatus.ON_HOLD));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the allocator that gives copies becoming free to visitors waiting for them.
+     *
+     * @param allocator The allocator, or null to put every free copy back on the shelf
+     */
+    public void setHoldAllocator(HoldAllocator allocator) {
+        holdAllocator = allocator;
+    }
+
+    /**
+     * Takes the next visitor waiting for a book, if any.
+     *
+     * @param bookBase The book a copy of which becomes free
+     * @return The ID of the visitor to hold the copy for, or 0
+     */
+    private int allocateHold(BookBase bookBase) {
+        HoldAllocator allocator = holdAllocator;
+        return allocator == null ? 0 : allocator.allocate(bookBase.getIsbnKey());
+    }
+
+    /**
+     * Sets the borrower of many copies and saves them with a single write, for example to repair copies
+     * whose status disagrees with the visitors' loans. A borrower of 0 puts the copy back on the shelf;
+     * any other ID marks the copy as borrowed by that visitor. Copies no longer in the catalog are skipped.
+     *
+     * @param borrowersByCopy The new borrower of each copy, by copy reference
+     * @return The number of copies changed
+     */
+    public synchronized int setCopyBorrowers(Map<Integer, Integer> borrowersByCopy) {
+        CopyRegistry registry = CopyRegistry.getInstance();
+        List<CatalogChangeEvent> events = new ArrayList<>();
+        indexLock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> entry : borrowersByCopy.entrySet()) {
+                BookBase bookBase = findBookByIsbn(registry.getIsbn(entry.getKey()));
+                if (bookBase == null) {
+                    continue;
+                }
+                String copyId = registry.getCopyId(entry.getKey());
+                int visitorId = entry.getValue();
+                BookStatus status = visitorId == 0 ? BookStatus.AVAILABLE : BookStatus.UNAVAILABLE;
+                List<BookCopy> copies = bookBase.getCopies();
+                for (int i = 0; i < copies.size(); i++) {
+                    BookCopy copy = copies.get(i);
+                    if (copy.getCopyId().equals(copyId)) {
+                        if (copy.getStatus() != status || copy.getBorrowVisitorId() != visitorId) {
+                            BookStatus previousStatus = copy.getStatus();
+                            boolean statusChanged = previousStatus != status;
+                            copy.setStatus(status);
+                            copy.setBorrowVisitorId(visitorId);
+                            catalogBitmaps.update(bookBase);
+                            // A change of borrower alone is reported as an edit, since the copy's status is unchanged
+                            events.add(statusChanged
+                                    ? new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_STATUS_CHANGED, bookBase, copy, i, 0, previousStatus)
+                                    : new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_EDITED, bookBase, null, -1, 0));
+                        }
+                        break;
+                    }
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        if (!events.isEmpty()) {
+            saveToFile();
+            fireChanges(events);
+        }
+        return events.size();
+    }
+
+    /**
+     * Moves every book matching a condition to a section, saving the catalog once.
+     *
+     * @param filter  The condition the books to move must meet
+     * @param section The section to move the books to
+     * @return The number of books moved; books already in the section are not counted
+     */
+    public synchronized int moveBooksToSection(Predicate<BookBase> filter, Section section) {
+        List<CatalogChangeEvent> events = new ArrayList<>();
+        indexLock.writeLock().lock();
+        try {
+            for (BookBase bookBase : bookBases) {
+                if (bookBase.getSection() != section && filter.test(bookBase)) {
+                    bookBase.setSection(section);
+                    catalogBitmaps.update(bookBase);
+                    events.add(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_EDITED, bookBase, null, -1, 0));
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        if (!events.isEmpty()) {
+            saveToFile();
+            fireChanges(events);
+        }
+        return events.size();
+    }
+
+    /**
+     * Changes the type of every book matching a condition, saving the catalog once.
+     *
+     * @param filter The condition the books to change must meet
+     * @param type   The new type of the books
+     * @return The number of books changed; books already of the type are not counted
+     */
+    public synchronized int changeBooksType(Predicate<BookBase> filter, BookType type) {
+        List<CatalogChangeEvent> events = new ArrayList<>();
+        indexLock.writeLock().lock();
+        try {
+            for (BookBase bookBase : bookBases) {
+                if (bookBase.getType() != type && filter.test(bookBase)) {
+                    bookBase.setType(type);
+                    catalogBitmaps.update(bookBase);
+                    events.add(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_EDITED, bookBase, null, -1, 0));
+                }
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        if (!events.isEmpty()) {
+            saveToFile();
+            fireChanges(events);
+        }
+        return events.size();
+    }
+
+    /**
+     * Deletes every copy matching a condition in one pass over the catalog, saving it once, for example
+     * to weed old editions. Borrowed copies are never deleted, as with single deletions they must be
+     * returned first. Books left without copies are removed.
+     *
+     * @param filter The condition a copy, and the book it belongs to, must meet to be deleted
+     * @return The number of copies deleted
+     */
+    public synchronized int deleteCopies(BiPredicate<BookBase, BookCopy> filter) {
+        List<CatalogChangeEvent> events = new ArrayList<>();
+        List<BookBase> changedBooks = new ArrayList<>();
+        Set<BookBase> removedBooks = Collections.newSetFromMap(new IdentityHashMap<>());
+        int deleted = 0;
+        indexLock.writeLock().lock();
+        try {
+            for (BookBase bookBase : bookBases) {
+                List<BookCopy> copies = bookBase.getCopies();
+                int before = deleted;
+                // Delete from the end, so the index of each event is still valid when the events are applied in order
+                for (int i = copies.size() - 1; i >= 0; i--) {
+                    BookCopy copy = copies.get(i);
+                    if (copy.getStatus() == BookStatus.AVAILABLE && filter.test(bookBase, copy)) {
+                        copies.remove(i);
+                        events.add(new CatalogChangeEvent(CatalogChangeEvent.Type.COPY_DELETED, bookBase, copy, i, 0));
+                        deleted++;
+                    }
+                }
+                if (deleted == before) {
+                    continue;
+                }
+                if (copies.isEmpty()) {
+                    removedBooks.add(bookBase);
+                    isbnIndex.remove(bookBase.getIsbnKey());
+                    isbnOrder.remove(bookBase.getIsbnKey());
+                    tokenIndex.remove(bookBase);
+                    catalogBitmaps.remove(bookBase);
+                    events.add(new CatalogChangeEvent(CatalogChangeEvent.Type.BOOK_DELETED, bookBase, null, -1, 0));
+                } else {
+                    changedBooks.add(bookBase);
+                    catalogBitmaps.update(bookBase);
+                }
+            }
+            if (deleted > 0) {
+                bookBases.removeIf(removedBooks::contains);
+                suggestionTrie.updateAll(changedBooks, removedBooks);
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        if (deleted > 0) {
+            saveToFile();
+            fireChanges(events);
+        }
+        return deleted;
+    }
+
+    /**
+     * An immutable view of the books at one text version, scanned by searches without locking.
+     */
+    private static class CatalogSnapshot {
+        private final BookBase[] books;  // The books in catalog order
+        private final long[] isbnKeys;  // The ISBN keys of the books in ascending order
+        private final BookBase[] byIsbnKey;  // The book of each key in isbnKeys
+        private final long textVersion;  // The text version the snapshot was taken at
+
+        private CatalogSnapshot(BookBase[] books, long[] isbnKeys, BookBase[] byIsbnKey, long textVersion) {
+            this.books = books;
+            this.isbnKeys = isbnKeys;
+            this.byIsbnKey = byIsbnKey;
+            this.textVersion = textVersion;
+        }
+    }
 }
@@ -5,7 +5,8 @@ package org.lms.book;
  */
 public enum BookStatus {
     AVAILABLE("Available"),   // The book is available for borrowing
-    UNAVAILABLE("Unavailable");  // The book is not available for borrowing
+    UNAVAILABLE("Unavailable"),  // The book is not available for borrowing
+    ON_HOLD("On hold");  // The book is kept for the visitor who reserved it until they borrow it
 
     private final String status;  // The status of the book
 
@@ -0,0 +1,96 @@
+package org.lms.book;
+
+/**
+ * The CatalogChangeEvent class describes a single change made to the book database.
+ * It carries the affected book and, for copy-level changes, the affected copy.
+ */
+public class CatalogChangeEvent {
+
+    /**
+     * The kinds of changes the book database reports.
+     */
+    public enum Type {
+        BOOK_ADDED,           // A new book was added with its copies
+        BOOK_EDITED,          // The details of a book were changed
+        BOOK_DELETED,         // A book was removed after its last copy was deleted
+        COPIES_ADDED,         // New copies were appended to an existing book
+        COPY_DELETED,         // A copy was removed from a book
+        COPY_STATUS_CHANGED   // A copy was borrowed, returned, or put on or taken off hold
+    }
+
+    private final Type type;          // The kind of change
+    private final BookBase book;      // The affected book
+    private final BookCopy copy;      // The affected copy, or null for book-level changes
+    private final int copyIndex;      // Position of the copy in the book's copy list before the change, or -1
+    private final int copyCount;      // Number of copies added, for COPIES_ADDED
+    private final BookStatus previousStatus;  // Status of the copy before the change, for COPY_STATUS_CHANGED
+
+    /**
+     * Constructor to create a change event.
+     *
+     * @param type      The kind of change
+     * @param book      The affected book
+     * @param copy      The affected copy, or null
+     * @param copyIndex The position of the copy in the book's copy list, or -1
+     * @param copyCount The number of copies added, or 0
+     */
+    public CatalogChangeEvent(Type type, BookBase book, BookCopy copy, int copyIndex, int copyCount) {
+        this(type, book, copy, copyIndex, copyCount, null);
+    }
+
+    /**
+     * Constructor to create a change of a copy's status.
+     *
+     * @param type           The kind of change
+     * @param book           The affected book
+     * @param copy           The affected copy
+     * @param copyIndex      The position of the copy in the book's copy list
+     * @param copyCount      The number of copies added, or 0
+     * @param previousStatus The status of the copy before the change
+     */
+    public CatalogChangeEvent(Type type, BookBase book, BookCopy copy, int copyIndex, int copyCount, BookStatus previousStatus) {
+        this.type = type;
+        this.book = book;
+        this.copy = copy;
+        this.copyIndex = copyIndex;
+        this.copyCount = copyCount;
+        this.previousStatus = previousStatus;
+    }
+
+    // Getters for the event fields
+
+    public Type getType() {
+        return type;
+    }
+
+    public BookBase getBook() {
+        return book;
+    }
+
+    public BookCopy getCopy() {
+        return copy;
+    }
+
+    public int getCopyIndex() {
+        return copyIndex;
+    }
+
+    public int getCopyCount() {
+        return copyCount;
+    }
+
+    public BookStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogChangeEvent{" +
+                "type=" + type +
+                ", isbn=" + (book == null ? null : book.getIsbn()) +
+                ", copyId=" + (copy == null ? null : copy.getCopyId()) +
+                ", copyIndex=" + copyIndex +
+                ", copyCount=" + copyCount +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package org.lms.book;
+
+import java.util.List;
+
+/**
+ * The CatalogChangeListener interface defines a listener for changes made to the book database.
+ */
+public interface CatalogChangeListener {
+    /**
+     * This method is called after the book database has applied a change.
+     *
+     * @param event The change that was applied
+     */
+    void onCatalogChanged(CatalogChangeEvent event);
+
+    /**
+     * This method is called after the book database has applied a batch of changes with a single save,
+     * such as a bulk edit. By default the changes are passed on one at a time, in order; listeners that
+     * can apply a whole batch more cheaply than its changes one by one may override it.
+     *
+     * @param events The changes that were applied, in order
+     */
+    default void onCatalogChanges(List<CatalogChangeEvent> events) {
+        for (CatalogChangeEvent event : events) {
+            onCatalogChanged(event);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.lms.book;
+
+import java.util.List;
+
+/**
+ * The CatalogPage class holds one page of a paged catalog query.
+ * Pages are cut at book boundaries and ordered by ISBN key; the cursor of a page
+ * is the ISBN key of its last book, and the next page starts right after it.
+ */
+public class CatalogPage {
+    public static final long START = Long.MIN_VALUE;  // Cursor value requesting the first page
+
+    private final List<BookBase> books;  // Books on this page, in ISBN key order
+    private final long nextCursor;       // Cursor to pass when requesting the next page
+    private final boolean hasMore;       // Whether more matching books follow this page
+
+    /**
+     * Constructor to create a page.
+     *
+     * @param books      The books on the page
+     * @param nextCursor The cursor of the next page
+     * @param hasMore    Whether more matching books follow
+     */
+    public CatalogPage(List<BookBase> books, long nextCursor, boolean hasMore) {
+        this.books = books;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters for the page fields
+
+    public List<BookBase> getBooks() {
+        return books;
+    }
+
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
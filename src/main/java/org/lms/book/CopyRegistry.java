@@ -0,0 +1,140 @@
+package org.lms.book;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A singleton dictionary that assigns a dense int reference to every book copy ID seen by the system.
+ * Borrow records store this reference instead of the ISBN and copy ID strings.
+ * References are never reused, so records of deleted copies keep resolving to their original IDs.
+ */
+public class CopyRegistry {
+    private static CopyRegistry instance;  // Singleton instance of CopyRegistry
+    private final Map<String, Integer> refs = new HashMap<>();  // Copy ID to reference
+    private String[] copyIds = new String[64];  // Copy ID of each reference
+    private String[] isbns = new String[64];  // ISBN of each reference
+    private long[] isbnKeys = new long[64];  // Canonical ISBN key of each reference
+    private int size;  // Number of registered copies
+
+    private CopyRegistry() {
+    }
+
+    /**
+     * Gets the singleton instance of the CopyRegistry.
+     *
+     * @return The singleton instance of CopyRegistry
+     */
+    public static synchronized CopyRegistry getInstance() {
+        if (instance == null) {
+            instance = new CopyRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the reference of a copy, registering the copy if it has not been seen before.
+     *
+     * @param isbn   The ISBN of the book the copy belongs to
+     * @param copyId The copy ID
+     * @return The reference of the copy
+     */
+    public synchronized int register(String isbn, String copyId) {
+        Integer ref = refs.get(copyId);
+        if (ref != null) {
+            return ref;
+        }
+        if (size == copyIds.length) {
+            int capacity = size * 2;
+            copyIds = Arrays.copyOf(copyIds, capacity);
+            isbns = Arrays.copyOf(isbns, capacity);
+            isbnKeys = Arrays.copyOf(isbnKeys, capacity);
+        }
+        copyIds[size] = copyId;
+        isbns[size] = isbn;
+        isbnKeys[size] = Isbn.toKey(isbn);
+        refs.put(copyId, size);
+        return size++;
+    }
+
+    /**
+     * Returns the references of many copies at once, registering the copies that have not been seen before.
+     *
+     * @param isbns   The ISBN of the book each copy belongs to
+     * @param copyIds The copy IDs
+     * @return The reference of each copy, in the order of the copy IDs
+     */
+    public synchronized int[] registerAll(String[] isbns, String[] copyIds) {
+        int[] result = new int[copyIds.length];
+        for (int i = 0; i < copyIds.length; i++) {
+            result[i] = register(isbns[i], copyIds[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the reference of a registered copy.
+     *
+     * @param copyId The copy ID
+     * @return The reference of the copy, or -1 if the copy has never been registered
+     */
+    public synchronized int findRef(String copyId) {
+        Integer ref = refs.get(copyId);
+        return ref == null ? -1 : ref;
+    }
+
+    /**
+     * Finds the references of many copies at once.
+     *
+     * @param copyIds The copy IDs, of which only the first count are looked up
+     * @param count   The number of copy IDs to look up
+     * @return The reference of each copy, or -1 for copies that have never been registered
+     */
+    public synchronized int[] findRefs(String[] copyIds, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer ref = refs.get(copyIds[i]);
+            result[i] = ref == null ? -1 : ref;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the copy ID of a reference.
+     *
+     * @param ref The copy reference
+     * @return The copy ID
+     */
+    public synchronized String getCopyId(int ref) {
+        return copyIds[ref];
+    }
+
+    /**
+     * Gets the ISBN of the book a reference belongs to.
+     *
+     * @param ref The copy reference
+     * @return The ISBN
+     */
+    public synchronized String getIsbn(int ref) {
+        return isbns[ref];
+    }
+
+    /**
+     * Gets the canonical ISBN key of the book a reference belongs to.
+     *
+     * @param ref The copy reference
+     * @return The ISBN key
+     */
+    public synchronized long getIsbnKey(int ref) {
+        return isbnKeys[ref];
+    }
+
+    /**
+     * Gets the number of registered copies. References are in the range [0, size).
+     *
+     * @return The number of registered copies
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,16 @@
+package org.lms.book;
+
+/**
+ * The HoldAllocator interface lets the book database give a copy that becomes free to a visitor
+ * waiting for the book, as part of the same change.
+ */
+public interface HoldAllocator {
+    /**
+     * Takes the next visitor waiting for a book. The book database calls this while it holds its lock,
+     * and keeps the copy on hold for the visitor returned.
+     *
+     * @param isbnKey The canonical ISBN key of the book
+     * @return The ID of the visitor the copy is now held for, or 0 if nobody is waiting
+     */
+    int allocate(long isbnKey);
+}
@@ -0,0 +1,118 @@
+package org.lms.book;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility class for canonical ISBN handling.
+ * ISBN-10 and ISBN-13 strings are parsed into a single numeric key so that indexes and maps
+ * can compare books by a primitive long instead of hashing and comparing strings.
+ */
+public final class Isbn {
+    private static final Map<String, Long> syntheticKeys = new HashMap<>();  // Keys handed out to non-numeric ISBNs
+
+    private Isbn() {
+    }
+
+    /**
+     * Converts an ISBN string into its canonical numeric key.
+     * A valid ISBN-10 is converted to its ISBN-13 form, so both spellings of the same book share one key.
+     * Other plain numbers are used as-is. Anything that cannot be represented as a number
+     * (letters, leading zeros, too many digits) receives a negative synthetic key that is stable for the session.
+     *
+     * @param isbn The ISBN to convert
+     * @return The canonical key of the ISBN
+     */
+    public static long toKey(String isbn) {
+        String digits = normalize(isbn);
+        if (isValidIsbn10(digits)) {
+            return toIsbn13(digits);
+        }
+        if (isPlainNumber(digits)) {
+            return Long.parseLong(digits);
+        }
+        return syntheticKey(digits);
+    }
+
+    /**
+     * Removes separators and surrounding whitespace from an ISBN and upper-cases the check character.
+     *
+     * @param isbn The ISBN to normalize
+     * @return The normalized ISBN, or an empty string if the ISBN is null
+     */
+    public static String normalize(String isbn) {
+        if (isbn == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c != '-' && c != ' ') {
+                builder.append(Character.toUpperCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether a normalized string is a valid ISBN-10 (including its check digit).
+     *
+     * @param digits The normalized ISBN
+     * @return true if the string is a valid ISBN-10, false otherwise
+     */
+    public static boolean isValidIsbn10(String digits) {
+        if (digits.length() != 10) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = digits.charAt(i);
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if (c == 'X' && i == 9) {
+                value = 10;
+            } else {
+                return false;
+            }
+            sum += value * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    /**
+     * Converts a valid ISBN-10 into the numeric value of its ISBN-13 form (978 prefix).
+     *
+     * @param isbn10 The valid, normalized ISBN-10
+     * @return The ISBN-13 value
+     */
+    private static long toIsbn13(String isbn10) {
+        String body = "978" + isbn10.substring(0, 9);
+        int sum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            int digit = body.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        int check = (10 - sum % 10) % 10;
+        return Long.parseLong(body) * 10 + check;
+    }
+
+    // A plain number fits in a long and has no leading zero, so distinct strings never share a key
+    private static boolean isPlainNumber(String digits) {
+        if (digits.isEmpty() || digits.length() > 18 || (digits.length() > 1 && digits.charAt(0) == '0')) {
+            return false;
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Non-numeric ISBNs get negative keys so they can never collide with a real ISBN
+    private static synchronized long syntheticKey(String digits) {
+        return syntheticKeys.computeIfAbsent(digits, k -> -(long) (syntheticKeys.size() + 1));
+    }
+}
@@ -0,0 +1,33 @@
+package org.lms.book;
+
+import java.util.List;
+
+/**
+ * The SearchResult class holds the books found for a query, with the plan that found them
+ * when the query was structured, so the plan can be shown without planning the query again.
+ */
+public class SearchResult {
+    private final List<BookBase> books;  // The books found
+    private final String plan;           // The plan of a structured query, one step per line, or null
+
+    /**
+     * Constructor to create a result.
+     *
+     * @param books The books found
+     * @param plan  The plan the books were found with, or null for a plain search
+     */
+    public SearchResult(List<BookBase> books, String plan) {
+        this.books = books;
+        this.plan = plan;
+    }
+
+    // Getters for the result fields
+
+    public List<BookBase> getBooks() {
+        return books;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+}
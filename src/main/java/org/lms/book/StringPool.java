@@ -0,0 +1,35 @@
+package org.lms.book;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary of canonical string instances.
+ * Authors and titles repeat across many books, so each distinct value is kept only once in memory.
+ */
+public class StringPool {
+    private final Map<String, String> pool = new HashMap<>();  // Maps each value to its canonical instance
+
+    /**
+     * Returns the canonical instance of the given string, adding it to the pool if it is new.
+     *
+     * @param value The string to intern
+     * @return The pooled instance equal to the given string, or null if the value is null
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = pool.putIfAbsent(value, value);
+        return pooled == null ? value : pooled;
+    }
+
+    /**
+     * Gets the number of distinct strings in the pool.
+     *
+     * @return The number of pooled strings
+     */
+    public synchronized int size() {
+        return pool.size();
+    }
+}
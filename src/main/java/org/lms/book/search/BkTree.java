@@ -0,0 +1,149 @@
+package org.lms.book.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The BkTree class is a Burkhard-Keller tree of terms under the Levenshtein distance.
+ * Every child edge is labelled with its distance to the parent term, so by the triangle inequality
+ * a search within distance d only descends into edges labelled [distance - d, distance + d],
+ * which visits a small part of the dictionary for small d.
+ *
+ * Terms cannot be removed from the tree; callers filter out terms that are no longer in use
+ * and rebuild the tree when too many of them have accumulated.
+ */
+public class BkTree {
+    private Node root;  // Root of the tree, or null if it is empty
+    private int size;   // Number of terms in the tree
+
+    /**
+     * Adds a term to the tree. Adding a term that is already present has no effect.
+     *
+     * @param term The term to add
+     */
+    public void add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(term));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Finds all terms within a maximum edit distance of a term.
+     *
+     * @param term        The term to look for
+     * @param maxDistance The maximum number of single-character insertions, deletions and substitutions
+     * @return The matching terms with their distance, in no particular order
+     */
+    public Map<String, Integer> search(String term, int maxDistance) {
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(term, node.term);
+            if (distance <= maxDistance) {
+                matches.put(node.term, distance);
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Removes every term from the tree.
+     */
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two terms using two rolling rows.
+     *
+     * @param a The first term
+     * @param b The second term
+     * @return The minimum number of single-character edits turning a into b
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * A term with its children, kept in parallel arrays of edge distances and nodes.
+     */
+    private static class Node {
+        private final String term;
+        private int[] distances = new int[2];
+        private Node[] children = new Node[2];
+        private int childCount;
+
+        Node(String term) {
+            this.term = term;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (childCount == distances.length) {
+                distances = Arrays.copyOf(distances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            distances[childCount] = distance;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookStatus;
+import org.lms.book.BookType;
+import org.lms.book.Section;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CatalogBitmaps class gives every book a dense ID and keeps one bitmap per book type, one per section,
+ * and one of the books with at least one available copy. Attribute filters then become bitmap operations.
+ * IDs of deleted books are reused.
+ */
+public class CatalogBitmaps {
+    private final List<BookBase> books = new ArrayList<>();  // Book of each ID, null for free IDs
+    private final Map<BookBase, Integer> ids = new IdentityHashMap<>();  // ID of each book
+    private final Deque<Integer> freeIds = new ArrayDeque<>();  // IDs of deleted books, ready for reuse
+    private final BitSet all = new BitSet();  // IDs in use
+    private final Map<BookType, BitSet> byType = new EnumMap<>(BookType.class);  // Books of each type
+    private final Map<Section, BitSet> bySection = new EnumMap<>(Section.class);  // Books in each section
+    private final BitSet available = new BitSet();  // Books with at least one available copy
+
+    /**
+     * Constructor to create empty bitmaps.
+     */
+    public CatalogBitmaps() {
+        for (BookType type : BookType.values()) {
+            byType.put(type, new BitSet());
+        }
+        for (Section section : Section.values()) {
+            bySection.put(section, new BitSet());
+        }
+    }
+
+    /**
+     * Adds a book, or updates its bits after its type, section or copies changed.
+     *
+     * @param book The book to add or update
+     */
+    public void update(BookBase book) {
+        Integer id = ids.get(book);
+        if (id == null) {
+            id = freeIds.isEmpty() ? books.size() : freeIds.pop();
+            if (id == books.size()) {
+                books.add(book);
+            } else {
+                books.set(id, book);
+            }
+            ids.put(book, id);
+            all.set(id);
+        }
+        for (Map.Entry<BookType, BitSet> entry : byType.entrySet()) {
+            entry.getValue().set(id, entry.getKey() == book.getType());
+        }
+        for (Map.Entry<Section, BitSet> entry : bySection.entrySet()) {
+            entry.getValue().set(id, entry.getKey() == book.getSection());
+        }
+        available.set(id, hasAvailableCopy(book));
+    }
+
+    /**
+     * Removes a book and frees its ID.
+     *
+     * @param book The book to remove
+     */
+    public void remove(BookBase book) {
+        Integer id = ids.remove(book);
+        if (id == null) {
+            return;
+        }
+        books.set(id, null);
+        freeIds.push(id);
+        all.clear(id);
+        for (BitSet bits : byType.values()) {
+            bits.clear(id);
+        }
+        for (BitSet bits : bySection.values()) {
+            bits.clear(id);
+        }
+        available.clear(id);
+    }
+
+    /**
+     * Removes every book.
+     */
+    public void clear() {
+        books.clear();
+        ids.clear();
+        freeIds.clear();
+        all.clear();
+        for (BitSet bits : byType.values()) {
+            bits.clear();
+        }
+        for (BitSet bits : bySection.values()) {
+            bits.clear();
+        }
+        available.clear();
+    }
+
+    /**
+     * Gets the ID of a book.
+     *
+     * @param book The book
+     * @return The ID, or -1 if the book is not in the catalog
+     */
+    public int idOf(BookBase book) {
+        Integer id = ids.get(book);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the book with an ID.
+     *
+     * @param id The ID
+     * @return The book, or null if the ID is not in use
+     */
+    public BookBase bookOf(int id) {
+        return id < books.size() ? books.get(id) : null;
+    }
+
+    // Read-only access to the bitmaps; callers copy before modifying
+
+    public BitSet all() {
+        return all;
+    }
+
+    public BitSet ofType(BookType type) {
+        return byType.get(type);
+    }
+
+    public BitSet inSection(Section section) {
+        return bySection.get(section);
+    }
+
+    public BitSet available() {
+        return available;
+    }
+
+    /**
+     * Gets the number of books.
+     *
+     * @return The number of IDs in use
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Gets the number of 64-bit words a bitmap operation over all IDs touches.
+     *
+     * @return The bitmap width in words
+     */
+    public int words() {
+        return (books.size() + 63) / 64;
+    }
+
+    static boolean hasAvailableCopy(BookBase book) {
+        if (book.getCopies() == null) {
+            return false;
+        }
+        for (BookCopy copy : book.getCopies()) {
+            if (copy.getStatus() == BookStatus.AVAILABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,170 @@
+package org.lms.book.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The QueryCache class is a bounded least-recently-used cache of query results.
+ * Every entry is stamped with the version of the data it was computed from; an entry whose stamp
+ * differs from the current version is dropped on lookup, so a mutation invalidates all affected
+ * results without the cache having to be told about it. The class is not thread-safe; the owner
+ * serializes access.
+ *
+ * @param <V> The type of the cached results
+ */
+public class QueryCache<V> {
+    private final int capacity;  // Maximum number of cached queries
+    private final LinkedHashMap<String, Entry<V>> entries;  // Cached results in access order
+
+    private long hits;           // Lookups answered from the cache
+    private long misses;         // Lookups that had to run the query
+    private long evictions;      // Entries dropped to stay within the capacity
+    private long invalidations;  // Entries dropped because the data changed
+
+    /**
+     * Constructor to create an empty cache.
+     *
+     * @param capacity The maximum number of cached queries
+     */
+    public QueryCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > QueryCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up the result of a query computed at the given data version.
+     *
+     * @param query   The query
+     * @param version The current version of the data
+     * @return The cached result, or null if there is none for this version
+     */
+    public V get(String query, long version) {
+        Entry<V> entry = entries.get(query);
+        if (entry != null && entry.version != version) {
+            entries.remove(query);
+            invalidations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Stores the result of a query.
+     *
+     * @param query   The query
+     * @param version The version of the data the result was computed from
+     * @param result  The result
+     */
+    public void put(String query, long version, V result) {
+        entries.put(query, new Entry<>(version, result));
+    }
+
+    /**
+     * Removes every entry. The statistics are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics.
+     *
+     * @return The current statistics
+     */
+    public Stats getStats() {
+        return new Stats(entries.size(), capacity, hits, misses, evictions, invalidations);
+    }
+
+    private static class Entry<V> {
+        private final long version;
+        private final V result;
+
+        Entry(long version, V result) {
+            this.version = version;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A snapshot of the cache statistics.
+     */
+    public static class Stats {
+        private final int size;
+        private final int capacity;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        Stats(int size, int capacity, long hits, long misses, long evictions, long invalidations) {
+            this.size = size;
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        // Getters for the statistics
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * Gets the share of lookups answered from the cache.
+         *
+         * @return The hit ratio between 0 and 1, or 0 if there were no lookups
+         */
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "size=" + size +
+                    ", capacity=" + capacity +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", invalidations=" + invalidations +
+                    '}';
+        }
+    }
+}
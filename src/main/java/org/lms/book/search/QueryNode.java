@@ -0,0 +1,229 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookType;
+import org.lms.book.Isbn;
+import org.lms.book.Section;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The QueryNode class is a node of a parsed catalog query: a clause on one field, or an AND, OR or NOT
+ * of other nodes. Every node can test a single book, which the planner uses to filter candidates and
+ * the tables use to decide whether an added or edited book belongs in the results.
+ */
+public abstract class QueryNode {
+
+    /**
+     * The fields a clause can restrict.
+     */
+    public enum Field {
+        ANY,      // Title, author or ISBN, for bare words
+        TITLE,
+        AUTHOR,
+        ISBN,
+        TYPE,
+        SECTION,
+        STATUS
+    }
+
+    /**
+     * Checks whether a book satisfies this node.
+     *
+     * @param book The book to test
+     * @return true if the book matches
+     */
+    public abstract boolean matches(BookBase book);
+
+    /**
+     * A restriction on one field, for example author:tolkien or status:available.
+     */
+    public static class Clause extends QueryNode {
+        private final Field field;
+        private final String value;         // The value as written
+        private final List<String> terms;   // Normalized terms of the value, for text fields
+        private final Object constant;      // The BookType, Section or availability flag, for attribute fields
+
+        Clause(Field field, String value, Object constant) {
+            this.field = field;
+            this.value = value;
+            this.terms = Tokenizer.tokens(value);
+            this.constant = constant;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public List<String> getTerms() {
+            return Collections.unmodifiableList(terms);
+        }
+
+        public BookType getType() {
+            return (BookType) constant;
+        }
+
+        public Section getSection() {
+            return (Section) constant;
+        }
+
+        /**
+         * Gets the wanted availability of a status clause.
+         *
+         * @return true for status:available, false for status:unavailable
+         */
+        public boolean wantsAvailable() {
+            return Boolean.TRUE.equals(constant);
+        }
+
+        @Override
+        public boolean matches(BookBase book) {
+            switch (field) {
+                case TITLE:
+                    return containsTerms(Tokenizer.tokens(book.getTitle()), terms);
+                case AUTHOR:
+                    return containsTerms(Tokenizer.tokens(book.getAuthor()), terms);
+                case ISBN:
+                    return book.getIsbnKey() == Isbn.toKey(value);
+                case TYPE:
+                    return book.getType() == constant;
+                case SECTION:
+                    return book.getSection() == constant;
+                case STATUS:
+                    return CatalogBitmaps.hasAvailableCopy(book) == wantsAvailable();
+                default:
+                    List<String> bookTerms = new ArrayList<>(Tokenizer.tokens(book.getTitle()));
+                    bookTerms.addAll(Tokenizer.tokens(book.getAuthor()));
+                    bookTerms.add(Isbn.normalize(book.getIsbn()).toLowerCase());
+                    return containsTerms(bookTerms, terms);
+            }
+        }
+
+        /**
+         * Checks that every query term is a prefix of one of the book's terms, as the token index does.
+         */
+        private static boolean containsTerms(List<String> bookTerms, List<String> queryTerms) {
+            for (String queryTerm : queryTerms) {
+                boolean found = false;
+                for (String bookTerm : bookTerms) {
+                    if (bookTerm.startsWith(queryTerm)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            String shown = value.indexOf(' ') >= 0 ? '"' + value + '"' : value;
+            return field == Field.ANY ? shown : field.name().toLowerCase() + ":" + shown;
+        }
+    }
+
+    /**
+     * Matches books satisfying all of its children.
+     */
+    public static class And extends QueryNode {
+        private final List<QueryNode> children;
+
+        And(List<QueryNode> children) {
+            this.children = children;
+        }
+
+        public List<QueryNode> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        @Override
+        public boolean matches(BookBase book) {
+            for (QueryNode child : children) {
+                if (!child.matches(book)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(children, " AND ") + ")";
+        }
+    }
+
+    /**
+     * Matches books satisfying any of its children.
+     */
+    public static class Or extends QueryNode {
+        private final List<QueryNode> children;
+
+        Or(List<QueryNode> children) {
+            this.children = children;
+        }
+
+        public List<QueryNode> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        @Override
+        public boolean matches(BookBase book) {
+            for (QueryNode child : children) {
+                if (child.matches(book)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(children, " OR ") + ")";
+        }
+    }
+
+    /**
+     * Matches books not satisfying its child.
+     */
+    public static class Not extends QueryNode {
+        private final QueryNode child;
+
+        Not(QueryNode child) {
+            this.child = child;
+        }
+
+        public QueryNode getChild() {
+            return child;
+        }
+
+        @Override
+        public boolean matches(BookBase book) {
+            return !child.matches(book);
+        }
+
+        @Override
+        public String toString() {
+            return "-" + child;
+        }
+    }
+
+    private static String join(List<QueryNode> nodes, String separator) {
+        StringBuilder builder = new StringBuilder();
+        for (QueryNode node : nodes) {
+            if (builder.length() > 0) {
+                builder.append(separator);
+            }
+            builder.append(node);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package org.lms.book.search;
+
+import org.lms.book.BookType;
+import org.lms.book.Section;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utility class that parses the catalog query syntax into a {@link QueryNode} tree.
+ *
+ * A query is a list of clauses that must all match. A clause is a bare word, a field restriction
+ * such as {@code author:tolkien}, {@code title:"the hobbit"}, {@code isbn:9780261103344},
+ * {@code type:FICTION}, {@code section:S2} or {@code status:available}, a negated clause
+ * {@code -type:ART}, or a parenthesized query. {@code OR} between clauses matches either side.
+ *
+ * Parsing is lenient: an unknown field or value is searched as plain text, and unbalanced quotes
+ * or parentheses are closed at the end of the query, so every input yields a query.
+ */
+public final class QueryParser {
+    private static final Map<String, QueryNode.Field> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("title", QueryNode.Field.TITLE);
+        FIELDS.put("author", QueryNode.Field.AUTHOR);
+        FIELDS.put("isbn", QueryNode.Field.ISBN);
+        FIELDS.put("type", QueryNode.Field.TYPE);
+        FIELDS.put("section", QueryNode.Field.SECTION);
+        FIELDS.put("status", QueryNode.Field.STATUS);
+    }
+
+    private final List<String> tokens;  // Lexed query: words, "(", ")", "-" and "OR"
+    private int position;               // Next token to read
+
+    private QueryParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param text The query text
+     * @return The query tree; an empty query matches every book
+     */
+    public static QueryNode parse(String text) {
+        QueryParser parser = new QueryParser(lex(text));
+        QueryNode node = parser.parseOr();
+        // Skip stray closing parentheses and parse the rest as further clauses
+        List<QueryNode> rest = new ArrayList<>();
+        rest.add(node);
+        while (parser.position < parser.tokens.size()) {
+            parser.position++;
+            rest.add(parser.parseOr());
+        }
+        return rest.size() == 1 ? node : new QueryNode.And(rest);
+    }
+
+    /**
+     * Checks whether a query uses the structured syntax, rather than being plain words.
+     *
+     * @param text The query text
+     * @return true if the query has a field restriction, negation, OR or parentheses
+     */
+    public static boolean isStructured(String text) {
+        QueryNode node = parse(text);
+        if (node instanceof QueryNode.Clause) {
+            return ((QueryNode.Clause) node).getField() != QueryNode.Field.ANY;
+        }
+        if (!(node instanceof QueryNode.And)) {
+            return true;
+        }
+        for (QueryNode child : ((QueryNode.And) node).getChildren()) {
+            if (!(child instanceof QueryNode.Clause) || ((QueryNode.Clause) child).getField() != QueryNode.Field.ANY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private QueryNode parseOr() {
+        List<QueryNode> alternatives = new ArrayList<>();
+        alternatives.add(parseAnd());
+        while ("OR".equals(peek())) {
+            position++;
+            alternatives.add(parseAnd());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new QueryNode.Or(alternatives);
+    }
+
+    private QueryNode parseAnd() {
+        List<QueryNode> clauses = new ArrayList<>();
+        while (peek() != null && !")".equals(peek()) && !"OR".equals(peek())) {
+            QueryNode node = parseUnary();
+            if (node != null) {
+                clauses.add(node);
+            }
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new QueryNode.And(clauses);
+    }
+
+    private QueryNode parseUnary() {
+        String token = tokens.get(position++);
+        if ("-".equals(token)) {
+            if (peek() == null || ")".equals(peek()) || "OR".equals(peek())) {
+                return null;
+            }
+            QueryNode child = parseUnary();
+            return child == null ? null : new QueryNode.Not(child);
+        }
+        if ("(".equals(token)) {
+            QueryNode node = parseOr();
+            if (")".equals(peek())) {
+                position++;
+            }
+            return node;
+        }
+        return clause(token);
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    /**
+     * Turns a word into a clause, resolving its field and attribute value.
+     */
+    private static QueryNode clause(String word) {
+        int colon = word.indexOf(':');
+        QueryNode.Field field = colon > 0 ? FIELDS.get(word.substring(0, colon).toLowerCase()) : null;
+        String value = unquote(field == null ? word : word.substring(colon + 1));
+        if (field == null) {
+            return new QueryNode.Clause(QueryNode.Field.ANY, value, null);
+        }
+        if (value.trim().isEmpty()) {
+            return null;
+        }
+        Object constant = null;
+        switch (field) {
+            case TYPE:
+                for (BookType type : BookType.values()) {
+                    if (type.name().equalsIgnoreCase(value) || type.getTypeName().equalsIgnoreCase(value)) {
+                        constant = type;
+                    }
+                }
+                break;
+            case SECTION:
+                for (Section section : Section.values()) {
+                    if (section.name().equalsIgnoreCase(value) || section.getSectionName().equalsIgnoreCase(value)) {
+                        constant = section;
+                    }
+                }
+                break;
+            case STATUS:
+                if (value.equalsIgnoreCase("available")) {
+                    constant = Boolean.TRUE;
+                } else if (value.equalsIgnoreCase("unavailable") || value.equalsIgnoreCase("borrowed")) {
+                    constant = Boolean.FALSE;
+                }
+                break;
+            default:
+                return new QueryNode.Clause(field, value, null);
+        }
+        if (constant == null) {
+            return new QueryNode.Clause(QueryNode.Field.ANY, value, null);
+        }
+        return new QueryNode.Clause(field, value, constant);
+    }
+
+    private static String unquote(String value) {
+        return value.replace("\"", "");
+    }
+
+    /**
+     * Splits a query into words, parentheses, negation signs and OR keywords.
+     * Quoted text stays in one word.
+     */
+    private static List<String> lex(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '-' && i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1))) {
+                tokens.add("-");
+                i++;
+            } else {
+                StringBuilder word = new StringBuilder();
+                boolean quoted = false;
+                while (i < text.length()) {
+                    c = text.charAt(i);
+                    if (c == '"') {
+                        quoted = !quoted;
+                    } else if (!quoted && (Character.isWhitespace(c) || c == '(' || c == ')')) {
+                        break;
+                    }
+                    word.append(c);
+                    i++;
+                }
+                tokens.add(word.toString());
+            }
+        }
+        return tokens;
+    }
+}
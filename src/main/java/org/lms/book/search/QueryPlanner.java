@@ -0,0 +1,305 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+import org.lms.book.Isbn;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * The QueryPlanner turns a {@link QueryNode} tree into an executable plan over the catalog indexes.
+ *
+ * Each clause has an access path with an estimated number of matching books and a cost:
+ * ISBN clauses use the ISBN hash, title, author and plain-word clauses use the token postings,
+ * and type, section and status clauses use the {@link CatalogBitmaps}. For an AND the planner starts
+ * from the most selective child and, for every further child, either intersects with that child's
+ * result or tests the remaining candidates one by one, whichever is estimated to be cheaper.
+ * Results are bitmaps over book IDs, so intersection, union and complement are word operations.
+ *
+ * Costs are in abstract units: one unit per posting, bitmap word, hash probe or book test.
+ */
+public class QueryPlanner {
+    private static final int TEST_COST = 4;  // Cost of testing one book against a clause
+
+    private final TokenIndex tokenIndex;  // Postings of title, author and ISBN terms
+    private final CatalogBitmaps bitmaps;  // Book IDs and attribute bitmaps
+    private final LongFunction<BookBase> books;  // Resolves an ISBN key to its book
+
+    /**
+     * Constructor to create a planner over the catalog indexes.
+     *
+     * @param tokenIndex The token index
+     * @param bitmaps    The attribute bitmaps
+     * @param books      Resolves an ISBN key to its book
+     */
+    public QueryPlanner(TokenIndex tokenIndex, CatalogBitmaps bitmaps, LongFunction<BookBase> books) {
+        this.tokenIndex = tokenIndex;
+        this.bitmaps = bitmaps;
+        this.books = books;
+    }
+
+    /**
+     * Plans a query.
+     *
+     * @param query The parsed query
+     * @return The plan, ready to run or explain
+     */
+    public Plan plan(QueryNode query) {
+        Plan plan = planNode(query);
+        plan.source = query;
+        return plan;
+    }
+
+    private Plan planNode(QueryNode query) {
+        if (query instanceof QueryNode.And) {
+            return planAnd((QueryNode.And) query);
+        }
+        if (query instanceof QueryNode.Or) {
+            List<Plan> inputs = new ArrayList<>();
+            long rows = 0;
+            long cost = bitmaps.words();
+            for (QueryNode child : ((QueryNode.Or) query).getChildren()) {
+                Plan input = plan(child);
+                inputs.add(input);
+                rows += input.rows;
+                cost += input.cost;
+            }
+            return new Plan("Union", query, Math.min(rows, bitmaps.size()), cost, inputs, () -> {
+                BitSet result = new BitSet();
+                for (Plan input : inputs) {
+                    result.or(input.run());
+                }
+                return result;
+            });
+        }
+        if (query instanceof QueryNode.Not) {
+            Plan input = plan(((QueryNode.Not) query).getChild());
+            return new Plan("Complement", query, bitmaps.size() - input.rows, input.cost + bitmaps.words(),
+                    List.of(input), () -> {
+                BitSet result = (BitSet) bitmaps.all().clone();
+                result.andNot(input.run());
+                return result;
+            });
+        }
+        return planClause((QueryNode.Clause) query);
+    }
+
+    private Plan planAnd(QueryNode.And query) {
+        if (query.getChildren().isEmpty()) {
+            return new Plan("AllBooks", query, bitmaps.size(), bitmaps.words(), List.of(),
+                    () -> (BitSet) bitmaps.all().clone());
+        }
+        List<Plan> inputs = new ArrayList<>();
+        for (QueryNode child : query.getChildren()) {
+            inputs.add(plan(child));
+        }
+        inputs.sort(Comparator.comparingLong((Plan input) -> input.rows).thenComparingLong(input -> input.cost));
+
+        // Drive from the most selective input, then intersect or filter with the others
+        Plan current = inputs.get(0);
+        int total = Math.max(1, bitmaps.size());
+        for (int i = 1; i < inputs.size(); i++) {
+            Plan next = inputs.get(i);
+            // Assume independent clauses: the share of all books matching the next clause is kept,
+            // rounding up so a non-empty input never estimates to nothing, and no more than either side matches
+            double selectivity = (double) next.rows / total;
+            long rows = Math.min(Math.min(current.rows, next.rows), (long) Math.ceil(current.rows * selectivity));
+            long filterCost = current.rows * TEST_COST;
+            Plan input = current;
+            if (next.cost + bitmaps.words() <= filterCost) {
+                current = new Plan("Intersect", null, rows, input.cost + next.cost + bitmaps.words(),
+                        List.of(input, next), () -> {
+                    BitSet result = input.run();
+                    result.and(next.run());
+                    return result;
+                });
+            } else {
+                QueryNode predicate = next.source;
+                String operation = String.format("Filter %s selectivity~%.3f", predicate, selectivity);
+                current = new Plan(operation, null, rows, input.cost + filterCost,
+                        List.of(input), () -> {
+                    BitSet result = input.run();
+                    for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+                        if (!predicate.matches(bitmaps.bookOf(id))) {
+                            result.clear(id);
+                        }
+                    }
+                    return result;
+                });
+            }
+        }
+        return current;
+    }
+
+    private Plan planClause(QueryNode.Clause clause) {
+        switch (clause.getField()) {
+            case ISBN: {
+                BookBase book = books.apply(Isbn.toKey(clause.getValue()));
+                return new Plan("IsbnHash", clause, book == null ? 0 : 1, 1, List.of(), () -> {
+                    BitSet result = new BitSet();
+                    int id = book == null ? -1 : bitmaps.idOf(book);
+                    if (id >= 0) {
+                        result.set(id);
+                    }
+                    return result;
+                });
+            }
+            case TYPE:
+                return bitmapPlan("TypeBitmap", clause, () -> bitmaps.ofType(clause.getType()));
+            case SECTION:
+                return bitmapPlan("SectionBitmap", clause, () -> bitmaps.inSection(clause.getSection()));
+            case STATUS:
+                if (clause.wantsAvailable()) {
+                    return bitmapPlan("AvailableSet", clause, bitmaps::available);
+                }
+                return bitmapPlan("UnavailableSet", clause, () -> {
+                    BitSet result = (BitSet) bitmaps.all().clone();
+                    result.andNot(bitmaps.available());
+                    return result;
+                });
+            case TITLE:
+                return postingsPlan(clause, TokenIndex.Field.TITLE);
+            case AUTHOR:
+                return postingsPlan(clause, TokenIndex.Field.AUTHOR);
+            default:
+                return postingsPlan(clause, TokenIndex.Field.TITLE, TokenIndex.Field.AUTHOR, TokenIndex.Field.ISBN);
+        }
+    }
+
+    private Plan bitmapPlan(String operation, QueryNode.Clause clause, Supplier<BitSet> bits) {
+        BitSet current = bits.get();
+        return new Plan(operation, clause, current.cardinality(), bitmaps.words(), List.of(),
+                () -> (BitSet) bits.get().clone());
+    }
+
+    /**
+     * Plans a text clause: for every term, the union of the postings of the terms it prefixes in the
+     * given fields; the clause matches the intersection over its terms. Estimated by the rarest term.
+     */
+    private Plan postingsPlan(QueryNode.Clause clause, TokenIndex.Field... fields) {
+        List<String> terms = clause.getTerms();
+        if (terms.isEmpty()) {
+            return new Plan("AllBooks", clause, bitmaps.size(), bitmaps.words(), List.of(),
+                    () -> (BitSet) bitmaps.all().clone());
+        }
+        long rows = Long.MAX_VALUE;
+        long cost = 0;
+        for (String term : terms) {
+            long postings = 0;
+            for (TokenIndex.Field field : fields) {
+                for (Set<Long> keys : tokenIndex.prefix(field, term).values()) {
+                    postings += keys.size();
+                }
+            }
+            rows = Math.min(rows, postings);
+            cost += postings;
+        }
+        return new Plan("TokenPostings", clause, Math.min(rows, bitmaps.size()), cost, List.of(), () -> {
+            BitSet result = null;
+            for (String term : terms) {
+                BitSet termBits = new BitSet();
+                for (TokenIndex.Field field : fields) {
+                    for (Map.Entry<String, Set<Long>> entry : tokenIndex.prefix(field, term).entrySet()) {
+                        for (Long isbnKey : entry.getValue()) {
+                            BookBase book = books.apply(isbnKey);
+                            int id = book == null ? -1 : bitmaps.idOf(book);
+                            if (id >= 0) {
+                                termBits.set(id);
+                            }
+                        }
+                    }
+                }
+                if (result == null) {
+                    result = termBits;
+                } else {
+                    result.and(termBits);
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * An executable step of a query plan with its estimates.
+     */
+    public class Plan {
+        private final String operation;   // What this step does
+        private final QueryNode node;     // The query node answered by this step, or null for combining steps
+        private final long rows;          // Estimated number of matching books
+        private final long cost;          // Estimated cost of this step and its inputs
+        private final List<Plan> inputs;  // Steps this one reads from
+        private final Supplier<BitSet> executor;  // Computes the matching book IDs
+        private QueryNode source;         // The query node whose matches this step computes, once planned
+
+        Plan(String operation, QueryNode node, long rows, long cost, List<Plan> inputs, Supplier<BitSet> executor) {
+            this.operation = operation;
+            this.node = node;
+            this.rows = rows;
+            this.cost = cost;
+            this.inputs = inputs;
+            this.executor = executor;
+        }
+
+        /**
+         * Runs the plan.
+         *
+         * @return The matching books in ID order
+         */
+        public List<BookBase> execute() {
+            BitSet ids = run();
+            List<BookBase> result = new ArrayList<>(ids.cardinality());
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                result.add(bitmaps.bookOf(id));
+            }
+            return result;
+        }
+
+        /**
+         * Describes the plan, one step per line, indented under the step that reads it.
+         *
+         * @return The plan with the estimated rows and cost of every step
+         */
+        public String explain() {
+            StringBuilder builder = new StringBuilder();
+            explain(builder, 0);
+            return builder.toString();
+        }
+
+        public long getEstimatedRows() {
+            return rows;
+        }
+
+        public long getEstimatedCost() {
+            return cost;
+        }
+
+        private BitSet run() {
+            return executor.get();
+        }
+
+        private void explain(StringBuilder builder, int depth) {
+            for (int i = 0; i < depth; i++) {
+                builder.append("  ");
+            }
+            builder.append(operation);
+            if (node != null) {
+                builder.append(' ').append(node);
+            }
+            builder.append("  rows~").append(rows).append(" cost~").append(cost).append('\n');
+            for (Plan input : inputs) {
+                input.explain(builder, depth + 1);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return explain();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.LongFunction;
+
+/**
+ * RankedSearch scores books against a free-text query and returns the best K, one hit per book.
+ *
+ * Each query term is matched against the title, author and ISBN terms of the {@link TokenIndex};
+ * a whole-term match counts more than a prefix match, and title matches count more than author
+ * matches, which count more than ISBN matches. Books matching every term, books whose title holds
+ * the terms close together, and books with available copies get a bonus. The best K books are
+ * kept in a bounded min-heap, so broad queries are never fully sorted.
+ *
+ * A query term that matches no term exactly or as a prefix is looked up again with typos allowed:
+ * title and author terms within edit distance 1 (distance 2 for longer terms) match at a reduced weight.
+ *
+ * A search checks the interrupt flag of its thread as it goes, so a search made stale by a newer
+ * query stops early instead of holding the index until it finishes.
+ */
+public class RankedSearch {
+    private static final double TITLE_WEIGHT = 3.0;
+    private static final double AUTHOR_WEIGHT = 2.0;
+    private static final double ISBN_WEIGHT = 1.0;
+    private static final double PREFIX_FACTOR = 0.6;       // Share of the weight earned by a prefix match
+    private static final double ALL_TERMS_BONUS = 2.0;     // Bonus for matching every query term
+    private static final double PROXIMITY_WEIGHT = 1.5;    // Bonus for query terms adjacent in the title
+    private static final double AVAILABILITY_WEIGHT = 1.0; // Bonus for having copies to borrow
+    private static final double FUZZY_FACTOR = 0.5;        // Share of the weight earned by a one-edit match, halved again per further edit
+    private static final int FUZZY_MIN_LENGTH = 3;         // Shorter terms are not matched with typos
+    private static final int LONG_TERM_LENGTH = 6;         // Terms this long may be two edits away
+
+    private static final Comparator<SearchHit> BY_RELEVANCE = Comparator
+            .comparingDouble(SearchHit::getScore)
+            .thenComparing(hit -> hit.getBook().getTitle(), Comparator.reverseOrder());
+
+    private final TokenIndex index;  // The index the terms are looked up in
+
+    /**
+     * Constructor to create a ranked search over an index.
+     *
+     * @param index The token index of the catalog
+     */
+    public RankedSearch(TokenIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Finds the best matching books for a query.
+     *
+     * @param query The free-text query
+     * @param limit The maximum number of hits to return
+     * @param books Resolves an ISBN key to its book
+     * @return Up to limit hits, best first; empty if the query has no terms
+     * @throws CancellationException if the calling thread is interrupted during the search
+     */
+    public List<SearchHit> search(String query, int limit, LongFunction<BookBase> books) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokens(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Best score of every candidate for every query term
+        Map<Long, double[]> termScores = new HashMap<>();
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            int found = collect(termScores, TokenIndex.Field.TITLE, term, t, terms.size(), TITLE_WEIGHT)
+                    + collect(termScores, TokenIndex.Field.AUTHOR, term, t, terms.size(), AUTHOR_WEIGHT)
+                    + collect(termScores, TokenIndex.Field.ISBN, term, t, terms.size(), ISBN_WEIGHT);
+            if (found == 0 && term.length() >= FUZZY_MIN_LENGTH) {
+                int maxDistance = term.length() >= LONG_TERM_LENGTH ? 2 : 1;
+                collectFuzzy(termScores, TokenIndex.Field.TITLE, term, maxDistance, t, terms.size(), TITLE_WEIGHT);
+                collectFuzzy(termScores, TokenIndex.Field.AUTHOR, term, maxDistance, t, terms.size(), AUTHOR_WEIGHT);
+            }
+        }
+
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1, BY_RELEVANCE);
+        int scored = 0;
+        for (Map.Entry<Long, double[]> candidate : termScores.entrySet()) {
+            if ((++scored & 1023) == 0) {
+                checkInterrupted();
+            }
+            BookBase book = books.apply(candidate.getKey());
+            if (book == null) {
+                continue;
+            }
+            SearchHit hit = score(book, candidate.getValue(), terms);
+            best.add(hit);
+            if (best.size() > limit) {
+                best.poll();  // Drop the weakest hit
+            }
+        }
+
+        List<SearchHit> hits = new ArrayList<>(best);
+        hits.sort(BY_RELEVANCE.reversed());
+        return hits;
+    }
+
+    /**
+     * Scores the books containing a query term, or a term it is a prefix of, in one field.
+     *
+     * @return The number of dictionary terms that matched
+     */
+    private int collect(Map<Long, double[]> termScores, TokenIndex.Field field, String term,
+                        int termIndex, int termCount, double weight) {
+        Map<String, Set<Long>> matches = index.prefix(field, term);
+        for (Map.Entry<String, Set<Long>> entry : matches.entrySet()) {
+            double score = entry.getKey().equals(term) ? weight : weight * PREFIX_FACTOR;
+            addScores(termScores, entry.getValue(), termIndex, termCount, score);
+        }
+        return matches.size();
+    }
+
+    /**
+     * Scores the books containing a term within an edit distance of a query term in one field.
+     */
+    private void collectFuzzy(Map<Long, double[]> termScores, TokenIndex.Field field, String term,
+                              int maxDistance, int termIndex, int termCount, double weight) {
+        for (Map.Entry<String, Integer> match : index.fuzzy(field, term, maxDistance).entrySet()) {
+            double score = weight * FUZZY_FACTOR / (1 << (match.getValue() - 1));
+            addScores(termScores, index.exact(field, match.getKey()), termIndex, termCount, score);
+        }
+    }
+
+    private void addScores(Map<Long, double[]> termScores, Set<Long> isbnKeys, int termIndex, int termCount, double score) {
+        // Checked once per matched term, so a prefix matching many terms can be abandoned between them
+        checkInterrupted();
+        for (Long isbnKey : isbnKeys) {
+            double[] scores = termScores.computeIfAbsent(isbnKey, k -> new double[termCount]);
+            scores[termIndex] = Math.max(scores[termIndex], score);
+        }
+    }
+
+    /**
+     * Stops the search if its thread was interrupted.
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+
+    private SearchHit score(BookBase book, double[] scores, List<String> terms) {
+        double score = 0;
+        int matched = 0;
+        for (double termScore : scores) {
+            score += termScore;
+            if (termScore > 0) {
+                matched++;
+            }
+        }
+        if (matched == terms.size()) {
+            score += ALL_TERMS_BONUS;
+        }
+        if (matched > 1) {
+            score += PROXIMITY_WEIGHT * titleProximity(book, terms);
+        }
+
+        int total = book.getCopies().size();
+        int available = 0;
+        for (BookCopy copy : book.getCopies()) {
+            if (copy.getStatus() == BookStatus.AVAILABLE) {
+                available++;
+            }
+        }
+        if (available > 0) {
+            score += AVAILABILITY_WEIGHT * (0.5 + 0.5 * available / total);
+        }
+        return new SearchHit(book, score, total, available);
+    }
+
+    /**
+     * Measures how close together the query terms appear in the title.
+     *
+     * @return 1 when the matched terms are adjacent, falling towards 0 as they spread out
+     */
+    private double titleProximity(BookBase book, List<String> terms) {
+        List<String> titleTerms = Tokenizer.tokens(book.getTitle());
+        int[] lastSeen = new int[terms.size()];
+        Arrays.fill(lastSeen, -1);
+        int bestSpan = Integer.MAX_VALUE;
+        int bestMatched = 0;
+        for (int position = 0; position < titleTerms.size(); position++) {
+            for (int t = 0; t < terms.size(); t++) {
+                if (titleTerms.get(position).startsWith(terms.get(t))) {
+                    lastSeen[t] = position;
+                }
+            }
+            // Window ending here that covers every term seen so far
+            int matched = 0;
+            int first = position;
+            for (int seen : lastSeen) {
+                if (seen >= 0) {
+                    matched++;
+                    first = Math.min(first, seen);
+                }
+            }
+            int span = position - first + 1;
+            if (matched > bestMatched || (matched == bestMatched && span < bestSpan)) {
+                bestMatched = matched;
+                bestSpan = span;
+            }
+        }
+        if (bestMatched < 2) {
+            return 0;
+        }
+        return (double) bestMatched / bestSpan * bestMatched / terms.size();
+    }
+}
@@ -0,0 +1,57 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+
+/**
+ * The SearchHit class is one ranked search result: a book with its relevance score and copy counts.
+ */
+public class SearchHit {
+    private final BookBase book;        // The matching book
+    private final double score;         // Relevance of the book for the query; higher is better
+    private final int totalCopies;      // Number of copies of the book
+    private final int availableCopies;  // Number of copies that can be borrowed
+
+    /**
+     * Constructor to create a search hit.
+     *
+     * @param book            The matching book
+     * @param score           The relevance score
+     * @param totalCopies     The number of copies of the book
+     * @param availableCopies The number of available copies
+     */
+    public SearchHit(BookBase book, double score, int totalCopies, int availableCopies) {
+        this.book = book;
+        this.score = score;
+        this.totalCopies = totalCopies;
+        this.availableCopies = availableCopies;
+    }
+
+    // Getters for the hit fields
+
+    public BookBase getBook() {
+        return book;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public int getTotalCopies() {
+        return totalCopies;
+    }
+
+    public int getAvailableCopies() {
+        return availableCopies;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{" +
+                "isbn='" + book.getIsbn() + '\'' +
+                ", title='" + book.getTitle() + '\'' +
+                ", score=" + score +
+                ", totalCopies=" + totalCopies +
+                ", availableCopies=" + availableCopies +
+                '}';
+    }
+}
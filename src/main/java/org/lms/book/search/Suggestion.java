@@ -0,0 +1,55 @@
+package org.lms.book.search;
+
+/**
+ * The Suggestion class is one autocomplete suggestion: a title or author with its weight.
+ */
+public class Suggestion {
+
+    /**
+     * What a suggestion completes to.
+     */
+    public enum Kind {
+        TITLE,
+        AUTHOR
+    }
+
+    private final String text;  // The title or author as stored in the catalog
+    private final Kind kind;    // Whether the text is a title or an author
+    private final int weight;   // Number of copies carrying this title or author; higher ranks first
+
+    /**
+     * Constructor to create a suggestion.
+     *
+     * @param text   The suggested title or author
+     * @param kind   Whether the text is a title or an author
+     * @param weight The rank weight of the suggestion
+     */
+    public Suggestion(String text, Kind kind, int weight) {
+        this.text = text;
+        this.kind = kind;
+        this.weight = weight;
+    }
+
+    // Getters for the suggestion fields
+
+    public String getText() {
+        return text;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "Suggestion{" +
+                "text='" + text + '\'' +
+                ", kind=" + kind +
+                ", weight=" + weight +
+                '}';
+    }
+}
@@ -0,0 +1,529 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SuggestionTrie class completes a typed prefix to catalog titles and authors.
+ *
+ * Each normalized title and author is stored under its whole text and under each of its words, so both
+ * "crime and p" and "punish" complete to "Crime and Punishment". The trie is path-compressed: a chain of
+ * nodes with one child each is a single edge labelled with several characters. Each node caches its best
+ * {@link #TOP_N} entries, ranked by the number of copies carrying the title or author, so a lookup is one
+ * walk down the prefix.
+ *
+ * When the weight of an entry changes, only the nodes on the paths of its keys are updated, each by moving,
+ * inserting or evicting that one entry in its bounded list. A node's list is rebuilt from its children only
+ * when an entry drops out of a full list, since an entry outside the list may then take its place.
+ *
+ * Every method holds the lock of the trie, and only for one book or one lookup, so suggestions never wait
+ * for the catalog they are built from.
+ */
+public class SuggestionTrie {
+    public static final int TOP_N = 10;  // Number of suggestions cached per node
+
+    private static final Comparator<Entry> BY_WEIGHT = Comparator
+            .comparingInt((Entry entry) -> entry.weight).reversed()
+            .thenComparing(entry -> entry.text);
+
+    private final Node root = new Node("");
+    private final Map<String, Entry> entries = new HashMap<>();  // Entries by kind and normalized text
+    private final Map<BookBase, Contribution> contributions = new IdentityHashMap<>();  // What each book added
+    private boolean bulkLoading;  // Whether cache updates are postponed until a bulk load completes
+
+    /**
+     * Adds a book, or updates it after its title, author or number of copies changed.
+     *
+     * @param book The book to add
+     */
+    public synchronized void add(BookBase book) {
+        remove(book);
+        int copies = book.getCopies() == null ? 0 : book.getCopies().size();
+        Contribution contribution = new Contribution(
+                contribute(Suggestion.Kind.TITLE, book.getTitle(), copies),
+                contribute(Suggestion.Kind.AUTHOR, book.getAuthor(), copies),
+                copies);
+        contributions.put(book, contribution);
+    }
+
+    /**
+     * Adds many books at once, computing the cached suggestions of each node only once at the end.
+     *
+     * @param books The books to add
+     */
+    public synchronized void addAll(Collection<BookBase> books) {
+        bulkLoading = true;
+        try {
+            for (BookBase book : books) {
+                add(book);
+            }
+        } finally {
+            bulkLoading = false;
+        }
+        recomputeAll(root);
+    }
+
+    /**
+     * Updates and removes many books at once, computing the cached suggestions of each node only once at the end,
+     * for example after a bulk edit of the catalog.
+     *
+     * @param updated The books whose title, author or number of copies changed
+     * @param removed The books to remove
+     */
+    public synchronized void updateAll(Collection<BookBase> updated, Collection<BookBase> removed) {
+        bulkLoading = true;
+        try {
+            for (BookBase book : removed) {
+                remove(book);
+            }
+            for (BookBase book : updated) {
+                add(book);
+            }
+        } finally {
+            bulkLoading = false;
+        }
+        recomputeAll(root);
+    }
+
+    /**
+     * Removes what a book contributed to the suggestions.
+     *
+     * @param book The book to remove
+     */
+    public synchronized void remove(BookBase book) {
+        Contribution contribution = contributions.remove(book);
+        if (contribution == null) {
+            return;
+        }
+        withdraw(contribution.title, contribution.copies);
+        withdraw(contribution.author, contribution.copies);
+    }
+
+    /**
+     * Removes every suggestion.
+     */
+    public synchronized void clear() {
+        root.children = new Node[0];
+        root.keys = new char[0];
+        root.terminals.clear();
+        root.top = new Entry[0];
+        entries.clear();
+        contributions.clear();
+    }
+
+    /**
+     * Gets the best titles and authors completing a prefix.
+     *
+     * @param prefix The typed text
+     * @param limit  The maximum number of suggestions, at most {@link #TOP_N}
+     * @return The suggestions, best first
+     */
+    public synchronized List<Suggestion> suggest(String prefix, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        String key = Tokenizer.normalize(prefix).trim();
+        if (key.isEmpty()) {
+            return suggestions;
+        }
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                return suggestions;
+            }
+            int common = commonLength(child.edge, key, i);
+            // The prefix may end inside an edge, whose entries all complete it
+            if (common < child.edge.length() && i + common < key.length()) {
+                return suggestions;
+            }
+            node = child;
+            i += common;
+        }
+        for (int j = 0; j < node.top.length && j < limit; j++) {
+            Entry entry = node.top[j];
+            suggestions.add(new Suggestion(entry.text, entry.kind, entry.weight));
+        }
+        return suggestions;
+    }
+
+    private Entry contribute(Suggestion.Kind kind, String text, int copies) {
+        String normalized = Tokenizer.normalize(text).trim();
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        Entry entry = entries.get(kind + ":" + normalized);
+        if (entry == null) {
+            entry = new Entry(text, kind, normalized);
+            entries.put(kind + ":" + normalized, entry);
+            for (String key : keys(normalized)) {
+                insert(key).terminals.add(entry);
+            }
+        }
+        entry.books++;
+        entry.weight += copies;
+        if (!bulkLoading) {
+            for (Node node : pathNodes(entry)) {
+                node.raise(entry);
+            }
+        }
+        return entry;
+    }
+
+    private void withdraw(Entry entry, int copies) {
+        if (entry == null) {
+            return;
+        }
+        entry.books--;
+        entry.weight -= copies;
+        boolean removed = entry.books == 0;
+        if (removed) {
+            entries.remove(entry.kind + ":" + entry.normalized);
+            for (String key : keys(entry.normalized)) {
+                Node node = find(key);
+                if (node != null) {
+                    node.terminals.remove(entry);
+                }
+            }
+        }
+        if (bulkLoading) {
+            return;
+        }
+        // Deepest first, so a node rebuilding its list merges lists its children already updated
+        for (Node node : pathNodes(entry)) {
+            node.lower(entry, removed);
+        }
+        if (removed) {
+            for (String key : keys(entry.normalized)) {
+                prune(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the keys an entry is stored under: its whole normalized text and each of its words.
+     */
+    private static Set<String> keys(String normalized) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(normalized);
+        keys.addAll(Tokenizer.tokens(normalized));
+        return keys;
+    }
+
+    /**
+     * Finds or creates the node of a key, splitting an edge where the key leaves it.
+     */
+    private Node insert(String key) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.addChild(child);
+                return child;
+            }
+            int common = commonLength(child.edge, key, i);
+            if (common < child.edge.length()) {
+                // The part of the edge shared with the key becomes a node of its own, with the same entries below it
+                Node middle = new Node(child.edge.substring(0, common));
+                child.edge = child.edge.substring(common);
+                middle.addChild(child);
+                middle.top = child.top.clone();
+                node.replaceChild(middle);
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        return node;
+    }
+
+    /**
+     * Finds the node of a stored key.
+     *
+     * @return The node, or null if the key is not in the trie
+     */
+    private Node find(String key) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null || commonLength(child.edge, key, i) < child.edge.length()) {
+                return null;
+            }
+            node = child;
+            i += child.edge.length();
+        }
+        return node;
+    }
+
+    /**
+     * Gets every node on the paths of an entry's keys once, deepest first.
+     */
+    private List<Node> pathNodes(Entry entry) {
+        Map<Node, Integer> depths = new IdentityHashMap<>();
+        for (String key : keys(entry.normalized)) {
+            Node node = root;
+            int i = 0;
+            depths.put(root, 0);
+            while (i < key.length()) {
+                Node child = node.child(key.charAt(i));
+                if (child == null || commonLength(child.edge, key, i) < child.edge.length()) {
+                    break;
+                }
+                node = child;
+                i += child.edge.length();
+                depths.put(node, i);
+            }
+        }
+        List<Node> nodes = new ArrayList<>(depths.keySet());
+        nodes.sort(Comparator.comparingInt((Node node) -> depths.get(node)).reversed());
+        return nodes;
+    }
+
+    /**
+     * Removes the nodes on the path of a key that no longer lead to an entry, and merges nodes left with
+     * a single child and no entries of their own into that child.
+     */
+    private void prune(String key) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null || commonLength(child.edge, key, i) < child.edge.length()) {
+                break;
+            }
+            node = child;
+            i += child.edge.length();
+            path.add(node);
+        }
+        for (int d = path.size() - 1; d > 0; d--) {
+            compact(path.get(d - 1), path.get(d));
+        }
+    }
+
+    /**
+     * Removes a child without entries below it, or merges a child without entries of its own into its only child.
+     */
+    private static void compact(Node parent, Node child) {
+        if (!child.terminals.isEmpty()) {
+            return;
+        }
+        if (child.children.length == 0) {
+            parent.removeChild(child.edge.charAt(0));
+        } else if (child.children.length == 1) {
+            Node grandchild = child.children[0];
+            grandchild.edge = child.edge + grandchild.edge;
+            parent.replaceChild(grandchild);
+        }
+    }
+
+    /**
+     * Recomputes the cached best entries of a whole subtree, children first,
+     * and compacts nodes that no longer lead anywhere.
+     */
+    private void recomputeAll(Node node) {
+        for (Node child : node.children) {
+            recomputeAll(child);
+        }
+        for (Node child : node.children.clone()) {
+            compact(node, child);
+        }
+        node.recomputeTop();
+    }
+
+    /**
+     * Counts the characters an edge shares with a key from a position of the key.
+     */
+    private static int commonLength(String edge, String key, int from) {
+        int length = Math.min(edge.length(), key.length() - from);
+        int i = 0;
+        while (i < length && edge.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A title or author with the books carrying it.
+     */
+    private static class Entry {
+        private final String text;
+        private final Suggestion.Kind kind;
+        private final String normalized;
+        private int books;   // Number of books with this title or author
+        private int weight;  // Number of copies of those books
+
+        Entry(String text, Suggestion.Kind kind, String normalized) {
+            this.text = text;
+            this.kind = kind;
+            this.normalized = normalized;
+        }
+    }
+
+    /**
+     * The entries a book counted towards, so they can be withdrawn after the book changes.
+     */
+    private static class Contribution {
+        private final Entry title;
+        private final Entry author;
+        private final int copies;
+
+        Contribution(Entry title, Entry author, int copies) {
+            this.title = title;
+            this.author = author;
+            this.copies = copies;
+        }
+    }
+
+    /**
+     * A trie node with the label of the edge leading to it, children in parallel arrays sorted by the
+     * first character of their edge, and its cached best entries.
+     */
+    private static class Node {
+        private String edge;  // Characters on the edge from the parent, empty for the root
+        private char[] keys = new char[0];  // First character of the edge of each child
+        private Node[] children = new Node[0];
+        private final List<Entry> terminals = new ArrayList<>(1);  // Entries with a key ending here
+        private Entry[] top = new Entry[0];  // Best entries below this node, best first
+
+        Node(String edge) {
+            this.edge = edge;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        void addChild(Node child) {
+            char c = child.edge.charAt(0);
+            int i = -Arrays.binarySearch(keys, c) - 1;
+            char[] grownKeys = new char[keys.length + 1];
+            Node[] grownChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, grownKeys, 0, i);
+            System.arraycopy(children, 0, grownChildren, 0, i);
+            System.arraycopy(keys, i, grownKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, grownChildren, i + 1, children.length - i);
+            grownKeys[i] = c;
+            grownChildren[i] = child;
+            keys = grownKeys;
+            children = grownChildren;
+        }
+
+        /**
+         * Replaces the child whose edge starts with the same character.
+         */
+        void replaceChild(Node child) {
+            children[Arrays.binarySearch(keys, child.edge.charAt(0))] = child;
+        }
+
+        void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i < 0) {
+                return;
+            }
+            char[] shrunkKeys = new char[keys.length - 1];
+            Node[] shrunkChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, shrunkKeys, 0, i);
+            System.arraycopy(children, 0, shrunkChildren, 0, i);
+            System.arraycopy(keys, i + 1, shrunkKeys, i, keys.length - i - 1);
+            System.arraycopy(children, i + 1, shrunkChildren, i, children.length - i - 1);
+            keys = shrunkKeys;
+            children = shrunkChildren;
+        }
+
+        /**
+         * Updates the cached best entries after an entry below this node gained weight:
+         * the entry moves up, or enters the list and evicts the weakest entry if the list is full.
+         */
+        void raise(Entry entry) {
+            int at = indexOf(entry);
+            if (at < 0) {
+                if (top.length == TOP_N && BY_WEIGHT.compare(entry, top[TOP_N - 1]) >= 0) {
+                    return;
+                }
+                top = Arrays.copyOf(top, Math.min(top.length + 1, TOP_N));
+                at = top.length - 1;
+                top[at] = entry;
+            }
+            while (at > 0 && BY_WEIGHT.compare(top[at], top[at - 1]) < 0) {
+                Entry previous = top[at - 1];
+                top[at - 1] = top[at];
+                top[at] = previous;
+                at--;
+            }
+        }
+
+        /**
+         * Updates the cached best entries after an entry below this node lost weight or was removed.
+         * Only when the entry leaves the last place of a full list can an entry outside the list
+         * outrank it, and only then is the list rebuilt from the children.
+         */
+        void lower(Entry entry, boolean removed) {
+            int at = indexOf(entry);
+            if (at < 0) {
+                return;
+            }
+            boolean full = top.length == TOP_N;
+            if (removed) {
+                Entry[] shrunk = new Entry[top.length - 1];
+                System.arraycopy(top, 0, shrunk, 0, at);
+                System.arraycopy(top, at + 1, shrunk, at, top.length - at - 1);
+                top = shrunk;
+            } else {
+                while (at < top.length - 1 && BY_WEIGHT.compare(top[at], top[at + 1]) > 0) {
+                    Entry next = top[at + 1];
+                    top[at + 1] = top[at];
+                    top[at] = next;
+                    at++;
+                }
+            }
+            if (full && (removed || at == TOP_N - 1)) {
+                recomputeTop();
+            }
+        }
+
+        private int indexOf(Entry entry) {
+            for (int i = 0; i < top.length; i++) {
+                if (top[i] == entry) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Merges the entries ending here with the cached best entries of the children.
+         */
+        void recomputeTop() {
+            List<Entry> candidates = new ArrayList<>(terminals);
+            for (Node child : children) {
+                candidates.addAll(Arrays.asList(child.top));
+            }
+            candidates.sort(BY_WEIGHT);
+            // An entry stored under several keys appears once
+            Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Entry> best = new ArrayList<>(TOP_N);
+            for (int i = 0; i < candidates.size() && best.size() < TOP_N; i++) {
+                if (seen.add(candidates.get(i))) {
+                    best.add(candidates.get(i));
+                }
+            }
+            top = best.toArray(new Entry[0]);
+        }
+    }
+}
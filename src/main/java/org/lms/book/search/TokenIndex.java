@@ -0,0 +1,224 @@
+package org.lms.book.search;
+
+import org.lms.book.BookBase;
+import org.lms.book.Isbn;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The TokenIndex class is an inverted index from search terms to the ISBN keys of the books containing them.
+ * Terms are kept per field in sorted dictionaries, so both exact terms and term prefixes can be looked up.
+ * Title and author terms are also kept in a {@link BkTree} per field for typo-tolerant lookups.
+ * The index is maintained incrementally by the book database as books are added, edited and deleted.
+ */
+public class TokenIndex {
+
+    /**
+     * The book fields that are indexed.
+     */
+    public enum Field {
+        TITLE,
+        AUTHOR,
+        ISBN
+    }
+
+    private final Map<Field, NavigableMap<String, Set<Long>>> postings = new EnumMap<>(Field.class);  // Term dictionaries per field
+    private final Map<BookBase, IndexedBook> indexedBooks = new IdentityHashMap<>();  // What was indexed for each book
+    private final Map<Field, BkTree> fuzzyTrees = new EnumMap<>(Field.class);  // Edit-distance trees of the title and author terms
+    private final Map<Field, Integer> staleTerms = new EnumMap<>(Field.class);  // Terms left in a tree after leaving the dictionary
+
+    /**
+     * Constructor to create an empty index.
+     */
+    public TokenIndex() {
+        for (Field field : Field.values()) {
+            postings.put(field, new TreeMap<>());
+        }
+        for (Field field : new Field[]{Field.TITLE, Field.AUTHOR}) {
+            fuzzyTrees.put(field, new BkTree());
+            staleTerms.put(field, 0);
+        }
+    }
+
+    /**
+     * Adds a book to the index, replacing what was indexed for it before.
+     *
+     * @param book The book to index
+     */
+    public void add(BookBase book) {
+        remove(book);
+        IndexedBook indexed = new IndexedBook(book.getIsbnKey(),
+                Tokenizer.tokens(book.getTitle()),
+                Tokenizer.tokens(book.getAuthor()),
+                Collections.singletonList(Isbn.normalize(book.getIsbn()).toLowerCase()));
+        indexedBooks.put(book, indexed);
+        for (Field field : Field.values()) {
+            for (String term : indexed.terms(field)) {
+                Set<Long> keys = postings.get(field).get(term);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    postings.get(field).put(term, keys);
+                    if (fuzzyTrees.containsKey(field)) {
+                        fuzzyTrees.get(field).add(term);
+                    }
+                }
+                keys.add(indexed.isbnKey);
+            }
+        }
+    }
+
+    /**
+     * Removes a book from the index using the terms it was indexed with.
+     *
+     * @param book The book to remove
+     */
+    public void remove(BookBase book) {
+        IndexedBook indexed = indexedBooks.remove(book);
+        if (indexed == null) {
+            return;
+        }
+        for (Field field : Field.values()) {
+            for (String term : indexed.terms(field)) {
+                Set<Long> keys = postings.get(field).get(term);
+                if (keys != null) {
+                    keys.remove(indexed.isbnKey);
+                    if (keys.isEmpty()) {
+                        postings.get(field).remove(term);
+                        termDropped(field);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every book from the index.
+     */
+    public void clear() {
+        indexedBooks.clear();
+        for (NavigableMap<String, Set<Long>> dictionary : postings.values()) {
+            dictionary.clear();
+        }
+        for (Field field : fuzzyTrees.keySet()) {
+            fuzzyTrees.get(field).clear();
+            staleTerms.put(field, 0);
+        }
+    }
+
+    /**
+     * Gets the ISBN keys of the books containing a term in a field.
+     *
+     * @param field The field to look in
+     * @param term  The normalized term
+     * @return The ISBN keys, or an empty set if no book contains the term
+     */
+    public Set<Long> exact(Field field, String term) {
+        Set<Long> keys = postings.get(field).get(term);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Gets all terms of a field starting with the given prefix, with their postings.
+     *
+     * @param field  The field to look in
+     * @param prefix The normalized prefix
+     * @return A read-only sorted view of the matching terms
+     */
+    public NavigableMap<String, Set<Long>> prefix(Field field, String prefix) {
+        return Collections.unmodifiableNavigableMap(
+                postings.get(field).subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    /**
+     * Gets the title or author terms within an edit distance of a term.
+     *
+     * @param field       The field to look in, TITLE or AUTHOR
+     * @param term        The normalized term
+     * @param maxDistance The maximum edit distance
+     * @return The matching terms currently in the dictionary, with their edit distance
+     */
+    public Map<String, Integer> fuzzy(Field field, String term, int maxDistance) {
+        BkTree tree = fuzzyTrees.get(field);
+        if (tree == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> matches = tree.search(term, maxDistance);
+        // Skip terms no book uses anymore
+        Iterator<String> terms = matches.keySet().iterator();
+        while (terms.hasNext()) {
+            if (!postings.get(field).containsKey(terms.next())) {
+                terms.remove();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Gets the whole term dictionary of a field.
+     *
+     * @param field The field
+     * @return A read-only sorted view of the terms and their postings
+     */
+    public NavigableMap<String, Set<Long>> terms(Field field) {
+        return Collections.unmodifiableNavigableMap(postings.get(field));
+    }
+
+    /**
+     * Records that a term left the dictionary of a field, rebuilding the field's tree once
+     * stale terms make up half of it.
+     *
+     * @param field The field of the term
+     */
+    private void termDropped(Field field) {
+        BkTree tree = fuzzyTrees.get(field);
+        if (tree == null) {
+            return;
+        }
+        int stale = staleTerms.get(field) + 1;
+        if (stale * 2 >= tree.size()) {
+            tree.clear();
+            for (String term : postings.get(field).keySet()) {
+                tree.add(term);
+            }
+            stale = 0;
+        }
+        staleTerms.put(field, stale);
+    }
+
+    /**
+     * What was indexed for one book, so it can be removed again after the book changes.
+     */
+    private static class IndexedBook {
+        private final long isbnKey;
+        private final List<String> titleTerms;
+        private final List<String> authorTerms;
+        private final List<String> isbnTerms;
+
+        IndexedBook(long isbnKey, List<String> titleTerms, List<String> authorTerms, List<String> isbnTerms) {
+            this.isbnKey = isbnKey;
+            this.titleTerms = titleTerms;
+            this.authorTerms = authorTerms;
+            this.isbnTerms = isbnTerms;
+        }
+
+        List<String> terms(Field field) {
+            switch (field) {
+                case TITLE:
+                    return titleTerms;
+                case AUTHOR:
+                    return authorTerms;
+                default:
+                    return isbnTerms;
+            }
+        }
+    }
+}
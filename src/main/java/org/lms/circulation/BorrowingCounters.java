@@ -0,0 +1,224 @@
+package org.lms.circulation;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookType;
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowHistory;
+import org.lms.user.BorrowStatus;
+import org.lms.user.LoanEvent;
+import org.lms.user.LoanListener;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorChangeEvent;
+import org.lms.user.VisitorChangeListener;
+import org.lms.user.VisitorDatabase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Singleton class keeping the loan counters of every visitor that the borrowing policy reads on checkout:
+ * open loans in total and per book type, and the due times of the open loans in ascending order.
+ *
+ * The counters are built from the borrow histories once and are then kept current from loan events,
+ * so reading them never scans a history. The type of a loan is the type of its book when it was borrowed.
+ * Callers read {@link Counts} while holding the lock of this object.
+ */
+public class BorrowingCounters implements LoanListener, VisitorChangeListener {
+    private static BorrowingCounters instance;  // Singleton instance of BorrowingCounters
+    private static final Counts NO_LOANS = new Counts();  // Counters of visitors without open loans
+
+    private final Map<Integer, Counts> countsByVisitor = new HashMap<>();  // Counters of each visitor with open loans
+
+    private BorrowingCounters() {
+    }
+
+    /**
+     * Returns the singleton instance, building the counters and subscribing to loans on first use.
+     *
+     * @return The borrowing counters
+     */
+    public static synchronized BorrowingCounters getInstance() {
+        if (instance == null) {
+            instance = new BorrowingCounters();
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the counters of a visitor. The counters change with every loan, so they must be read
+     * while holding the lock of this object.
+     *
+     * @param visitorId The visitor
+     * @return The counters of the visitor
+     */
+    public synchronized Counts getCounts(int visitorId) {
+        Counts counts = countsByVisitor.get(visitorId);
+        return counts == null ? NO_LOANS : counts;
+    }
+
+    /**
+     * Counts a borrow or return committed to the visitor database.
+     *
+     * @param event The loan change that was recorded
+     */
+    @Override
+    public synchronized void onLoanChanged(LoanEvent event) {
+        int visitorId = event.getVisitor().getVisitorId();
+        if (event.getStatus() == BorrowStatus.BORROW) {
+            long dueTime = event.getVisitor().getBorrowHistory().getDueTime(event.getHistoryIndex());
+            countsByVisitor.computeIfAbsent(visitorId, id -> new Counts())
+                    .add(event.getCopyRef(), typeOf(event.getCopyRef()), dueTime);
+            return;
+        }
+        Counts counts = countsByVisitor.get(visitorId);
+        if (counts != null && counts.remove(event.getCopyRef()) && counts.getOpenLoans() == 0) {
+            countsByVisitor.remove(visitorId);
+        }
+    }
+
+    /**
+     * Drops the counters of a deleted visitor.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public synchronized void onVisitorChanged(VisitorChangeEvent event) {
+        if (event.getType() == VisitorChangeEvent.Type.VISITOR_DELETED) {
+            countsByVisitor.remove(event.getVisitor().getVisitorId());
+        }
+    }
+
+    /**
+     * Subscribes to changes and counts the open loans already recorded, holding the visitor database
+     * so that no loan is counted twice or missed.
+     */
+    private void start() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        synchronized (visitorDatabase) {
+            visitorDatabase.addLoanListener(this);
+            visitorDatabase.addVisitorChangeListener(this);
+            synchronized (this) {
+                for (Visitor visitor : visitorDatabase.getAllVisitors()) {
+                    BorrowHistory history = visitor.getBorrowHistory();
+                    if (history.countOpen() == 0) {
+                        continue;
+                    }
+                    Counts counts = new Counts();
+                    for (int i = 0; i < history.size(); i++) {
+                        if (!history.isReturned(i)) {
+                            counts.add(history.getCopyRef(i), typeOf(history.getCopyRef(i)), history.getDueTime(i));
+                        }
+                    }
+                    countsByVisitor.put(visitor.getVisitorId(), counts);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the type of the book of a copy.
+     *
+     * @return The ordinal of the book type, or -1 if the book is no longer in the catalog
+     */
+    private static int typeOf(int copyRef) {
+        BookBase book = BookDatabase.getInstance().findBookByIsbnKey(CopyRegistry.getInstance().getIsbnKey(copyRef));
+        return book == null || book.getType() == null ? -1 : book.getType().ordinal();
+    }
+
+    /**
+     * The loan counters of one visitor. The open loans are kept in parallel arrays sorted by due time,
+     * so the number of overdue loans is found with a binary search.
+     */
+    public static class Counts {
+        private final int[] openByType = new int[BookType.values().length];  // Open loans of each book type
+        private int open;  // Number of open loans
+        private int[] copyRefs = new int[4];  // Copy of each open loan
+        private int[] types = new int[4];  // Book type ordinal of each open loan, -1 if unknown
+        private long[] dueTimes = new long[4];  // Due time of each open loan, ascending
+
+        /**
+         * Gets the number of open loans.
+         *
+         * @return The number of open loans
+         */
+        public int getOpenLoans() {
+            return open;
+        }
+
+        /**
+         * Gets the number of open loans of a book type.
+         *
+         * @param type The book type
+         * @return The number of open loans of books of that type
+         */
+        public int getOpenLoans(BookType type) {
+            return openByType[type.ordinal()];
+        }
+
+        /**
+         * Counts the open loans that are overdue. Loans recorded without a due time are never overdue.
+         *
+         * @param now The current time in epoch millis
+         * @return The number of open loans due before now
+         */
+        public int countOverdue(long now) {
+            int low = 0;
+            int high = open;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dueTimes[mid] < now) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int undated = 0;
+            while (undated < low && dueTimes[undated] == 0) {
+                undated++;
+            }
+            return low - undated;
+        }
+
+        private void add(int copyRef, int type, long dueTime) {
+            if (open == copyRefs.length) {
+                copyRefs = Arrays.copyOf(copyRefs, open * 2);
+                types = Arrays.copyOf(types, open * 2);
+                dueTimes = Arrays.copyOf(dueTimes, open * 2);
+            }
+            int i = open;
+            while (i > 0 && dueTimes[i - 1] > dueTime) {
+                copyRefs[i] = copyRefs[i - 1];
+                types[i] = types[i - 1];
+                dueTimes[i] = dueTimes[i - 1];
+                i--;
+            }
+            copyRefs[i] = copyRef;
+            types[i] = type;
+            dueTimes[i] = dueTime;
+            open++;
+            if (type >= 0) {
+                openByType[type]++;
+            }
+        }
+
+        private boolean remove(int copyRef) {
+            for (int i = 0; i < open; i++) {
+                if (copyRefs[i] != copyRef) {
+                    continue;
+                }
+                if (types[i] >= 0) {
+                    openByType[types[i]]--;
+                }
+                open--;
+                System.arraycopy(copyRefs, i + 1, copyRefs, i, open - i);
+                System.arraycopy(types, i + 1, types, i, open - i);
+                System.arraycopy(dueTimes, i + 1, dueTimes, i, open - i);
+                return true;
+            }
+            return false;
+        }
+    }
+}
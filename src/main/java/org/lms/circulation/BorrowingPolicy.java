@@ -0,0 +1,301 @@
+package org.lms.circulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lms.book.BookBase;
+import org.lms.book.BookType;
+import org.lms.user.Visitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Singleton class deciding whether a visitor may borrow a book, from the rules in {@link #RULES_FILE}.
+ *
+ * Each rule is compiled once into a predicate chain: its age range and the counter check are joined with
+ * {@link Predicate#and}, and rules are grouped by the book type they apply to. A checkout runs only the chains
+ * of the borrowed book's type, and each chain reads the visitor's {@link BorrowingCounters}, so checking
+ * does not depend on the length of the visitor's history.
+ *
+ * Before any rule, the account itself is checked: a registration expired by the nightly batch refuses
+ * every borrow until it is renewed, and so does an account the batch flagged as over its loan or fine
+ * limit, unless returns since then brought it back within the limits of the {@link LoanPolicy}.
+ *
+ * The rules file is checked for changes at most once every {@link #RELOAD_CHECK_MILLIS}, and a changed file
+ * is compiled and swapped in without a restart. A file that cannot be read or compiled leaves the current
+ * rules in place. Without a file, the only rule is the open loan limit of the {@link LoanPolicy}.
+ */
+public class BorrowingPolicy {
+    private static BorrowingPolicy instance;  // Singleton instance of BorrowingPolicy
+    private static final String RULES_FILE = "BorrowingRules.json";  // Path to the file configuring the rules
+    private static final long RELOAD_CHECK_MILLIS = 2000;  // Minimum time between two checks of the rules file
+
+    private volatile CompiledRules rules;  // Rules currently in force
+    private long fileModified = -1;  // Modification time of the file the rules were loaded from, 0 if none
+    private long lastCheck;  // Time the rules file was last checked for changes
+
+    private BorrowingPolicy() {
+    }
+
+    /**
+     * Returns the singleton instance, loading the rules and building the borrowing counters on first use.
+     *
+     * @return The borrowing policy
+     */
+    public static synchronized BorrowingPolicy getInstance() {
+        if (instance == null) {
+            instance = new BorrowingPolicy();
+            instance.reload();
+            BorrowingCounters.getInstance();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the policy at application start, so the counters are built before the first checkout.
+     */
+    public static void start() {
+        getInstance();
+    }
+
+    /**
+     * Checks whether a visitor may borrow a copy of a book.
+     *
+     * @param visitor The visitor borrowing the book
+     * @param book    The book to borrow
+     * @return The message of the first rule refusing the borrow, or null if the borrow is allowed
+     */
+    public String check(Visitor visitor, BookBase book) {
+        long now = System.currentTimeMillis();
+        reloadIfChanged(now);
+        List<CompiledRule> applicable = rules.forType(book.getType());
+        BorrowingCounters counters = BorrowingCounters.getInstance();
+        synchronized (counters) {
+            BorrowingCounters.Counts counts = counters.getCounts(visitor.getVisitorId());
+            String accountRefusal = checkAccount(visitor, counts);
+            if (accountRefusal != null) {
+                return accountRefusal;
+            }
+            Checkout checkout = new Checkout(visitor, counts, now);
+            for (CompiledRule rule : applicable) {
+                if (rule.refuses.test(checkout)) {
+                    return rule.message;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks the account flags set by the nightly batch.
+     *
+     * @return The message refusing the borrow, or null if the account may borrow
+     */
+    private static String checkAccount(Visitor visitor, BorrowingCounters.Counts counts) {
+        if (visitor.isExpired()) {
+            return "The registration of this visitor has expired and must be renewed before borrowing.";
+        }
+        LoanPolicy policy = LoanPolicy.getInstance();
+        if (visitor.isOverLimit() && (counts.getOpenLoans() > policy.getMaxOpenLoans()
+                || visitor.getFineCents() > policy.getMaxFineCents())) {
+            return "This account is over its loan or fine limit.";
+        }
+        return null;
+    }
+
+    /**
+     * Gets the rules currently in force.
+     *
+     * @return The rules, in the order they are checked
+     */
+    public List<BorrowingRule> getRules() {
+        return rules.source;
+    }
+
+    /**
+     * Loads and compiles the rules file, or the default rules if there is no file.
+     *
+     * @return true if the rules were replaced, false if the file could not be read or compiled
+     */
+    public synchronized boolean reload() {
+        File file = new File(RULES_FILE);
+        long modified = file.exists() ? file.lastModified() : 0;
+        try {
+            List<BorrowingRule> source;
+            if (modified == 0) {
+                source = defaultRules();
+            } else {
+                ObjectMapper objectMapper = new ObjectMapper();
+                source = objectMapper.readValue(
+                        file,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, BorrowingRule.class)
+                );
+            }
+            rules = compile(source);
+            fileModified = modified;
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            fileModified = modified;  // Not retried until the file changes again
+            if (rules == null) {
+                rules = compile(defaultRules());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reloads the rules if the rules file was changed, created or removed since they were loaded.
+     */
+    private void reloadIfChanged(long now) {
+        synchronized (this) {
+            if (now - lastCheck < RELOAD_CHECK_MILLIS) {
+                return;
+            }
+            lastCheck = now;
+            File file = new File(RULES_FILE);
+            if ((file.exists() ? file.lastModified() : 0) == fileModified) {
+                return;
+            }
+        }
+        reload();
+    }
+
+    /**
+     * The rules used when there is no rules file: the open loan limit of the loan policy.
+     */
+    private static List<BorrowingRule> defaultRules() {
+        int limit = LoanPolicy.getInstance().getMaxOpenLoans();
+        return Collections.singletonList(new BorrowingRule("Open loan limit", BorrowingRule.Kind.MAX_OPEN_LOANS, limit,
+                "Each visitor can borrow up to " + limit + " books."));
+    }
+
+    /**
+     * Compiles rules into predicate chains grouped by book type.
+     *
+     * @param source The rules, in the order they are checked
+     * @return The compiled rules
+     * @throws IllegalArgumentException If a rule has no kind, a negative limit or an empty age range,
+     *                                  or limits overdue loans of one book type
+     */
+    private static CompiledRules compile(List<BorrowingRule> source) {
+        BookType[] types = BookType.values();
+        List<List<CompiledRule>> byType = new ArrayList<>();
+        for (int i = 0; i <= types.length; i++) {
+            byType.add(new ArrayList<>());
+        }
+        for (BorrowingRule rule : source) {
+            CompiledRule compiled = compile(rule);
+            for (int i = 0; i <= types.length; i++) {
+                // The last group is for books without a type, which only rules for all books apply to
+                if (rule.getBookType() == null || i < types.length && rule.getBookType() == types[i]) {
+                    byType.get(i).add(compiled);
+                }
+            }
+        }
+        return new CompiledRules(Collections.unmodifiableList(new ArrayList<>(source)), byType);
+    }
+
+    private static CompiledRule compile(BorrowingRule rule) {
+        String name = rule.getName() == null ? rule.toString() : rule.getName();
+        if (rule.getKind() == null) {
+            throw new IllegalArgumentException("Borrowing rule " + name + " has no kind");
+        }
+        if (rule.getLimit() < 0) {
+            throw new IllegalArgumentException("Borrowing rule " + name + " has a negative limit");
+        }
+        if (rule.getMinAge() != null && rule.getMaxAge() != null && rule.getMinAge() > rule.getMaxAge()) {
+            throw new IllegalArgumentException("Borrowing rule " + name + " has an empty age range");
+        }
+        if (rule.getKind() == BorrowingRule.Kind.MAX_OVERDUE_LOANS && rule.getBookType() != null) {
+            // Overdue loans are only counted over all types, so the rule could not keep to one type
+            throw new IllegalArgumentException("Borrowing rule " + name + " limits overdue loans of one book type");
+        }
+
+        long limit = rule.getLimit();
+        BookType type = rule.getBookType();
+        Predicate<Checkout> refuses;
+        String message;
+        switch (rule.getKind()) {
+            case MAX_OPEN_LOANS:
+                refuses = type == null
+                        ? checkout -> checkout.counts.getOpenLoans() >= limit
+                        : checkout -> checkout.counts.getOpenLoans(type) >= limit;
+                message = type == null
+                        ? "Each visitor can borrow up to " + limit + " books."
+                        : "Each visitor can borrow up to " + limit + " " + type + " books.";
+                break;
+            case MAX_OVERDUE_LOANS:
+                refuses = checkout -> checkout.counts.countOverdue(checkout.now) > limit;
+                message = limit == 0
+                        ? "Overdue books must be returned before borrowing more."
+                        : "Visitors with more than " + limit + " overdue books cannot borrow more.";
+                break;
+            case MAX_FINE_CENTS:
+                refuses = checkout -> checkout.visitor.getFineCents() > limit;
+                message = String.format("Fines over %d.%02d must be paid before borrowing more.", limit / 100, limit % 100);
+                break;
+            default:
+                throw new IllegalArgumentException("Borrowing rule " + name + " has an unknown kind");
+        }
+
+        // The age range is checked first, so rules for other ages stop before reading a counter
+        if (rule.getMaxAge() != null) {
+            int maxAge = rule.getMaxAge();
+            refuses = ((Predicate<Checkout>) checkout -> checkout.visitor.getAge() <= maxAge).and(refuses);
+        }
+        if (rule.getMinAge() != null) {
+            int minAge = rule.getMinAge();
+            refuses = ((Predicate<Checkout>) checkout -> checkout.visitor.getAge() >= minAge).and(refuses);
+        }
+        return new CompiledRule(refuses, rule.getMessage() == null ? message : rule.getMessage());
+    }
+
+    /**
+     * A set of compiled rules, with the rules applying to each book type.
+     */
+    private static class CompiledRules {
+        private final List<BorrowingRule> source;  // The rules as loaded
+        private final List<List<CompiledRule>> byType;  // Rules of each book type ordinal, then of books without a type
+
+        private CompiledRules(List<BorrowingRule> source, List<List<CompiledRule>> byType) {
+            this.source = source;
+            this.byType = byType;
+        }
+
+        private List<CompiledRule> forType(BookType type) {
+            return byType.get(type == null ? byType.size() - 1 : type.ordinal());
+        }
+    }
+
+    /**
+     * A rule compiled into the predicate refusing a borrow, with its message.
+     */
+    private static class CompiledRule {
+        private final Predicate<Checkout> refuses;  // Whether the rule refuses a checkout
+        private final String message;  // Message shown when the borrow is refused
+
+        private CompiledRule(Predicate<Checkout> refuses, String message) {
+            this.refuses = refuses;
+            this.message = message;
+        }
+    }
+
+    /**
+     * The facts a rule reads about one checkout.
+     */
+    private static class Checkout {
+        private final Visitor visitor;  // The visitor borrowing the book
+        private final BorrowingCounters.Counts counts;  // The loan counters of the visitor
+        private final long now;  // The time of the checkout in epoch millis
+
+        private Checkout(Visitor visitor, BorrowingCounters.Counts counts, long now) {
+            this.visitor = visitor;
+            this.counts = counts;
+            this.now = now;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.lms.circulation;
+
+import org.lms.book.BookType;
+
+/**
+ * The BorrowingRule class describes one rule of the borrowing policy, as written in the rules file.
+ * A rule applies to the visitors in its age range borrowing a book of its type, and refuses the borrow
+ * when the counter of its kind is over the limit. Rules are compiled by {@link BorrowingPolicy} before use.
+ */
+public class BorrowingRule {
+
+    /**
+     * The counter a rule limits.
+     */
+    public enum Kind {
+        MAX_OPEN_LOANS,     // Open loans, of the rule's book type if it has one; a borrow is refused at the limit
+        MAX_OVERDUE_LOANS,  // Open loans past their due time, of all types; a borrow is refused above the limit
+        MAX_FINE_CENTS      // Accrued late fines in cents; a borrow is refused above the limit
+    }
+
+    private String name;  // Name of the rule, shown when the rules file is rejected
+    private Kind kind;  // The counter the rule limits
+    private long limit;  // The limit of the counter
+    private BookType bookType;  // Type of the books the rule applies to, null for all books
+    private Integer minAge;  // Youngest age the rule applies to, null for no lower bound
+    private Integer maxAge;  // Oldest age the rule applies to, null for no upper bound
+    private String message;  // Message shown when the rule refuses a borrow, null for the default message
+
+    /**
+     * Default constructor for JSON deserialization.
+     */
+    public BorrowingRule() {
+    }
+
+    /**
+     * Constructor to create a rule applying to every visitor and book.
+     *
+     * @param name    The name of the rule
+     * @param kind    The counter the rule limits
+     * @param limit   The limit of the counter
+     * @param message The message shown when the rule refuses a borrow
+     */
+    public BorrowingRule(String name, Kind kind, long limit, String message) {
+        this.name = name;
+        this.kind = kind;
+        this.limit = limit;
+        this.message = message;
+    }
+
+    // Getters and Setters for the fields
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public BookType getBookType() {
+        return bookType;
+    }
+
+    public void setBookType(BookType bookType) {
+        this.bookType = bookType;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public void setMinAge(Integer minAge) {
+        this.minAge = minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Integer maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "BorrowingRule{" +
+                "name='" + name + '\'' +
+                ", kind=" + kind +
+                ", limit=" + limit +
+                ", bookType=" + bookType +
+                ", minAge=" + minAge +
+                ", maxAge=" + maxAge +
+                '}';
+    }
+}
@@ -0,0 +1,421 @@
+package org.lms.circulation;
+
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowHistory;
+import org.lms.user.Visitor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The CirculationLedger keeps every loan ever made as a fixed-width record in direct (off-heap) memory.
+ * Records are appended in the order loans are made, and scans pass record fields as primitives,
+ * so analytics never create per-record heap objects.
+ *
+ * The ledger is the store of record for the library-wide loan history: unlike the borrow histories of the
+ * visitor accounts, it keeps the loans of visitors that have since been deleted. It is persisted in
+ * {@link #LEDGER_FILE}, an append-only journal of copy definitions, loans and returns, so each borrow or
+ * return writes a few bytes instead of rewriting the file. At startup the journal is replayed into memory;
+ * if there is no journal yet, the ledger is built from the borrow histories of the current visitors and
+ * written out as a new journal. A truncated last entry, left by an interrupted write, is ignored.
+ * A journal that cannot be read is moved aside to a timestamped {@code .corrupt} file and reported,
+ * so that it can be recovered by hand, before the ledger is rebuilt from the current visitors.
+ *
+ * Record layout (32 bytes): visitorId (int), copyRef (int), borrowTime (long), returnTime (long), isbnKey (long).
+ */
+public class CirculationLedger {
+    private static final String LEDGER_FILE = "CirculationLedger.dat";  // Path to the journal of the ledger
+    private static final int JOURNAL_MAGIC = 0x4C444731;  // "LDG1", the first four bytes of a journal
+    private static final byte COPY_ENTRY = 1;    // Defines the next journal copy index: copy ID, then ISBN
+    private static final byte LOAN_ENTRY = 2;    // Appends a record: visitor ID, journal copy index, borrow time
+    private static final byte RETURN_ENTRY = 3;  // Sets the return time of a record: record index, return time
+
+    private static final int RECORD_SIZE = 32;
+    private static final int VISITOR_ID_OFFSET = 0;
+    private static final int COPY_REF_OFFSET = 4;
+    private static final int BORROW_TIME_OFFSET = 8;
+    private static final int RETURN_TIME_OFFSET = 16;
+    private static final int ISBN_KEY_OFFSET = 24;
+    private static final int INITIAL_CAPACITY = 1024;  // Initial capacity in records
+
+    // Scans read size before buffer: append publishes a grown buffer before the size that needs it
+    private volatile ByteBuffer buffer;  // Off-heap storage of the records
+    private volatile int size;  // Number of records
+    private final Map<Integer, Integer> openLoans = new HashMap<>();  // Copy reference to record index of its open loan
+    private FileChannel journal;  // Open journal that entries are appended to, null while not persisted
+    private int[] journalCopies = new int[0];  // Journal copy index of each copy reference, -1 if not defined yet
+    private int journalCopyCount;  // Number of copies defined in the journal
+
+    /**
+     * Creates an empty ledger that is kept in memory only.
+     */
+    public CirculationLedger() {
+        buffer = allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Opens the persisted ledger, replaying its journal, or builds it from the borrow histories
+     * of the given visitors if it has not been persisted yet.
+     *
+     * @param visitors The visitors whose histories are loaded when there is no journal
+     * @return The ledger, which journals every later change
+     */
+    public static CirculationLedger open(List<Visitor> visitors) {
+        File file = new File(LEDGER_FILE);
+        if (file.exists()) {
+            CirculationLedger ledger = new CirculationLedger();
+            try {
+                long length = ledger.replay(file);
+                ledger.openJournal(file, length);
+                return ledger;
+            } catch (IOException e) {
+                e.printStackTrace();
+                // The journal holds the only record of deleted visitors' loans, so it is set aside, never overwritten
+                File corrupt = new File(LEDGER_FILE + ".corrupt-" + System.currentTimeMillis());
+                if (!file.renameTo(corrupt)) {
+                    System.err.println("Could not read " + file + " nor move it aside; the ledger is kept in memory only");
+                    return build(visitors);
+                }
+                System.err.println("Could not read " + file + "; it was moved to " + corrupt
+                        + " and the ledger was rebuilt from the current visitors");
+            }
+        }
+        CirculationLedger ledger = build(visitors);
+        ledger.openJournal(file, -1);
+        return ledger;
+    }
+
+    /**
+     * Builds a ledger from the borrow histories of the given visitors.
+     * Each history is already in borrow-time order, so the histories are merged instead of sorted.
+     *
+     * @param visitors The visitors whose histories are loaded
+     * @return A ledger containing every loan of the visitors
+     */
+    public static CirculationLedger build(List<Visitor> visitors) {
+        CirculationLedger ledger = new CirculationLedger();
+        CopyRegistry registry = CopyRegistry.getInstance();
+
+        // One cursor per visitor, ordered by the borrow time of its next record
+        PriorityQueue<int[]> cursors = new PriorityQueue<>((a, b) -> Long.compare(
+                visitors.get(a[0]).getBorrowHistory().getBorrowTime(a[1]),
+                visitors.get(b[0]).getBorrowHistory().getBorrowTime(b[1])));
+        for (int i = 0; i < visitors.size(); i++) {
+            if (visitors.get(i).getBorrowHistory().size() > 0) {
+                cursors.add(new int[]{i, 0});
+            }
+        }
+
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            Visitor visitor = visitors.get(cursor[0]);
+            BorrowHistory history = visitor.getBorrowHistory();
+            int index = cursor[1];
+            int copyRef = history.getCopyRef(index);
+            int record = ledger.append(visitor.getVisitorId(), copyRef, registry.getIsbnKey(copyRef), history.getBorrowTime(index));
+            if (history.isReturned(index)) {
+                ledger.markReturned(record, history.getReturnTime(index));
+            }
+            if (index + 1 < history.size()) {
+                cursor[1] = index + 1;
+                cursors.add(cursor);
+            }
+        }
+        return ledger;
+    }
+
+    /**
+     * Records a new loan.
+     *
+     * @param visitorId  The ID of the visitor borrowing the copy
+     * @param copyRef    The reference of the borrowed copy
+     * @param isbnKey    The canonical ISBN key of the borrowed book
+     * @param borrowTime The borrow time in epoch millis
+     * @return The index of the new record
+     */
+    public synchronized int append(int visitorId, int copyRef, long isbnKey, long borrowTime) {
+        if ((size + 1) * RECORD_SIZE > buffer.capacity()) {
+            ByteBuffer grown = allocate(size * 2);
+            ByteBuffer source = buffer.duplicate();
+            source.position(0).limit(size * RECORD_SIZE);
+            grown.put(source);
+            buffer = grown;
+        }
+        int base = size * RECORD_SIZE;
+        buffer.putInt(base + VISITOR_ID_OFFSET, visitorId);
+        buffer.putInt(base + COPY_REF_OFFSET, copyRef);
+        buffer.putLong(base + BORROW_TIME_OFFSET, borrowTime);
+        buffer.putLong(base + RETURN_TIME_OFFSET, 0);
+        buffer.putLong(base + ISBN_KEY_OFFSET, isbnKey);
+        openLoans.put(copyRef, size);
+        if (journal != null) {
+            ByteBuffer entry = copyEntry(copyRef);
+            entry = ensureRemaining(entry, 17);
+            entry.put(LOAN_ENTRY).putInt(visitorId).putInt(journalCopies[copyRef]).putLong(borrowTime);
+            writeJournal(entry);
+        }
+        return size++;
+    }
+
+    /**
+     * Records the return of a loan.
+     *
+     * @param record     The index of the loan record
+     * @param returnTime The return time in epoch millis
+     */
+    public synchronized void markReturned(int record, long returnTime) {
+        buffer.putLong(record * RECORD_SIZE + RETURN_TIME_OFFSET, returnTime);
+        openLoans.remove(getCopyRef(record), record);
+        if (journal != null) {
+            writeJournal(ByteBuffer.allocate(13).put(RETURN_ENTRY).putInt(record).putLong(returnTime));
+        }
+    }
+
+    /**
+     * Records the return of the open loan of a copy.
+     *
+     * @param copyRef    The reference of the returned copy
+     * @param returnTime The return time in epoch millis
+     * @return The index of the closed record, or -1 if the copy had no open loan
+     */
+    public synchronized int markReturnedByCopy(int copyRef, long returnTime) {
+        Integer record = openLoans.get(copyRef);
+        if (record == null) {
+            return -1;
+        }
+        markReturned(record, returnTime);
+        return record;
+    }
+
+    /**
+     * Visits every record in the order the loans were made.
+     *
+     * @param consumer The consumer receiving the records
+     */
+    public void scan(LedgerRecordConsumer consumer) {
+        scan(0, size, consumer);
+    }
+
+    /**
+     * Visits the records with indexes in [fromRecord, toRecord). Disjoint ranges can be scanned in parallel.
+     * Records appended during the scan are not visited.
+     *
+     * @param fromRecord The first record to visit (inclusive)
+     * @param toRecord   The last record to visit (exclusive)
+     * @param consumer   The consumer receiving the records
+     */
+    public void scan(int fromRecord, int toRecord, LedgerRecordConsumer consumer) {
+        int end = Math.min(toRecord, size);
+        ByteBuffer view = buffer;  // Read after size, so it holds at least the first end records
+        for (int record = Math.max(0, fromRecord); record < end; record++) {
+            int base = record * RECORD_SIZE;
+            consumer.accept(record,
+                    view.getInt(base + VISITOR_ID_OFFSET),
+                    view.getInt(base + COPY_REF_OFFSET),
+                    view.getLong(base + ISBN_KEY_OFFSET),
+                    view.getLong(base + BORROW_TIME_OFFSET),
+                    view.getLong(base + RETURN_TIME_OFFSET));
+        }
+    }
+
+    // Getters for the fields of a single record
+
+    public int size() {
+        return size;
+    }
+
+    public int getVisitorId(int record) {
+        return buffer.getInt(record * RECORD_SIZE + VISITOR_ID_OFFSET);
+    }
+
+    public int getCopyRef(int record) {
+        return buffer.getInt(record * RECORD_SIZE + COPY_REF_OFFSET);
+    }
+
+    public long getIsbnKey(int record) {
+        return buffer.getLong(record * RECORD_SIZE + ISBN_KEY_OFFSET);
+    }
+
+    public long getBorrowTime(int record) {
+        return buffer.getLong(record * RECORD_SIZE + BORROW_TIME_OFFSET);
+    }
+
+    public long getReturnTime(int record) {
+        return buffer.getLong(record * RECORD_SIZE + RETURN_TIME_OFFSET);
+    }
+
+    /**
+     * Replays a journal into this empty ledger, remembering the journal copy index of every copy.
+     *
+     * @return The length of the complete entries, which a truncated last entry is cut back to
+     */
+    private long replay(File file) throws IOException {
+        CopyRegistry registry = CopyRegistry.getInstance();
+        List<Integer> copyRefs = new ArrayList<>();
+        long length = 4;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                throw new IOException(LEDGER_FILE + " is not a circulation ledger journal");
+            }
+            try {
+                while (true) {
+                    int tag = in.read();
+                    if (tag < 0) {
+                        break;
+                    }
+                    if (tag == COPY_ENTRY) {
+                        byte[] copyId = new byte[in.readUnsignedShort()];
+                        in.readFully(copyId);
+                        byte[] isbn = new byte[in.readUnsignedShort()];
+                        in.readFully(isbn);
+                        int copyRef = registry.register(new String(isbn, StandardCharsets.UTF_8),
+                                new String(copyId, StandardCharsets.UTF_8));
+                        copyRefs.add(copyRef);
+                        defineJournalCopy(copyRef, copyRefs.size() - 1);
+                        length += 5 + copyId.length + isbn.length;
+                    } else if (tag == LOAN_ENTRY) {
+                        int visitorId = in.readInt();
+                        int copyRef = copyRefs.get(in.readInt());
+                        append(visitorId, copyRef, registry.getIsbnKey(copyRef), in.readLong());
+                        length += 17;
+                    } else if (tag == RETURN_ENTRY) {
+                        markReturned(in.readInt(), in.readLong());
+                        length += 13;
+                    } else {
+                        throw new IOException(LEDGER_FILE + " has an unknown entry type " + tag);
+                    }
+                }
+            } catch (EOFException e) {
+                // The last entry was cut short by an interrupted write; the entries before it are complete
+            }
+        }
+        journalCopyCount = copyRefs.size();
+        return length;
+    }
+
+    /**
+     * Opens the journal for appending.
+     *
+     * @param length The length of the complete entries of the replayed journal, or -1 to write a new journal
+     *               from the records in memory
+     */
+    private synchronized void openJournal(File file, long length) {
+        try {
+            if (length < 0) {
+                writeSnapshot(file);
+            }
+            journal = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (length >= 0 && journal.size() > length) {
+                journal.truncate(length);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes every record in memory as a new journal.
+     */
+    private void writeSnapshot(File file) throws IOException {
+        journalCopies = new int[0];
+        journalCopyCount = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(4).putInt(JOURNAL_MAGIC).flip());
+            journal = channel;
+            ByteBuffer entries = ByteBuffer.allocate(64 * 1024);
+            for (int record = 0; record < size; record++) {
+                ByteBuffer copy = copyEntry(getCopyRef(record));
+                if (copy.position() > 0) {
+                    entries = flushIfFull(entries, copy.position());
+                    entries.put(copy.flip());
+                }
+                entries = flushIfFull(entries, 30);
+                entries.put(LOAN_ENTRY).putInt(getVisitorId(record)).putInt(journalCopies[getCopyRef(record)])
+                        .putLong(getBorrowTime(record));
+                if (getReturnTime(record) != 0) {
+                    entries.put(RETURN_ENTRY).putInt(record).putLong(getReturnTime(record));
+                }
+            }
+            writeJournal(entries);
+        } finally {
+            journal = null;
+        }
+    }
+
+    /**
+     * Starts a journal entry buffer, holding the definition of a copy if the journal has not defined it yet.
+     */
+    private ByteBuffer copyEntry(int copyRef) {
+        if (copyRef < journalCopies.length && journalCopies[copyRef] >= 0) {
+            return ByteBuffer.allocate(32);
+        }
+        CopyRegistry registry = CopyRegistry.getInstance();
+        byte[] copyId = registry.getCopyId(copyRef).getBytes(StandardCharsets.UTF_8);
+        byte[] isbn = registry.getIsbn(copyRef).getBytes(StandardCharsets.UTF_8);
+        // Lengths are written as unsigned shorts; IDs are far below the 64 KB limit
+        ByteBuffer entry = ByteBuffer.allocate(5 + copyId.length + isbn.length + 32);
+        entry.put(COPY_ENTRY).putShort((short) copyId.length).put(copyId).putShort((short) isbn.length).put(isbn);
+        defineJournalCopy(copyRef, journalCopyCount++);
+        return entry;
+    }
+
+    private void defineJournalCopy(int copyRef, int journalIndex) {
+        if (copyRef >= journalCopies.length) {
+            int oldLength = journalCopies.length;
+            journalCopies = Arrays.copyOf(journalCopies, Math.max(copyRef + 1, oldLength * 2));
+            Arrays.fill(journalCopies, oldLength, journalCopies.length, -1);
+        }
+        journalCopies[copyRef] = journalIndex;
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer entry, int bytes) {
+        if (entry.remaining() >= bytes) {
+            return entry;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(entry.position() + bytes);
+        return grown.put(entry.flip());
+    }
+
+    private ByteBuffer flushIfFull(ByteBuffer entries, int bytes) {
+        if (entries.remaining() >= bytes) {
+            return entries;
+        }
+        writeJournal(entries);
+        entries.clear();
+        return entries.remaining() >= bytes ? entries : ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * Writes the entries held in a buffer to the end of the journal.
+     */
+    private void writeJournal(ByteBuffer entries) {
+        entries.flip();
+        try {
+            while (entries.hasRemaining()) {
+                journal.write(entries);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(Math.max(records, INITIAL_CAPACITY) * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+}
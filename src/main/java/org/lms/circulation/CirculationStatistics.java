@@ -0,0 +1,315 @@
+package org.lms.circulation;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.BookType;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+import org.lms.book.CopyRegistry;
+import org.lms.book.Section;
+import org.lms.user.BorrowStatus;
+import org.lms.user.LoanEvent;
+import org.lms.user.LoanListener;
+import org.lms.user.VisitorDatabase;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Singleton class keeping circulation statistics: borrow counts per book type, section, day and
+ * hour of the day, and the current utilization of the copies (unavailable out of all copies).
+ *
+ * The counters are rebuilt from the {@link CirculationLedger} once, scanning chunks of the ledger in
+ * parallel, and are then kept current from loan and catalog change events, so every query is a
+ * counter read.
+ */
+public class CirculationStatistics implements LoanListener, CatalogChangeListener {
+    private static CirculationStatistics instance;  // Singleton instance of CirculationStatistics
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();  // Local time for day and hour buckets
+    private final AtomicLongArray borrowsByType = new AtomicLongArray(BookType.values().length);
+    private final AtomicLongArray borrowsBySection = new AtomicLongArray(Section.values().length);
+    private final AtomicLongArray borrowsByHour = new AtomicLongArray(24);  // Borrows per hour of the day
+    private final Map<Long, LongAdder> borrowsByDay = new ConcurrentHashMap<>();  // Borrows per local epoch day
+    private final LongAdder totalBorrows = new LongAdder();
+    private final LongAdder totalReturns = new LongAdder();
+    private final LongAdder totalCopies = new LongAdder();        // Copies in the catalog
+    private final LongAdder unavailableCopies = new LongAdder();  // Copies currently borrowed
+
+    private CirculationStatistics() {
+    }
+
+    /**
+     * Returns the singleton instance, building the statistics and subscribing to changes on first use.
+     *
+     * @return The circulation statistics
+     */
+    public static synchronized CirculationStatistics getInstance() {
+        if (instance == null) {
+            instance = new CirculationStatistics();
+            instance.build();
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the statistics at application start, so opening the dashboard never waits for the rebuild.
+     */
+    public static void start() {
+        getInstance();
+    }
+
+    // Dashboard queries; each reads a single counter
+
+    public long getBorrowCount(BookType type) {
+        return borrowsByType.get(type.ordinal());
+    }
+
+    public long getBorrowCount(Section section) {
+        return borrowsBySection.get(section.ordinal());
+    }
+
+    public long getBorrowCount(LocalDate day) {
+        LongAdder count = borrowsByDay.get(day.toEpochDay());
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Gets the number of borrows made during an hour of the day, over all days.
+     *
+     * @param hour The hour of the day, 0 to 23
+     * @return The number of borrows
+     */
+    public long getBorrowCountByHour(int hour) {
+        return borrowsByHour.get(hour);
+    }
+
+    public long getTotalBorrows() {
+        return totalBorrows.sum();
+    }
+
+    public long getTotalReturns() {
+        return totalReturns.sum();
+    }
+
+    public long getTotalCopies() {
+        return totalCopies.sum();
+    }
+
+    public long getUnavailableCopies() {
+        return unavailableCopies.sum();
+    }
+
+    /**
+     * Gets the share of copies currently borrowed.
+     *
+     * @return Unavailable copies divided by all copies, or 0 if there are no copies
+     */
+    public double getUtilization() {
+        long total = totalCopies.sum();
+        return total == 0 ? 0 : (double) unavailableCopies.sum() / total;
+    }
+
+    /**
+     * Counts a borrow or return committed to the visitor database.
+     *
+     * @param event The loan change that was recorded
+     */
+    @Override
+    public void onLoanChanged(LoanEvent event) {
+        if (event.getStatus() == BorrowStatus.RETURN) {
+            totalReturns.increment();
+            return;
+        }
+        BookBase book = BookDatabase.getInstance().findBookByIsbnKey(CopyRegistry.getInstance().getIsbnKey(event.getCopyRef()));
+        countBorrow(book == null ? -1 : book.getType().ordinal(), book == null ? -1 : book.getSection().ordinal(), event.getTime());
+    }
+
+    /**
+     * Keeps the copy counts current as copies are added, removed, borrowed and returned.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onCatalogChanged(CatalogChangeEvent event) {
+        switch (event.getType()) {
+            case BOOK_ADDED:
+                for (BookCopy copy : event.getBook().getCopies()) {
+                    totalCopies.increment();
+                    if (copy.getStatus() == BookStatus.UNAVAILABLE) {
+                        unavailableCopies.increment();
+                    }
+                }
+                break;
+            case COPIES_ADDED:
+                totalCopies.add(event.getCopyCount());
+                break;
+            case COPY_DELETED:
+                totalCopies.decrement();
+                if (event.getCopy().getStatus() == BookStatus.UNAVAILABLE) {
+                    unavailableCopies.decrement();
+                }
+                break;
+            case COPY_STATUS_CHANGED:
+                // Holds move copies between the shelf and the hold shelf without lending them
+                if (event.getPreviousStatus() == BookStatus.UNAVAILABLE) {
+                    unavailableCopies.decrement();
+                }
+                if (event.getCopy().getStatus() == BookStatus.UNAVAILABLE) {
+                    unavailableCopies.increment();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Subscribes to changes and builds the counters, holding both databases so that no change
+     * is counted twice or missed while the counters are built.
+     */
+    private void build() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        // Same lock order as VisitorDatabase.borrowBook, which reads the book database
+        synchronized (visitorDatabase) {
+            synchronized (bookDatabase) {
+                visitorDatabase.addLoanListener(this);
+                bookDatabase.addChangeListener(this);
+                for (BookBase book : bookDatabase.getAllBooks()) {
+                    for (BookCopy copy : book.getCopies()) {
+                        totalCopies.increment();
+                        if (copy.getStatus() == BookStatus.UNAVAILABLE) {
+                            unavailableCopies.increment();
+                        }
+                    }
+                }
+                rebuild(visitorDatabase.getLedger(), bookDatabase);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the borrow counters from the ledger. The ledger is cut into chunks that are scanned
+     * in parallel into private partial counters, which are then merged.
+     */
+    private void rebuild(CirculationLedger ledger, BookDatabase bookDatabase) {
+        // Resolve book types and sections once, so the parallel scan does not touch the database
+        Map<Long, int[]> attributes = new HashMap<>();
+        for (BookBase book : bookDatabase.getAllBooks()) {
+            attributes.put(book.getIsbnKey(), new int[]{book.getType().ordinal(), book.getSection().ordinal()});
+        }
+
+        int size = ledger.size();
+        int chunks = Math.max(1, Math.min(size / 4096 + 1, ForkJoinPool.getCommonPoolParallelism() * 4));
+        Partial merged = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Partial partial = new Partial();
+                    ledger.scan((int) ((long) size * chunk / chunks), (int) ((long) size * (chunk + 1) / chunks),
+                            (record, visitorId, copyRef, isbnKey, borrowTime, returnTime) -> {
+                                int[] attribute = attributes.get(isbnKey);
+                                partial.add(attribute == null ? -1 : attribute[0], attribute == null ? -1 : attribute[1],
+                                        localMillis(borrowTime), returnTime != 0);
+                            });
+                    return partial;
+                })
+                .reduce(new Partial(), Partial::merge);
+
+        for (int i = 0; i < merged.byType.length; i++) {
+            borrowsByType.addAndGet(i, merged.byType[i]);
+        }
+        for (int i = 0; i < merged.bySection.length; i++) {
+            borrowsBySection.addAndGet(i, merged.bySection[i]);
+        }
+        for (int i = 0; i < 24; i++) {
+            borrowsByHour.addAndGet(i, merged.byHour[i]);
+        }
+        for (Map.Entry<Long, Long> day : merged.byDay.entrySet()) {
+            borrowsByDay.computeIfAbsent(day.getKey(), d -> new LongAdder()).add(day.getValue());
+        }
+        totalBorrows.add(merged.borrows);
+        totalReturns.add(merged.returns);
+    }
+
+    private void countBorrow(int type, int section, long borrowTime) {
+        long local = localMillis(borrowTime);
+        if (type >= 0) {
+            borrowsByType.incrementAndGet(type);
+        }
+        if (section >= 0) {
+            borrowsBySection.incrementAndGet(section);
+        }
+        borrowsByHour.incrementAndGet((int) (Math.floorMod(local, DAY_MILLIS) / HOUR_MILLIS));
+        borrowsByDay.computeIfAbsent(Math.floorDiv(local, DAY_MILLIS), d -> new LongAdder()).increment();
+        totalBorrows.increment();
+    }
+
+    /**
+     * Shifts an instant to local wall-clock millis, so days and hours follow the local time zone.
+     */
+    private long localMillis(long epochMillis) {
+        return epochMillis + zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+    }
+
+    /**
+     * Counters of one chunk of the ledger.
+     */
+    private static class Partial {
+        private final long[] byType = new long[BookType.values().length];
+        private final long[] bySection = new long[Section.values().length];
+        private final long[] byHour = new long[24];
+        private final Map<Long, Long> byDay = new HashMap<>();
+        private long borrows;
+        private long returns;
+
+        void add(int type, int section, long localBorrowTime, boolean returned) {
+            if (type >= 0) {
+                byType[type]++;
+            }
+            if (section >= 0) {
+                bySection[section]++;
+            }
+            byHour[(int) (Math.floorMod(localBorrowTime, DAY_MILLIS) / HOUR_MILLIS)]++;
+            byDay.merge(Math.floorDiv(localBorrowTime, DAY_MILLIS), 1L, Long::sum);
+            borrows++;
+            if (returned) {
+                returns++;
+            }
+        }
+
+        Partial merge(Partial other) {
+            Partial merged = new Partial();
+            for (Partial part : new Partial[]{this, other}) {
+                for (int i = 0; i < byType.length; i++) {
+                    merged.byType[i] += part.byType[i];
+                }
+                for (int i = 0; i < bySection.length; i++) {
+                    merged.bySection[i] += part.bySection[i];
+                }
+                for (int i = 0; i < 24; i++) {
+                    merged.byHour[i] += part.byHour[i];
+                }
+                for (Map.Entry<Long, Long> day : part.byDay.entrySet()) {
+                    merged.byDay.merge(day.getKey(), day.getValue(), Long::sum);
+                }
+                merged.borrows += part.borrows;
+                merged.returns += part.returns;
+            }
+            return merged;
+        }
+    }
+}
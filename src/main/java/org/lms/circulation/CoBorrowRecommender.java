@@ -0,0 +1,375 @@
+package org.lms.circulation;
+
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowHistory;
+import org.lms.user.BorrowStatus;
+import org.lms.user.LoanEvent;
+import org.lms.user.LoanListener;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Singleton class recommending titles borrowed by the same visitors ("visitors who borrowed this also borrowed").
+ *
+ * The weight of a pair of titles is the number of visitors who borrowed both. Pairs are kept in a sparse
+ * row per title, holding at most {@link #MAX_PAIRS} entries; when a row is full its lowest-weight pairs are
+ * pruned, which bounds memory. Every row also keeps its {@link #TOP_N} heaviest pairs, so a lookup reads
+ * a precomputed list.
+ *
+ * The rows are built from the borrow histories once, one title per task in parallel, and are then updated
+ * incrementally as visitors borrow titles they have not borrowed before.
+ */
+public class CoBorrowRecommender implements LoanListener {
+    public static final int TOP_N = 10;  // Neighbors kept ready for each title
+
+    private static final int MAX_PAIRS = 200;    // Pairs kept per title
+    private static final int MAX_HISTORY = 100;  // Most recent distinct titles of a visitor taken into account
+
+    private static CoBorrowRecommender instance;  // Singleton instance of CoBorrowRecommender
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();  // Pairs of each title, by ISBN key
+
+    private CoBorrowRecommender() {
+    }
+
+    /**
+     * Returns the singleton instance, building the pairs and subscribing to new loans on first use.
+     *
+     * @return The recommender
+     */
+    public static synchronized CoBorrowRecommender getInstance() {
+        if (instance == null) {
+            instance = new CoBorrowRecommender();
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Lists the titles most often borrowed together with a title.
+     *
+     * @param isbnKey The ISBN key of the title
+     * @param limit   The maximum number of titles, at most {@link #TOP_N}
+     * @return The neighbors in descending order of weight
+     */
+    public synchronized List<Neighbor> alsoBorrowed(long isbnKey, int limit) {
+        Row row = rows.get(isbnKey);
+        if (row == null) {
+            return new ArrayList<>();
+        }
+        List<Neighbor> neighbors = new ArrayList<>(Math.min(limit, row.topSize));
+        for (int i = 0; i < row.topSize && i < limit; i++) {
+            neighbors.add(new Neighbor(row.topKeys[i], row.topWeights[i], isbnKey));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Recommends titles for a visitor from the neighbors of the titles the visitor borrowed most recently.
+     * Titles the visitor already borrowed are left out.
+     *
+     * @param visitor The visitor
+     * @param limit   The maximum number of titles
+     * @return The recommendations in descending order of weight; each names the borrowed title it is most related to
+     */
+    public List<Neighbor> recommendFor(Visitor visitor, int limit) {
+        long[] borrowed;
+        synchronized (VisitorDatabase.getInstance()) {
+            borrowed = distinctTitles(visitor.getBorrowHistory(), visitor.getBorrowHistory().size(), MAX_HISTORY);
+        }
+        Set<Long> excluded = new HashSet<>();
+        for (long key : borrowed) {
+            excluded.add(key);
+        }
+
+        // Per recommended title: summed weight, largest single weight, and the borrowed title giving it
+        Map<Long, long[]> scores = new HashMap<>();
+        synchronized (this) {
+            for (long source : borrowed) {
+                Row row = rows.get(source);
+                if (row == null) {
+                    continue;
+                }
+                for (int i = 0; i < row.topSize; i++) {
+                    if (excluded.contains(row.topKeys[i])) {
+                        continue;
+                    }
+                    long[] score = scores.computeIfAbsent(row.topKeys[i], key -> new long[3]);
+                    score[0] += row.topWeights[i];
+                    if (row.topWeights[i] > score[1]) {
+                        score[1] = row.topWeights[i];
+                        score[2] = source;
+                    }
+                }
+            }
+        }
+        List<Neighbor> result = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, long[]> score : scores.entrySet()) {
+            result.add(new Neighbor(score.getKey(), score.getValue()[0], score.getValue()[2]));
+        }
+        result.sort(Comparator.comparingLong(Neighbor::getWeight).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Adds the pairs formed by a visitor borrowing a title for the first time.
+     *
+     * @param event The loan change that was recorded
+     */
+    @Override
+    public void onLoanChanged(LoanEvent event) {
+        if (event.getStatus() != BorrowStatus.BORROW) {
+            return;
+        }
+        BorrowHistory history = event.getVisitor().getBorrowHistory();
+        CopyRegistry registry = CopyRegistry.getInstance();
+        long isbnKey = registry.getIsbnKey(event.getCopyRef());
+        long[] earlier = distinctTitles(history, event.getHistoryIndex(), MAX_HISTORY + 1);
+        for (long key : earlier) {
+            if (key == isbnKey) {
+                return;  // Borrowed again; the visitor's pairs are already counted
+            }
+        }
+
+        synchronized (this) {
+            Row row = rows.computeIfAbsent(isbnKey, key -> new Row());
+            for (int i = 0; i < earlier.length && i < MAX_HISTORY; i++) {
+                row.increment(earlier[i]);
+                rows.computeIfAbsent(earlier[i], key -> new Row()).increment(isbnKey);
+            }
+        }
+    }
+
+    /**
+     * Subscribes to new loans and builds the rows from the borrow histories, holding the visitor database
+     * so that no borrow is counted twice or missed.
+     */
+    private void start() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        synchronized (visitorDatabase) {
+            visitorDatabase.addLoanListener(this);
+            build(visitorDatabase.getAllVisitors());
+        }
+    }
+
+    /**
+     * Builds every row from scratch. The visitors of each title are listed first; each row then only reads
+     * these lists, so the rows are counted in parallel without sharing any counter.
+     */
+    private void build(List<Visitor> visitors) {
+        long[][] titlesOfVisitor = new long[visitors.size()][];
+        Map<Long, List<Integer>> visitorsOfTitle = new HashMap<>();
+        for (int v = 0; v < visitors.size(); v++) {
+            BorrowHistory history = visitors.get(v).getBorrowHistory();
+            titlesOfVisitor[v] = distinctTitles(history, history.size(), MAX_HISTORY);
+            for (long key : titlesOfVisitor[v]) {
+                visitorsOfTitle.computeIfAbsent(key, k -> new ArrayList<>()).add(v);
+            }
+        }
+
+        visitorsOfTitle.entrySet().parallelStream().forEach(entry -> {
+            long isbnKey = entry.getKey();
+            Map<Long, Integer> counts = new HashMap<>();
+            for (int v : entry.getValue()) {
+                for (long other : titlesOfVisitor[v]) {
+                    if (other != isbnKey) {
+                        counts.merge(other, 1, Integer::sum);
+                    }
+                }
+            }
+            rows.put(isbnKey, Row.of(counts));
+        });
+    }
+
+    /**
+     * Lists the distinct titles of a visitor's records before an index, most recent first.
+     *
+     * @param history The borrow history
+     * @param end     The index to stop before
+     * @param limit   The maximum number of titles
+     * @return The ISBN keys of the titles
+     */
+    private static long[] distinctTitles(BorrowHistory history, int end, int limit) {
+        CopyRegistry registry = CopyRegistry.getInstance();
+        Set<Long> titles = new LinkedHashSet<>();
+        for (int i = end - 1; i >= 0 && titles.size() < limit; i--) {
+            titles.add(registry.getIsbnKey(history.getCopyRef(i)));
+        }
+        long[] keys = new long[titles.size()];
+        int i = 0;
+        for (long key : titles) {
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * A recommended title with its weight.
+     */
+    public static class Neighbor {
+        private final long isbnKey;  // ISBN key of the recommended title
+        private final long weight;   // Number of shared borrowers, summed over the titles it was found through
+        private final long because;  // ISBN key of the title it is most related to
+
+        public Neighbor(long isbnKey, long weight, long because) {
+            this.isbnKey = isbnKey;
+            this.weight = weight;
+            this.because = because;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public long getBecause() {
+            return because;
+        }
+    }
+
+    /**
+     * The pairs of one title in parallel arrays, with its heaviest pairs kept in order.
+     */
+    private static class Row {
+        private long[] keys = new long[4];  // ISBN keys of the paired titles
+        private int[] weights = new int[4];  // Weight of each pair
+        private int size;                    // Number of pairs
+        private final long[] topKeys = new long[TOP_N];  // Heaviest pairs, in descending order of weight
+        private final int[] topWeights = new int[TOP_N];
+        private int topSize;
+
+        /**
+         * Creates a row from complete counts, keeping the heaviest pairs.
+         */
+        static Row of(Map<Long, Integer> counts) {
+            List<Map.Entry<Long, Integer>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort(Map.Entry.<Long, Integer>comparingByValue().reversed());
+            Row row = new Row();
+            int size = Math.min(entries.size(), MAX_PAIRS);
+            row.keys = new long[Math.max(4, size)];
+            row.weights = new int[Math.max(4, size)];
+            for (int i = 0; i < size; i++) {
+                row.keys[i] = entries.get(i).getKey();
+                row.weights[i] = entries.get(i).getValue();
+            }
+            row.size = size;
+            row.topSize = Math.min(size, TOP_N);
+            System.arraycopy(row.keys, 0, row.topKeys, 0, row.topSize);
+            System.arraycopy(row.weights, 0, row.topWeights, 0, row.topSize);
+            return row;
+        }
+
+        /**
+         * Adds one to the weight of a pair, pruning the lightest pairs first if the row is full.
+         */
+        void increment(long key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                if (size == MAX_PAIRS) {
+                    prune();
+                }
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, Math.min(MAX_PAIRS, size * 2));
+                    weights = Arrays.copyOf(weights, keys.length);
+                }
+                index = size++;
+                keys[index] = key;
+                weights[index] = 0;
+            }
+            weights[index]++;
+            offerTop(key, weights[index]);
+        }
+
+        /**
+         * Drops the lightest quarter of the pairs. The heaviest pairs are always kept.
+         */
+        private void prune() {
+            int[] sorted = Arrays.copyOf(weights, size);
+            Arrays.sort(sorted);
+            int toDrop = size / 4;
+            int threshold = sorted[toDrop - 1];
+            int dropAtThreshold = toDrop;
+            for (int weight : sorted) {
+                if (weight < threshold) {
+                    dropAtThreshold--;
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                boolean drop = weights[i] < threshold
+                        || (weights[i] == threshold && dropAtThreshold > 0 && !isTop(keys[i]));
+                if (weights[i] == threshold && drop) {
+                    dropAtThreshold--;
+                }
+                if (!drop) {
+                    keys[kept] = keys[i];
+                    weights[kept] = weights[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+
+        private boolean isTop(long key) {
+            for (int i = 0; i < topSize; i++) {
+                if (topKeys[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Updates the heaviest pairs after the weight of a pair went up by one.
+         */
+        private void offerTop(long key, int weight) {
+            int position = -1;
+            for (int i = 0; i < topSize; i++) {
+                if (topKeys[i] == key) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                if (topSize < TOP_N) {
+                    position = topSize++;
+                } else if (weight > topWeights[TOP_N - 1]) {
+                    position = TOP_N - 1;
+                } else {
+                    return;
+                }
+            }
+            // Move the pair up past lighter pairs
+            while (position > 0 && topWeights[position - 1] < weight) {
+                topKeys[position] = topKeys[position - 1];
+                topWeights[position] = topWeights[position - 1];
+                position--;
+            }
+            topKeys[position] = key;
+            topWeights[position] = weight;
+        }
+
+        private int indexOf(long key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.lms.circulation;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowHistory;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The ConsistencyChecker verifies that the copies in the book database agree with the loans in the
+ * visitor database, which are updated one after the other and can drift apart:
+ * every borrowed copy has exactly one open loan, by the visitor the copy names; no loan is open on a
+ * copy that is on the shelf or on hold; and no loan is open on a copy that is no longer in the catalog.
+ *
+ * Both databases are held during a check, so the two sides are compared at the same moment.
+ * Open loans are collected from the visitor histories in parallel and the copies are then checked
+ * in parallel against them. A check only reads the databases and the {@link CopyRegistry}; since it
+ * holds both databases for its whole length, it should be run off the event dispatch thread.
+ */
+public final class ConsistencyChecker {
+
+    private ConsistencyChecker() {
+    }
+
+    /**
+     * Checks the two databases against each other.
+     *
+     * @return The report of the issues found
+     */
+    public static ConsistencyReport check() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        // Same lock order as VisitorDatabase.borrowBook, which reads the book database
+        synchronized (visitorDatabase) {
+            synchronized (bookDatabase) {
+                return check(visitorDatabase.getAllVisitors(), bookDatabase.getAllBooks());
+            }
+        }
+    }
+
+    /**
+     * Checks the two databases and repairs every issue found, with one batched write per database.
+     * The visitors' loans are taken as the truth for borrowed copies, since they carry the borrow times:
+     * <ul>
+     *     <li>a borrowed copy without an open loan is put back on the shelf;</li>
+     *     <li>a copy naming the wrong borrower is given the borrower of its open loan;</li>
+     *     <li>of several open loans of one copy, all but the newest are closed;</li>
+     *     <li>loans open on copies that are on the shelf, on hold or missing are closed.</li>
+     * </ul>
+     * Loans are closed as of the time of the repair.
+     *
+     * @return The report of the issues that were found and repaired
+     */
+    public static ConsistencyReport repair() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        synchronized (visitorDatabase) {
+            synchronized (bookDatabase) {
+                ConsistencyReport report = check(visitorDatabase.getAllVisitors(), bookDatabase.getAllBooks());
+                Map<Integer, Integer> borrowersByCopy = new HashMap<>();
+                List<ConsistencyIssue> loansToClose = new ArrayList<>();
+                for (ConsistencyIssue issue : report.getIssues()) {
+                    switch (issue.getKind()) {
+                        case BORROWED_WITHOUT_LOAN:
+                            // The check leaves copies that were never borrowed unregistered
+                            int copyRef = issue.getCopyRef() >= 0 ? issue.getCopyRef()
+                                    : CopyRegistry.getInstance().register(issue.getIsbn(), issue.getCopyId());
+                            borrowersByCopy.put(copyRef, 0);
+                            break;
+                        case BORROWER_MISMATCH:
+                            borrowersByCopy.put(issue.getCopyRef(), issue.getVisitorId());
+                            break;
+                        default:
+                            loansToClose.add(issue);
+                            break;
+                    }
+                }
+
+                int[] visitorIds = new int[loansToClose.size()];
+                int[] historyIndexes = new int[loansToClose.size()];
+                long[] returnTimes = new long[loansToClose.size()];
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < loansToClose.size(); i++) {
+                    visitorIds[i] = loansToClose.get(i).getVisitorId();
+                    historyIndexes[i] = loansToClose.get(i).getHistoryIndex();
+                    returnTimes[i] = now;
+                }
+                visitorDatabase.closeLoans(visitorIds, historyIndexes, returnTimes);
+                bookDatabase.setCopyBorrowers(borrowersByCopy);
+                return report;
+            }
+        }
+    }
+
+    private static ConsistencyReport check(List<Visitor> visitors, List<BookBase> books) {
+        long checkedAt = System.currentTimeMillis();
+        CopyRegistry registry = CopyRegistry.getInstance();
+
+        // Flatten the catalog copies, resolving their references up front
+        List<BookCopy> copies = new ArrayList<>();
+        List<String> isbns = new ArrayList<>();
+        for (BookBase book : books) {
+            for (BookCopy copy : book.getCopies()) {
+                copies.add(copy);
+                isbns.add(book.getIsbn());
+            }
+        }
+        // Looked up without registering, so a check changes nothing; a copy never registered has no loans
+        String[] copyIds = new String[copies.size()];
+        for (int i = 0; i < copyIds.length; i++) {
+            copyIds[i] = copies.get(i).getCopyId();
+        }
+        int[] copyRefs = registry.findRefs(copyIds, copyIds.length);
+
+        // Collect the open loans of every visitor, grouped by copy
+        ConcurrentMap<Integer, List<OpenLoan>> openLoans = visitors.parallelStream()
+                .flatMap(visitor -> openLoansOf(visitor).stream())
+                .collect(Collectors.groupingByConcurrent(loan -> loan.copyRef));
+        int openLoanCount = openLoans.values().stream().mapToInt(List::size).sum();
+
+        // Check each copy against its open loans
+        List<ConsistencyIssue> issues = IntStream.range(0, copies.size()).parallel()
+                .mapToObj(i -> checkCopy(copies.get(i), copyRefs[i], isbns.get(i), openLoans.get(copyRefs[i])))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+
+        // Loans open on copies that are not in the catalog
+        BitSet inCatalog = new BitSet();
+        for (int copyRef : copyRefs) {
+            if (copyRef >= 0) {
+                inCatalog.set(copyRef);
+            }
+        }
+        for (Map.Entry<Integer, List<OpenLoan>> entry : openLoans.entrySet()) {
+            if (!inCatalog.get(entry.getKey())) {
+                String isbn = registry.getIsbn(entry.getKey());
+                String copyId = registry.getCopyId(entry.getKey());
+                for (OpenLoan loan : entry.getValue()) {
+                    issues.add(loan.issue(ConsistencyIssue.Kind.LOAN_ON_MISSING_COPY, isbn, copyId));
+                }
+            }
+        }
+
+        issues.sort(Comparator.comparing(ConsistencyIssue::getKind)
+                .thenComparing(ConsistencyIssue::getIsbn)
+                .thenComparing(ConsistencyIssue::getCopyId)
+                .thenComparingInt(ConsistencyIssue::getVisitorId));
+        return new ConsistencyReport(checkedAt, copies.size(), openLoanCount, issues);
+    }
+
+    private static List<ConsistencyIssue> checkCopy(BookCopy copy, int copyRef, String isbn, List<OpenLoan> loans) {
+        List<ConsistencyIssue> issues = new ArrayList<>();
+        String copyId = copy.getCopyId();
+        if (copy.getStatus() != BookStatus.UNAVAILABLE) {
+            if (loans != null) {
+                for (OpenLoan loan : loans) {
+                    issues.add(loan.issue(ConsistencyIssue.Kind.LOAN_ON_AVAILABLE_COPY, isbn, copyId));
+                }
+            }
+            return issues;
+        }
+        if (loans == null) {
+            issues.add(new ConsistencyIssue(ConsistencyIssue.Kind.BORROWED_WITHOUT_LOAN,
+                    copyRef, isbn, copyId, copy.getBorrowVisitorId(), -1, 0));
+            return issues;
+        }
+
+        OpenLoan newest = loans.get(0);
+        for (OpenLoan loan : loans) {
+            if (loan.borrowTime > newest.borrowTime) {
+                newest = loan;
+            }
+        }
+        for (OpenLoan loan : loans) {
+            if (loan != newest) {
+                issues.add(loan.issue(ConsistencyIssue.Kind.DUPLICATE_OPEN_LOAN, isbn, copyId));
+            }
+        }
+        if (newest.visitorId != copy.getBorrowVisitorId()) {
+            issues.add(newest.issue(ConsistencyIssue.Kind.BORROWER_MISMATCH, isbn, copyId));
+        }
+        return issues;
+    }
+
+    private static List<OpenLoan> openLoansOf(Visitor visitor) {
+        BorrowHistory history = visitor.getBorrowHistory();
+        List<OpenLoan> loans = new ArrayList<>();
+        if (history.countOpen() == 0) {
+            return loans;
+        }
+        for (int i = 0; i < history.size(); i++) {
+            if (!history.isReturned(i)) {
+                loans.add(new OpenLoan(visitor.getVisitorId(), i, history.getCopyRef(i), history.getBorrowTime(i)));
+            }
+        }
+        return loans;
+    }
+
+    /**
+     * An open loan found in a visitor's history.
+     */
+    private static class OpenLoan {
+        private final int visitorId;
+        private final int historyIndex;
+        private final int copyRef;
+        private final long borrowTime;
+
+        OpenLoan(int visitorId, int historyIndex, int copyRef, long borrowTime) {
+            this.visitorId = visitorId;
+            this.historyIndex = historyIndex;
+            this.copyRef = copyRef;
+            this.borrowTime = borrowTime;
+        }
+
+        ConsistencyIssue issue(ConsistencyIssue.Kind kind, String isbn, String copyId) {
+            return new ConsistencyIssue(kind, copyRef, isbn, copyId, visitorId, historyIndex, borrowTime);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.lms.circulation;
+
+/**
+ * The ConsistencyIssue class describes one disagreement between the copies in the book database
+ * and the loans in the visitor database, together with the loan or copy it concerns.
+ */
+public class ConsistencyIssue {
+    /**
+     * The kinds of disagreement the checker finds.
+     */
+    public enum Kind {
+        BORROWED_WITHOUT_LOAN("Copy is borrowed but no visitor has an open loan for it"),
+        BORROWER_MISMATCH("Copy names a different borrower than its open loan"),
+        DUPLICATE_OPEN_LOAN("Copy has a newer open loan as well"),
+        LOAN_ON_AVAILABLE_COPY("Loan is open but the copy is on the shelf or on hold"),
+        LOAN_ON_MISSING_COPY("Loan is open for a copy that is not in the catalog");
+
+        private final String description;  // Explanation shown in reports
+
+        Kind(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Kind kind;          // The kind of disagreement
+    private final int copyRef;        // Reference of the copy concerned, -1 for a copy never registered
+    private final String isbn;        // ISBN of the copy
+    private final String copyId;      // ID of the copy
+    private final int visitorId;      // Visitor of the loan, or the borrower named by the copy if there is no loan
+    private final int historyIndex;   // Index of the loan in the visitor's history, or -1 for copy-level issues
+    private final long borrowTime;    // Borrow time of the loan, or 0 for copy-level issues
+
+    /**
+     * Constructor to create an issue.
+     *
+     * @param kind         The kind of disagreement
+     * @param copyRef      The reference of the copy
+     * @param isbn         The ISBN of the copy
+     * @param copyId       The ID of the copy
+     * @param visitorId    The visitor of the loan, or the borrower named by the copy
+     * @param historyIndex The index of the loan, or -1
+     * @param borrowTime   The borrow time of the loan, or 0
+     */
+    public ConsistencyIssue(Kind kind, int copyRef, String isbn, String copyId, int visitorId, int historyIndex, long borrowTime) {
+        this.kind = kind;
+        this.copyRef = copyRef;
+        this.isbn = isbn;
+        this.copyId = copyId;
+        this.visitorId = visitorId;
+        this.historyIndex = historyIndex;
+        this.borrowTime = borrowTime;
+    }
+
+    // Getters for the issue fields
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getCopyRef() {
+        return copyRef;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getCopyId() {
+        return copyId;
+    }
+
+    public int getVisitorId() {
+        return visitorId;
+    }
+
+    public int getHistoryIndex() {
+        return historyIndex;
+    }
+
+    public long getBorrowTime() {
+        return borrowTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistencyIssue{" +
+                "kind=" + kind +
+                ", isbn='" + isbn + '\'' +
+                ", copyId='" + copyId + '\'' +
+                ", visitorId=" + visitorId +
+                ", historyIndex=" + historyIndex +
+                '}';
+    }
+}
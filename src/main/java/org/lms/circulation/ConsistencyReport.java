@@ -0,0 +1,88 @@
+package org.lms.circulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ConsistencyReport class holds the result of one consistency check: the issues found,
+ * and how many copies and open loans were checked.
+ */
+public class ConsistencyReport {
+    private final long checkedAt;       // Time of the check in epoch millis
+    private final int copiesChecked;    // Number of copies in the catalog
+    private final int openLoansChecked; // Number of open loans in the visitor histories
+    private final List<ConsistencyIssue> issues;  // Issues found, ordered by kind and copy
+
+    /**
+     * Constructor to create a report.
+     *
+     * @param checkedAt        The time of the check
+     * @param copiesChecked    The number of copies checked
+     * @param openLoansChecked The number of open loans checked
+     * @param issues           The issues found
+     */
+    public ConsistencyReport(long checkedAt, int copiesChecked, int openLoansChecked, List<ConsistencyIssue> issues) {
+        this.checkedAt = checkedAt;
+        this.copiesChecked = copiesChecked;
+        this.openLoansChecked = openLoansChecked;
+        this.issues = Collections.unmodifiableList(new ArrayList<>(issues));
+    }
+
+    /**
+     * Checks whether the databases agree.
+     *
+     * @return true if no issue was found
+     */
+    public boolean isConsistent() {
+        return issues.isEmpty();
+    }
+
+    /**
+     * Counts the issues of each kind.
+     *
+     * @return The number of issues of each kind that occurred
+     */
+    public Map<ConsistencyIssue.Kind, Integer> countByKind() {
+        Map<ConsistencyIssue.Kind, Integer> counts = new EnumMap<>(ConsistencyIssue.Kind.class);
+        for (ConsistencyIssue issue : issues) {
+            counts.merge(issue.getKind(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // Getters for the report fields
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public int getCopiesChecked() {
+        return copiesChecked;
+    }
+
+    public int getOpenLoansChecked() {
+        return openLoansChecked;
+    }
+
+    public List<ConsistencyIssue> getIssues() {
+        return issues;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Checked ").append(copiesChecked).append(" copies and ")
+                .append(openLoansChecked).append(" open loans: ");
+        if (issues.isEmpty()) {
+            return text.append("no issues").toString();
+        }
+        text.append(issues.size()).append(issues.size() == 1 ? " issue" : " issues");
+        for (Map.Entry<ConsistencyIssue.Kind, Integer> count : countByKind().entrySet()) {
+            text.append("\n  ").append(count.getKey()).append(": ").append(count.getValue());
+        }
+        return text.toString();
+    }
+}
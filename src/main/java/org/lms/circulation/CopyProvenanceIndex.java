@@ -0,0 +1,117 @@
+package org.lms.circulation;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The CopyProvenanceIndex lists, for every book copy, the ledger records of all its loans in the order
+ * they were made. Looking up who had a copy therefore costs one step per loan of that copy.
+ *
+ * The index is rebuilt from the {@link CirculationLedger} at startup, and the ledger is persisted apart
+ * from the visitor file, so the loans of visitors deleted since are still listed after a restart. Only the
+ * loans of visitors deleted before the ledger file was first written are missing, as the ledger was first
+ * built from the visitor file of that time.
+ *
+ * The index holds record numbers only; borrowers, borrow times and return times are read from the
+ * {@link CirculationLedger}, whose records are updated in place on return.
+ */
+public class CopyProvenanceIndex {
+    private static final int[] NO_RECORDS = new int[0];
+
+    private int[][] records = new int[0][];  // Ledger records of each copy, indexed by copy reference
+    private int[] counts = new int[0];       // Number of records in use for each copy
+
+    /**
+     * Builds the index over every record of a ledger. The ledger is cut into chunks that are scanned in
+     * parallel twice: once to count the loans of each copy in each chunk, and once to write every record
+     * to its place, which the counts of the earlier chunks determine. No two chunks write the same slot,
+     * so nothing is locked and each copy's records come out in ledger order.
+     *
+     * @param ledger    The ledger to index
+     * @param copyCount The number of copy references handed out so far
+     * @return The index
+     */
+    public static CopyProvenanceIndex build(CirculationLedger ledger, int copyCount) {
+        int size = ledger.size();
+        int chunks = Math.max(1, Math.min(size / 4096 + 1, ForkJoinPool.getCommonPoolParallelism() * 4));
+        int[][] chunkCounts = new int[chunks][];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] chunkCount = new int[copyCount];
+            ledger.scan(chunkStart(size, chunks, chunk), chunkStart(size, chunks, chunk + 1),
+                    (record, visitorId, copyRef, isbnKey, borrowTime, returnTime) -> chunkCount[copyRef]++);
+            chunkCounts[chunk] = chunkCount;
+        });
+
+        // Turn the counts into the first slot of each chunk within each copy's array
+        CopyProvenanceIndex index = new CopyProvenanceIndex();
+        index.records = new int[copyCount][];
+        index.counts = new int[copyCount];
+        for (int copyRef = 0; copyRef < copyCount; copyRef++) {
+            int total = 0;
+            for (int[] chunkCount : chunkCounts) {
+                int count = chunkCount[copyRef];
+                chunkCount[copyRef] = total;
+                total += count;
+            }
+            index.records[copyRef] = total == 0 ? NO_RECORDS : new int[total];
+            index.counts[copyRef] = total;
+        }
+
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int[] next = chunkCounts[chunk];
+            ledger.scan(chunkStart(size, chunks, chunk), chunkStart(size, chunks, chunk + 1),
+                    (record, visitorId, copyRef, isbnKey, borrowTime, returnTime) -> index.records[copyRef][next[copyRef]++] = record);
+        });
+        return index;
+    }
+
+    /**
+     * Adds a new loan of a copy.
+     *
+     * @param copyRef The reference of the borrowed copy
+     * @param record  The ledger record of the loan
+     */
+    public synchronized void add(int copyRef, int record) {
+        if (copyRef >= records.length) {
+            int capacity = Math.max(copyRef + 1, records.length * 2);
+            int oldLength = records.length;
+            records = Arrays.copyOf(records, capacity);
+            Arrays.fill(records, oldLength, capacity, NO_RECORDS);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int[] copyRecords = records[copyRef];
+        if (counts[copyRef] == copyRecords.length) {
+            copyRecords = Arrays.copyOf(copyRecords, Math.max(4, copyRecords.length * 2));
+            records[copyRef] = copyRecords;
+        }
+        copyRecords[counts[copyRef]++] = record;
+    }
+
+    /**
+     * Gets the ledger records of every loan of a copy.
+     *
+     * @param copyRef The reference of the copy
+     * @return The record numbers in the order the loans were made; empty if the copy was never borrowed
+     */
+    public synchronized int[] recordsOf(int copyRef) {
+        if (copyRef < 0 || copyRef >= records.length) {
+            return NO_RECORDS;
+        }
+        return Arrays.copyOf(records[copyRef], counts[copyRef]);
+    }
+
+    /**
+     * Counts the loans of a copy.
+     *
+     * @param copyRef The reference of the copy
+     * @return The number of loans
+     */
+    public synchronized int loanCount(int copyRef) {
+        return copyRef < 0 || copyRef >= counts.length ? 0 : counts[copyRef];
+    }
+
+    private static int chunkStart(int size, int chunks, int chunk) {
+        return (int) ((long) size * chunk / chunks);
+    }
+}
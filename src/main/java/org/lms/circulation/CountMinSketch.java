@@ -0,0 +1,75 @@
+package org.lms.circulation;
+
+import java.util.Arrays;
+
+/**
+ * The CountMinSketch class estimates how often each key was counted, in a fixed amount of memory.
+ * Every key is counted in one cell of each row; the estimate is the smallest of its cells,
+ * which is never below the true count and exceeds it only by collisions with other keys.
+ */
+public class CountMinSketch {
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x85EBCA77C2B2AE63L, 0x27D4EB2F165667C5L
+    };
+
+    private final int depth;      // Number of rows
+    private final int widthMask;  // Row width minus one; the width is a power of two
+    private final long[] cells;   // Counters, row after row
+
+    /**
+     * Constructor to create an empty sketch.
+     *
+     * @param depth The number of rows, at most 8; more rows make large errors less likely
+     * @param width The number of cells per row, rounded up to a power of two; wider rows make errors smaller
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("Depth must be between 1 and " + SEEDS.length);
+        }
+        int roundedWidth = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.depth = depth;
+        this.widthMask = roundedWidth - 1;
+        this.cells = new long[depth * roundedWidth];
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key The key to count
+     */
+    public void add(long key) {
+        for (int row = 0; row < depth; row++) {
+            cells[cellOf(row, key)]++;
+        }
+    }
+
+    /**
+     * Estimates the number of times a key was counted.
+     *
+     * @param key The key to look up
+     * @return An estimate that is at least the true count
+     */
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, cells[cellOf(row, key)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void clear() {
+        Arrays.fill(cells, 0);
+    }
+
+    private int cellOf(int row, long key) {
+        // Mix the key with the row seed so each row spreads keys independently
+        long hash = (key ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 31)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 29;
+        return row * (widthMask + 1) + ((int) hash & widthMask);
+    }
+}
@@ -0,0 +1,150 @@
+package org.lms.circulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * The DueDateIndex keeps the open loans ordered by due time.
+ * Loans are added when a copy is borrowed and removed when it is returned, so questions such as
+ * "what is overdue now" or "what comes due in the next 24 hours" walk only the loans in the answer.
+ */
+public class DueDateIndex {
+    private static final Comparator<DueLoan> BY_DUE_TIME = Comparator
+            .comparingLong(DueLoan::getDueTime)
+            .thenComparingInt(DueLoan::getCopyRef);
+
+    private final NavigableSet<DueLoan> loans = new TreeSet<>(BY_DUE_TIME);  // Open loans by due time
+    private final Map<Integer, DueLoan> byCopy = new HashMap<>();  // Open loan of each borrowed copy
+
+    /**
+     * Adds an open loan, replacing any loan still recorded for the same copy.
+     *
+     * @param visitorId    The ID of the borrowing visitor
+     * @param historyIndex The index of the loan in the visitor's borrow history
+     * @param copyRef      The reference of the borrowed copy
+     * @param dueTime      The due time in epoch millis
+     */
+    public synchronized void add(int visitorId, int historyIndex, int copyRef, long dueTime) {
+        removeByCopy(copyRef);
+        DueLoan loan = new DueLoan(visitorId, historyIndex, copyRef, dueTime);
+        loans.add(loan);
+        byCopy.put(copyRef, loan);
+    }
+
+    /**
+     * Removes the open loan of a copy once it is returned.
+     *
+     * @param copyRef The reference of the returned copy
+     * @return The removed loan, or null if the copy had no open loan
+     */
+    public synchronized DueLoan removeByCopy(int copyRef) {
+        DueLoan loan = byCopy.remove(copyRef);
+        if (loan != null) {
+            loans.remove(loan);
+        }
+        return loan;
+    }
+
+    /**
+     * Removes the open loan of a copy only if it is the given loan, for closing a loan
+     * that is not the latest one recorded for its copy.
+     *
+     * @param copyRef      The reference of the copy
+     * @param visitorId    The ID of the borrowing visitor
+     * @param historyIndex The index of the loan in the visitor's borrow history
+     * @return true if the loan was removed
+     */
+    public synchronized boolean remove(int copyRef, int visitorId, int historyIndex) {
+        DueLoan loan = byCopy.get(copyRef);
+        if (loan == null || loan.getVisitorId() != visitorId || loan.getHistoryIndex() != historyIndex) {
+            return false;
+        }
+        removeByCopy(copyRef);
+        return true;
+    }
+
+    /**
+     * Gets the loans that are overdue at a given time, most overdue first.
+     *
+     * @param now The current time in epoch millis
+     * @return The loans due before now
+     */
+    public synchronized List<DueLoan> overdue(long now) {
+        return new ArrayList<>(loans.headSet(new DueLoan(0, 0, Integer.MIN_VALUE, now), false));
+    }
+
+    /**
+     * Gets the loans coming due in a time range, earliest first.
+     *
+     * @param from The start of the range in epoch millis (inclusive)
+     * @param to   The end of the range in epoch millis (exclusive)
+     * @return The loans due in [from, to)
+     */
+    public synchronized List<DueLoan> dueBetween(long from, long to) {
+        if (to <= from) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(loans.subSet(
+                new DueLoan(0, 0, Integer.MIN_VALUE, from), true,
+                new DueLoan(0, 0, Integer.MIN_VALUE, to), false));
+    }
+
+    /**
+     * Counts the open loans.
+     *
+     * @return The number of open loans
+     */
+    public synchronized int size() {
+        return loans.size();
+    }
+
+    /**
+     * An open loan with its due time.
+     */
+    public static class DueLoan {
+        private final int visitorId;     // The ID of the borrowing visitor
+        private final int historyIndex;  // The index of the loan in the visitor's borrow history
+        private final int copyRef;       // The reference of the borrowed copy
+        private final long dueTime;      // The due time in epoch millis
+
+        DueLoan(int visitorId, int historyIndex, int copyRef, long dueTime) {
+            this.visitorId = visitorId;
+            this.historyIndex = historyIndex;
+            this.copyRef = copyRef;
+            this.dueTime = dueTime;
+        }
+
+        // Getters for the loan fields
+
+        public int getVisitorId() {
+            return visitorId;
+        }
+
+        public int getHistoryIndex() {
+            return historyIndex;
+        }
+
+        public int getCopyRef() {
+            return copyRef;
+        }
+
+        public long getDueTime() {
+            return dueTime;
+        }
+
+        @Override
+        public String toString() {
+            return "DueLoan{" +
+                    "visitorId=" + visitorId +
+                    ", historyIndex=" + historyIndex +
+                    ", copyRef=" + copyRef +
+                    ", dueTime=" + dueTime +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.lms.circulation;
+
+/**
+ * The LedgerRecordConsumer interface receives the fields of ledger records during a scan.
+ * Fields are passed as primitives so that scanning does not create an object per record.
+ */
+public interface LedgerRecordConsumer {
+    /**
+     * This method is called once for every record visited by a scan.
+     *
+     * @param record     The index of the record in the ledger
+     * @param visitorId  The ID of the visitor who borrowed the copy
+     * @param copyRef    The reference of the borrowed copy in the CopyRegistry
+     * @param isbnKey    The canonical ISBN key of the borrowed book
+     * @param borrowTime The borrow time in epoch millis
+     * @param returnTime The return time in epoch millis, or 0 if the copy has not been returned
+     */
+    void accept(int record, int visitorId, int copyRef, long isbnKey, long borrowTime, long returnTime);
+}
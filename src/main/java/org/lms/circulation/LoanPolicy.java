@@ -0,0 +1,148 @@
+package org.lms.circulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lms.book.BookType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Singleton class holding the loan period of each book type, together with the late fine and account limits.
+ * The periods are read from a JSON file when present, so they can be configured without code changes;
+ * types missing from the file use the default period.
+ */
+public class LoanPolicy {
+    private static LoanPolicy instance;  // Singleton instance of LoanPolicy
+    private static final String POLICY_FILE = "LoanPolicy.json";  // Path to the file configuring the loan periods
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private int defaultLoanDays = 14;  // Loan period of types without their own period
+    private Map<BookType, Integer> loanDays = new EnumMap<>(BookType.class);  // Loan period of each book type, in days
+    private long fineCentsPerDay = 25;  // Late fine per overdue day and loan, in cents
+    private int maxOpenLoans = 10;  // Number of open loans above which an account is over its limit
+    private long maxFineCents = 1000;  // Accrued fines above which an account is over its limit, in cents
+
+    /**
+     * Default constructor with the built-in loan periods.
+     */
+    public LoanPolicy() {
+        loanDays.put(BookType.TECHNOLOGY, 14);
+        loanDays.put(BookType.SCIENCE, 14);
+        loanDays.put(BookType.LITERATURE, 21);
+        loanDays.put(BookType.HISTORY, 21);
+        loanDays.put(BookType.ART, 7);
+        loanDays.put(BookType.FICTION, 21);
+    }
+
+    /**
+     * Returns the singleton instance, loading the loan periods from file on first use.
+     *
+     * @return The loan policy
+     */
+    public static synchronized LoanPolicy getInstance() {
+        if (instance == null) {
+            instance = loadFromFile();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the loan period of a book type.
+     *
+     * @param type The book type, or null if unknown
+     * @return The loan period in days
+     */
+    public int getLoanDays(BookType type) {
+        Integer days = type == null ? null : loanDays.get(type);
+        return days == null ? defaultLoanDays : days;
+    }
+
+    /**
+     * Computes when a loan is due.
+     *
+     * @param type       The type of the borrowed book, or null if unknown
+     * @param borrowTime The borrow time in epoch millis
+     * @return The due time in epoch millis
+     */
+    public long dueTime(BookType type, long borrowTime) {
+        return borrowTime + getLoanDays(type) * DAY_MILLIS;
+    }
+
+    /**
+     * Computes the late fine of a loan.
+     *
+     * @param dueTime The due time in epoch millis, or 0 if the loan has no due time
+     * @param endTime The return time, or the current time for an open loan, in epoch millis
+     * @return The fine in cents; each started overdue day counts as a full day
+     */
+    public long fineCents(long dueTime, long endTime) {
+        if (dueTime == 0 || endTime <= dueTime) {
+            return 0;
+        }
+        long overdueDays = (endTime - dueTime + DAY_MILLIS - 1) / DAY_MILLIS;
+        return overdueDays * fineCentsPerDay;
+    }
+
+    // Getters and setters used for the JSON file
+
+    public int getDefaultLoanDays() {
+        return defaultLoanDays;
+    }
+
+    public void setDefaultLoanDays(int defaultLoanDays) {
+        this.defaultLoanDays = defaultLoanDays;
+    }
+
+    public long getFineCentsPerDay() {
+        return fineCentsPerDay;
+    }
+
+    public void setFineCentsPerDay(long fineCentsPerDay) {
+        this.fineCentsPerDay = fineCentsPerDay;
+    }
+
+    public int getMaxOpenLoans() {
+        return maxOpenLoans;
+    }
+
+    public void setMaxOpenLoans(int maxOpenLoans) {
+        this.maxOpenLoans = maxOpenLoans;
+    }
+
+    public long getMaxFineCents() {
+        return maxFineCents;
+    }
+
+    public void setMaxFineCents(long maxFineCents) {
+        this.maxFineCents = maxFineCents;
+    }
+
+    public Map<BookType, Integer> getLoanDays() {
+        return loanDays;
+    }
+
+    public void setLoanDays(Map<BookType, Integer> loanDays) {
+        this.loanDays = new EnumMap<>(BookType.class);
+        this.loanDays.putAll(loanDays);
+    }
+
+    /**
+     * Loads the loan periods from the JSON file, falling back to the built-in periods.
+     *
+     * @return The loaded policy
+     */
+    private static LoanPolicy loadFromFile() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            File file = new File(POLICY_FILE);
+            if (file.exists()) {
+                return objectMapper.readValue(file, LoanPolicy.class);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new LoanPolicy();
+    }
+}
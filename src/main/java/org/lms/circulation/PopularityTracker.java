@@ -0,0 +1,205 @@
+package org.lms.circulation;
+
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowStatus;
+import org.lms.user.LoanEvent;
+import org.lms.user.LoanListener;
+import org.lms.user.VisitorDatabase;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Singleton class tracking the most borrowed titles of the last week, the last month and all time.
+ *
+ * Each borrow is counted in a Count-Min Sketch and a Space-Saving top-K summary, keyed by ISBN.
+ * Recent borrows are counted in one sketch and summary per day, kept in a ring of {@link #DAYS} days;
+ * a rolling window adds up the days it covers. All-time borrows have their own sketch and summary.
+ * Memory is fixed whatever the number of borrows, and counting a borrow takes constant time.
+ */
+public class PopularityTracker implements LoanListener {
+    public static final int WEEK_DAYS = 7;    // Days in the weekly window
+    public static final int MONTH_DAYS = 30;  // Days in the monthly window
+    public static final int TOP_N = 50;       // Titles listed in the report
+
+    private static final int DAYS = MONTH_DAYS;     // Days kept in the ring
+    private static final int SKETCH_DEPTH = 4;      // Rows of each sketch
+    private static final int SKETCH_WIDTH = 1024;   // Cells per row of each sketch
+    private static final int CAPACITY = 4 * TOP_N;  // Counters of each top-K summary
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static PopularityTracker instance;  // Singleton instance of PopularityTracker
+
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();  // Local time for day boundaries
+    private final Counts[] days = new Counts[DAYS];  // Counts of recent days, indexed by epoch day modulo DAYS
+    private final Counts allTime = new Counts(-1);  // Counts of every borrow
+
+    private PopularityTracker() {
+        for (int i = 0; i < DAYS; i++) {
+            days[i] = new Counts(Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Returns the singleton instance, counting the borrows in the ledger and subscribing to new loans on first use.
+     *
+     * @return The popularity tracker
+     */
+    public static synchronized PopularityTracker getInstance() {
+        if (instance == null) {
+            instance = new PopularityTracker();
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Counts a new borrow.
+     *
+     * @param event The loan change that was recorded
+     */
+    @Override
+    public void onLoanChanged(LoanEvent event) {
+        if (event.getStatus() == BorrowStatus.BORROW) {
+            record(CopyRegistry.getInstance().getIsbnKey(event.getCopyRef()), event.getTime());
+        }
+    }
+
+    /**
+     * Counts a borrow of a title.
+     *
+     * @param isbnKey    The ISBN key of the borrowed title
+     * @param borrowTime The borrow time in epoch millis
+     */
+    public synchronized void record(long isbnKey, long borrowTime) {
+        allTime.add(isbnKey);
+        long day = epochDay(borrowTime);
+        Counts counts = days[(int) Math.floorMod(day, (long) DAYS)];
+        if (counts.day < day) {
+            counts.reset(day);  // The slot still holds a day that has left the ring
+        } else if (counts.day > day) {
+            return;  // Older than every day in the ring
+        }
+        counts.add(isbnKey);
+    }
+
+    /**
+     * Lists the most borrowed titles of the last days, including today.
+     *
+     * @param windowDays The number of days, at most {@link #MONTH_DAYS}
+     * @param limit      The maximum number of titles
+     * @return The titles in descending order of estimated borrows
+     */
+    public synchronized List<Popularity> top(int windowDays, int limit) {
+        long today = epochDay(System.currentTimeMillis());
+        List<Counts> window = new ArrayList<>();
+        for (Counts counts : days) {
+            if (counts.day > today - Math.min(windowDays, DAYS) && counts.day <= today) {
+                window.add(counts);
+            }
+        }
+
+        // Candidates are the titles tracked on any day of the window; heavy hitters of the window are among them
+        Set<Long> candidates = new HashSet<>();
+        for (Counts counts : window) {
+            for (long key : counts.topK.keys()) {
+                candidates.add(key);
+            }
+        }
+        List<Popularity> result = new ArrayList<>(candidates.size());
+        for (long key : candidates) {
+            long estimate = 0;
+            for (Counts counts : window) {
+                estimate += counts.sketch.estimate(key);
+            }
+            result.add(new Popularity(key, estimate));
+        }
+        result.sort(Comparator.comparingLong(Popularity::getBorrows).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Lists the most borrowed titles of all time.
+     *
+     * @param limit The maximum number of titles
+     * @return The titles in descending order of estimated borrows
+     */
+    public synchronized List<Popularity> topAllTime(int limit) {
+        // Both the summary and the sketch can only overcount, so the smaller of the two is the better estimate
+        List<Popularity> result = new ArrayList<>(allTime.topK.size());
+        for (SpaceSaving.Entry entry : allTime.topK.top(CAPACITY)) {
+            result.add(new Popularity(entry.getKey(), Math.min(entry.getCount(), allTime.sketch.estimate(entry.getKey()))));
+        }
+        result.sort(Comparator.comparingLong(Popularity::getBorrows).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Subscribes to new loans and counts the borrows already in the ledger, holding the visitor database
+     * so that no borrow is counted twice or missed.
+     */
+    private void start() {
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        synchronized (visitorDatabase) {
+            visitorDatabase.addLoanListener(this);
+            visitorDatabase.getLedger().scan((record, visitorId, copyRef, isbnKey, borrowTime, returnTime) ->
+                    record(isbnKey, borrowTime));
+        }
+    }
+
+    private long epochDay(long epochMillis) {
+        long local = epochMillis + zoneRules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        return Math.floorDiv(local, DAY_MILLIS);
+    }
+
+    /**
+     * A title with its estimated number of borrows.
+     */
+    public static class Popularity {
+        private final long isbnKey;  // ISBN key of the title
+        private final long borrows;  // Estimated number of borrows, never below the true number
+
+        public Popularity(long isbnKey, long borrows) {
+            this.isbnKey = isbnKey;
+            this.borrows = borrows;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+    }
+
+    /**
+     * The sketch and top-K summary of one day, or of all time.
+     */
+    private static class Counts {
+        private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        private final SpaceSaving topK = new SpaceSaving(CAPACITY);
+        private long day;  // Epoch day counted here
+
+        Counts(long day) {
+            this.day = day;
+        }
+
+        void add(long isbnKey) {
+            sketch.add(isbnKey);
+            topK.add(isbnKey);
+        }
+
+        void reset(long day) {
+            this.day = day;
+            sketch.clear();
+            topK.clear();
+        }
+    }
+}
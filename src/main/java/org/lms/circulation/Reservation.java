@@ -0,0 +1,111 @@
+package org.lms.circulation;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.lms.book.Isbn;
+
+/**
+ * The Reservation class represents a visitor waiting for a copy of a book.
+ * Reservations of a book are served by priority first, then in the order they were made.
+ */
+public class Reservation {
+
+    /**
+     * The priority of a reservation. Reservations with a higher priority are served first.
+     */
+    public enum Priority {
+        HIGH,    // Placed by a librarian, for example for course reserves
+        NORMAL   // Placed by a visitor
+    }
+
+    private int visitorId;  // The visitor waiting for the book
+    private String isbn;  // The ISBN of the reserved book
+    private long requestTime;  // Time the reservation was made, in epoch millis
+    private Priority priority = Priority.NORMAL;  // Priority of the reservation
+    private long seq;  // Order the reservation was made in, to break ties between equal times
+
+    /**
+     * Default constructor for JSON deserialization.
+     */
+    public Reservation() {
+    }
+
+    /**
+     * Constructor to create a reservation.
+     *
+     * @param visitorId   The visitor waiting for the book
+     * @param isbn        The ISBN of the reserved book
+     * @param requestTime The time the reservation was made
+     * @param priority    The priority of the reservation
+     * @param seq         The order the reservation was made in
+     */
+    public Reservation(int visitorId, String isbn, long requestTime, Priority priority, long seq) {
+        this.visitorId = visitorId;
+        this.isbn = isbn;
+        this.requestTime = requestTime;
+        this.priority = priority;
+        this.seq = seq;
+    }
+
+    /**
+     * Gets the canonical key of the reserved book's ISBN.
+     *
+     * @return The ISBN key
+     */
+    @JsonIgnore
+    public long getIsbnKey() {
+        return Isbn.toKey(isbn);
+    }
+
+    // Getters and Setters for the fields
+
+    public int getVisitorId() {
+        return visitorId;
+    }
+
+    public void setVisitorId(int visitorId) {
+        this.visitorId = visitorId;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public void setIsbn(String isbn) {
+        this.isbn = isbn;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public void setRequestTime(long requestTime) {
+        this.requestTime = requestTime;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" +
+                "visitorId=" + visitorId +
+                ", isbn='" + isbn + '\'' +
+                ", requestTime=" + requestTime +
+                ", priority=" + priority +
+                ", seq=" + seq +
+                '}';
+    }
+}
@@ -0,0 +1,376 @@
+package org.lms.circulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+import org.lms.book.HoldAllocator;
+import org.lms.user.VisitorChangeEvent;
+import org.lms.user.VisitorChangeListener;
+import org.lms.user.VisitorDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton class keeping the reservation queue of every book, for visitors waiting for a book with no copy on the shelf.
+ *
+ * Each book has its own binary heap of reservations, ordered by priority and then by request time.
+ * As the {@link HoldAllocator} of the book database, the service hands the head of a book's queue
+ * every copy of that book that is returned or added, while the book database holds its lock, so the copy
+ * is put on hold for that visitor in the same change. Taking the head costs O(log n) in the length of the queue.
+ *
+ * Reservations are saved to {@link #RESERVATION_FILE} by a background thread, so an allocation never waits for
+ * the file while the book database is held. Changes made while a save is pending are written by that save,
+ * and a pending save is completed when the application exits.
+ *
+ * The copies on hold are indexed by the visitor they are held for, kept up to date from the catalog changes.
+ * The reservations and holds of a deleted visitor are dropped.
+ */
+public class ReservationService implements HoldAllocator, VisitorChangeListener, CatalogChangeListener {
+    private static ReservationService instance;  // Singleton instance of ReservationService
+    private static final String RESERVATION_FILE = "Reservations.json";  // Path to the file storing the reservations
+    private static final Comparator<Reservation> QUEUE_ORDER = Comparator
+            .comparing(Reservation::getPriority)
+            .thenComparingLong(Reservation::getRequestTime)
+            .thenComparingLong(Reservation::getSeq);
+
+    // Writes the reservation file in the background
+    private static final ExecutorService fileWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reservation-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Long, PriorityQueue<Reservation>> queues = new HashMap<>();  // Reservations of each book, by ISBN key
+    private final Map<Integer, List<Reservation>> byVisitor = new HashMap<>();  // Reservations of each visitor
+    private final Map<Integer, Map<String, String>> holdsByVisitor = new HashMap<>();  // ISBN of each copy on hold, by visitor and copy ID
+    private final Map<String, Integer> holderByCopy = new HashMap<>();  // Visitor each copy on hold is held for, by copy ID
+    private long nextSeq = 1;  // Order of the next reservation
+    private final Object fileLock = new Object();  // Held while the file is written, so two saves never overlap
+    private boolean savePending;  // Whether a save has been requested and not yet started
+
+    private ReservationService() {
+    }
+
+    /**
+     * Returns the singleton instance, loading the reservations and starting to allocate returned copies on first use.
+     *
+     * @return The reservation service
+     */
+    public static synchronized ReservationService getInstance() {
+        if (instance == null) {
+            instance = new ReservationService();
+            instance.loadFromFile();
+            BookDatabase bookDatabase = BookDatabase.getInstance();
+            synchronized (bookDatabase) {
+                synchronized (instance) {
+                    for (BookBase book : bookDatabase.getAllBooks()) {
+                        instance.indexHolds(book);
+                    }
+                }
+                bookDatabase.addChangeListener(instance);
+                bookDatabase.setHoldAllocator(instance);
+            }
+            VisitorDatabase.getInstance().addVisitorChangeListener(instance);
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::writeFile, "reservation-writer-exit"));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the service at application start, so that copies returned from then on go to the visitors waiting.
+     */
+    public static void start() {
+        getInstance();
+    }
+
+    /**
+     * Reserves a book for a visitor. A book can only be reserved while none of its copies is on the shelf,
+     * and only once by each visitor.
+     *
+     * @param visitorId The visitor waiting for the book
+     * @param isbn      The ISBN of the book
+     * @param priority  The priority of the reservation
+     * @return true if the reservation was made, false if the book does not exist, a copy is on the shelf,
+     *         or the visitor already reserved the book or has a copy on hold
+     */
+    public boolean reserve(int visitorId, String isbn, Reservation.Priority priority) {
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        // Same lock order as a return, which allocates while holding the book database
+        synchronized (bookDatabase) {
+            BookBase book = bookDatabase.findBookByIsbn(isbn);
+            if (book == null) {
+                return false;
+            }
+            for (BookCopy copy : book.getCopies()) {
+                if (copy.getStatus() == BookStatus.AVAILABLE
+                        || copy.getStatus() == BookStatus.ON_HOLD && copy.getBorrowVisitorId() == visitorId) {
+                    return false;
+                }
+            }
+            synchronized (this) {
+                if (find(visitorId, book.getIsbnKey()) != null) {
+                    return false;
+                }
+                Reservation reservation = new Reservation(visitorId, book.getIsbn(), System.currentTimeMillis(), priority, nextSeq++);
+                enqueue(reservation);
+                saveToFile();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Cancels a visitor's reservation of a book.
+     *
+     * @param visitorId The visitor
+     * @param isbnKey   The canonical ISBN key of the book
+     * @return true if the reservation was cancelled, false if there was none
+     */
+    public synchronized boolean cancel(int visitorId, long isbnKey) {
+        Reservation reservation = find(visitorId, isbnKey);
+        if (reservation == null) {
+            return false;
+        }
+        dequeue(reservation);
+        saveToFile();
+        return true;
+    }
+
+    /**
+     * Takes the first reservation of a book, when a copy of it becomes free.
+     *
+     * @param isbnKey The canonical ISBN key of the book
+     * @return The ID of the visitor the copy is now held for, or 0 if nobody is waiting
+     */
+    @Override
+    public synchronized int allocate(long isbnKey) {
+        PriorityQueue<Reservation> queue = queues.get(isbnKey);
+        if (queue == null) {
+            return 0;
+        }
+        Reservation reservation = queue.poll();
+        if (queue.isEmpty()) {
+            queues.remove(isbnKey);
+        }
+        List<Reservation> reservations = byVisitor.get(reservation.getVisitorId());
+        reservations.remove(reservation);
+        if (reservations.isEmpty()) {
+            byVisitor.remove(reservation.getVisitorId());
+        }
+        saveToFile();
+        return reservation.getVisitorId();
+    }
+
+    /**
+     * Gets the reservations of a visitor.
+     *
+     * @param visitorId The visitor
+     * @return The reservations still waiting, oldest first
+     */
+    public synchronized List<Reservation> getReservations(int visitorId) {
+        List<Reservation> reservations = new ArrayList<>(byVisitor.getOrDefault(visitorId, Collections.emptyList()));
+        reservations.sort(Comparator.comparingLong(Reservation::getSeq));
+        return reservations;
+    }
+
+    /**
+     * Gets the position of a reservation in the queue of its book.
+     *
+     * @param reservation The reservation
+     * @return The 1-based position, or 0 if the reservation is no longer waiting
+     */
+    public synchronized int getPosition(Reservation reservation) {
+        PriorityQueue<Reservation> queue = queues.get(reservation.getIsbnKey());
+        if (queue == null || !queue.contains(reservation)) {
+            return 0;
+        }
+        int ahead = 0;
+        for (Reservation other : queue) {
+            if (QUEUE_ORDER.compare(other, reservation) < 0) {
+                ahead++;
+            }
+        }
+        return ahead + 1;
+    }
+
+    /**
+     * Gets the number of visitors waiting for a book.
+     *
+     * @param isbnKey The canonical ISBN key of the book
+     * @return The length of the queue
+     */
+    public synchronized int getQueueLength(long isbnKey) {
+        PriorityQueue<Reservation> queue = queues.get(isbnKey);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Keeps the index of copies on hold up to date with a catalog change.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public synchronized void onCatalogChanged(CatalogChangeEvent event) {
+        switch (event.getType()) {
+            case BOOK_DELETED:
+                for (BookCopy copy : event.getBook().getCopies()) {
+                    removeHold(copy.getCopyId());
+                }
+                break;
+            case COPY_DELETED:
+                removeHold(event.getCopy().getCopyId());
+                break;
+            default:
+                indexHolds(event.getBook());
+                break;
+        }
+    }
+
+    /**
+     * Drops the reservations and releases the holds of a deleted visitor.
+     * Released copies go to the next visitor waiting, or back on the shelf.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onVisitorChanged(VisitorChangeEvent event) {
+        if (event.getType() != VisitorChangeEvent.Type.VISITOR_DELETED) {
+            return;
+        }
+        int visitorId = event.getVisitor().getVisitorId();
+        Map<String, String> holds;
+        synchronized (this) {
+            List<Reservation> reservations = byVisitor.get(visitorId);
+            if (reservations != null) {
+                for (Reservation reservation : new ArrayList<>(reservations)) {
+                    dequeue(reservation);
+                }
+                saveToFile();
+            }
+            holds = new HashMap<>(holdsByVisitor.getOrDefault(visitorId, Collections.emptyMap()));
+        }
+        // Released outside this lock, since releasing a hold allocates while holding the book database
+        for (Map.Entry<String, String> hold : holds.entrySet()) {
+            BookDatabase.getInstance().releaseHold(hold.getValue(), hold.getKey());
+        }
+    }
+
+    /**
+     * Records the copies of a book that are on hold, and forgets its copies that no longer are.
+     */
+    private void indexHolds(BookBase book) {
+        for (BookCopy copy : book.getCopies()) {
+            removeHold(copy.getCopyId());
+            if (copy.getStatus() == BookStatus.ON_HOLD) {
+                holderByCopy.put(copy.getCopyId(), copy.getBorrowVisitorId());
+                holdsByVisitor.computeIfAbsent(copy.getBorrowVisitorId(), id -> new HashMap<>()).put(copy.getCopyId(), book.getIsbn());
+            }
+        }
+    }
+
+    private void removeHold(String copyId) {
+        Integer holder = holderByCopy.remove(copyId);
+        if (holder != null) {
+            Map<String, String> holds = holdsByVisitor.get(holder);
+            holds.remove(copyId);
+            if (holds.isEmpty()) {
+                holdsByVisitor.remove(holder);
+            }
+        }
+    }
+
+    private Reservation find(int visitorId, long isbnKey) {
+        for (Reservation reservation : byVisitor.getOrDefault(visitorId, Collections.emptyList())) {
+            if (reservation.getIsbnKey() == isbnKey) {
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    private void enqueue(Reservation reservation) {
+        queues.computeIfAbsent(reservation.getIsbnKey(), key -> new PriorityQueue<>(QUEUE_ORDER)).add(reservation);
+        byVisitor.computeIfAbsent(reservation.getVisitorId(), id -> new ArrayList<>()).add(reservation);
+    }
+
+    private void dequeue(Reservation reservation) {
+        PriorityQueue<Reservation> queue = queues.get(reservation.getIsbnKey());
+        queue.remove(reservation);
+        if (queue.isEmpty()) {
+            queues.remove(reservation.getIsbnKey());
+        }
+        List<Reservation> reservations = byVisitor.get(reservation.getVisitorId());
+        reservations.remove(reservation);
+        if (reservations.isEmpty()) {
+            byVisitor.remove(reservation.getVisitorId());
+        }
+    }
+
+    /**
+     * Requests a save of the waiting reservations, unless one is already pending. Called holding this lock.
+     */
+    private void saveToFile() {
+        if (!savePending) {
+            savePending = true;
+            fileWriter.execute(this::writeFile);
+        }
+    }
+
+    /**
+     * Saves the waiting reservations to the JSON file. They are copied under this lock and written outside it.
+     */
+    private void writeFile() {
+        synchronized (fileLock) {
+            List<Reservation> reservations = new ArrayList<>();
+            synchronized (this) {
+                savePending = false;
+                for (PriorityQueue<Reservation> queue : queues.values()) {
+                    reservations.addAll(queue);
+                }
+            }
+            reservations.sort(Comparator.comparingLong(Reservation::getSeq));
+            ObjectMapper objectMapper = new ObjectMapper();
+            try {
+                objectMapper.writeValue(new File(RESERVATION_FILE), reservations);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Loads the reservations from the JSON file.
+     */
+    private void loadFromFile() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            File file = new File(RESERVATION_FILE);
+            if (file.exists()) {
+                List<Reservation> reservations = objectMapper.readValue(
+                        file,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, Reservation.class)
+                );
+                for (Reservation reservation : reservations) {
+                    enqueue(reservation);
+                    nextSeq = Math.max(nextSeq, reservation.getSeq() + 1);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.lms.circulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SpaceSaving class tracks the most frequent keys of a stream with a fixed number of counters.
+ * When a new key arrives and all counters are in use, the counter with the lowest count is handed
+ * over to the new key, which inherits that count as its possible overcount.
+ *
+ * Counters are kept in buckets of equal count, linked in ascending order (the "stream summary"),
+ * so counting a key and finding the lowest counter both take constant time.
+ */
+public class SpaceSaving {
+    private final int capacity;  // Maximum number of counters
+    private final Map<Long, Counter> counters = new HashMap<>();  // Counter of each tracked key
+    private Bucket lowest;   // Bucket with the lowest count
+    private Bucket highest;  // Bucket with the highest count
+
+    /**
+     * Constructor to create an empty tracker.
+     *
+     * @param capacity The number of counters; keys whose share of the stream is above 1/capacity are always tracked
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key The key to count
+     */
+    public void add(long key) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            increment(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter(key, 0);
+            counters.put(key, counter);
+            if (lowest == null || lowest.count != 1) {
+                Bucket bucket = new Bucket(1);
+                linkBucketBefore(bucket, lowest);
+            }
+            lowest.attach(counter);
+            return;
+        }
+        // Replace the key with the lowest count
+        counter = lowest.head;
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.error = lowest.count;
+        counters.put(key, counter);
+        increment(counter);
+    }
+
+    /**
+     * Lists the tracked keys with the highest counts.
+     *
+     * @param limit The maximum number of entries
+     * @return The entries in descending order of count
+     */
+    public List<Entry> top(int limit) {
+        List<Entry> entries = new ArrayList<>(Math.min(limit, counters.size()));
+        for (Bucket bucket = highest; bucket != null && entries.size() < limit; bucket = bucket.prev) {
+            for (Counter counter = bucket.head; counter != null && entries.size() < limit; counter = counter.next) {
+                entries.add(new Entry(counter.key, bucket.count, counter.error));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Lists every tracked key.
+     *
+     * @return The tracked keys, in no particular order
+     */
+    public long[] keys() {
+        long[] keys = new long[counters.size()];
+        int i = 0;
+        for (long key : counters.keySet()) {
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Removes all counters.
+     */
+    public void clear() {
+        counters.clear();
+        lowest = null;
+        highest = null;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Moves a counter to the bucket one count higher, creating that bucket if needed.
+     */
+    private void increment(Counter counter) {
+        Bucket bucket = counter.bucket;
+        Bucket next = bucket.next;
+        if (next == null || next.count != bucket.count + 1) {
+            next = new Bucket(bucket.count + 1);
+            linkBucketBefore(next, bucket.next);
+        }
+        bucket.detach(counter);
+        next.attach(counter);
+        if (bucket.head == null) {
+            unlinkBucket(bucket);
+        }
+    }
+
+    /**
+     * Links a bucket into the ordered bucket list in front of another one.
+     *
+     * @param bucket The bucket to link
+     * @param before The bucket to link it in front of, or null to link it as the highest
+     */
+    private void linkBucketBefore(Bucket bucket, Bucket before) {
+        Bucket after = before == null ? highest : before.prev;
+        bucket.prev = after;
+        bucket.next = before;
+        if (after == null) {
+            lowest = bucket;
+        } else {
+            after.next = bucket;
+        }
+        if (before == null) {
+            highest = bucket;
+        } else {
+            before.prev = bucket;
+        }
+    }
+
+    private void unlinkBucket(Bucket bucket) {
+        if (bucket.prev == null) {
+            lowest = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            highest = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * A tracked key with its count.
+     */
+    public static class Entry {
+        private final long key;    // The tracked key
+        private final long count;  // Counted occurrences, possibly including the overcount
+        private final long error;  // Maximum overcount inherited from a replaced key
+
+        public Entry(long key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+
+    /**
+     * The counter of one tracked key, linked with the other counters of its bucket.
+     */
+    private static class Counter {
+        private long key;
+        private long error;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+
+        Counter(long key, long error) {
+            this.key = key;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The counters sharing one count.
+     */
+    private static class Bucket {
+        private final long count;
+        private Counter head;
+        private Bucket prev;  // Bucket with the next lower count
+        private Bucket next;  // Bucket with the next higher count
+
+        Bucket(long count) {
+            this.count = count;
+        }
+
+        void attach(Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = head;
+            if (head != null) {
+                head.prev = counter;
+            }
+            head = counter;
+        }
+
+        void detach(Counter counter) {
+            if (counter.prev == null) {
+                head = counter.next;
+            } else {
+                counter.prev.next = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+            counter.prev = null;
+            counter.next = null;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.lms.inventory;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.CopyRegistry;
+import org.lms.book.Section;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Stocktake class collects the shelf scans of an inventory and reconciles them with the catalog.
+ *
+ * Each scan file lists the copy IDs read from the shelves of one section, one per line. A line may carry more
+ * comma or tab separated fields after the copy ID, which are ignored, and blank lines and lines starting with
+ * '#' are skipped. Copy IDs are mapped to their dense {@link CopyRegistry} reference as they are read, in batches,
+ * so the scans of a section are kept as one bitmap and scanning a copy twice costs nothing.
+ *
+ * Reconciling takes a snapshot of the catalog as bitmaps over the same references, then derives every result
+ * with whole-bitmap and, or and and-not operations, 64 copies at a time:
+ * <ul>
+ *     <li>missing: copies recorded as available or on hold in a section that were not scanned in any section;</li>
+ *     <li>misplaced: copies scanned in a section that are recorded in another;</li>
+ *     <li>on loan: copies scanned on a shelf that are recorded as borrowed;</li>
+ *     <li>not in catalog: scanned copies that have been deleted;</li>
+ *     <li>unknown: scanned copy IDs the system has never seen.</li>
+ * </ul>
+ * A borrowed copy found in the wrong section is both misplaced and on loan. Only sections with scans are
+ * reconciled, so an inventory can be done one section at a time.
+ */
+public class Stocktake {
+    private static final int BATCH_SIZE = 8192;  // Copy IDs resolved per registry lookup
+
+    private final Map<Section, BitSet> scanned = new EnumMap<>(Section.class);  // Copies scanned in each section
+    private final Map<Section, List<String>> unresolved = new EnumMap<>(Section.class);  // Copy IDs not yet registered
+    private int scanCount;  // Copy IDs read from all scan files
+    private int duplicateScans;  // Copy IDs read again in the same section
+
+    /**
+     * Reads a scan file of one section.
+     *
+     * @param section The section whose shelves were scanned
+     * @param file    The scan file
+     * @return The number of copy IDs read
+     * @throws IOException If the file cannot be read
+     */
+    public int ingest(Section section, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return ingest(section, reader);
+        }
+    }
+
+    /**
+     * Reads the scans of one section.
+     *
+     * @param section The section whose shelves were scanned
+     * @param reader  The scans, in the scan file format
+     * @return The number of copy IDs read
+     * @throws IOException If the scans cannot be read
+     */
+    public synchronized int ingest(Section section, Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        BitSet bits = scanned.computeIfAbsent(section, s -> new BitSet());
+        List<String> misses = unresolved.computeIfAbsent(section, s -> new ArrayList<>());
+
+        String[] batch = new String[BATCH_SIZE];
+        int count = 0;
+        int read = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            String copyId = parseCopyId(line);
+            if (copyId == null) {
+                continue;
+            }
+            batch[count++] = copyId;
+            read++;
+            if (count == batch.length) {
+                resolve(batch, count, bits, misses);
+                count = 0;
+            }
+        }
+        resolve(batch, count, bits, misses);
+        scanCount += read;
+        return read;
+    }
+
+    /**
+     * Discards the scans of a section, so it can be scanned again.
+     *
+     * @param section The section to discard
+     */
+    public synchronized void clear(Section section) {
+        scanned.remove(section);
+        unresolved.remove(section);
+    }
+
+    /**
+     * Gets the number of copy IDs read so far, including repeated scans.
+     *
+     * @return The number of copy IDs read
+     */
+    public synchronized int getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     * Reconciles the scans with the current catalog.
+     *
+     * @return The report of the discrepancies of every scanned section
+     */
+    public synchronized StocktakeReport reconcile() {
+        long reconciledAt = System.currentTimeMillis();
+        Map<Section, BitSet> recorded = new EnumMap<>(Section.class);
+        Map<Section, BitSet> expected = new EnumMap<>(Section.class);
+        for (Section section : Section.values()) {
+            recorded.put(section, new BitSet());
+            expected.put(section, new BitSet());
+        }
+        snapshotCatalog(recorded, expected);
+
+        // Copies added to the catalog since they were scanned are now registered
+        CopyRegistry registry = CopyRegistry.getInstance();
+        Map<Section, List<String>> unknown = new EnumMap<>(Section.class);
+        for (Map.Entry<Section, List<String>> entry : unresolved.entrySet()) {
+            List<String> misses = entry.getValue();
+            String[] copyIds = misses.toArray(new String[0]);
+            misses.clear();
+            resolve(copyIds, copyIds.length, scanned.get(entry.getKey()), misses);
+            Set<String> distinct = new LinkedHashSet<>(misses);
+            duplicateScans += misses.size() - distinct.size();
+            misses.clear();
+            misses.addAll(distinct);
+            unknown.put(entry.getKey(), new ArrayList<>(distinct));
+        }
+
+        BitSet catalog = new BitSet();
+        BitSet available = new BitSet();
+        for (Section section : Section.values()) {
+            catalog.or(recorded.get(section));
+            available.or(expected.get(section));
+        }
+        BitSet borrowed = (BitSet) catalog.clone();
+        borrowed.andNot(available);
+        BitSet scannedAnywhere = new BitSet();
+        for (BitSet bits : scanned.values()) {
+            scannedAnywhere.or(bits);
+        }
+
+        Map<Section, BitSet> missing = new EnumMap<>(Section.class);
+        Map<Section, BitSet> misplaced = new EnumMap<>(Section.class);
+        Map<Section, BitSet> onLoan = new EnumMap<>(Section.class);
+        Map<Section, BitSet> notInCatalog = new EnumMap<>(Section.class);
+        int copiesExpected = 0;
+        int copiesScanned = scannedAnywhere.cardinality();
+        for (Map.Entry<Section, BitSet> entry : scanned.entrySet()) {
+            Section section = entry.getKey();
+            BitSet shelf = entry.getValue();
+
+            BitSet missed = (BitSet) expected.get(section).clone();
+            missed.andNot(scannedAnywhere);
+            missing.put(section, missed);
+
+            BitSet elsewhere = (BitSet) shelf.clone();
+            elsewhere.and(catalog);
+            elsewhere.andNot(recorded.get(section));
+            misplaced.put(section, elsewhere);
+
+            BitSet lent = (BitSet) shelf.clone();
+            lent.and(borrowed);
+            onLoan.put(section, lent);
+
+            BitSet deleted = (BitSet) shelf.clone();
+            deleted.andNot(catalog);
+            notInCatalog.put(section, deleted);
+
+            copiesExpected += expected.get(section).cardinality();
+            copiesScanned += unknown.get(section).size();
+        }
+        return new StocktakeReport(reconciledAt, copiesExpected, copiesScanned, duplicateScans,
+                recorded, missing, misplaced, onLoan, notInCatalog, unknown);
+    }
+
+    /**
+     * Marks the copies recorded in each section, and those of them that should be on the shelf.
+     * Every catalog copy is registered, so copies never borrowed can be matched with their scans.
+     */
+    private static void snapshotCatalog(Map<Section, BitSet> recorded, Map<Section, BitSet> expected) {
+        List<String> isbns = new ArrayList<>();
+        List<String> copyIds = new ArrayList<>();
+        List<Section> sections = new ArrayList<>();
+        BitSet onShelf = new BitSet();
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        synchronized (bookDatabase) {
+            for (BookBase book : bookDatabase.getAllBooks()) {
+                for (BookCopy copy : book.getCopies()) {
+                    onShelf.set(copyIds.size(), copy.getStatus() != BookStatus.UNAVAILABLE);
+                    isbns.add(book.getIsbn());
+                    copyIds.add(copy.getCopyId());
+                    sections.add(book.getSection());
+                }
+            }
+        }
+
+        int[] refs = CopyRegistry.getInstance().registerAll(isbns.toArray(new String[0]), copyIds.toArray(new String[0]));
+        for (int i = 0; i < refs.length; i++) {
+            Section section = sections.get(i);
+            if (section == null) {
+                continue;
+            }
+            recorded.get(section).set(refs[i]);
+            if (onShelf.get(i)) {
+                expected.get(section).set(refs[i]);
+            }
+        }
+    }
+
+    /**
+     * Maps a batch of copy IDs to references and marks them as scanned.
+     */
+    private void resolve(String[] copyIds, int count, BitSet bits, List<String> misses) {
+        int[] refs = CopyRegistry.getInstance().findRefs(copyIds, count);
+        for (int i = 0; i < count; i++) {
+            if (refs[i] < 0) {
+                misses.add(copyIds[i]);
+            } else if (bits.get(refs[i])) {
+                duplicateScans++;
+            } else {
+                bits.set(refs[i]);
+            }
+        }
+    }
+
+    /**
+     * Extracts the copy ID from a line of a scan file.
+     *
+     * @param line The line
+     * @return The copy ID, or null if the line holds none
+     */
+    private static String parseCopyId(String line) {
+        int end = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ',' || c == '\t') {
+                end = i;
+                break;
+            }
+        }
+        String copyId = line.substring(0, end).trim();
+        return copyId.isEmpty() || copyId.charAt(0) == '#' ? null : copyId;
+    }
+}
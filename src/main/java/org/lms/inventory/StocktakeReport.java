@@ -0,0 +1,190 @@
+package org.lms.inventory;
+
+import org.lms.book.Section;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The StocktakeReport class holds the result of reconciling the shelf scans of a stocktake with the catalog.
+ * Copies are identified by their {@link org.lms.book.CopyRegistry} reference, and every set of copies is a bitmap
+ * indexed by reference. Only the sections that were scanned are reconciled.
+ */
+public class StocktakeReport {
+    private final long reconciledAt;  // Time of the reconciliation in epoch millis
+    private final Set<Section> sections;  // Sections that were scanned
+    private final int copiesExpected;  // Copies recorded on the shelves of the scanned sections
+    private final int copiesScanned;  // Distinct copies scanned
+    private final int duplicateScans;  // Scans of a copy already scanned in the same section
+    private final Map<Section, BitSet> recorded;  // Catalog copies recorded in each section, whatever their status
+    private final Map<Section, BitSet> missing;  // Copies expected in each section that were not scanned anywhere
+    private final Map<Section, BitSet> misplaced;  // Copies scanned in each section but recorded in another
+    private final Map<Section, BitSet> onLoan;  // Copies scanned in each section but recorded as borrowed
+    private final Map<Section, BitSet> notInCatalog;  // Known copies scanned in each section that were deleted
+    private final Map<Section, List<String>> unknown;  // Scanned copy IDs the system has never seen
+
+    /**
+     * Constructor to create a report. The bitmaps are taken over by the report and must not be changed afterwards.
+     *
+     * @param reconciledAt   The time of the reconciliation
+     * @param copiesExpected The number of copies recorded on the shelves of the scanned sections
+     * @param copiesScanned  The number of distinct copies scanned
+     * @param duplicateScans The number of repeated scans
+     * @param recorded       The catalog copies recorded in every section
+     * @param missing        The missing copies of each scanned section
+     * @param misplaced      The misplaced copies found in each scanned section
+     * @param onLoan         The copies recorded as borrowed found in each scanned section
+     * @param notInCatalog   The deleted copies found in each scanned section
+     * @param unknown        The unknown copy IDs scanned in each section
+     */
+    public StocktakeReport(long reconciledAt, int copiesExpected, int copiesScanned, int duplicateScans,
+                           Map<Section, BitSet> recorded, Map<Section, BitSet> missing,
+                           Map<Section, BitSet> misplaced, Map<Section, BitSet> onLoan,
+                           Map<Section, BitSet> notInCatalog, Map<Section, List<String>> unknown) {
+        this.reconciledAt = reconciledAt;
+        this.sections = Collections.unmodifiableSet(missing.isEmpty()
+                ? EnumSet.noneOf(Section.class) : EnumSet.copyOf(missing.keySet()));
+        this.copiesExpected = copiesExpected;
+        this.copiesScanned = copiesScanned;
+        this.duplicateScans = duplicateScans;
+        this.recorded = recorded;
+        this.missing = missing;
+        this.misplaced = misplaced;
+        this.onLoan = onLoan;
+        this.notInCatalog = notInCatalog;
+        this.unknown = unknown;
+    }
+
+    /**
+     * Finds the section a copy is recorded in.
+     *
+     * @param copyRef The copy reference
+     * @return The section of the copy in the catalog, or null if the copy is not in the catalog
+     */
+    public Section getRecordedSection(int copyRef) {
+        for (Map.Entry<Section, BitSet> entry : recorded.entrySet()) {
+            if (entry.getValue().get(copyRef)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the copies expected on the shelves of a section, available or on hold, that were not found on any shelf.
+     *
+     * @param section A scanned section
+     * @return The references of the missing copies, in ascending order
+     */
+    public int[] getMissing(Section section) {
+        return refsOf(missing, section);
+    }
+
+    /**
+     * Gets the copies found in a section that are recorded in another section.
+     *
+     * @param section A scanned section
+     * @return The references of the misplaced copies, in ascending order
+     */
+    public int[] getMisplaced(Section section) {
+        return refsOf(misplaced, section);
+    }
+
+    /**
+     * Gets the copies found in a section that are recorded as borrowed.
+     *
+     * @param section A scanned section
+     * @return The references of the copies, in ascending order
+     */
+    public int[] getOnLoan(Section section) {
+        return refsOf(onLoan, section);
+    }
+
+    /**
+     * Gets the copies found in a section that have been deleted from the catalog.
+     *
+     * @param section A scanned section
+     * @return The references of the copies, in ascending order
+     */
+    public int[] getNotInCatalog(Section section) {
+        return refsOf(notInCatalog, section);
+    }
+
+    /**
+     * Gets the copy IDs scanned in a section that the system has never seen.
+     *
+     * @param section A scanned section
+     * @return The unknown copy IDs, in the order they were scanned
+     */
+    public List<String> getUnknown(Section section) {
+        List<String> ids = unknown.get(section);
+        return ids == null ? Collections.emptyList() : Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Counts the discrepancies of all scanned sections.
+     *
+     * @return The number of missing, misplaced, borrowed, deleted and unknown copies
+     */
+    public int countDiscrepancies() {
+        int count = 0;
+        for (Section section : sections) {
+            count += missing.get(section).cardinality() + misplaced.get(section).cardinality()
+                    + onLoan.get(section).cardinality() + notInCatalog.get(section).cardinality()
+                    + getUnknown(section).size();
+        }
+        return count;
+    }
+
+    // Getters for the report fields
+
+    public long getReconciledAt() {
+        return reconciledAt;
+    }
+
+    public Set<Section> getSections() {
+        return sections;
+    }
+
+    public int getCopiesExpected() {
+        return copiesExpected;
+    }
+
+    public int getCopiesScanned() {
+        return copiesScanned;
+    }
+
+    public int getDuplicateScans() {
+        return duplicateScans;
+    }
+
+    private static int[] refsOf(Map<Section, BitSet> bitmaps, Section section) {
+        BitSet bits = bitmaps.get(section);
+        return bits == null ? new int[0] : bits.stream().toArray();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("Scanned ").append(copiesScanned).append(" copies against ")
+                .append(copiesExpected).append(" expected on the shelves: ");
+        int discrepancies = countDiscrepancies();
+        if (discrepancies == 0) {
+            return text.append("no discrepancies").toString();
+        }
+        text.append(discrepancies).append(discrepancies == 1 ? " discrepancy" : " discrepancies");
+        List<String> lines = new ArrayList<>();
+        for (Section section : sections) {
+            lines.add(String.format("  %s: %d missing, %d misplaced, %d on loan, %d not in catalog, %d unknown",
+                    section, missing.get(section).cardinality(), misplaced.get(section).cardinality(),
+                    onLoan.get(section).cardinality(), notInCatalog.get(section).cardinality(),
+                    getUnknown(section).size()));
+        }
+        return text.append('\n').append(String.join("\n", lines)).toString();
+    }
+}
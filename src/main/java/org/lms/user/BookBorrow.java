@@ -1,70 +1,80 @@
 package org.lms.user;
 
+import org.lms.book.CopyRegistry;
+
 import java.util.Date;
 
 /**
  * The BookBorrow class represents a borrowing record for a specific book copy.
+ * It is a view over one row of a visitor's {@link BorrowHistory}; reads and writes go straight to the history columns.
  */
 public class BookBorrow {
-    private String isbn;             // The ISBN of the book
-    private String copyId;           // The ID of the book copy
-    private BorrowStatus status;     // The status (borrowed or returned)
-    private Date borrowTime;         // The time the book was borrowed
-    private Date returnTime;         // The time the book was returned
+    private final BorrowHistory history;  // The history holding the record
+    private final int index;              // The row of the record in the history
+
+    BookBorrow(BorrowHistory history, int index) {
+        this.history = history;
+        this.index = index;
+    }
 
-    // Getter and setter for the ISBN
+    // Getter for the ISBN
     public String getIsbn() {
-        return isbn;
+        return CopyRegistry.getInstance().getIsbn(history.getCopyRef(index));
     }
 
-    public void setIsbn(String isbn) {
-        this.isbn = isbn;
+    // Canonical numeric key of the ISBN, used for comparisons and lookups
+    public long getIsbnKey() {
+        return CopyRegistry.getInstance().getIsbnKey(history.getCopyRef(index));
     }
 
-    // Getter and setter for the copy ID
+    // Getter for the copy ID
     public String getCopyId() {
-        return copyId;
+        return CopyRegistry.getInstance().getCopyId(history.getCopyRef(index));
     }
 
-    public void setCopyId(String copyId) {
-        this.copyId = copyId;
+    // Getter for the copy reference in the CopyRegistry
+    public int getCopyRef() {
+        return history.getCopyRef(index);
     }
 
     // Getter and setter for the status
     public BorrowStatus getStatus() {
-        return status;
+        return history.isReturned(index) ? BorrowStatus.RETURN : BorrowStatus.BORROW;
     }
 
     public void setStatus(BorrowStatus status) {
-        this.status = status;
+        history.setReturned(index, status == BorrowStatus.RETURN);
     }
 
-    // Getter and setter for the borrow time
+    // Getter for the borrow time
     public Date getBorrowTime() {
-        return borrowTime;
+        return new Date(history.getBorrowTime(index));
     }
 
-    public void setBorrowTime(Date borrowTime) {
-        this.borrowTime = borrowTime;
+    // Getter for the due time
+    public Date getDueTime() {
+        long dueTime = history.getDueTime(index);
+        return dueTime == 0 ? null : new Date(dueTime);
     }
 
     // Getter and setter for the return time
     public Date getReturnTime() {
-        return returnTime;
+        return history.isReturned(index) ? new Date(history.getReturnTime(index)) : null;
     }
 
     public void setReturnTime(Date returnTime) {
-        this.returnTime = returnTime;
+        history.setReturnTime(index, returnTime == null ? 0 : returnTime.getTime());
     }
 
     @Override
     public String toString() {
         return "BookBorrow{" +
-                "isbn='" + isbn + '\'' +
-                ", copyId='" + copyId + '\'' +
-                ", status=" + status +
-                ", borrowTime=" + borrowTime +
-                ", returnTime=" + returnTime +
+                "isbn='" + getIsbn() + '\'' +
+                ", copyId='" + getCopyId() + '\'' +
+                ", status=" + getStatus() +
+                ", borrowTime=" + getBorrowTime() +
+                ", dueTime=" + getDueTime() +
+                ", returnTime=" + getReturnTime() +
                 '}';
     }
 }
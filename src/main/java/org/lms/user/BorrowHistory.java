@@ -0,0 +1,419 @@
+package org.lms.user;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.lms.book.CopyRegistry;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BorrowHistory class stores all borrow records of one visitor in columnar form.
+ * Each record is a borrow time, a due time, a return time, a copy reference from the {@link CopyRegistry}
+ * and a returned bit, all held in primitive arrays. {@link BookBorrow} objects are only views over a row.
+ *
+ * Records are appended as loans are made, so they are in borrow-time order.
+ *
+ * On disk the block is written as parallel arrays, with borrow times delta-encoded
+ * and due and return times stored relative to their borrow time. Copies are written as indexes into the
+ * {@link CopyDictionary} of the visitor file, so each copy ID and ISBN is written once per file rather than
+ * once per record. A history written without a dictionary, for example into an audit record, spells out
+ * the ISBN and copy ID of each record instead.
+ */
+@JsonSerialize(using = BorrowHistory.Serializer.class)
+@JsonDeserialize(using = BorrowHistory.Deserializer.class)
+public class BorrowHistory {
+    private long[] borrowTimes = new long[4];  // Borrow time of each record, in epoch millis
+    private long[] dueTimes = new long[4];     // Due time of each record, in epoch millis (0 if none was set)
+    private long[] returnTimes = new long[4];  // Return time of each record, in epoch millis (0 if not returned)
+    private int[] copyRefs = new int[4];       // Copy reference of each record
+    private final BitSet returned = new BitSet();  // Set bit for every returned record
+    private int size;                          // Number of records
+
+    /**
+     * Appends a new open borrow record.
+     *
+     * @param copyRef    The reference of the borrowed copy
+     * @param borrowTime The borrow time in epoch millis
+     * @param dueTime    The due time in epoch millis, or 0 if there is none
+     * @return The index of the new record
+     */
+    public int append(int copyRef, long borrowTime, long dueTime) {
+        if (size == borrowTimes.length) {
+            int capacity = size * 2;
+            borrowTimes = Arrays.copyOf(borrowTimes, capacity);
+            dueTimes = Arrays.copyOf(dueTimes, capacity);
+            returnTimes = Arrays.copyOf(returnTimes, capacity);
+            copyRefs = Arrays.copyOf(copyRefs, capacity);
+        }
+        borrowTimes[size] = borrowTime;
+        dueTimes[size] = dueTime;
+        returnTimes[size] = 0;
+        copyRefs[size] = copyRef;
+        returned.clear(size);
+        return size++;
+    }
+
+    /**
+     * Marks a record as returned.
+     *
+     * @param index      The index of the record
+     * @param returnTime The return time in epoch millis
+     */
+    public void markReturned(int index, long returnTime) {
+        returned.set(index);
+        returnTimes[index] = returnTime;
+    }
+
+    /**
+     * Finds the most recent open record for a copy.
+     *
+     * @param copyRef The reference of the copy
+     * @return The index of the open record, or -1 if the copy is not currently borrowed
+     */
+    public int findOpen(int copyRef) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (copyRefs[i] == copyRef && !returned.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the records, so they can be read on another thread while loans change this history.
+     *
+     * @return An independent history with the same records
+     */
+    public BorrowHistory copy() {
+        BorrowHistory copy = new BorrowHistory();
+        int capacity = Math.max(size, 4);
+        copy.borrowTimes = Arrays.copyOf(borrowTimes, capacity);
+        copy.dueTimes = Arrays.copyOf(dueTimes, capacity);
+        copy.returnTimes = Arrays.copyOf(returnTimes, capacity);
+        copy.copyRefs = Arrays.copyOf(copyRefs, capacity);
+        copy.returned.or(returned);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Counts the records that have not been returned yet.
+     *
+     * @return The number of open records
+     */
+    public int countOpen() {
+        return size - returned.cardinality();
+    }
+
+    // Getters for the columns of a single record
+
+    public int size() {
+        return size;
+    }
+
+    public int getCopyRef(int index) {
+        return copyRefs[index];
+    }
+
+    public long getBorrowTime(int index) {
+        return borrowTimes[index];
+    }
+
+    public long getDueTime(int index) {
+        return dueTimes[index];
+    }
+
+    /**
+     * Sets the due time of a record, for example to give older records a due date.
+     *
+     * @param index   The index of the record
+     * @param dueTime The due time in epoch millis
+     */
+    public void setDueTime(int index, long dueTime) {
+        dueTimes[index] = dueTime;
+    }
+
+    public long getReturnTime(int index) {
+        return returnTimes[index];
+    }
+
+    public boolean isReturned(int index) {
+        return returned.get(index);
+    }
+
+    // Used by the BookBorrow view to write through a status change
+    void setReturned(int index, boolean value) {
+        returned.set(index, value);
+        if (!value) {
+            returnTimes[index] = 0;
+        }
+    }
+
+    // Used by the BookBorrow view to write through a return time change
+    void setReturnTime(int index, long returnTime) {
+        returnTimes[index] = returnTime;
+    }
+
+    /**
+     * Returns a read-only list of {@link BookBorrow} views over the records.
+     *
+     * @return A list view of the history
+     */
+    public List<BookBorrow> asList() {
+        return new AbstractList<BookBorrow>() {
+            @Override
+            public BookBorrow get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return new BookBorrow(BorrowHistory.this, index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Writes a history as parallel arrays.
+     */
+    public static class Serializer extends JsonSerializer<BorrowHistory> {
+        @Override
+        public void serialize(BorrowHistory history, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            CopyDictionary dictionary = (CopyDictionary) serializers.getAttribute(CopyDictionary.class);
+            gen.writeStartObject();
+
+            if (dictionary != null) {
+                gen.writeArrayFieldStart("copy");
+                for (int i = 0; i < history.size; i++) {
+                    gen.writeNumber(dictionary.indexOf(history.copyRefs[i]));
+                }
+                gen.writeEndArray();
+            } else {
+                CopyRegistry registry = CopyRegistry.getInstance();
+                gen.writeArrayFieldStart("isbn");
+                for (int i = 0; i < history.size; i++) {
+                    gen.writeString(registry.getIsbn(history.copyRefs[i]));
+                }
+                gen.writeEndArray();
+
+                gen.writeArrayFieldStart("copyId");
+                for (int i = 0; i < history.size; i++) {
+                    gen.writeString(registry.getCopyId(history.copyRefs[i]));
+                }
+                gen.writeEndArray();
+            }
+
+            // Borrow times as deltas from the previous record
+            gen.writeArrayFieldStart("borrowTime");
+            long previous = 0;
+            for (int i = 0; i < history.size; i++) {
+                gen.writeNumber(history.borrowTimes[i] - previous);
+                previous = history.borrowTimes[i];
+            }
+            gen.writeEndArray();
+
+            // Due times as the loan period, 0 when no due time was set
+            gen.writeArrayFieldStart("dueTime");
+            for (int i = 0; i < history.size; i++) {
+                gen.writeNumber(history.dueTimes[i] == 0 ? 0 : history.dueTimes[i] - history.borrowTimes[i]);
+            }
+            gen.writeEndArray();
+
+            // Return times as the loan duration, 0 for open loans
+            gen.writeArrayFieldStart("returnTime");
+            for (int i = 0; i < history.size; i++) {
+                boolean isReturned = history.returned.get(i);
+                gen.writeNumber(isReturned ? history.returnTimes[i] - history.borrowTimes[i] : 0);
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("returned");
+            for (long word : history.returned.toLongArray()) {
+                gen.writeNumber(word);
+            }
+            gen.writeEndArray();
+
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Reads a history from the columnar form, or from the legacy list of borrow records.
+     */
+    public static class Deserializer extends JsonDeserializer<BorrowHistory> {
+        @Override
+        public BorrowHistory deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonNode node = p.getCodec().readTree(p);
+            BorrowHistory history = new BorrowHistory();
+            CopyRegistry registry = CopyRegistry.getInstance();
+
+            if (node.isArray()) {
+                // Legacy format: one object per borrow record
+                for (JsonNode record : node) {
+                    int copyRef = registry.register(record.path("isbn").asText(), record.path("copyId").asText());
+                    int index = history.append(copyRef, record.path("borrowTime").asLong(), 0);
+                    if (BorrowStatus.RETURN.name().equals(record.path("status").asText())) {
+                        history.markReturned(index, record.path("returnTime").asLong());
+                    }
+                }
+                return history;
+            }
+
+            CopyDictionary dictionary = (CopyDictionary) ctxt.getAttribute(CopyDictionary.class);
+            JsonNode copies = node.path("copy");  // Present when the history was written with a dictionary
+            JsonNode isbns = node.path("isbn");
+            JsonNode copyIds = node.path("copyId");
+            JsonNode borrowTimes = node.path("borrowTime");
+            JsonNode dueTimes = node.path("dueTime");  // Missing in files written before due dates existed
+            JsonNode returnTimes = node.path("returnTime");
+            long[] words = new long[node.path("returned").size()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = node.path("returned").get(i).asLong();
+            }
+            BitSet returned = BitSet.valueOf(words);
+
+            if (copies.isArray() && dictionary == null) {
+                throw new IOException("Borrow history refers to a copy dictionary that was not read");
+            }
+            long borrowTime = 0;
+            for (int i = 0; i < borrowTimes.size(); i++) {
+                borrowTime += borrowTimes.get(i).asLong();
+                int copyRef = copies.isArray()
+                        ? dictionary.refOf(copies.get(i).asInt())
+                        : registry.register(isbns.get(i).asText(), copyIds.get(i).asText());
+                long loanPeriod = dueTimes.path(i).asLong();
+                history.append(copyRef, borrowTime, loanPeriod == 0 ? 0 : borrowTime + loanPeriod);
+                if (returned.get(i)) {
+                    history.markReturned(i, borrowTime + returnTimes.get(i).asLong());
+                }
+            }
+            return history;
+        }
+    }
+
+    /**
+     * The copies referred to by the borrow histories of one file, each written once with its ISBN.
+     * Histories written with a dictionary store the index of each copy in the dictionary, which is
+     * passed to the serializers as the attribute {@code CopyDictionary.class}.
+     *
+     * On disk the dictionary is the list of distinct ISBNs, the list of copy IDs, and for each copy
+     * the index of its ISBN.
+     */
+    public static class CopyDictionary {
+        private final int[] refs;  // Copy reference of each dictionary index
+        private final int[] indexes;  // Dictionary index of each copy reference, -1 if not in the dictionary
+
+        private CopyDictionary(int[] refs, int[] indexes) {
+            this.refs = refs;
+            this.indexes = indexes;
+        }
+
+        /**
+         * Builds the dictionary of the copies borrowed by a list of visitors, in order of first use.
+         *
+         * @param visitors The visitors whose histories will be written
+         * @return The dictionary
+         */
+        public static CopyDictionary of(List<Visitor> visitors) {
+            int[] indexes = new int[CopyRegistry.getInstance().size()];
+            Arrays.fill(indexes, -1);
+            int[] refs = new int[16];
+            int size = 0;
+            for (Visitor visitor : visitors) {
+                BorrowHistory history = visitor.getBorrowHistory();
+                for (int i = 0; i < history.size; i++) {
+                    int ref = history.copyRefs[i];
+                    if (indexes[ref] < 0) {
+                        if (size == refs.length) {
+                            refs = Arrays.copyOf(refs, size * 2);
+                        }
+                        indexes[ref] = size;
+                        refs[size++] = ref;
+                    }
+                }
+            }
+            return new CopyDictionary(Arrays.copyOf(refs, size), indexes);
+        }
+
+        /**
+         * Reads a dictionary and registers its copies.
+         *
+         * @param node The dictionary as written by {@link #write(JsonGenerator)}
+         * @return The dictionary
+         */
+        public static CopyDictionary read(JsonNode node) {
+            JsonNode isbns = node.path("isbn");
+            JsonNode copyIds = node.path("copyId");
+            JsonNode books = node.path("book");
+            String[] copyIsbns = new String[copyIds.size()];
+            String[] ids = new String[copyIds.size()];
+            for (int i = 0; i < ids.length; i++) {
+                copyIsbns[i] = isbns.get(books.get(i).asInt()).asText();
+                ids[i] = copyIds.get(i).asText();
+            }
+            return new CopyDictionary(CopyRegistry.getInstance().registerAll(copyIsbns, ids), null);
+        }
+
+        /**
+         * Writes the dictionary as an object of parallel arrays.
+         *
+         * @param gen The generator to write to
+         * @throws IOException If the dictionary cannot be written
+         */
+        public void write(JsonGenerator gen) throws IOException {
+            CopyRegistry registry = CopyRegistry.getInstance();
+            Map<String, Integer> isbnIndexes = new HashMap<>();
+            int[] books = new int[refs.length];
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("isbn");
+            for (int i = 0; i < refs.length; i++) {
+                String isbn = registry.getIsbn(refs[i]);
+                Integer index = isbnIndexes.get(isbn);
+                if (index == null) {
+                    index = isbnIndexes.size();
+                    isbnIndexes.put(isbn, index);
+                    gen.writeString(isbn);
+                }
+                books[i] = index;
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("copyId");
+            for (int ref : refs) {
+                gen.writeString(registry.getCopyId(ref));
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("book");
+            for (int book : books) {
+                gen.writeNumber(book);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+
+        private int indexOf(int ref) {
+            return indexes[ref];
+        }
+
+        private int refOf(int index) {
+            return refs[index];
+        }
+    }
+}
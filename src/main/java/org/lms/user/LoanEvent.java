@@ -0,0 +1,62 @@
+package org.lms.user;
+
+/**
+ * The LoanEvent class describes a borrow or return committed to the visitor database.
+ */
+public class LoanEvent {
+    private final BorrowStatus status;  // BORROW for a new loan, RETURN for a closed one
+    private final Visitor visitor;      // The visitor owning the loan
+    private final int historyIndex;     // Row of the loan in the visitor's BorrowHistory
+    private final int copyRef;          // Reference of the copy in the CopyRegistry
+    private final long time;            // Time of the borrow or return in epoch millis
+
+    /**
+     * Constructor to create a loan event.
+     *
+     * @param status       BORROW for a new loan, RETURN for a closed one
+     * @param visitor      The visitor owning the loan
+     * @param historyIndex The row of the loan in the visitor's history
+     * @param copyRef      The reference of the copy
+     * @param time         The time of the change in epoch millis
+     */
+    public LoanEvent(BorrowStatus status, Visitor visitor, int historyIndex, int copyRef, long time) {
+        this.status = status;
+        this.visitor = visitor;
+        this.historyIndex = historyIndex;
+        this.copyRef = copyRef;
+        this.time = time;
+    }
+
+    // Getters for the event fields
+
+    public BorrowStatus getStatus() {
+        return status;
+    }
+
+    public Visitor getVisitor() {
+        return visitor;
+    }
+
+    public int getHistoryIndex() {
+        return historyIndex;
+    }
+
+    public int getCopyRef() {
+        return copyRef;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "LoanEvent{" +
+                "status=" + status +
+                ", visitorId=" + visitor.getVisitorId() +
+                ", historyIndex=" + historyIndex +
+                ", copyRef=" + copyRef +
+                ", time=" + time +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package org.lms.user;
+
+/**
+ * The LoanListener interface defines a listener for borrows and returns committed to the visitor database.
+ */
+public interface LoanListener {
+    /**
+     * This method is called after a borrow or return has been recorded.
+     *
+     * @param event The loan change that was recorded
+     */
+    void onLoanChanged(LoanEvent event);
+}
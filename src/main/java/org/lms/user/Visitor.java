@@ -1,6 +1,8 @@
 package org.lms.user;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
 /**
@@ -14,7 +16,12 @@ public class Visitor extends UserBase {
     private int age;
     private String phone;
     private String address;
-    private List<BookBorrow> bookBorrows = new ArrayList<BookBorrow>(); // List to track borrowed books
+    private BorrowHistory borrowHistory = new BorrowHistory(); // Columnar history of borrowed books
+    private long registeredTime; // Registration time in epoch millis, 0 if registered before this was recorded
+    private long fineCents; // Late fines accrued, in cents, as computed by the nightly batch
+    private boolean overLimit; // Whether the account is over its loan or fine limit
+    private boolean expired; // Whether the registration expired after a long period without activity
+    private long revision; // Raised by the visitor database on every change to the account or its loans
 
     /**
      * Default constructor for Visitor.
@@ -93,11 +100,86 @@ public class Visitor extends UserBase {
         this.address = address;
     }
 
+    public long getRegisteredTime() {
+        return registeredTime;
+    }
+
+    public void setRegisteredTime(long registeredTime) {
+        this.registeredTime = registeredTime;
+    }
+
+    public long getFineCents() {
+        return fineCents;
+    }
+
+    public void setFineCents(long fineCents) {
+        this.fineCents = fineCents;
+    }
+
+    public boolean isOverLimit() {
+        return overLimit;
+    }
+
+    public void setOverLimit(boolean overLimit) {
+        this.overLimit = overLimit;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    public void setExpired(boolean expired) {
+        this.expired = expired;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Copies the visitor with its borrow history, so it can be read on another thread
+     * while loans change the original.
+     *
+     * @return An independent copy of the visitor
+     */
+    public Visitor copy() {
+        Visitor copy = new Visitor(getUsername(), getPassword(), fullName, gender, age, phone, address);
+        copy.setRole(getRole());
+        copy.visitorId = visitorId;
+        copy.registeredTime = registeredTime;
+        copy.fineCents = fineCents;
+        copy.overLimit = overLimit;
+        copy.expired = expired;
+        copy.revision = revision;
+        copy.borrowHistory = getBorrowHistory().copy();
+        return copy;
+    }
+
+    /**
+     * Returns a read-only list of views over the visitor's borrow records.
+     *
+     * @return The borrow records of the visitor
+     */
+    @JsonIgnore
     public List<BookBorrow> getBookBorrows() {
-        if (bookBorrows == null) {
-            bookBorrows = new ArrayList<>(); // If the list is null, initialize it
+        return getBorrowHistory().asList();
+    }
+
+    @JsonProperty("bookBorrows")
+    public BorrowHistory getBorrowHistory() {
+        if (borrowHistory == null) {
+            borrowHistory = new BorrowHistory(); // If the history is null, initialize it
         }
-        return bookBorrows;
+        return borrowHistory;
+    }
+
+    @JsonProperty("bookBorrows")
+    public void setBorrowHistory(BorrowHistory borrowHistory) {
+        this.borrowHistory = borrowHistory;
     }
 
     /**
@@ -114,7 +196,11 @@ public class Visitor extends UserBase {
                 ", age=" + age +
                 ", phone='" + phone + '\'' +
                 ", address='" + address + '\'' +
-                ", bookBorrows=" + bookBorrows +
+                ", registeredTime=" + registeredTime +
+                ", fineCents=" + fineCents +
+                ", overLimit=" + overLimit +
+                ", expired=" + expired +
+                ", bookBorrows=" + getBookBorrows() +
                 ", username='" + username + '\'' +
                 ", password='" + password + '\'' +
                 ", role=" + role +
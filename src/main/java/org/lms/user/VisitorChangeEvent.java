@@ -0,0 +1,47 @@
+package org.lms.user;
+
+/**
+ * The VisitorChangeEvent class describes a change made to a visitor account in the visitor database.
+ */
+public class VisitorChangeEvent {
+    /**
+     * The kinds of account changes the visitor database reports.
+     */
+    public enum Type {
+        VISITOR_ADDED,    // A visitor registered
+        VISITOR_EDITED,   // The details of an account were changed
+        VISITOR_DELETED   // An account was removed
+    }
+
+    private final Type type;        // The kind of change
+    private final Visitor visitor;  // The affected visitor
+
+    /**
+     * Constructor to create a change event.
+     *
+     * @param type    The kind of change
+     * @param visitor The affected visitor
+     */
+    public VisitorChangeEvent(Type type, Visitor visitor) {
+        this.type = type;
+        this.visitor = visitor;
+    }
+
+    // Getters for the event fields
+
+    public Type getType() {
+        return type;
+    }
+
+    public Visitor getVisitor() {
+        return visitor;
+    }
+
+    @Override
+    public String toString() {
+        return "VisitorChangeEvent{" +
+                "type=" + type +
+                ", visitorId=" + visitor.getVisitorId() +
+                '}';
+    }
+}
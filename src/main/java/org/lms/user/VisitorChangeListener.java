@@ -0,0 +1,13 @@
+package org.lms.user;
+
+/**
+ * The VisitorChangeListener interface defines a listener for account changes committed to the visitor database.
+ */
+public interface VisitorChangeListener {
+    /**
+     * This method is called after a visitor account has been added, edited or deleted.
+     *
+     * @param event The change that was applied
+     */
+    void onVisitorChanged(VisitorChangeEvent event);
+}
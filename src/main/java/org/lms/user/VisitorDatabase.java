@@ -1,12 +1,31 @@
 package org.lms.user;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.CopyRegistry;
+import org.lms.book.Isbn;
+import org.lms.circulation.BorrowingPolicy;
+import org.lms.circulation.CirculationLedger;
+import org.lms.circulation.CopyProvenanceIndex;
+import org.lms.circulation.DueDateIndex;
+import org.lms.circulation.LoanPolicy;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Singleton class that manages the visitor database.
@@ -15,6 +34,12 @@ import java.util.List;
 public class VisitorDatabase {
     private static VisitorDatabase instance;
     private List<Visitor> visitors;
+    private final Map<Integer, Visitor> visitorsById = new HashMap<>(); // Visitors by ID, for constant-time lookups
+    private CirculationLedger ledger; // Persisted off-heap record of every loan, including those of deleted visitors
+    private final DueDateIndex dueDateIndex = new DueDateIndex(); // Open loans ordered by due time
+    private CopyProvenanceIndex provenanceIndex; // Loans of each copy, for finding everyone who had a copy
+    private final List<LoanListener> loanListeners = new CopyOnWriteArrayList<>(); // Subscribers to borrows and returns
+    private final List<VisitorChangeListener> visitorListeners = new CopyOnWriteArrayList<>(); // Subscribers to account changes
     private static final String DATABASE_FILE = "VisitorDatabase.json";
 
     /**
@@ -24,6 +49,12 @@ public class VisitorDatabase {
     private VisitorDatabase() {
         visitors = new ArrayList<>();
         loadFromFile();
+        for (Visitor visitor : visitors) {
+            visitorsById.put(visitor.getVisitorId(), visitor);
+        }
+        ledger = CirculationLedger.open(visitors);
+        provenanceIndex = CopyProvenanceIndex.build(ledger, CopyRegistry.getInstance().size());
+        indexOpenLoans();
     }
 
     /**
@@ -43,11 +74,14 @@ public class VisitorDatabase {
      *
      * @param visitor The visitor to be added
      */
-    public void addVisitor(Visitor visitor) {
+    public synchronized void addVisitor(Visitor visitor) {
         int newVisitorId = getNextVisitorId(); // Get the next available visitor ID
         visitor.setVisitorId(newVisitorId); // Set the ID for the new visitor
+        visitor.setRegisteredTime(System.currentTimeMillis()); // Remember when the visitor registered
         visitors.add(visitor); // Add visitor to the list
+        visitorsById.put(newVisitorId, visitor);
         saveToFile(); // Save the updated list to the file
+        fireVisitorChanged(new VisitorChangeEvent(VisitorChangeEvent.Type.VISITOR_ADDED, visitor));
     }
 
     /**
@@ -71,28 +105,53 @@ public class VisitorDatabase {
      * @param editedVisitor The visitor object with updated information
      * @return true if the edit is successful, false otherwise
      */
-    public boolean editVisitor(Visitor editedVisitor) {
+    public synchronized boolean editVisitor(Visitor editedVisitor) {
         for (int i = 0; i < visitors.size(); i++) {
             if (visitors.get(i).getVisitorId() == editedVisitor.getVisitorId()) {
+                editedVisitor.setRevision(visitors.get(i).getRevision() + 1);
                 visitors.set(i, editedVisitor); // Update the visitor
+                visitorsById.put(editedVisitor.getVisitorId(), editedVisitor);
                 saveToFile(); // Save the changes to the file
+                fireVisitorChanged(new VisitorChangeEvent(VisitorChangeEvent.Type.VISITOR_EDITED, editedVisitor));
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Renews the registration of a visitor, clearing the expiry set by the nightly batch.
+     * The registration time is reset, so the period without activity starts again.
+     *
+     * @param visitorId The ID of the visitor
+     * @return true if the registration was renewed, false if the visitor is not found
+     */
+    public synchronized boolean renewRegistration(int visitorId) {
+        Visitor visitor = visitorsById.get(visitorId);
+        if (visitor == null) {
+            return false;
+        }
+        visitor.setExpired(false);
+        visitor.setRegisteredTime(System.currentTimeMillis());
+        visitor.setRevision(visitor.getRevision() + 1);
+        saveToFile();
+        fireVisitorChanged(new VisitorChangeEvent(VisitorChangeEvent.Type.VISITOR_EDITED, visitor));
+        return true;
+    }
+
     /**
      * Deletes a visitor by their ID.
      *
      * @param visitorId The ID of the visitor to be deleted
      * @return true if the visitor is deleted successfully, false otherwise
      */
-    public boolean deleteVisitor(int visitorId) {
+    public synchronized boolean deleteVisitor(int visitorId) {
         for (int i = 0; i < visitors.size(); i++) {
             if (visitors.get(i).getVisitorId() == visitorId) {
-                visitors.remove(i); // Remove the visitor
+                Visitor removed = visitors.remove(i); // Remove the visitor
+                visitorsById.remove(visitorId);
                 saveToFile(); // Save the updated list to the file
+                fireVisitorChanged(new VisitorChangeEvent(VisitorChangeEvent.Type.VISITOR_DELETED, removed));
                 return true;
             }
         }
@@ -105,13 +164,8 @@ public class VisitorDatabase {
      * @param visitorId The ID of the visitor
      * @return The visitor object, or null if not found
      */
-    public Visitor findVisitorById(int visitorId) {
-        for (Visitor visitor : visitors) {
-            if (visitor.getVisitorId() == visitorId) {
-                return visitor;
-            }
-        }
-        return null;
+    public synchronized Visitor findVisitorById(int visitorId) {
+        return visitorsById.get(visitorId);
     }
 
     /**
@@ -120,7 +174,7 @@ public class VisitorDatabase {
      * @param username The username of the visitor
      * @return The visitor object, or null if not found
      */
-    public Visitor findVisitorByUsername(String username) {
+    public synchronized Visitor findVisitorByUsername(String username) {
         for (Visitor visitor : visitors) {
             if (visitor.getUsername().equals(username)) {
                 return visitor;
@@ -130,75 +184,367 @@ public class VisitorDatabase {
     }
 
     /**
-     * Allows a visitor to borrow a book by ISBN and copy ID.
+     * Gets all visitors.
+     *
+     * @return A copy of the list of visitors
+     */
+    public synchronized List<Visitor> getAllVisitors() {
+        return new ArrayList<>(visitors);
+    }
+
+    /**
+     * Applies changes to many visitors and saves them with a single write.
+     * Changes for visitors that no longer exist are skipped. Callers that computed the changes from
+     * an earlier state can hold this database and compare {@link Visitor#getRevision()} first.
+     *
+     * @param changes The change to apply to each visitor, by visitor ID
+     * @return The number of visitors changed
+     */
+    public synchronized int updateVisitors(Map<Integer, ? extends Consumer<Visitor>> changes) {
+        List<Visitor> changed = new ArrayList<>();
+        for (Visitor visitor : visitors) {
+            Consumer<Visitor> change = changes.get(visitor.getVisitorId());
+            if (change != null) {
+                change.accept(visitor);
+                visitor.setRevision(visitor.getRevision() + 1);
+                changed.add(visitor);
+            }
+        }
+        if (!changed.isEmpty()) {
+            saveToFile();
+            for (Visitor visitor : changed) {
+                fireVisitorChanged(new VisitorChangeEvent(VisitorChangeEvent.Type.VISITOR_EDITED, visitor));
+            }
+        }
+        return changed.size();
+    }
+
+    /**
+     * Lends a copy of a book to a visitor. The rules of the {@link BorrowingPolicy} are checked, the copy is
+     * marked as borrowed in the book database and the loan is recorded, all while this database is held,
+     * so that two borrows by the same visitor cannot both pass the rules before either is recorded.
      *
      * @param isbn The ISBN of the book to borrow
      * @param copyId The ID of the book copy to borrow
      * @param visitorId The ID of the visitor borrowing the book
-     * @return true if the borrow operation is successful, false otherwise
+     * @return null if the book was borrowed, otherwise the reason the borrow was refused
      */
-    public boolean borrowBook(String isbn, String copyId, int visitorId) {
+    public synchronized String borrowBook(String isbn, String copyId, int visitorId) {
         Visitor visitor = findVisitorById(visitorId);
-        if (visitor != null) {
-            BookBorrow bookBorrow = new BookBorrow();
-            bookBorrow.setIsbn(isbn);
-            bookBorrow.setCopyId(copyId);
-            bookBorrow.setStatus(BorrowStatus.BORROW);
-            bookBorrow.setBorrowTime(new Date());
-            visitor.getBookBorrows().add(bookBorrow); // Add the book borrow to the visitor's record
-            saveToFile(); // Save the updated data to the file
-            return true;
+        if (visitor == null) {
+            return "Visitor ID not found.";
         }
-        return false;
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        BookBase book = bookDatabase.findBookByIsbn(isbn);
+        if (book == null) {
+            return "This book is no longer in the catalog.";
+        }
+        String refusal = BorrowingPolicy.getInstance().check(visitor, book);
+        if (refusal != null) {
+            return refusal;
+        }
+        // The book database is always locked after this one
+        if (!bookDatabase.borrowBook(isbn, copyId, visitorId)) {
+            for (BookCopy copy : book.getCopies()) {
+                if (copy.getCopyId().equals(copyId)) {
+                    return copy.getStatus() == BookStatus.ON_HOLD
+                            ? "This copy is on hold for visitor " + copy.getBorrowVisitorId() + "."
+                            : "This book has already been borrowed.";
+                }
+            }
+            return "This copy is no longer in the catalog.";
+        }
+
+        int copyRef = CopyRegistry.getInstance().register(isbn, copyId);
+        long borrowTime = System.currentTimeMillis();
+        long isbnKey = CopyRegistry.getInstance().getIsbnKey(copyRef);
+        long dueTime = dueTimeOf(isbnKey, borrowTime);
+        int index = visitor.getBorrowHistory().append(copyRef, borrowTime, dueTime); // Add the book borrow to the visitor's record
+        int record = ledger.append(visitorId, copyRef, isbnKey, borrowTime);
+        provenanceIndex.add(copyRef, record);
+        dueDateIndex.add(visitorId, index, copyRef, dueTime);
+        visitor.setRevision(visitor.getRevision() + 1);
+        saveToFile(); // Save the updated data to the file
+        fireLoanChanged(new LoanEvent(BorrowStatus.BORROW, visitor, index, copyRef, borrowTime));
+        return null;
     }
 
     /**
-     * Allows a visitor to return a borrowed book by ISBN and copy ID.
+     * Takes back a borrowed copy of a book. The borrower is read from the copy before it is returned,
+     * since a returned copy may go straight on hold for a visitor waiting for the book. The copy is then
+     * returned in the book database and the borrower's loan is closed, all while this database is held,
+     * in the same lock order as {@link #borrowBook(String, String, int)}.
      *
      * @param isbn The ISBN of the book to return
      * @param copyId The ID of the book copy to return
-     * @param visitorId The ID of the visitor returning the book
-     * @return true if the return operation is successful, false otherwise
+     * @return null if the copy was returned, otherwise the reason it could not be
+     */
+    public synchronized String returnBook(String isbn, String copyId) {
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        BookBase book = bookDatabase.findBookByIsbn(isbn);
+        BookCopy copy = null;
+        if (book != null) {
+            for (BookCopy bookCopy : book.getCopies()) {
+                if (bookCopy.getCopyId().equals(copyId)) {
+                    copy = bookCopy;
+                    break;
+                }
+            }
+        }
+        if (copy == null) {
+            return "This copy is no longer in the catalog.";
+        }
+        int visitorId = copy.getBorrowVisitorId();
+        if (!bookDatabase.returnBook(isbn, copyId)) {
+            return "This book has already been returned.";
+        }
+        // The borrower may have been deleted, in which case only the copy is returned
+        closeLoan(isbn, copyId, visitorId);
+        return null;
+    }
+
+    /**
+     * Closes a visitor's open loan of a copy, if there is one.
      */
-    public boolean returnBook(String isbn, String copyId, int visitorId) {
+    private void closeLoan(String isbn, String copyId, int visitorId) {
         Visitor visitor = findVisitorById(visitorId);
-        if (visitor != null) {
-            for (BookBorrow bookBorrow : visitor.getBookBorrows()) {
-                if (bookBorrow.getIsbn().equals(isbn) && bookBorrow.getCopyId().equals(copyId)) {
-                    if (bookBorrow.getStatus() == BorrowStatus.BORROW) {
-                        bookBorrow.setStatus(BorrowStatus.RETURN);
-                        bookBorrow.setReturnTime(new Date());
-                        saveToFile(); // Save the updated data to the file
-                        return true;
-                    }
+        int copyRef = CopyRegistry.getInstance().findRef(copyId);
+        if (visitor != null && copyRef >= 0 && CopyRegistry.getInstance().getIsbnKey(copyRef) == Isbn.toKey(isbn)) {
+            BorrowHistory history = visitor.getBorrowHistory();
+            int index = history.findOpen(copyRef);
+            if (index >= 0) {
+                long returnTime = System.currentTimeMillis();
+                history.markReturned(index, returnTime);
+                ledger.markReturnedByCopy(copyRef, returnTime);
+                dueDateIndex.removeByCopy(copyRef);
+                visitor.setRevision(visitor.getRevision() + 1);
+                saveToFile(); // Save the updated data to the file
+                fireLoanChanged(new LoanEvent(BorrowStatus.RETURN, visitor, index, copyRef, returnTime));
+            }
+        }
+    }
+
+    /**
+     * Closes many open loans and saves them with a single write, for example to repair loans left open
+     * on copies that are back on the shelf. Loans that are already closed, or whose visitor no longer
+     * exists, are skipped. The three arrays are parallel: entry i describes one loan.
+     *
+     * @param visitorIds     The ID of the visitor of each loan
+     * @param historyIndexes The index of each loan in its visitor's borrow history
+     * @param returnTimes    The return time to record for each loan, in epoch millis
+     * @return The number of loans closed
+     */
+    public synchronized int closeLoans(int[] visitorIds, int[] historyIndexes, long[] returnTimes) {
+        List<LoanEvent> events = new ArrayList<>();
+        for (int i = 0; i < visitorIds.length; i++) {
+            Visitor visitor = findVisitorById(visitorIds[i]);
+            if (visitor == null || visitor.getBorrowHistory().isReturned(historyIndexes[i])) {
+                continue;
+            }
+            BorrowHistory history = visitor.getBorrowHistory();
+            int index = historyIndexes[i];
+            int copyRef = history.getCopyRef(index);
+            history.markReturned(index, returnTimes[i]);
+            int record = findLedgerRecord(visitorIds[i], copyRef, history.getBorrowTime(index));
+            if (record >= 0) {
+                ledger.markReturned(record, returnTimes[i]);
+            }
+            dueDateIndex.remove(copyRef, visitorIds[i], index);
+            visitor.setRevision(visitor.getRevision() + 1);
+            events.add(new LoanEvent(BorrowStatus.RETURN, visitor, index, copyRef, returnTimes[i]));
+        }
+        if (!events.isEmpty()) {
+            saveToFile();
+            for (LoanEvent event : events) {
+                fireLoanChanged(event);
+            }
+        }
+        return events.size();
+    }
+
+    /**
+     * Finds the ledger record of a loan among the loans of its copy.
+     *
+     * @return The record, or -1 if the ledger has no such loan
+     */
+    private int findLedgerRecord(int visitorId, int copyRef, long borrowTime) {
+        int[] records = provenanceIndex.recordsOf(copyRef);
+        for (int i = records.length - 1; i >= 0; i--) {
+            if (ledger.getVisitorId(records[i]) == visitorId && ledger.getBorrowTime(records[i]) == borrowTime) {
+                return records[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the ledger of all loans made by visitors, including visitors that have since been deleted.
+     *
+     * @return The circulation ledger
+     */
+    public CirculationLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Gets the index of the loans of each copy, for finding every visitor who had a copy.
+     * The index is kept current on every borrow; return times are read from the ledger.
+     *
+     * @return The copy provenance index
+     */
+    public CopyProvenanceIndex getProvenanceIndex() {
+        return provenanceIndex;
+    }
+
+    /**
+     * Gets the open loans ordered by due time, for finding overdue loans and loans coming due.
+     *
+     * @return The due date index
+     */
+    public DueDateIndex getDueDateIndex() {
+        return dueDateIndex;
+    }
+
+    /**
+     * Computes the due time of a loan from the loan period of the book's type.
+     *
+     * @param isbnKey    The canonical ISBN key of the borrowed book
+     * @param borrowTime The borrow time in epoch millis
+     * @return The due time in epoch millis
+     */
+    private long dueTimeOf(long isbnKey, long borrowTime) {
+        BookBase book = BookDatabase.getInstance().findBookByIsbnKey(isbnKey);
+        return LoanPolicy.getInstance().dueTime(book == null ? null : book.getType(), borrowTime);
+    }
+
+    /**
+     * Adds every open loan to the due date index, giving loans recorded before due dates existed
+     * the due time of the current loan policy.
+     */
+    private void indexOpenLoans() {
+        for (Visitor visitor : visitors) {
+            BorrowHistory history = visitor.getBorrowHistory();
+            for (int i = 0; i < history.size(); i++) {
+                if (history.isReturned(i)) {
+                    continue;
+                }
+                int copyRef = history.getCopyRef(i);
+                if (history.getDueTime(i) == 0) {
+                    history.setDueTime(i, dueTimeOf(CopyRegistry.getInstance().getIsbnKey(copyRef), history.getBorrowTime(i)));
                 }
+                dueDateIndex.add(visitor.getVisitorId(), i, copyRef, history.getDueTime(i));
             }
         }
-        return false;
+    }
+
+    /**
+     * Registers a listener to be notified after every borrow and return.
+     *
+     * @param listener The listener to add
+     */
+    public void addLoanListener(LoanListener listener) {
+        loanListeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered loan listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeLoanListener(LoanListener listener) {
+        loanListeners.remove(listener);
+    }
+
+    /**
+     * Notifies all registered loan listeners of a borrow or return.
+     *
+     * @param event The loan change that was recorded
+     */
+    private void fireLoanChanged(LoanEvent event) {
+        for (LoanListener listener : loanListeners) {
+            listener.onLoanChanged(event);
+        }
+    }
+
+    /**
+     * Registers a listener to be notified after every account change.
+     *
+     * @param listener The listener to add
+     */
+    public void addVisitorChangeListener(VisitorChangeListener listener) {
+        visitorListeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered account change listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeVisitorChangeListener(VisitorChangeListener listener) {
+        visitorListeners.remove(listener);
+    }
+
+    /**
+     * Notifies all registered account change listeners.
+     *
+     * @param event The change that was applied
+     */
+    private void fireVisitorChanged(VisitorChangeEvent event) {
+        for (VisitorChangeListener listener : visitorListeners) {
+            listener.onVisitorChanged(event);
+        }
     }
 
     /**
      * Saves the list of visitors to a file in JSON format.
+     * The file is an object holding the dictionary of the borrowed copies, followed by the visitors,
+     * whose borrow histories refer to copies by their index in the dictionary.
      */
     private void saveToFile() {
         ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            objectMapper.writeValue(new File(DATABASE_FILE), visitors); // Write the list of visitors to the file
+        BorrowHistory.CopyDictionary dictionary = BorrowHistory.CopyDictionary.of(visitors);
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(new File(DATABASE_FILE), JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeFieldName("copies");
+            dictionary.write(gen);
+            gen.writeFieldName("visitors");
+            objectMapper.writer()
+                    .withAttribute(BorrowHistory.CopyDictionary.class, dictionary)
+                    .writeValue(gen, visitors); // Write the list of visitors to the file
+            gen.writeEndObject();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Loads the list of visitors from the file.
+     * Loads the list of visitors from the file, either the object written by {@link #saveToFile()}
+     * or the plain list of visitors of older files.
      */
     private void loadFromFile() {
         ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            File file = new File(DATABASE_FILE);
-            if (file.exists()) {
-                visitors = objectMapper.readValue(file,
-                        objectMapper.getTypeFactory().constructCollectionType(List.class, Visitor.class)); // Read the list of visitors from the file
+        ObjectReader reader = objectMapper.readerFor(
+                objectMapper.getTypeFactory().constructCollectionType(List.class, Visitor.class));
+        File file = new File(DATABASE_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                visitors = reader.readValue(parser); // Read the list of visitors from the file
+                return;
+            }
+            BorrowHistory.CopyDictionary dictionary = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("copies".equals(field)) {
+                    dictionary = BorrowHistory.CopyDictionary.read(parser.readValueAsTree());
+                } else if ("visitors".equals(field)) {
+                    visitors = reader.withAttribute(BorrowHistory.CopyDictionary.class, dictionary).readValue(parser);
+                } else {
+                    parser.skipChildren();
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
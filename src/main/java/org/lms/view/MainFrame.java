@@ -144,6 +144,14 @@ public class MainFrame extends JFrame {
             Visitor visitor = VisitorDatabase.getInstance().findVisitorByUsername(username);
             if (visitor != null) {
                 if (visitor.getPassword().equals(password)) {
+                    if (visitor.isExpired()) {
+                        // Expired accounts can still log in to see their loans, but cannot borrow
+                        JOptionPane.showMessageDialog(this,
+                                "Your registration has expired after a long period without activity.\n"
+                                        + "Please ask a librarian to renew it before borrowing.",
+                                "Registration Expired",
+                                JOptionPane.WARNING_MESSAGE);
+                    }
                     dispose();// Close login window
                     VisitorFrame.open(visitor);  // Open visitor interface
                 }
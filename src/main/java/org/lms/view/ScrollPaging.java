@@ -0,0 +1,44 @@
+package org.lms.view;
+
+import javax.swing.*;
+
+/**
+ * ScrollPaging triggers loading of more rows when a scroll pane is scrolled close to its end.
+ * It is used by tables that fetch their rows page by page.
+ */
+public final class ScrollPaging {
+    private static final int THRESHOLD_PIXELS = 200;  // Distance from the end at which more rows are requested
+
+    private ScrollPaging() {
+    }
+
+    /**
+     * Calls the loader whenever the vertical scroll position comes near the end of the content,
+     * including when the content is shorter than the viewport.
+     *
+     * @param scrollPane The scroll pane to watch
+     * @param loadMore   Requests the next page; it must ignore calls while a page is already loading
+     */
+    public static void install(JScrollPane scrollPane, Runnable loadMore) {
+        scrollPane.getVerticalScrollBar().getModel().addChangeListener(e -> {
+            if (isNearEnd(scrollPane)) {
+                loadMore.run();
+            }
+        });
+    }
+
+    /**
+     * Checks whether the scroll pane is currently near the end of its content.
+     * Used after a page has been added to decide whether the next one is needed right away.
+     *
+     * @param scrollPane The scroll pane to check
+     * @return True if the scroll pane is showing and its visible area is within the threshold of the end
+     */
+    public static boolean isNearEnd(JScrollPane scrollPane) {
+        if (!scrollPane.isShowing()) {
+            return false;  // Not laid out yet; the scroll bar will change once it is
+        }
+        BoundedRangeModel model = scrollPane.getVerticalScrollBar().getModel();
+        return model.getValue() + model.getExtent() >= model.getMaximum() - THRESHOLD_PIXELS;
+    }
+}
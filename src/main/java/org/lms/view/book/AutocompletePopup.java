@@ -0,0 +1,161 @@
+package org.lms.view.book;
+
+import org.lms.book.search.Suggestion;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * AutocompletePopup shows title and author suggestions below a text field while the user types.
+ * Up and Down move through the suggestions, Enter or a click accepts one, and Escape closes the list.
+ * Suggestions come from an in-memory prefix index and are looked up on the event dispatch thread.
+ */
+public class AutocompletePopup {
+    private static final int MAX_SUGGESTIONS = 8;  // Number of suggestions listed
+
+    private final JTextField textField;                         // The field being completed
+    private final Function<String, List<Suggestion>> source;    // Looks up the suggestions for the typed text
+    private final Consumer<String> onAccept;                    // Called with the text of an accepted suggestion
+    private final DefaultListModel<Suggestion> listModel = new DefaultListModel<>();
+    private final JList<Suggestion> list = new JList<>(listModel);
+    private final JPopupMenu popup = new JPopupMenu();
+    private boolean accepting;  // Set while the field is filled with an accepted suggestion
+
+    /**
+     * Constructor to attach suggestions to a text field.
+     *
+     * @param textField The field to complete
+     * @param source    Returns the suggestions for the typed text, best first
+     * @param onAccept  Called with the text once a suggestion has been put in the field
+     */
+    public AutocompletePopup(JTextField textField, Function<String, List<Suggestion>> source, Consumer<String> onAccept) {
+        this.textField = textField;
+        this.source = source;
+        this.onAccept = onAccept;
+
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                                   boolean isSelected, boolean cellHasFocus) {
+                Suggestion suggestion = (Suggestion) value;
+                String kind = suggestion.getKind() == Suggestion.Kind.TITLE ? "Title" : "Author";
+                String text = suggestion.getText() + "  (" + kind + ", " + suggestion.getWeight() + " copies)";
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    accept(listModel.get(index));
+                }
+            }
+        });
+
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(list));
+
+        textField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                textChanged();
+            }
+        });
+        textField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        list.setSelectedIndex(Math.min(list.getSelectedIndex() + 1, listModel.size() - 1));
+                        list.ensureIndexIsVisible(list.getSelectedIndex());
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        list.setSelectedIndex(Math.max(list.getSelectedIndex() - 1, 0));
+                        list.ensureIndexIsVisible(list.getSelectedIndex());
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (list.getSelectedIndex() >= 0) {
+                            accept(list.getSelectedValue());
+                            e.consume();
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates the suggestions once the document has settled after an edit.
+     */
+    private void textChanged() {
+        if (accepting) {
+            return;
+        }
+        SwingUtilities.invokeLater(this::showSuggestions);
+    }
+
+    private void showSuggestions() {
+        String text = textField.getText();
+        List<Suggestion> suggestions = text.trim().isEmpty() ? List.of() : source.apply(text);
+        if (suggestions.isEmpty() || !textField.isShowing()
+                || (suggestions.size() == 1 && suggestions.get(0).getText().equalsIgnoreCase(text.trim()))) {
+            popup.setVisible(false);
+            return;
+        }
+        listModel.clear();
+        for (int i = 0; i < suggestions.size() && i < MAX_SUGGESTIONS; i++) {
+            listModel.addElement(suggestions.get(i));
+        }
+        list.setVisibleRowCount(listModel.size());
+        list.clearSelection();
+        popup.pack();
+        if (!popup.isVisible()) {
+            popup.show(textField, 0, textField.getHeight());
+        }
+        textField.requestFocusInWindow();
+    }
+
+    private void accept(Suggestion suggestion) {
+        popup.setVisible(false);
+        accepting = true;
+        try {
+            textField.setText(suggestion.getText());
+        } finally {
+            accepting = false;
+        }
+        onAccept.accept(suggestion.getText());
+    }
+}
@@ -0,0 +1,318 @@
+package org.lms.view.book;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * CatalogTableModel is a table model showing one row per book copy.
+ * It keeps only the list of books and the first row of each book, and resolves a row number
+ * to its book and copy on demand, so the cost of rendering depends on the visible rows only.
+ * As a {@link CatalogChangeListener} it applies catalog changes as targeted row inserts, updates and deletes.
+ */
+public class CatalogTableModel extends AbstractTableModel implements CatalogChangeListener {
+    public static final int OPERATION_COLUMN = 7;  // Index of the optional operation column
+
+    private static final String[] COLUMN_NAMES = {
+            "Title", "Author",
+            "ISBN", "Type",
+            "Section", "Copy ID",
+            "Status", "Operation"
+    };
+
+    private final boolean withOperationColumn;  // Whether the operation column is shown
+    private List<BookBase> books = new ArrayList<>();  // Books shown in the table
+    private int[] rowStarts = {0};  // First row of each book; the last entry is the row count
+    private final Map<BookBase, Integer> bookIndexes = new IdentityHashMap<>();  // Position of each shown book
+    private Predicate<BookBase> filter = book -> true;  // Decides whether added or edited books are shown
+
+    /**
+     * Constructor to create an empty model.
+     *
+     * @param withOperationColumn Whether to add the "Operation" column after the data columns
+     */
+    public CatalogTableModel(boolean withOperationColumn) {
+        this.withOperationColumn = withOperationColumn;
+    }
+
+    /**
+     * Replaces the books shown in the table.
+     *
+     * @param books  The books to show
+     * @param filter The condition books added or edited later must meet to be shown
+     */
+    public void setBooks(List<BookBase> books, Predicate<BookBase> filter) {
+        this.books = new ArrayList<>(books);
+        this.filter = filter;
+        reindex(0);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Adds books after the rows already shown, for example the next page of a paged query.
+     *
+     * @param moreBooks The books to add
+     */
+    public void appendBooks(List<BookBase> moreBooks) {
+        int start = getRowCount();
+        int fromBook = books.size();
+        books.addAll(moreBooks);
+        reindex(fromBook);
+        if (getRowCount() > start) {
+            fireTableRowsInserted(start, getRowCount() - 1);
+        }
+    }
+
+    /**
+     * Applies a catalog change to the rows of the table.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onCatalogChanged(CatalogChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onCatalogChanged(event));
+            return;
+        }
+
+        BookBase book = event.getBook();
+        Integer bookIndex = bookIndexes.get(book);
+        switch (event.getType()) {
+            case BOOK_ADDED:
+                if (filter.test(book)) {
+                    appendBook(book);
+                }
+                break;
+            case BOOK_EDITED:
+                if (bookIndex == null) {
+                    if (filter.test(book)) {
+                        appendBook(book);
+                    }
+                } else if (filter.test(book)) {
+                    int start = rowStarts[bookIndex];
+                    int end = rowStarts[bookIndex + 1];
+                    if (end > start) {
+                        fireTableRowsUpdated(start, end - 1);
+                    }
+                } else {
+                    removeBook(bookIndex);
+                }
+                break;
+            case BOOK_DELETED:
+                if (bookIndex != null) {
+                    removeBook(bookIndex);
+                }
+                break;
+            case COPIES_ADDED:
+                if (bookIndex != null) {
+                    int end = rowStarts[bookIndex + 1];
+                    reindex(bookIndex);
+                    fireTableRowsInserted(end, end + event.getCopyCount() - 1);
+                }
+                break;
+            case COPY_DELETED:
+                if (bookIndex != null) {
+                    int row = rowStarts[bookIndex] + event.getCopyIndex();
+                    reindex(bookIndex);
+                    fireTableRowsDeleted(row, row);
+                }
+                break;
+            case COPY_STATUS_CHANGED:
+                if (bookIndex != null) {
+                    int row = rowStarts[bookIndex] + event.getCopyIndex();
+                    fireTableRowsUpdated(row, row);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Applies a batch of catalog changes, such as a bulk edit, with a single pass over the books
+     * instead of recomputing the rows after every change.
+     *
+     * @param events The changes that were applied, in order
+     */
+    @Override
+    public void onCatalogChanges(List<CatalogChangeEvent> events) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onCatalogChanges(events));
+            return;
+        }
+
+        Map<BookBase, Boolean> shown = new IdentityHashMap<>();  // Whether each affected book stays in the table
+        for (CatalogChangeEvent event : events) {
+            BookBase book = event.getBook();
+            switch (event.getType()) {
+                case BOOK_ADDED:
+                case BOOK_EDITED:
+                    shown.put(book, filter.test(book));
+                    break;
+                case BOOK_DELETED:
+                    shown.put(book, false);
+                    break;
+                default:
+                    shown.putIfAbsent(book, bookIndexes.containsKey(book));
+                    break;
+            }
+        }
+        books.removeIf(book -> Boolean.FALSE.equals(shown.get(book)));
+        // Books entering the table are appended in the order of the changes
+        for (CatalogChangeEvent event : events) {
+            BookBase book = event.getBook();
+            if (shown.get(book) && !bookIndexes.containsKey(book)) {
+                books.add(book);
+                bookIndexes.put(book, -1);  // Placeholder until the reindex below
+            }
+        }
+        reindex(0);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the book shown in a row.
+     *
+     * @param row The row index
+     * @return The book of the row
+     */
+    public BookBase getBookAt(int row) {
+        return books.get(bookIndexOf(row));
+    }
+
+    /**
+     * Gets the book copy shown in a row.
+     *
+     * @param row The row index
+     * @return The copy of the row
+     */
+    public BookCopy getCopyAt(int row) {
+        int bookIndex = bookIndexOf(row);
+        return books.get(bookIndex).getCopies().get(row - rowStarts[bookIndex]);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowStarts[rowStarts.length - 1];
+    }
+
+    @Override
+    public int getColumnCount() {
+        return withOperationColumn ? COLUMN_NAMES.length : OPERATION_COLUMN;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == OPERATION_COLUMN;  // Only the operation buttons react to clicks
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int bookIndex = bookIndexOf(row);
+        BookBase book = books.get(bookIndex);
+        BookCopy copy = book.getCopies().get(row - rowStarts[bookIndex]);
+        switch (column) {
+            case 0:
+                return book.getTitle();
+            case 1:
+                return book.getAuthor();
+            case 2:
+                return book.getIsbn();
+            case 3:
+                return book.getType();
+            case 4:
+                return book.getSection();
+            case 5:
+                return copy.getCopyId();
+            case 6:
+                return copy.getStatus();
+            default:
+                return "Operation";
+        }
+    }
+
+    /**
+     * Adds a book at the end of the table.
+     *
+     * @param book The book to add
+     */
+    private void appendBook(BookBase book) {
+        int start = getRowCount();
+        books.add(book);
+        reindex(books.size() - 1);
+        int count = book.getCopies().size();
+        if (count > 0) {
+            fireTableRowsInserted(start, start + count - 1);
+        }
+    }
+
+    /**
+     * Removes a book and its rows from the table.
+     *
+     * @param bookIndex The position of the book
+     */
+    private void removeBook(int bookIndex) {
+        int start = rowStarts[bookIndex];
+        int end = rowStarts[bookIndex + 1];
+        bookIndexes.remove(books.remove(bookIndex));
+        reindex(bookIndex);
+        if (end > start) {
+            fireTableRowsDeleted(start, end - 1);
+        }
+    }
+
+    /**
+     * Recomputes the first row and position of every book from the given position on.
+     *
+     * @param fromBook The first position whose books or copies changed
+     */
+    private void reindex(int fromBook) {
+        if (rowStarts.length != books.size() + 1) {
+            int[] resized = new int[books.size() + 1];
+            System.arraycopy(rowStarts, 0, resized, 0, Math.min(rowStarts.length, resized.length));
+            rowStarts = resized;
+        }
+        if (fromBook == 0) {
+            bookIndexes.clear();
+            rowStarts[0] = 0;
+        }
+        for (int i = fromBook; i < books.size(); i++) {
+            rowStarts[i + 1] = rowStarts[i] + books.get(i).getCopies().size();
+            bookIndexes.put(books.get(i), i);
+        }
+    }
+
+    /**
+     * Finds the book containing a row by binary search over the first row of each book.
+     *
+     * @param row The row index
+     * @return The index of the book in the list
+     */
+    private int bookIndexOf(int row) {
+        int low = 0;
+        int high = books.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (rowStarts[mid] <= row) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,110 @@
+package org.lms.view.book;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * LiveSearch runs a search while the user types in a text field.
+ * Keystrokes are debounced, the query runs on a background thread, a query made stale by newer input
+ * is cancelled, and only the result of the latest query is published on the event dispatch thread.
+ *
+ * @param <T> The type of the search result
+ */
+public class LiveSearch<T> {
+    private static final int DEBOUNCE_MILLIS = 250;  // Quiet time after the last keystroke before searching
+
+    // One background thread shared by all search fields; queries are short and only the latest one matters
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "live-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JTextField textField;          // The field the query is read from
+    private final Function<String, T> query;     // Runs the search in the background
+    private final BiConsumer<String, T> publisher;  // Shows a query and its result on the event dispatch thread
+    private final LongSupplier versionSupplier;  // Version of the searched data, to detect changes during a query
+    private final Timer debounceTimer;           // Fires once typing pauses
+    private Future<?> pending;                   // The query currently running, if any
+    private long generation;                     // Incremented for every query; older results are dropped
+
+    /**
+     * Constructor to attach a live search to a text field.
+     *
+     * @param textField       The field the query is read from
+     * @param query           The search to run in the background with the trimmed field text
+     * @param publisher       Receives the latest query and its result on the event dispatch thread
+     * @param versionSupplier Returns the current version of the searched data; if it changes while
+     *                        a query runs, the query is repeated instead of publishing an outdated result
+     */
+    public LiveSearch(JTextField textField, Function<String, T> query, BiConsumer<String, T> publisher, LongSupplier versionSupplier) {
+        this.textField = textField;
+        this.query = query;
+        this.publisher = publisher;
+        this.versionSupplier = versionSupplier;
+
+        debounceTimer = new Timer(DEBOUNCE_MILLIS, e -> searchNow());
+        debounceTimer.setRepeats(false);
+
+        textField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                debounceTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                debounceTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                debounceTimer.restart();
+            }
+        });
+    }
+
+    /**
+     * Runs the search for the current text right away, cancelling any query still in flight.
+     * Must be called on the event dispatch thread.
+     */
+    public void searchNow() {
+        debounceTimer.stop();
+        if (pending != null) {
+            pending.cancel(true);
+        }
+
+        long queryGeneration = ++generation;
+        String text = textField.getText().trim();
+        pending = executor.submit(() -> {
+            long version = versionSupplier.getAsLong();
+            T result;
+            try {
+                result = query.apply(text);
+            } catch (CancellationException e) {
+                return;  // A newer query replaced this one
+            }
+            SwingUtilities.invokeLater(() -> publish(queryGeneration, version, text, result));
+        });
+    }
+
+    private void publish(long queryGeneration, long version, String text, T result) {
+        if (queryGeneration != generation) {
+            return;  // A newer query has started since
+        }
+        if (version != versionSupplier.getAsLong()) {
+            searchNow();  // The data changed while the query ran
+            return;
+        }
+        pending = null;
+        publisher.accept(text, result);
+    }
+}
@@ -0,0 +1,114 @@
+package org.lms.view.book;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookStatus;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+import org.lms.book.search.SearchHit;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RankedResultsTableModel shows ranked search hits, one row per book with its copy counts.
+ * Copy counts are read from the book when rendered, so catalog changes only need a row update.
+ */
+public class RankedResultsTableModel extends AbstractTableModel implements CatalogChangeListener {
+
+    private static final String[] COLUMN_NAMES = {
+            "Title", "Author",
+            "ISBN", "Type",
+            "Section", "Available", "Copies"
+    };
+
+    private List<SearchHit> hits = new ArrayList<>();  // Hits shown in the table, best first
+
+    /**
+     * Replaces the hits shown in the table.
+     *
+     * @param hits The hits to show, best first
+     */
+    public void setHits(List<SearchHit> hits) {
+        this.hits = new ArrayList<>(hits);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the book shown in a row.
+     *
+     * @param row The row index
+     * @return The book of the row
+     */
+    public BookBase getBookAt(int row) {
+        return hits.get(row).getBook();
+    }
+
+    /**
+     * Refreshes or removes the row of a changed book.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onCatalogChanged(CatalogChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onCatalogChanged(event));
+            return;
+        }
+        for (int row = 0; row < hits.size(); row++) {
+            if (hits.get(row).getBook() == event.getBook()) {
+                if (event.getType() == CatalogChangeEvent.Type.BOOK_DELETED) {
+                    hits.remove(row);
+                    fireTableRowsDeleted(row, row);
+                } else {
+                    fireTableRowsUpdated(row, row);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return hits.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        BookBase book = hits.get(row).getBook();
+        switch (column) {
+            case 0:
+                return book.getTitle();
+            case 1:
+                return book.getAuthor();
+            case 2:
+                return book.getIsbn();
+            case 3:
+                return book.getType();
+            case 4:
+                return book.getSection();
+            case 5:
+                int available = 0;
+                for (BookCopy copy : book.getCopies()) {
+                    if (copy.getStatus() == BookStatus.AVAILABLE) {
+                        available++;
+                    }
+                }
+                return available;
+            default:
+                return book.getCopies().size();
+        }
+    }
+}
@@ -1,22 +1,37 @@
 package org.lms.view.librarian;
 
 import org.lms.book.BookStatus;
-import org.lms.user.BookBorrow;
-import org.lms.user.BorrowStatus;
+import org.lms.circulation.Reservation;
+import org.lms.circulation.ReservationService;
 import org.lms.user.Visitor;
 import org.lms.user.VisitorDatabase;
 import org.lms.view.MainFrame;
+import org.lms.view.book.AutocompletePopup;
+import org.lms.view.book.CatalogTableModel;
+import org.lms.view.book.LiveSearch;
 import org.lms.view.librarian.book.edit.BookOperationButtonRenderer;
+import org.lms.view.librarian.book.edit.BulkEditPanel;
 import org.lms.view.librarian.book.edit.EditBookPanel;
+import org.lms.view.librarian.loan.CopyHistoryPanel;
+import org.lms.view.librarian.loan.DueLoansPanel;
+import org.lms.view.librarian.report.AuditPanel;
+import org.lms.view.librarian.report.ConsistencyPanel;
+import org.lms.view.librarian.report.PopularTitlesPanel;
+import org.lms.view.librarian.report.StatisticsPanel;
+import org.lms.view.librarian.report.StocktakePanel;
 import org.lms.book.BookBase;
 import org.lms.book.BookCopy;
 import org.lms.book.BookDatabase;
+import org.lms.book.SearchResult;
+import org.lms.inventory.Stocktake;
+import org.lms.book.search.QueryNode;
+import org.lms.book.search.QueryParser;
+import org.lms.book.search.SuggestionTrie;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableColumn;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * LibrarianFrame provides the interface for the librarian to manage books.
@@ -27,12 +42,22 @@ public class LibrarianFrame extends JFrame {
     private JTable booksTable;               // Table to display books and their copies
     private JScrollPane scrollPane;          // Scroll pane for the books table
     private JButton addBooksButton;          // Button to add new books
+    private JButton bulkEditButton;          // Button to change all the books found at once
+    private JButton dueLoansButton;          // Button to list overdue and soon-due loans
+    private JButton statisticsButton;        // Button to show the circulation statistics
+    private JButton popularButton;           // Button to list the most borrowed titles
+    private JButton auditButton;             // Button to look up past states of copies and accounts
+    private JButton checkDataButton;         // Button to check that copies and loans agree
+    private JButton stocktakeButton;         // Button to reconcile shelf scans with the catalog
     private JButton backButton;              // Button to go back to the main frame
     private JButton searchButton;            // Button to initiate the search
     private JTextField searchTextField;      // Text field for entering search queries
 
-    private List<BookBase> tableBookBaseRowList = new ArrayList<BookBase>();  // Stores books displayed in the table
-    private List<BookCopy> tableBookCopyRowList = new ArrayList<BookCopy>();  // Stores book copies displayed in the table
+    private CatalogTableModel tableModel;    // Model resolving table rows to books and copies on demand
+    private LiveSearch<SearchResult> liveSearch;  // Searches in the background while the librarian types
+    private final Stocktake stocktake = new Stocktake();  // Shelf scans of the inventory in progress
+    private String shownQuery = "";  // Query of the books shown in the table
+    private Predicate<BookBase> shownFilter = book -> true;  // Condition met by the books shown in the table
 
     /**
      * Constructor to initialize the Librarian frame.
@@ -40,7 +65,7 @@ public class LibrarianFrame extends JFrame {
      */
     public LibrarianFrame() {
         setTitle("Librarian");
-        setSize(1000, 600);
+        setSize(1610, 600);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
@@ -51,6 +76,41 @@ public class LibrarianFrame extends JFrame {
         addBooksButton.setPreferredSize(new Dimension(120, 30));
         addBooksButton.addActionListener(e -> onAddBooksButtonClicked());
 
+        // Bulk edit button to move, retype or weed all the books found at once
+        bulkEditButton = new JButton("Bulk Edit");
+        bulkEditButton.setPreferredSize(new Dimension(120, 30));
+        bulkEditButton.addActionListener(e -> onBulkEditButtonClicked());
+
+        // Due loans button to list overdue loans and loans coming due
+        dueLoansButton = new JButton("Due Loans");
+        dueLoansButton.setPreferredSize(new Dimension(120, 30));
+        dueLoansButton.addActionListener(e -> onDueLoansButtonClicked());
+
+        // Statistics button to show the circulation dashboard
+        statisticsButton = new JButton("Statistics");
+        statisticsButton.setPreferredSize(new Dimension(120, 30));
+        statisticsButton.addActionListener(e -> onStatisticsButtonClicked());
+
+        // Popular button to list the most borrowed titles
+        popularButton = new JButton("Top Titles");
+        popularButton.setPreferredSize(new Dimension(120, 30));
+        popularButton.addActionListener(e -> onPopularButtonClicked());
+
+        // Audit button to look up copies and accounts as they were at a past time
+        auditButton = new JButton("Audit");
+        auditButton.setPreferredSize(new Dimension(120, 30));
+        auditButton.addActionListener(e -> onAuditButtonClicked());
+
+        // Check data button to find and repair copies and loans that disagree
+        checkDataButton = new JButton("Check Data");
+        checkDataButton.setPreferredSize(new Dimension(120, 30));
+        checkDataButton.addActionListener(e -> onCheckDataButtonClicked());
+
+        // Stocktake button to reconcile shelf scans with the catalog
+        stocktakeButton = new JButton("Stocktake");
+        stocktakeButton.setPreferredSize(new Dimension(120, 30));
+        stocktakeButton.addActionListener(e -> onStocktakeButtonClicked());
+
         // Search field for entering search queries
         searchTextField = new JTextField(20);
         searchTextField.setPreferredSize(new Dimension(120, 30));
@@ -68,94 +128,76 @@ public class LibrarianFrame extends JFrame {
         // Panel containing all buttons at the top
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         buttonPanel.add(addBooksButton);
+        buttonPanel.add(bulkEditButton);
+        buttonPanel.add(dueLoansButton);
+        buttonPanel.add(statisticsButton);
+        buttonPanel.add(popularButton);
+        buttonPanel.add(auditButton);
+        buttonPanel.add(checkDataButton);
+        buttonPanel.add(stocktakeButton);
         buttonPanel.add(searchTextField);
         buttonPanel.add(searchButton);
         buttonPanel.add(backButton);
         mainPanel.add(buttonPanel, BorderLayout.NORTH);
 
         // Table to display book information
-        String[] columnNames = {
-                "Title", "Author",
-                "ISBN", "Type",
-                "Section", "Copy ID",
-                "Status", "Operation"
-        };
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
+        tableModel = new CatalogTableModel(true);
         booksTable = new JTable(tableModel);
         booksTable.setFillsViewportHeight(true);
         scrollPane = new JScrollPane(booksTable);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
         booksTable.setRowHeight(30);
 
+        // Set custom renderer and editor for the operation column
+        TableColumn operationColumn = booksTable.getColumnModel().getColumn(CatalogTableModel.OPERATION_COLUMN);
+        operationColumn.setCellRenderer(new BookOperationButtonRenderer(this));
+        operationColumn.setCellEditor(new BookOperationButtonRenderer(this));
+        operationColumn.setMinWidth(380);
+
         // Set the content of the window
         setContentPane(mainPanel);
 
-        // Update the table initially with the available book data
+        // Search while typing, then show the initial catalog and follow catalog changes
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        liveSearch = new LiveSearch<>(searchTextField,
+                query -> QueryParser.isStructured(query)
+                        ? bookDatabase.searchStructuredExplained(query)
+                        : new SearchResult(bookDatabase.searchBooks(query), null),
+                this::showResults,
+                bookDatabase::getVersion);
+        new AutocompletePopup(searchTextField,
+                text -> bookDatabase.suggest(text, SuggestionTrie.TOP_N), text -> updateTable());
         updateTable();
+        bookDatabase.addChangeListener(tableModel);
     }
 
     /**
      * Updates the table based on the current search query.
-     * Filters books by title, author, or ISBN.
+     * Filters books by title, author, or ISBN. The search runs in the background and
+     * the table is filled once it completes.
      */
     public void updateTable() {
-        String searchQuery = searchTextField.getText().trim();
-
-        // Get the instance of the book database
-        BookDatabase bookDatabase = BookDatabase.getInstance();
-        List<BookBase> books = bookDatabase.getAllBooks();
-
-        // Get the table model and reset the table rows
-        DefaultTableModel tableModel = (DefaultTableModel) booksTable.getModel();
-        tableModel.setRowCount(0);
-        tableBookBaseRowList = new ArrayList<>();
-        tableBookCopyRowList = new ArrayList<>();
-
-        // Loop through each book to check if it matches the search query
-        for (BookBase book : books) {
-            boolean matchesSearchQuery = false;
-            if (searchQuery.isEmpty()) {
-                matchesSearchQuery = true;
-            } else {
-                if (book.getTitle().toLowerCase().contains(searchQuery.toLowerCase()) ||
-                        book.getAuthor().toLowerCase().contains(searchQuery.toLowerCase()) ||
-                        book.getIsbn().toLowerCase().contains(searchQuery.toLowerCase())) {
-                    matchesSearchQuery = true;
-                }
-            }
-
-            // Skip books that do not match the search query
-            if (!matchesSearchQuery) {
-                continue;
-            }
+        liveSearch.searchNow();
+    }
 
-            // Add book copies to the table
-            for (BookCopy copy : book.getCopies()) {
-                Object[] rowData = {
-                        book.getTitle(),
-                        book.getAuthor(),
-                        book.getIsbn(),
-                        book.getType(),
-                        book.getSection(),
-                        copy.getCopyId(),
-                        copy.getStatus(),
-                        "Operation"
-                };
-                tableModel.addRow(rowData);
-                tableBookBaseRowList.add(book);
-                tableBookCopyRowList.add(copy);
-            }
+    /**
+     * Shows the books found for a query. For a structured query such as {@code author:tolkien status:available},
+     * the tooltip of the search field shows the plan the search ran with.
+     *
+     * @param query  The query that was run
+     * @param result The books found, with the plan of a structured query
+     */
+    private void showResults(String query, SearchResult result) {
+        if (result.getPlan() != null) {
+            QueryNode parsed = QueryParser.parse(query);
+            shownFilter = parsed::matches;
+            searchTextField.setToolTipText("<html><pre>" + result.getPlan() + "</pre></html>");
+        } else {
+            shownFilter = book -> book.matchesQuery(query);
+            searchTextField.setToolTipText(null);
         }
-
-        // Set custom renderer and editor for the operation column
-        booksTable.getColumnModel()
-                .getColumn(7)
-                .setCellRenderer(new BookOperationButtonRenderer(this));
-        booksTable.getColumnModel()
-                .getColumn(7)
-                .setCellEditor(new BookOperationButtonRenderer(this));
-        booksTable.getColumnModel()
-                .getColumn(7).setMinWidth(300);
+        shownQuery = query;
+        tableModel.setBooks(result.getBooks(), shownFilter);
     }
 
     /**
@@ -165,8 +207,8 @@ public class LibrarianFrame extends JFrame {
         JDialog addBookDialog = new JDialog(this, "Add New Book", true);
         addBookDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
 
-        // Create the EditBookPanel and pass a callback to update the table after adding a book
-        EditBookPanel editBookPanel = new EditBookPanel(() -> updateTable());
+        // The table picks up the new book from the catalog change events
+        EditBookPanel editBookPanel = new EditBookPanel();
 
         addBookDialog.getContentPane().add(editBookPanel);
         addBookDialog.setSize(400, 300);
@@ -174,6 +216,86 @@ public class LibrarianFrame extends JFrame {
         addBookDialog.setVisible(true);
     }
 
+    /**
+     * Opens the dialog to change all the books matching the current search at once.
+     * The table picks up the changes from the catalog change events.
+     */
+    private void onBulkEditButtonClicked() {
+        BulkEditPanel bulkEditPanel = new BulkEditPanel(shownQuery, shownFilter);
+        int result = JOptionPane.showConfirmDialog(this, bulkEditPanel, "Bulk Edit",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result == JOptionPane.OK_OPTION) {
+            bulkEditPanel.apply();
+        }
+    }
+
+    /**
+     * Opens a dialog listing the loans that are overdue or come due within a day.
+     */
+    private void onDueLoansButtonClicked() {
+        JDialog dueLoansDialog = new JDialog(this, "Due Loans", true);
+        dueLoansDialog.add(new DueLoansPanel());
+        dueLoansDialog.setSize(900, 400);
+        dueLoansDialog.setLocationRelativeTo(this);
+        dueLoansDialog.setVisible(true);
+    }
+
+    /**
+     * Opens a dialog showing the circulation statistics.
+     */
+    private void onStatisticsButtonClicked() {
+        JDialog statisticsDialog = new JDialog(this, "Circulation Statistics", true);
+        statisticsDialog.add(new StatisticsPanel());
+        statisticsDialog.setSize(700, 500);
+        statisticsDialog.setLocationRelativeTo(this);
+        statisticsDialog.setVisible(true);
+    }
+
+    /**
+     * Opens a dialog listing the most borrowed titles.
+     */
+    private void onPopularButtonClicked() {
+        JDialog popularDialog = new JDialog(this, "Most Borrowed Titles", true);
+        popularDialog.add(new PopularTitlesPanel());
+        popularDialog.setSize(800, 500);
+        popularDialog.setLocationRelativeTo(this);
+        popularDialog.setVisible(true);
+    }
+
+    /**
+     * Opens a dialog for looking up a copy or an account at a past time.
+     */
+    private void onAuditButtonClicked() {
+        JDialog auditDialog = new JDialog(this, "Audit", true);
+        auditDialog.add(new AuditPanel());
+        auditDialog.setSize(800, 400);
+        auditDialog.setLocationRelativeTo(this);
+        auditDialog.setVisible(true);
+    }
+
+    /**
+     * Opens a dialog checking that the copies agree with the visitors' loans.
+     */
+    private void onCheckDataButtonClicked() {
+        JDialog checkDialog = new JDialog(this, "Data Consistency", true);
+        checkDialog.add(new ConsistencyPanel());
+        checkDialog.setSize(900, 400);
+        checkDialog.setLocationRelativeTo(this);
+        checkDialog.setVisible(true);
+    }
+
+    /**
+     * Opens a dialog for loading shelf scans and reconciling them with the catalog.
+     * The scans are kept for the rest of the session, so an inventory can be done over several visits.
+     */
+    private void onStocktakeButtonClicked() {
+        JDialog stocktakeDialog = new JDialog(this, "Stocktake", true);
+        stocktakeDialog.add(new StocktakePanel(stocktake));
+        stocktakeDialog.setSize(1000, 500);
+        stocktakeDialog.setLocationRelativeTo(this);
+        stocktakeDialog.setVisible(true);
+    }
+
     /**
      * Handles the event when the edit button is clicked for a specific book.
      * Opens the edit book dialog for modifying the selected book's details.
@@ -181,11 +303,11 @@ public class LibrarianFrame extends JFrame {
      * @param row the row index of the selected book
      */
     public void onEditButtonClicked(int row) {
-        BookBase bookToEdit = tableBookBaseRowList.get(row);
+        BookBase bookToEdit = tableModel.getBookAt(row);
 
         // Open the edit book dialog
         JDialog editDialog = new JDialog(this, "Edit Book", true);
-        EditBookPanel editBookPanel = new EditBookPanel(() -> updateTable(), bookToEdit);
+        EditBookPanel editBookPanel = new EditBookPanel(null, bookToEdit);
         editDialog.add(editBookPanel);
         editDialog.setSize(400, 300);
         editDialog.setLocationRelativeTo(this);
@@ -195,21 +317,25 @@ public class LibrarianFrame extends JFrame {
     /**
      * Handles the event when the borrow button is clicked for a specific book copy.
      * It checks availability, asks for visitor ID, and processes the borrow request.
+     * A borrowed copy offers to reserve the book instead.
      *
      * @param row the row index of the selected book copy
      */
     public void onBorrowButtonClicked(int row) {
-        BookBase bookBase = tableBookBaseRowList.get(row);
-        BookCopy bookCopy = tableBookCopyRowList.get(row);
+        BookBase bookBase = tableModel.getBookAt(row);
+        BookCopy bookCopy = tableModel.getCopyAt(row);
 
         // Check if the book copy is available for borrowing
         if (bookCopy.getStatus() == BookStatus.UNAVAILABLE) {
-            JOptionPane.showMessageDialog(
+            int option = JOptionPane.showConfirmDialog(
                     null,
-                    "This book has already been borrowed.",
+                    "This book has already been borrowed. Reserve it for a visitor?",
                     "Unavailable",
-                    JOptionPane.WARNING_MESSAGE
+                    JOptionPane.YES_NO_OPTION
             );
+            if (option == JOptionPane.YES_OPTION) {
+                reserveBook(bookBase);
+            }
             return;
         }
 
@@ -257,69 +383,128 @@ public class LibrarianFrame extends JFrame {
             return;
         }
 
-        // Check if the visitor has reached their borrowing limit
-        int bookBorrowCount = 0;
-        for (BookBorrow bookBorrow : visitor.getBookBorrows()) {
-            if (bookBorrow.getStatus() == BorrowStatus.BORROW) {
-                bookBorrowCount++;
-            }
-            if (bookBorrowCount >= 10) {
-                break;
-            }
-        }
-        if (bookBorrowCount >= 10) {
-            JOptionPane.showMessageDialog(
-                    null,
-                    "Each visitor can borrow up to 10 books.",
-                    "Borrow Limit Reached",
-                    JOptionPane.WARNING_MESSAGE
-            );
-            return;
-        }
-
-        // Process the borrow request
-        boolean success = BookDatabase.getInstance().borrowBook(
+        // Borrow the copy; the borrowing rules, such as the loan limits and overdue books, are checked first
+        String refusal = VisitorDatabase.getInstance().borrowBook(
                 bookBase.getIsbn(),
                 bookCopy.getCopyId(),
                 visitor.getVisitorId()
         );
-        if (!success) {
+        if (refusal != null && visitor.isExpired()) {
+            // An expired registration is renewed at the desk
+            int option = JOptionPane.showConfirmDialog(
+                    null,
+                    refusal + "\nRenew the registration now?",
+                    "Registration Expired",
+                    JOptionPane.YES_NO_OPTION
+            );
+            if (option != JOptionPane.YES_OPTION) {
+                return;
+            }
+            VisitorDatabase.getInstance().renewRegistration(visitor.getVisitorId());
+            refusal = VisitorDatabase.getInstance().borrowBook(
+                    bookBase.getIsbn(),
+                    bookCopy.getCopyId(),
+                    visitor.getVisitorId()
+            );
+        }
+        if (refusal != null) {
             JOptionPane.showMessageDialog(
                     null,
-                    "This book has already been borrowed.",
-                    "Unavailable",
+                    refusal,
+                    "Cannot Borrow",
                     JOptionPane.WARNING_MESSAGE
             );
             return;
         }
 
-        // Update the visitor's borrowed books
-        VisitorDatabase.getInstance().borrowBook(
-                bookBase.getIsbn(),
-                bookCopy.getCopyId(),
-                visitor.getVisitorId()
-        );
-
         JOptionPane.showMessageDialog(
                 null,
                 "Book borrowed successfully!",
                 "Success",
                 JOptionPane.INFORMATION_MESSAGE
         );
+    }
 
-        // Update the table to reflect the borrow operation
-        updateTable();
+    /**
+     * Reserves a book for a visitor whose ID and priority the librarian enters.
+     *
+     * @param bookBase The book to reserve
+     */
+    private void reserveBook(BookBase bookBase) {
+        JTextField visitorIdField = new JTextField(10);
+        JCheckBox priorityCheckBox = new JCheckBox("High priority (e.g. course reserve)");
+        JPanel reservePanel = new JPanel(new GridLayout(3, 1));
+        reservePanel.add(new JLabel("Visitor ID:"));
+        reservePanel.add(visitorIdField);
+        reservePanel.add(priorityCheckBox);
+        int result = JOptionPane.showConfirmDialog(null, reservePanel, "Reserve Book",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        Visitor visitor;
+        try {
+            visitor = VisitorDatabase.getInstance().findVisitorById(Integer.parseInt(visitorIdField.getText().trim()));
+        } catch (NumberFormatException ex) {
+            visitor = null;
+        }
+        if (visitor == null) {
+            JOptionPane.showMessageDialog(
+                    null,
+                    "Visitor ID not found. Please enter a valid ID.",
+                    "Invalid Visitor",
+                    JOptionPane.ERROR_MESSAGE
+            );
+            return;
+        }
+
+        ReservationService reservationService = ReservationService.getInstance();
+        Reservation.Priority priority = priorityCheckBox.isSelected() ? Reservation.Priority.HIGH : Reservation.Priority.NORMAL;
+        if (reservationService.reserve(visitor.getVisitorId(), bookBase.getIsbn(), priority)) {
+            JOptionPane.showMessageDialog(
+                    null,
+                    "Book reserved. " + reservationService.getQueueLength(bookBase.getIsbnKey()) + " visitor(s) waiting.",
+                    "Success",
+                    JOptionPane.INFORMATION_MESSAGE
+            );
+        } else {
+            boolean onShelf = bookBase.getCopies().stream().anyMatch(copy -> copy.getStatus() == BookStatus.AVAILABLE);
+            JOptionPane.showMessageDialog(
+                    null,
+                    onShelf ? "Another copy of this book is on the shelf and can be borrowed now."
+                            : "This visitor has already reserved this book, or has a copy on hold.",
+                    "Cannot Reserve",
+                    JOptionPane.WARNING_MESSAGE
+            );
+        }
     }
 
     /**
      * Handles the event when the return button is clicked for a specific book copy.
      * It checks the current status and processes the return request.
+     * For a copy on hold, it offers to release the hold instead.
      *
      * @param row the row index of the selected book copy
      */
     public void onReturnButtonClicked(int row) {
-        BookBase bookBase = tableBookBaseRowList.get(row);
-        BookCopy bookCopy = tableBookCopyRowList.get(row);
+        BookBase bookBase = tableModel.getBookAt(row);
+        BookCopy bookCopy = tableModel.getCopyAt(row);
+
+        // A copy on hold is not out on loan, but its hold can be released
+        if (bookCopy.getStatus() == BookStatus.ON_HOLD) {
+            int option = JOptionPane.showConfirmDialog(
+                    null,
+                    "This copy is on hold for visitor " + bookCopy.getBorrowVisitorId() + ". Release the hold?\n"
+                            + "The copy goes to the next visitor waiting, or back on the shelf.",
+                    "Release Hold",
+                    JOptionPane.YES_NO_OPTION
+            );
+            if (option == JOptionPane.YES_OPTION) {
+                BookDatabase.getInstance().releaseHold(bookBase.getIsbn(), bookCopy.getCopyId());
+            }
+            return;
+        }
 
         // Check if the book copy is not borrowed
         if (bookCopy.getStatus() == BookStatus.AVAILABLE) {
@@ -332,34 +517,44 @@ public class LibrarianFrame extends JFrame {
             return;
         }
 
-        // Return the book and update the visitor's borrowing status
-        BookDatabase.getInstance().returnBook(
+        // Return the book and close the borrower's loan
+        String failure = VisitorDatabase.getInstance().returnBook(
                 bookBase.getIsbn(),
                 bookCopy.getCopyId()
         );
-
-        int visitorId = bookCopy.getBorrowVisitorId();
-
-        Visitor visitor = VisitorDatabase.getInstance().findVisitorById(visitorId);
-        if (visitor == null) {
+        if (failure != null) {
+            JOptionPane.showMessageDialog(
+                    null,
+                    failure,
+                    "Cannot Return",
+                    JOptionPane.ERROR_MESSAGE
+            );
             return;
         }
 
-        VisitorDatabase.getInstance().returnBook(
-                bookBase.getIsbn(),
-                bookCopy.getCopyId(),
-                visitor.getVisitorId()
-        );
-
         JOptionPane.showMessageDialog(
                 null,
                 "Book returned successfully!",
                 "Success",
                 JOptionPane.INFORMATION_MESSAGE
         );
+    }
 
-        // Update the table to reflect the borrow operation
-        updateTable();
+    /**
+     * Handles the event when the history button is clicked for a specific book copy.
+     * Opens a dialog listing every visitor who borrowed the copy.
+     *
+     * @param row The row index of the selected book copy
+     */
+    public void onHistoryButtonClicked(int row) {
+        BookBase bookBase = tableModel.getBookAt(row);
+        BookCopy bookCopy = tableModel.getCopyAt(row);
+
+        JDialog historyDialog = new JDialog(this, "Copy History - " + bookBase.getTitle(), true);
+        historyDialog.add(new CopyHistoryPanel(bookBase.getIsbn(), bookCopy.getCopyId()));
+        historyDialog.setSize(800, 400);
+        historyDialog.setLocationRelativeTo(this);
+        historyDialog.setVisible(true);
     }
 
     /**
@@ -368,8 +563,8 @@ public class LibrarianFrame extends JFrame {
      * @param row the row index of the selected book copy
      */
     public void onDeleteButtonClicked(int row) {
-        BookBase bookBase = tableBookBaseRowList.get(row);
-        BookCopy bookCopy = tableBookCopyRowList.get(row);
+        BookBase bookBase = tableModel.getBookAt(row);
+        BookCopy bookCopy = tableModel.getCopyAt(row);
 
         // Ask for confirmation before deleting
         int option = JOptionPane.showConfirmDialog(this,
@@ -387,12 +582,19 @@ public class LibrarianFrame extends JFrame {
                 );
                 return;
             }
+            if (bookCopy.getStatus() == BookStatus.ON_HOLD) {
+                JOptionPane.showMessageDialog(
+                        null,
+                        "Please release the hold before deleting the book.",
+                        "Error",
+                        JOptionPane.INFORMATION_MESSAGE
+                );
+                return;
+            }
 
             // Delete the book copy
             BookDatabase bookDatabase = BookDatabase.getInstance();
             bookDatabase.deleteBook(bookBase.getIsbn(), bookCopy.getCopyId());
-
-            updateTable();
         }
     }
 
@@ -401,6 +603,7 @@ public class LibrarianFrame extends JFrame {
      * Returns to the main frame.
      */
     private void onBackButtonClicked() {
+        BookDatabase.getInstance().removeChangeListener(tableModel);
         dispose();
         MainFrame.open();
     }
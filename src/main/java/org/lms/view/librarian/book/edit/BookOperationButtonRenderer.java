@@ -10,7 +10,7 @@ import java.awt.*;
 /**
  * BookOperationButtonRenderer is a custom renderer and editor for rendering and editing
  * buttons within a table cell. It provides buttons for operations such as edit, delete,
- * borrow, and return for each row in the table.
+ * borrow, return and loan history for each row in the table.
  */
 public class BookOperationButtonRenderer extends AbstractCellEditor implements TableCellRenderer, TableCellEditor {
     private JPanel panel; // Panel that contains the buttons
@@ -18,6 +18,7 @@ public class BookOperationButtonRenderer extends AbstractCellEditor implements T
     private JButton deleteButton; // Button for deleting a book
     private JButton borrowButton; // Button for borrowing a book
     private JButton returnButton; // Button for returning a book
+    private JButton historyButton; // Button for listing the past borrowers of a copy
     private LibrarianFrame parentFrame; // Reference to the parent frame (LibrarianFrame)
     private int currentRow; // Current row index in the table
 
@@ -36,6 +37,7 @@ public class BookOperationButtonRenderer extends AbstractCellEditor implements T
         deleteButton = new JButton("Delete");
         borrowButton = new JButton("Borrow");
         returnButton = new JButton("Return");
+        historyButton = new JButton("History");
 
         // Set up action listeners for each button
         editButton.addActionListener(e -> {
@@ -58,11 +60,17 @@ public class BookOperationButtonRenderer extends AbstractCellEditor implements T
             parentFrame.onReturnButtonClicked(currentRow); // Trigger the return action on the parent frame
         });
 
+        historyButton.addActionListener(e -> {
+            fireEditingStopped(); // Stop editing when button is clicked
+            parentFrame.onHistoryButtonClicked(currentRow); // Trigger the history action on the parent frame
+        });
+
         // Add buttons to the panel
         panel.add(editButton);
         panel.add(deleteButton);
         panel.add(borrowButton);
         panel.add(returnButton);
+        panel.add(historyButton);
     }
 
     /**
@@ -0,0 +1,117 @@
+package org.lms.view.librarian.book.edit;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.book.BookType;
+import org.lms.book.Section;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.function.Predicate;
+
+/**
+ * BulkEditPanel lets librarians change all the books matching a search at once: move them to another section,
+ * change their type, or weed their copies that are on the shelf. Each action is applied by the book database
+ * in one pass with a single save.
+ */
+public class BulkEditPanel extends JPanel {
+    private final Predicate<BookBase> filter;  // Condition the books to change must meet
+    private final JRadioButton sectionButton = new JRadioButton("Move to section:", true);
+    private final JRadioButton typeButton = new JRadioButton("Change type to:");
+    private final JRadioButton deleteButton = new JRadioButton("Delete all copies on the shelf");
+    private final JComboBox<Section> sectionComboBox = new JComboBox<>(Section.values());  // Target section
+    private final JComboBox<BookType> typeComboBox = new JComboBox<>(BookType.values());  // Target type
+
+    /**
+     * Constructor to create the panel for the books matching a search.
+     *
+     * @param query  The search the books were found with, shown to the librarian
+     * @param filter The condition the books to change must meet
+     */
+    public BulkEditPanel(String query, Predicate<BookBase> filter) {
+        this.filter = filter;
+        setLayout(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 5, 5, 5);
+
+        // Count the books and copies the actions would apply to
+        int bookCount = 0;
+        int copyCount = 0;
+        int shelfCount = 0;
+        for (BookBase book : BookDatabase.getInstance().getAllBooks()) {
+            if (filter.test(book)) {
+                bookCount++;
+                copyCount += book.getCopies().size();
+                shelfCount += (int) book.getCopies().stream().filter(copy -> copy.getStatus() == BookStatus.AVAILABLE).count();
+            }
+        }
+        String matching = query.isEmpty() ? "all books" : "\"" + query + "\"";
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 2;
+        add(new JLabel(String.format("%d books with %d copies (%d on the shelf) match %s.",
+                bookCount, copyCount, shelfCount, matching)), gbc);
+
+        ButtonGroup group = new ButtonGroup();
+        group.add(sectionButton);
+        group.add(typeButton);
+        group.add(deleteButton);
+
+        gbc.gridwidth = 1;
+        gbc.gridy = 1;
+        add(sectionButton, gbc);
+        gbc.gridx = 1;
+        add(sectionComboBox, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        add(typeButton, gbc);
+        gbc.gridx = 1;
+        add(typeComboBox, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        gbc.gridwidth = 2;
+        add(deleteButton, gbc);
+    }
+
+    /**
+     * Applies the selected action after confirmation and reports how many records changed.
+     *
+     * @return true if the action was applied
+     */
+    public boolean apply() {
+        String action;
+        if (sectionButton.isSelected()) {
+            action = "move the matching books to section " + sectionComboBox.getSelectedItem();
+        } else if (typeButton.isSelected()) {
+            action = "change the type of the matching books to " + typeComboBox.getSelectedItem();
+        } else {
+            action = "delete every copy of the matching books that is on the shelf";
+        }
+        int option = JOptionPane.showConfirmDialog(this,
+                "Are you sure you want to " + action + "?",
+                "Confirm Bulk Edit", JOptionPane.YES_NO_OPTION);
+        if (option != JOptionPane.YES_OPTION) {
+            return false;
+        }
+
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        String result;
+        if (sectionButton.isSelected()) {
+            int moved = bookDatabase.moveBooksToSection(filter, (Section) sectionComboBox.getSelectedItem());
+            result = moved + (moved == 1 ? " book moved." : " books moved.");
+        } else if (typeButton.isSelected()) {
+            int changed = bookDatabase.changeBooksType(filter, (BookType) typeComboBox.getSelectedItem());
+            result = changed + (changed == 1 ? " book changed." : " books changed.");
+        } else {
+            int deleted = bookDatabase.deleteCopies((book, copy) -> filter.test(book));
+            result = deleted + (deleted == 1 ? " copy deleted." : " copies deleted.");
+        }
+        JOptionPane.showMessageDialog(this, result, "Bulk Edit", JOptionPane.INFORMATION_MESSAGE);
+        return true;
+    }
+}
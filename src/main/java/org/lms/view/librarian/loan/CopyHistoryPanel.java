@@ -0,0 +1,65 @@
+package org.lms.view.librarian.loan;
+
+import org.lms.book.CopyRegistry;
+import org.lms.circulation.CirculationLedger;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Date;
+
+/**
+ * CopyHistoryPanel lists every visitor who ever borrowed one book copy, most recent loan first,
+ * for example to contact the last borrowers of a copy that came back damaged.
+ * The loans are read from the copy provenance index, so only the loans of this copy are visited.
+ * Loans of deleted accounts are listed by visitor ID only, as the name and phone went with the account.
+ */
+public class CopyHistoryPanel extends JPanel {
+
+    /**
+     * Constructor to create the panel and list the loans of a copy.
+     *
+     * @param isbn   The ISBN of the copy
+     * @param copyId The ID of the copy
+     */
+    public CopyHistoryPanel(String isbn, String copyId) {
+        setLayout(new BorderLayout());
+
+        DefaultTableModel tableModel = new DefaultTableModel(new String[]{
+                "Visitor ID", "Visitor", "Phone", "Borrow Date", "Return Date"
+        }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        CirculationLedger ledger = visitorDatabase.getLedger();
+        int copyRef = CopyRegistry.getInstance().findRef(copyId);
+        int[] records = visitorDatabase.getProvenanceIndex().recordsOf(copyRef);
+        for (int i = records.length - 1; i >= 0; i--) {
+            int record = records[i];
+            Visitor visitor = visitorDatabase.findVisitorById(ledger.getVisitorId(record));
+            long returnTime = ledger.getReturnTime(record);
+            tableModel.addRow(new Object[]{
+                    ledger.getVisitorId(record),
+                    visitor == null ? "(account deleted)" : visitor.getFullName(),
+                    visitor == null ? "" : visitor.getPhone(),
+                    new Date(ledger.getBorrowTime(record)),
+                    returnTime == 0 ? "Not returned" : new Date(returnTime)
+            });
+        }
+
+        JLabel titleLabel = new JLabel("ISBN " + isbn + ", copy " + copyId + ": "
+                + records.length + (records.length == 1 ? " loan" : " loans"));
+        titleLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(titleLabel, BorderLayout.NORTH);
+    }
+}
@@ -0,0 +1,87 @@
+package org.lms.view.librarian.loan;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.CopyRegistry;
+import org.lms.circulation.DueDateIndex;
+import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * DueLoansPanel lets librarians list the loans that are overdue or that come due within the next 24 hours.
+ * The loans are read from the due date index, so listing them does not scan the borrow histories.
+ */
+public class DueLoansPanel extends JPanel {
+    private static final String OVERDUE = "Overdue now";
+    private static final String DUE_SOON = "Due in the next 24 hours";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private JComboBox<String> viewComboBox;  // Selects overdue or soon-due loans
+    private DefaultTableModel tableModel;    // Rows of the listed loans
+
+    /**
+     * Constructor to create the panel and list the overdue loans.
+     */
+    public DueLoansPanel() {
+        setLayout(new BorderLayout());
+
+        viewComboBox = new JComboBox<>(new String[]{OVERDUE, DUE_SOON});
+        viewComboBox.addActionListener(e -> updateTable());
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> updateTable());
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        topPanel.add(viewComboBox);
+        topPanel.add(refreshButton);
+        add(topPanel, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{
+                "Visitor ID", "Visitor", "Title", "ISBN", "Copy ID", "Borrow Date", "Due Date"
+        }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        updateTable();
+    }
+
+    /**
+     * Lists the loans of the selected view.
+     */
+    private void updateTable() {
+        long now = System.currentTimeMillis();
+        VisitorDatabase visitorDatabase = VisitorDatabase.getInstance();
+        DueDateIndex index = visitorDatabase.getDueDateIndex();
+        List<DueDateIndex.DueLoan> loans = DUE_SOON.equals(viewComboBox.getSelectedItem())
+                ? index.dueBetween(now, now + DAY_MILLIS)
+                : index.overdue(now);
+
+        CopyRegistry registry = CopyRegistry.getInstance();
+        tableModel.setRowCount(0);
+        for (DueDateIndex.DueLoan loan : loans) {
+            Visitor visitor = visitorDatabase.findVisitorById(loan.getVisitorId());
+            BookBase book = BookDatabase.getInstance().findBookByIsbnKey(registry.getIsbnKey(loan.getCopyRef()));
+            tableModel.addRow(new Object[]{
+                    loan.getVisitorId(),
+                    visitor == null ? "" : visitor.getFullName(),
+                    book == null ? "" : book.getTitle(),
+                    registry.getIsbn(loan.getCopyRef()),
+                    registry.getCopyId(loan.getCopyRef()),
+                    visitor == null ? "" : new Date(visitor.getBorrowHistory().getBorrowTime(loan.getHistoryIndex())),
+                    new Date(loan.getDueTime())
+            });
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.lms.view.librarian.report;
+
+import org.lms.audit.AuditLog;
+import org.lms.audit.AuditState;
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.user.Visitor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * AuditPanel lets librarians look up the state of a book copy or a visitor account at a past date and time,
+ * for example to answer who had a copy on a given day or whether an account was over its limit.
+ */
+public class AuditPanel extends JPanel {
+    private static final String COPY = "Copy ID";
+    private static final String VISITOR = "Visitor ID";
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm";
+
+    private JTextField timeTextField;          // Point in time to look at
+    private JComboBox<String> kindComboBox;    // Whether a copy or a visitor is looked up
+    private JTextField idTextField;            // ID of the copy or visitor
+    private JTextArea resultTextArea;          // Description of the state found
+
+    /**
+     * Constructor to create the panel, set to the current time.
+     */
+    public AuditPanel() {
+        setLayout(new BorderLayout());
+
+        timeTextField = new JTextField(new SimpleDateFormat(DATE_FORMAT).format(new Date()), 12);
+        kindComboBox = new JComboBox<>(new String[]{COPY, VISITOR});
+        idTextField = new JTextField(10);
+        idTextField.addActionListener(e -> showState());
+        JButton lookUpButton = new JButton("Look Up");
+        lookUpButton.addActionListener(e -> showState());
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        topPanel.add(new JLabel("As of (" + DATE_FORMAT + "):"));
+        topPanel.add(timeTextField);
+        topPanel.add(kindComboBox);
+        topPanel.add(idTextField);
+        topPanel.add(lookUpButton);
+        add(topPanel, BorderLayout.NORTH);
+
+        resultTextArea = new JTextArea();
+        resultTextArea.setEditable(false);
+        resultTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        add(new JScrollPane(resultTextArea), BorderLayout.CENTER);
+    }
+
+    /**
+     * Looks up the entered copy or visitor at the entered time and describes it.
+     */
+    private void showState() {
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+        format.setLenient(false);
+        Date time;
+        try {
+            time = format.parse(timeTextField.getText().trim());
+        } catch (ParseException e) {
+            resultTextArea.setText("Please enter the time as " + DATE_FORMAT + ".");
+            return;
+        }
+        String id = idTextField.getText().trim();
+        if (id.isEmpty()) {
+            resultTextArea.setText("Please enter a " + kindComboBox.getSelectedItem() + ".");
+            return;
+        }
+
+        // Include the whole minute that was entered
+        AuditState state = AuditLog.getInstance().asOf(time.getTime() + 59_999);
+        if (state == null) {
+            long startTime = AuditLog.getInstance().getStartTime();
+            resultTextArea.setText("No records before " + (startTime == 0 ? "the audit log was started" : format.format(new Date(startTime))) + ".");
+            return;
+        }
+        resultTextArea.setText(COPY.equals(kindComboBox.getSelectedItem()) ? describeCopy(state, id) : describeVisitor(state, id));
+        resultTextArea.setCaretPosition(0);
+    }
+
+    private String describeCopy(AuditState state, String copyId) {
+        BookBase book = state.findBookOfCopy(copyId);
+        if (book == null) {
+            return "Copy " + copyId + " was not in the catalog at that time.";
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("Title:    ").append(book.getTitle()).append('\n');
+        text.append("Author:   ").append(book.getAuthor()).append('\n');
+        text.append("ISBN:     ").append(book.getIsbn()).append('\n');
+        text.append("Type:     ").append(book.getType()).append('\n');
+        text.append("Section:  ").append(book.getSection()).append('\n');
+        for (BookCopy copy : book.getCopies()) {
+            if (copy.getCopyId().equals(copyId)) {
+                text.append("Copy:     ").append(copy.getCopyId()).append('\n');
+                text.append("Status:   ").append(copy.getStatus()).append('\n');
+                if (copy.getBorrowVisitorId() != 0) {
+                    Visitor visitor = state.getVisitor(copy.getBorrowVisitorId());
+                    text.append("Borrower: ").append(copy.getBorrowVisitorId())
+                            .append(visitor == null ? "" : " (" + visitor.getFullName() + ")").append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private String describeVisitor(AuditState state, String id) {
+        int visitorId;
+        try {
+            visitorId = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return "Visitor IDs are numbers.";
+        }
+        Visitor visitor = state.getVisitor(visitorId);
+        if (visitor == null) {
+            return "Visitor " + visitorId + " had no account at that time.";
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("Visitor:    ").append(visitor.getVisitorId()).append('\n');
+        text.append("Name:       ").append(visitor.getFullName()).append('\n');
+        text.append("Phone:      ").append(visitor.getPhone()).append('\n');
+        text.append("Address:    ").append(visitor.getAddress()).append('\n');
+        text.append("Fines:      ").append(String.format("%.2f", visitor.getFineCents() / 100.0)).append('\n');
+        text.append("Over limit: ").append(visitor.isOverLimit() ? "Yes" : "No").append('\n');
+        text.append("Expired:    ").append(visitor.isExpired() ? "Yes" : "No").append('\n');
+        text.append("Borrowed copies:\n");
+        List<BookBase> borrowed = state.findBorrowedBy(visitorId);
+        if (borrowed.isEmpty()) {
+            text.append("  (none)\n");
+        }
+        for (BookBase book : borrowed) {
+            for (BookCopy copy : book.getCopies()) {
+                text.append("  ").append(copy.getCopyId()).append("  ").append(book.getTitle()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+}
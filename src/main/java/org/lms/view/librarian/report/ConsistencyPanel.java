@@ -0,0 +1,135 @@
+package org.lms.view.librarian.report;
+
+import org.lms.circulation.ConsistencyChecker;
+import org.lms.circulation.ConsistencyIssue;
+import org.lms.circulation.ConsistencyReport;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ConsistencyPanel lets librarians check that the copies in the catalog agree with the visitors' loans,
+ * list the issues found, and repair them all at once. Checks and repairs hold both databases while they
+ * run, so they are run in the background.
+ */
+public class ConsistencyPanel extends JPanel {
+    private final JLabel summaryLabel = new JLabel();  // Counts of the last check
+    private final JButton checkButton = new JButton("Check Again");
+    private final JButton repairButton = new JButton("Repair All");
+    private DefaultTableModel tableModel;              // Rows of the issues found
+
+    /**
+     * Constructor to create the panel and run a first check.
+     */
+    public ConsistencyPanel() {
+        setLayout(new BorderLayout());
+
+        checkButton.addActionListener(e -> runCheck(false));
+        repairButton.addActionListener(e -> onRepairButtonClicked());
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        topPanel.add(summaryLabel, BorderLayout.WEST);
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        controlPanel.add(checkButton);
+        controlPanel.add(repairButton);
+        topPanel.add(controlPanel, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{
+                "Issue", "ISBN", "Copy ID", "Visitor ID", "Borrow Date"
+        }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setMinWidth(380);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        runCheck(false);
+    }
+
+    /**
+     * Repairs every issue after confirmation, then checks again.
+     */
+    private void onRepairButtonClicked() {
+        int option = JOptionPane.showConfirmDialog(this,
+                "Repair all issues? Borrowed copies without a loan are put back on the shelf,\n"
+                        + "and loans open on copies that are on the shelf or missing are closed.",
+                "Confirm Repair", JOptionPane.YES_NO_OPTION);
+        if (option != JOptionPane.YES_OPTION) {
+            return;
+        }
+        runCheck(true);
+    }
+
+    /**
+     * Checks the databases in the background, after repairing every issue if asked, and shows the report.
+     *
+     * @param repair Whether to repair the issues first
+     */
+    private void runCheck(boolean repair) {
+        checkButton.setEnabled(false);
+        repairButton.setEnabled(false);
+        summaryLabel.setText(repair ? "Repairing..." : "Checking...");
+        new SwingWorker<ConsistencyReport, Void>() {
+            private int repaired;  // Number of issues repaired
+
+            @Override
+            protected ConsistencyReport doInBackground() {
+                if (repair) {
+                    repaired = ConsistencyChecker.repair().getIssues().size();
+                }
+                return ConsistencyChecker.check();
+            }
+
+            @Override
+            protected void done() {
+                checkButton.setEnabled(true);
+                repairButton.setEnabled(true);
+                try {
+                    showReport(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    summaryLabel.setText("The check could not be completed.");
+                    JOptionPane.showMessageDialog(ConsistencyPanel.this,
+                            "Failed to check the databases: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (repair) {
+                    JOptionPane.showMessageDialog(ConsistencyPanel.this,
+                            "Repaired " + repaired + (repaired == 1 ? " issue." : " issues."),
+                            "Repair Complete", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows the counts and issues of a report.
+     *
+     * @param report The report to show
+     */
+    private void showReport(ConsistencyReport report) {
+        summaryLabel.setText(String.format("Checked %d copies and %d open loans: %s",
+                report.getCopiesChecked(), report.getOpenLoansChecked(),
+                report.isConsistent() ? "no issues" : report.getIssues().size() + " issues"));
+        tableModel.setRowCount(0);
+        for (ConsistencyIssue issue : report.getIssues()) {
+            tableModel.addRow(new Object[]{
+                    issue.getKind().getDescription(),
+                    issue.getIsbn(),
+                    issue.getCopyId(),
+                    issue.getVisitorId() == 0 ? "" : issue.getVisitorId(),
+                    issue.getBorrowTime() == 0 ? "" : new Date(issue.getBorrowTime())
+            });
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.lms.view.librarian.report;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.circulation.PopularityTracker;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PopularTitlesPanel lists the most borrowed titles of the last week, the last month or all time.
+ * Counts come from the streaming {@link PopularityTracker} and are estimates that may be slightly high.
+ */
+public class PopularTitlesPanel extends JPanel {
+    private static final String WEEK = "This Week";
+    private static final String MONTH = "This Month";
+    private static final String ALL_TIME = "All Time";
+
+    private JComboBox<String> windowComboBox;  // Selects the time window
+    private DefaultTableModel tableModel;      // Rows of the listed titles
+
+    /**
+     * Constructor to create the panel and list the titles of the last week.
+     */
+    public PopularTitlesPanel() {
+        setLayout(new BorderLayout());
+
+        windowComboBox = new JComboBox<>(new String[]{WEEK, MONTH, ALL_TIME});
+        windowComboBox.addActionListener(e -> updateTable());
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> updateTable());
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        topPanel.add(windowComboBox);
+        topPanel.add(refreshButton);
+        add(topPanel, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{"Rank", "Title", "Author", "ISBN", "Borrows"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        updateTable();
+    }
+
+    /**
+     * Lists the titles of the selected window.
+     */
+    private void updateTable() {
+        PopularityTracker tracker = PopularityTracker.getInstance();
+        Object window = windowComboBox.getSelectedItem();
+        List<PopularityTracker.Popularity> titles = ALL_TIME.equals(window)
+                ? tracker.topAllTime(PopularityTracker.TOP_N)
+                : tracker.top(MONTH.equals(window) ? PopularityTracker.MONTH_DAYS : PopularityTracker.WEEK_DAYS, PopularityTracker.TOP_N);
+
+        // Resolve the listed books with a single batched lookup
+        long[] isbnKeys = new long[titles.size()];
+        for (int i = 0; i < isbnKeys.length; i++) {
+            isbnKeys[i] = titles.get(i).getIsbnKey();
+        }
+        Map<Long, BookBase> books = BookDatabase.getInstance().findBooksByIsbnKeys(isbnKeys);
+
+        tableModel.setRowCount(0);
+        for (PopularityTracker.Popularity title : titles) {
+            BookBase book = books.get(title.getIsbnKey());
+            tableModel.addRow(new Object[]{
+                    tableModel.getRowCount() + 1,
+                    book == null ? "(no longer in the catalog)" : book.getTitle(),
+                    book == null ? "" : book.getAuthor(),
+                    book == null ? "" : book.getIsbn(),
+                    title.getBorrows()
+            });
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.lms.view.librarian.report;
+
+import org.lms.book.BookType;
+import org.lms.book.Section;
+import org.lms.circulation.CirculationStatistics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+
+/**
+ * StatisticsPanel shows the circulation dashboard: utilization of the copies, borrows per book type,
+ * section and hour of the day, and borrows over the last two weeks.
+ * Every figure is read from the counters of {@link CirculationStatistics}, so refreshing is instant.
+ */
+public class StatisticsPanel extends JPanel {
+    private static final int RECENT_DAYS = 14;  // Number of days listed in the daily view
+
+    private final JLabel summaryLabel = new JLabel();  // Totals and utilization
+    private DefaultTableModel tableModel;              // Rows of the selected breakdown
+    private JComboBox<String> viewComboBox;            // Selects the breakdown
+
+    /**
+     * Constructor to create the panel and show the statistics per book type.
+     */
+    public StatisticsPanel() {
+        setLayout(new BorderLayout());
+
+        viewComboBox = new JComboBox<>(new String[]{"By Type", "By Section", "By Hour", "By Day"});
+        viewComboBox.addActionListener(e -> updateTable());
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> updateTable());
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        topPanel.add(summaryLabel, BorderLayout.WEST);
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        controlPanel.add(viewComboBox);
+        controlPanel.add(refreshButton);
+        topPanel.add(controlPanel, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{"Group", "Borrows"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        updateTable();
+    }
+
+    /**
+     * Shows the totals and the rows of the selected breakdown.
+     */
+    private void updateTable() {
+        CirculationStatistics statistics = CirculationStatistics.getInstance();
+        summaryLabel.setText(String.format("Borrows: %d   Returns: %d   Borrowed copies: %d of %d (%.1f%%)",
+                statistics.getTotalBorrows(), statistics.getTotalReturns(),
+                statistics.getUnavailableCopies(), statistics.getTotalCopies(),
+                statistics.getUtilization() * 100));
+
+        tableModel.setRowCount(0);
+        switch (viewComboBox.getSelectedIndex()) {
+            case 0:
+                for (BookType type : BookType.values()) {
+                    tableModel.addRow(new Object[]{type, statistics.getBorrowCount(type)});
+                }
+                break;
+            case 1:
+                for (Section section : Section.values()) {
+                    tableModel.addRow(new Object[]{section, statistics.getBorrowCount(section)});
+                }
+                break;
+            case 2:
+                for (int hour = 0; hour < 24; hour++) {
+                    tableModel.addRow(new Object[]{String.format("%02d:00 - %02d:59", hour, hour),
+                            statistics.getBorrowCountByHour(hour)});
+                }
+                break;
+            default:
+                LocalDate today = LocalDate.now();
+                for (int i = 0; i < RECENT_DAYS; i++) {
+                    LocalDate day = today.minusDays(i);
+                    tableModel.addRow(new Object[]{day, statistics.getBorrowCount(day)});
+                }
+                break;
+        }
+    }
+}
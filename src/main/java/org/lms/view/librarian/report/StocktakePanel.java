@@ -0,0 +1,221 @@
+package org.lms.view.librarian.report;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.CopyRegistry;
+import org.lms.book.Section;
+import org.lms.inventory.Stocktake;
+import org.lms.inventory.StocktakeReport;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * StocktakePanel lets librarians load the shelf scan files of an inventory, section by section,
+ * and lists the copies that are missing, misplaced, recorded as borrowed, deleted or unknown.
+ */
+public class StocktakePanel extends JPanel {
+    private final Stocktake stocktake;  // The inventory the scans are added to
+    private final JComboBox<Section> sectionComboBox = new JComboBox<>(Section.values());  // Section being scanned
+    private final JLabel summaryLabel = new JLabel();  // Counts of the last reconciliation
+    private final DiscrepancyTableModel tableModel = new DiscrepancyTableModel();  // Rows of the discrepancies
+    private final JButton loadButton = new JButton("Load Scans...");
+
+    /**
+     * Constructor to create the panel for an inventory.
+     *
+     * @param stocktake The inventory, which keeps its scans when the panel is closed
+     */
+    public StocktakePanel(Stocktake stocktake) {
+        this.stocktake = stocktake;
+        setLayout(new BorderLayout());
+
+        loadButton.addActionListener(e -> onLoadButtonClicked());
+        JButton clearButton = new JButton("Clear Section");
+        clearButton.addActionListener(e -> onClearButtonClicked());
+        JButton reconcileButton = new JButton("Reconcile");
+        reconcileButton.addActionListener(e -> showReport(stocktake.reconcile()));
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        topPanel.add(summaryLabel, BorderLayout.WEST);
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        controlPanel.add(new JLabel("Section:"));
+        controlPanel.add(sectionComboBox);
+        controlPanel.add(loadButton);
+        controlPanel.add(clearButton);
+        controlPanel.add(reconcileButton);
+        topPanel.add(controlPanel, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(1).setMinWidth(200);
+        table.getColumnModel().getColumn(4).setMinWidth(250);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        showReport(stocktake.reconcile());
+    }
+
+    /**
+     * Reads the chosen scan files into the selected section in the background, then reconciles.
+     */
+    private void onLoadButtonClicked() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setMultiSelectionEnabled(true);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File[] files = chooser.getSelectedFiles();
+        Section section = (Section) sectionComboBox.getSelectedItem();
+        loadButton.setEnabled(false);
+        summaryLabel.setText("Reading scans...");
+        new SwingWorker<StocktakeReport, Void>() {
+            @Override
+            protected StocktakeReport doInBackground() throws Exception {
+                for (File file : files) {
+                    stocktake.ingest(section, file.toPath());
+                }
+                return stocktake.reconcile();
+            }
+
+            @Override
+            protected void done() {
+                loadButton.setEnabled(true);
+                try {
+                    showReport(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    showReport(stocktake.reconcile());
+                    JOptionPane.showMessageDialog(StocktakePanel.this,
+                            "Failed to read the scan files: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Discards the scans of the selected section after confirmation.
+     */
+    private void onClearButtonClicked() {
+        Section section = (Section) sectionComboBox.getSelectedItem();
+        int option = JOptionPane.showConfirmDialog(this,
+                "Discard all scans of section " + section + "?",
+                "Confirm Clear", JOptionPane.YES_NO_OPTION);
+        if (option == JOptionPane.YES_OPTION) {
+            stocktake.clear(section);
+            showReport(stocktake.reconcile());
+        }
+    }
+
+    /**
+     * Shows the counts and discrepancies of a report.
+     *
+     * @param report The report to show
+     */
+    private void showReport(StocktakeReport report) {
+        if (report.getSections().isEmpty()) {
+            summaryLabel.setText("No scans loaded");
+        } else {
+            summaryLabel.setText(String.format("Sections %s: %d copies scanned, %d expected, %d discrepancies",
+                    report.getSections(), report.getCopiesScanned(), report.getCopiesExpected(),
+                    report.countDiscrepancies()));
+        }
+        tableModel.setReport(report);
+    }
+
+    /**
+     * Table model listing the discrepancies of a report, resolving the book of each copy when the report is set.
+     */
+    private static class DiscrepancyTableModel extends AbstractTableModel {
+        private static final String[] COLUMN_NAMES = {
+                "Section", "Discrepancy", "ISBN", "Copy ID", "Title", "Recorded Section"
+        };
+
+        private final List<Section> sections = new ArrayList<>();  // Scanned section of each row
+        private final List<String> kinds = new ArrayList<>();  // Discrepancy of each row
+        private final List<String> copyIds = new ArrayList<>();  // Copy ID of each row
+        private final List<Integer> copyRefs = new ArrayList<>();  // Copy reference of each row, -1 if unknown
+        private StocktakeReport report;
+        private Map<Long, BookBase> books = new HashMap<>();  // Books of the listed copies, by ISBN key
+
+        void setReport(StocktakeReport report) {
+            this.report = report;
+            sections.clear();
+            kinds.clear();
+            copyIds.clear();
+            copyRefs.clear();
+            for (Section section : report.getSections()) {
+                addRows(section, "Missing from shelf", report.getMissing(section));
+                addRows(section, "Misplaced", report.getMisplaced(section));
+                addRows(section, "On shelf but recorded as borrowed", report.getOnLoan(section));
+                addRows(section, "Deleted from catalog", report.getNotInCatalog(section));
+                for (String copyId : report.getUnknown(section)) {
+                    sections.add(section);
+                    kinds.add("Unknown copy ID");
+                    copyIds.add(copyId);
+                    copyRefs.add(-1);
+                }
+            }
+
+            CopyRegistry registry = CopyRegistry.getInstance();
+            long[] isbnKeys = copyRefs.stream().filter(ref -> ref >= 0).mapToLong(registry::getIsbnKey).distinct().toArray();
+            books = BookDatabase.getInstance().findBooksByIsbnKeys(isbnKeys);
+            fireTableDataChanged();
+        }
+
+        private void addRows(Section section, String kind, int[] refs) {
+            CopyRegistry registry = CopyRegistry.getInstance();
+            for (int ref : refs) {
+                sections.add(section);
+                kinds.add(kind);
+                copyIds.add(registry.getCopyId(ref));
+                copyRefs.add(ref);
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return kinds.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            int ref = copyRefs.get(row);
+            switch (column) {
+                case 0:
+                    return sections.get(row);
+                case 1:
+                    return kinds.get(row);
+                case 2:
+                    return ref < 0 ? "" : CopyRegistry.getInstance().getIsbn(ref);
+                case 3:
+                    return copyIds.get(row);
+                case 4:
+                    BookBase book = ref < 0 ? null : books.get(CopyRegistry.getInstance().getIsbnKey(ref));
+                    return book == null ? "" : book.getTitle();
+                default:
+                    Section recorded = ref < 0 ? null : report.getRecordedSection(ref);
+                    return recorded == null ? "" : recorded;
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import org.lms.user.Visitor;
 import org.lms.user.VisitorDatabase;
 import org.lms.view.MainFrame;
 import org.lms.view.visitor.book.BorrowQueryPannel;
+import org.lms.view.visitor.book.RecommendationsPanel;
+import org.lms.view.visitor.book.ReservationsPanel;
 import org.lms.view.visitor.book.SearchBooksPannel;
 import org.lms.view.visitor.edit.VisitorEditPanel;
 
@@ -22,6 +24,8 @@ public class VisitorFrame extends JFrame {
     private JButton deleteAccountButton;
     private JButton searchBooksButton;
     private JButton borrowQueryButton;
+    private JButton recommendationsButton;
+    private JButton reservationsButton;
     private JButton backButton;
     private JPanel buttonPanel;
 
@@ -31,7 +35,7 @@ public class VisitorFrame extends JFrame {
     public VisitorFrame(Visitor visitor) {
         this.visitor = visitor;
         setTitle("Visitor");
-        setSize(400, 400);
+        setSize(400, 440);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
@@ -39,7 +43,7 @@ public class VisitorFrame extends JFrame {
 
         // Top panel with visitor ID display
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-        JLabel idLabel = new JLabel("ID: " + visitor.getVisitorId());
+        JLabel idLabel = new JLabel("ID: " + visitor.getVisitorId() + accountStatus(visitor));
         idLabel.setFont(new Font("Arial", Font.BOLD, 14));
         topPanel.add(idLabel);
         mainPanel.add(topPanel, BorderLayout.NORTH);
@@ -69,6 +73,16 @@ public class VisitorFrame extends JFrame {
         borrowQueryButton.addActionListener(e -> onBorrowQueryButtonClicked());
         buttonPanel.add(borrowQueryButton);
 
+        // Add Recommendations button
+        recommendationsButton = createButton("Recommendations");
+        recommendationsButton.addActionListener(e -> onRecommendationsButtonClicked());
+        buttonPanel.add(recommendationsButton);
+
+        // Add Reservations button
+        reservationsButton = createButton("Reservations");
+        reservationsButton.addActionListener(e -> onReservationsButtonClicked());
+        buttonPanel.add(reservationsButton);
+
         mainPanel.add(buttonPanel, BorderLayout.CENTER);
 
         // Bottom panel with Logout button
@@ -83,6 +97,17 @@ public class VisitorFrame extends JFrame {
         setContentPane(mainPanel);
     }
 
+    // Describes the account flags set by the nightly batch, which stop the visitor from borrowing
+    private static String accountStatus(Visitor visitor) {
+        if (visitor.isExpired()) {
+            return " (registration expired)";
+        }
+        if (visitor.isOverLimit()) {
+            return " (over limit)";
+        }
+        return "";
+    }
+
     // Helper method to create styled buttons
     private JButton createButton(String text) {
         JButton button = new JButton(text);
@@ -184,6 +209,26 @@ public class VisitorFrame extends JFrame {
         searchBooksDialog.setVisible(true);
     }
 
+    // Opens the recommendations dialog
+    private void onRecommendationsButtonClicked() {
+        JDialog recommendationsDialog = new JDialog(this, "Recommendations", true);
+        recommendationsDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        recommendationsDialog.getContentPane().add(new RecommendationsPanel(visitor));
+        recommendationsDialog.setSize(1000, 600);
+        recommendationsDialog.setLocationRelativeTo(this);
+        recommendationsDialog.setVisible(true);
+    }
+
+    // Opens the reservations dialog
+    private void onReservationsButtonClicked() {
+        JDialog reservationsDialog = new JDialog(this, "Reservations", true);
+        reservationsDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        reservationsDialog.getContentPane().add(new ReservationsPanel(visitor));
+        reservationsDialog.setSize(800, 400);
+        reservationsDialog.setLocationRelativeTo(this);
+        reservationsDialog.setVisible(true);
+    }
+
     // Logout and return to login screen
     private void onBackButtonClicked() {
         dispose();
@@ -0,0 +1,275 @@
+package org.lms.view.visitor.book;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.book.CatalogChangeEvent;
+import org.lms.book.CatalogChangeListener;
+import org.lms.book.CopyRegistry;
+import org.lms.user.BorrowHistory;
+import org.lms.user.LoanEvent;
+import org.lms.user.LoanListener;
+import org.lms.user.Visitor;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BorrowHistoryTableModel shows the borrow records of one visitor, most recent first, one row per record.
+ * Records are loaded in pages going back in time. The books of a page are resolved with a single
+ * batched lookup and cached, so rendering never searches the catalog. Loans of books that are no
+ * longer in the catalog are left out. Loan and catalog changes are applied as targeted row changes.
+ */
+public class BorrowHistoryTableModel extends AbstractTableModel implements LoanListener, CatalogChangeListener {
+
+    private static final String[] COLUMN_NAMES = {
+            "Title", "Author", "Type", "Section",
+            "ISBN", "Copy ID", "Borrow Date", "Due Date", "Return Date"
+    };
+
+    private final Visitor visitor;  // The visitor whose records are shown
+    private final Map<Long, BookBase> books = new HashMap<>();  // Books of the loaded records, by ISBN key
+    private int[] rows = new int[16];  // History index of each row, in descending order
+    private int rowCount;  // Number of rows in use
+    private int loadedFrom;  // Records from this history index to the end have been loaded
+
+    /**
+     * Constructor to create the model for a visitor. No records are loaded until {@link #loadOlder(int)} is called.
+     *
+     * @param visitor The visitor whose borrow records are shown
+     */
+    public BorrowHistoryTableModel(Visitor visitor) {
+        this.visitor = visitor;
+        this.loadedFrom = visitor.getBorrowHistory().size();
+    }
+
+    /**
+     * Loads the next page of older records below the rows already shown. While every record loaded
+     * is a loan of a book no longer in the catalog, further pages are loaded, so that a page never
+     * comes up empty while older loans remain to be shown.
+     *
+     * @param count The number of records to load per page
+     */
+    public void loadOlder(int count) {
+        int firstNewRow = rowCount;
+        while (rowCount == firstNewRow && loadedFrom > 0) {
+            loadPage(count);
+        }
+        if (rowCount > firstNewRow) {
+            fireTableRowsInserted(firstNewRow, rowCount - 1);
+        }
+    }
+
+    /**
+     * Loads one page of older records, adding the rows of the books still in the catalog without
+     * notifying the table.
+     *
+     * @param count The number of records to load
+     */
+    private void loadPage(int count) {
+        int end = loadedFrom;
+        int start = Math.max(0, end - count);
+
+        // Resolve the books of the whole page at once
+        long[] isbnKeys = new long[end - start];
+        for (int i = start; i < end; i++) {
+            isbnKeys[i - start] = isbnKeyOf(i);
+        }
+        books.putAll(BookDatabase.getInstance().findBooksByIsbnKeys(isbnKeys));
+
+        for (int i = end - 1; i >= start; i--) {
+            if (books.containsKey(isbnKeyOf(i))) {
+                insertIndex(rowCount, i);
+            }
+        }
+        loadedFrom = start;
+    }
+
+    /**
+     * Checks whether older records remain to be loaded.
+     *
+     * @return True if there are older records
+     */
+    public boolean hasOlder() {
+        return loadedFrom > 0;
+    }
+
+    /**
+     * Applies a borrow or return of the visitor to the table.
+     *
+     * @param event The loan change that was recorded
+     */
+    @Override
+    public void onLoanChanged(LoanEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onLoanChanged(event));
+            return;
+        }
+        if (event.getVisitor() != visitor) {
+            return;
+        }
+
+        int historyIndex = event.getHistoryIndex();
+        int row = findRow(historyIndex);
+        if (row >= 0) {
+            fireTableRowsUpdated(row, row);
+            return;
+        }
+        long isbnKey = isbnKeyOf(historyIndex);
+        BookBase book = books.containsKey(isbnKey) ? books.get(isbnKey) : BookDatabase.getInstance().findBookByIsbnKey(isbnKey);
+        if (book != null && historyIndex >= loadedFrom) {
+            books.put(isbnKey, book);
+            row = -row - 1;
+            insertIndex(row, historyIndex);
+            fireTableRowsInserted(row, row);
+        }
+    }
+
+    /**
+     * Applies a catalog change to the rows showing the affected book.
+     *
+     * @param event The change that was applied
+     */
+    @Override
+    public void onCatalogChanged(CatalogChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onCatalogChanged(event));
+            return;
+        }
+
+        long isbnKey = event.getBook().getIsbnKey();
+        switch (event.getType()) {
+            case BOOK_EDITED:
+                for (int row = 0; row < rowCount; row++) {
+                    if (isbnKeyOf(rows[row]) == isbnKey) {
+                        fireTableRowsUpdated(row, row);
+                    }
+                }
+                break;
+            case BOOK_DELETED:
+                books.remove(isbnKey);
+                for (int row = rowCount - 1; row >= 0; row--) {
+                    if (isbnKeyOf(rows[row]) == isbnKey) {
+                        System.arraycopy(rows, row + 1, rows, row, rowCount - row - 1);
+                        rowCount--;
+                        fireTableRowsDeleted(row, row);
+                    }
+                }
+                break;
+            case BOOK_ADDED:
+                // A book added back to the catalog may bring loaded loans back into view
+                if (hasLoadedLoanOf(isbnKey)) {
+                    books.put(isbnKey, event.getBook());
+                    rebuildRows();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = rows[row];
+        BorrowHistory history = visitor.getBorrowHistory();
+        CopyRegistry registry = CopyRegistry.getInstance();
+        BookBase book = books.get(isbnKeyOf(index));
+        switch (column) {
+            case 0:
+                return book.getTitle();
+            case 1:
+                return book.getAuthor();
+            case 2:
+                return book.getType();
+            case 3:
+                return book.getSection();
+            case 4:
+                return registry.getIsbn(history.getCopyRef(index));
+            case 5:
+                return registry.getCopyId(history.getCopyRef(index));
+            case 6:
+                return new Date(history.getBorrowTime(index));
+            case 7:
+                return history.getDueTime(index) == 0 ? "" : new Date(history.getDueTime(index));
+            default:
+                if (history.isReturned(index)) {
+                    return new Date(history.getReturnTime(index));
+                }
+                long dueTime = history.getDueTime(index);
+                return dueTime != 0 && dueTime < System.currentTimeMillis() ? "Overdue" : "Not returned";
+        }
+    }
+
+    /**
+     * Finds the row of a history index by binary search over the descending row order.
+     *
+     * @param historyIndex The history index to find
+     * @return The row, or (-(insertion row) - 1) if the index is not shown
+     */
+    private int findRow(int historyIndex) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (rows[mid] > historyIndex) {
+                low = mid + 1;
+            } else if (rows[mid] < historyIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertIndex(int row, int historyIndex) {
+        if (rowCount == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        System.arraycopy(rows, row, rows, row + 1, rowCount - row);
+        rows[row] = historyIndex;
+        rowCount++;
+    }
+
+    private boolean hasLoadedLoanOf(long isbnKey) {
+        int size = visitor.getBorrowHistory().size();
+        for (int i = loadedFrom; i < size; i++) {
+            if (isbnKeyOf(i) == isbnKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuildRows() {
+        rowCount = 0;
+        for (int i = visitor.getBorrowHistory().size() - 1; i >= loadedFrom; i--) {
+            if (books.containsKey(isbnKeyOf(i))) {
+                insertIndex(rowCount, i);
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    private long isbnKeyOf(int historyIndex) {
+        return CopyRegistry.getInstance().getIsbnKey(visitor.getBorrowHistory().getCopyRef(historyIndex));
+    }
+}
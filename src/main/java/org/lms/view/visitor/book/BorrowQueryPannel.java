@@ -1,24 +1,25 @@
 package org.lms.view.visitor.book;
 
-import org.lms.book.BookBase;
 import org.lms.book.BookDatabase;
-import org.lms.user.BookBorrow;
-import org.lms.user.BorrowStatus;
 import org.lms.user.Visitor;
+import org.lms.user.VisitorDatabase;
+import org.lms.view.ScrollPaging;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 
 /**
  * BorrowQueryPannel provides a panel for visitors to view their borrowed books.
- * It displays information about each borrowed book, including the borrow date and return status.
+ * It displays information about each borrowed book, including the borrow date, due date and return status.
+ * The most recent loans are shown first, and older loans are loaded as the visitor scrolls down.
  */
 public class BorrowQueryPannel extends JPanel {
+    private static final int PAGE_ROWS = 50;  // Number of loans loaded per page
 
     private JTable borrowTable;            // Table to display borrowed books
     private JScrollPane scrollPane;       // Scroll pane for the borrow table
     private Visitor visitor;              // The visitor whose borrow information is being displayed
+    private BorrowHistoryTableModel tableModel;  // Model reading rows from the visitor's history
 
     /**
      * Constructor to initialize the panel and display the borrow information for the given visitor.
@@ -30,14 +31,8 @@ public class BorrowQueryPannel extends JPanel {
         // Set the layout of the panel to BorderLayout
         setLayout(new BorderLayout());
 
-        // Define column names for the borrow table
-        String[] columnNames = {
-                "Title", "Author", "Type", "Section",
-                "ISBN", "Copy ID", "Borrow Date", "Return Date"
-        };
-
-        // Initialize the table model with the column names
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
+        // Initialize the table with a model over the visitor's borrow history
+        tableModel = new BorrowHistoryTableModel(visitor);
         borrowTable = new JTable(tableModel);
         borrowTable.setRowHeight(30);                // Set row height for better readability
         borrowTable.setFillsViewportHeight(true);    // Fill the viewport height with the table
@@ -46,44 +41,49 @@ public class BorrowQueryPannel extends JPanel {
         scrollPane = new JScrollPane(borrowTable);
         add(scrollPane, BorderLayout.CENTER);
 
-        // Update the table with borrow data
-        updateTable();
+        // Set minimum widths for the "Borrow Date", "Due Date" and "Return Date" columns
+        borrowTable.getColumnModel().getColumn(6).setMinWidth(200);
+        borrowTable.getColumnModel().getColumn(7).setMinWidth(200);
+        borrowTable.getColumnModel().getColumn(8).setMinWidth(200);
+
+        // Show the most recent loans, and page backwards in time while scrolling
+        tableModel.loadOlder(PAGE_ROWS);
+        ScrollPaging.install(scrollPane, this::loadOlderPage);
     }
 
     /**
-     * Updates the borrow table with the visitor's current borrow information.
-     * This includes details about each borrowed book, including borrow dates and return status.
+     * Loads the next page of older loans, and keeps loading while the rows do not fill the visible area.
      */
-    private void updateTable() {
-        DefaultTableModel tableModel = (DefaultTableModel) borrowTable.getModel();
-        tableModel.setRowCount(0);  // Clear existing rows in the table
-
-        // Loop through all books borrowed by the visitor
-        for (BookBorrow borrow : visitor.getBookBorrows()) {
-            // Find the book in the database by ISBN
-            BookBase book = BookDatabase.getInstance().findBookByIsbn(borrow.getIsbn());
-            if (book == null) {
-                continue;  // Skip if the book is not found in the database
+    private void loadOlderPage() {
+        if (!tableModel.hasOlder()) {
+            return;
+        }
+        tableModel.loadOlder(PAGE_ROWS);
+        // Measure again once the table has been laid out with the new rows
+        SwingUtilities.invokeLater(() -> {
+            if (ScrollPaging.isNearEnd(scrollPane)) {
+                loadOlderPage();
             }
+        });
+    }
 
-            // Create a row of data for the table
-            Object[] rowData = {
-                    book.getTitle(),                    // Book title
-                    book.getAuthor(),                   // Book author
-                    book.getType(),                     // Book type
-                    book.getSection(),                  // Book section
-                    borrow.getIsbn(),                   // ISBN of the borrowed book
-                    borrow.getCopyId(),                 // Copy ID of the borrowed book
-                    borrow.getBorrowTime(),             // Borrow date
-                    borrow.getStatus() == BorrowStatus.BORROW ? "Not returned" : borrow.getReturnTime()  // Return date (if returned)
-            };
-
-            // Add the row data to the table model
-            tableModel.addRow(rowData);
-        }
+    /**
+     * Starts following loan and catalog changes while the panel is displayed.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        VisitorDatabase.getInstance().addLoanListener(tableModel);
+        BookDatabase.getInstance().addChangeListener(tableModel);
+    }
 
-        // Set minimum widths for the "Borrow Date" and "Return Date" columns
-        borrowTable.getColumnModel().getColumn(6).setMinWidth(200);
-        borrowTable.getColumnModel().getColumn(7).setMinWidth(200);
+    /**
+     * Stops following loan and catalog changes once the panel is no longer displayed.
+     */
+    @Override
+    public void removeNotify() {
+        VisitorDatabase.getInstance().removeLoanListener(tableModel);
+        BookDatabase.getInstance().removeChangeListener(tableModel);
+        super.removeNotify();
     }
 }
@@ -0,0 +1,74 @@
+package org.lms.view.visitor.book;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookDatabase;
+import org.lms.circulation.CoBorrowRecommender;
+import org.lms.user.Visitor;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RecommendationsPanel shows a visitor titles that other visitors borrowed together with
+ * the titles this visitor borrowed, along with the borrowed title each recommendation comes from.
+ */
+public class RecommendationsPanel extends JPanel {
+    private static final int LIMIT = 20;  // Maximum number of recommendations shown
+
+    /**
+     * Constructor to create the panel and list the recommendations for a visitor.
+     *
+     * @param visitor The visitor to recommend titles to
+     */
+    public RecommendationsPanel(Visitor visitor) {
+        setLayout(new BorderLayout());
+
+        DefaultTableModel tableModel = new DefaultTableModel(new String[]{
+                "Title", "Author", "ISBN", "Type", "Section", "Because You Borrowed"
+        }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        List<CoBorrowRecommender.Neighbor> neighbors = CoBorrowRecommender.getInstance().recommendFor(visitor, LIMIT * 2);
+
+        // Resolve the recommended titles and their sources with a single batched lookup
+        long[] isbnKeys = new long[neighbors.size() * 2];
+        for (int i = 0; i < neighbors.size(); i++) {
+            isbnKeys[2 * i] = neighbors.get(i).getIsbnKey();
+            isbnKeys[2 * i + 1] = neighbors.get(i).getBecause();
+        }
+        Map<Long, BookBase> books = BookDatabase.getInstance().findBooksByIsbnKeys(isbnKeys);
+
+        // Titles no longer in the catalog cannot be borrowed and are skipped
+        for (CoBorrowRecommender.Neighbor neighbor : neighbors) {
+            BookBase book = books.get(neighbor.getIsbnKey());
+            if (book == null || tableModel.getRowCount() == LIMIT) {
+                continue;
+            }
+            BookBase because = books.get(neighbor.getBecause());
+            tableModel.addRow(new Object[]{
+                    book.getTitle(),
+                    book.getAuthor(),
+                    book.getIsbn(),
+                    book.getType(),
+                    book.getSection(),
+                    because == null ? "" : because.getTitle()
+            });
+        }
+
+        if (tableModel.getRowCount() == 0) {
+            JLabel emptyLabel = new JLabel("No recommendations yet. Borrow some books to get suggestions.", SwingConstants.CENTER);
+            add(emptyLabel, BorderLayout.NORTH);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.lms.view.visitor.book;
+
+import org.lms.book.BookBase;
+import org.lms.book.BookCopy;
+import org.lms.book.BookDatabase;
+import org.lms.book.BookStatus;
+import org.lms.circulation.Reservation;
+import org.lms.circulation.ReservationService;
+import org.lms.user.Visitor;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * ReservationsPanel lets a visitor reserve books that have no copy on the shelf, follow their place in the queue,
+ * see the copies kept on hold for them, and cancel reservations.
+ */
+public class ReservationsPanel extends JPanel {
+    private final Visitor visitor;  // The visitor whose reservations are shown
+    private final JTextField isbnField = new JTextField(20);  // ISBN of the book to reserve
+    private final DefaultTableModel tableModel;  // Rows of the holds and reservations
+    private final JTable table;
+    private final List<Reservation> rowReservations = new ArrayList<>();  // Reservation of each row, null for holds
+
+    /**
+     * Constructor to create the panel for a visitor.
+     *
+     * @param visitor The visitor whose reservations are shown
+     */
+    public ReservationsPanel(Visitor visitor) {
+        this.visitor = visitor;
+        setLayout(new BorderLayout());
+
+        JButton reserveButton = new JButton("Reserve");
+        reserveButton.addActionListener(e -> onReserveButtonClicked());
+        JButton cancelButton = new JButton("Cancel Reservation");
+        cancelButton.addActionListener(e -> onCancelButtonClicked());
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        topPanel.add(new JLabel("ISBN:"));
+        topPanel.add(isbnField);
+        topPanel.add(reserveButton);
+        topPanel.add(cancelButton);
+        add(topPanel, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{"Title", "ISBN", "Status", "Reserved On"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setRowHeight(30);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(2).setMinWidth(250);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        refresh();
+    }
+
+    /**
+     * Reserves the book with the entered ISBN.
+     */
+    private void onReserveButtonClicked() {
+        String isbn = isbnField.getText().trim();
+        BookBase book = BookDatabase.getInstance().findBookByIsbn(isbn);
+        if (book == null) {
+            JOptionPane.showMessageDialog(this, "No book with this ISBN was found.",
+                    "Invalid ISBN", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (ReservationService.getInstance().reserve(visitor.getVisitorId(), isbn, Reservation.Priority.NORMAL)) {
+            isbnField.setText("");
+            refresh();
+            return;
+        }
+        boolean onShelf = book.getCopies().stream().anyMatch(copy -> copy.getStatus() == BookStatus.AVAILABLE);
+        JOptionPane.showMessageDialog(this,
+                onShelf ? "A copy of this book is on the shelf and can be borrowed now."
+                        : "You have already reserved this book, or a copy is on hold for you.",
+                "Cannot Reserve", JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Cancels the selected reservation after confirmation.
+     */
+    private void onCancelButtonClicked() {
+        int row = table.getSelectedRow();
+        if (row < 0 || rowReservations.get(row) == null) {
+            JOptionPane.showMessageDialog(this, "Please select a reservation that is still waiting.",
+                    "No Reservation Selected", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        int option = JOptionPane.showConfirmDialog(this, "Cancel this reservation?",
+                "Confirm Cancellation", JOptionPane.YES_NO_OPTION);
+        if (option == JOptionPane.YES_OPTION) {
+            Reservation reservation = rowReservations.get(row);
+            ReservationService.getInstance().cancel(visitor.getVisitorId(), reservation.getIsbnKey());
+            refresh();
+        }
+    }
+
+    /**
+     * Lists the copies on hold for the visitor, then the reservations still waiting.
+     */
+    private void refresh() {
+        tableModel.setRowCount(0);
+        rowReservations.clear();
+        for (BookBase book : BookDatabase.getInstance().getAllBooks()) {
+            for (BookCopy copy : book.getCopies()) {
+                if (copy.getStatus() == BookStatus.ON_HOLD && copy.getBorrowVisitorId() == visitor.getVisitorId()) {
+                    tableModel.addRow(new Object[]{book.getTitle(), book.getIsbn(),
+                            "Ready for pickup: copy " + copy.getCopyId(), ""});
+                    rowReservations.add(null);
+                }
+            }
+        }
+
+        ReservationService service = ReservationService.getInstance();
+        for (Reservation reservation : service.getReservations(visitor.getVisitorId())) {
+            BookBase book = BookDatabase.getInstance().findBookByIsbnKey(reservation.getIsbnKey());
+            tableModel.addRow(new Object[]{
+                    book == null ? "" : book.getTitle(),
+                    reservation.getIsbn(),
+                    "Waiting: " + service.getPosition(reservation) + " of " + service.getQueueLength(reservation.getIsbnKey()),
+                    new Date(reservation.getRequestTime())
+            });
+            rowReservations.add(reservation);
+        }
+    }
+}
@@ -1,24 +1,47 @@
 package org.lms.view.visitor.book;
 
 import org.lms.book.BookBase;
-import org.lms.book.BookCopy;
 import org.lms.book.BookDatabase;
+import org.lms.book.CatalogPage;
+import org.lms.book.search.QueryParser;
+import org.lms.book.search.SearchHit;
+import org.lms.book.search.SuggestionTrie;
+import org.lms.view.ScrollPaging;
+import org.lms.view.book.AutocompletePopup;
+import org.lms.view.book.CatalogTableModel;
+import org.lms.view.book.LiveSearch;
+import org.lms.view.book.RankedResultsTableModel;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * SearchBooksPannel provides a panel for visitors to search for books in the system.
  * It supports searching by book title, author, or ISBN, and displays the book copies in a table.
+ * Without a query the copies are browsed one page at a time as the visitor scrolls, so opening the
+ * panel does not depend on the size of the catalog. With a query the best matching books are shown
+ * ranked by relevance, one row per book with its available and total copies. Structured queries such
+ * as {@code author:tolkien status:available} list the copies of every matching book.
  */
 public class SearchBooksPannel extends JPanel {
+    private static final int PAGE_ROWS = 50;  // Number of copies fetched per page
+    private static final int RANKED_LIMIT = 100;  // Number of ranked books shown for a query
 
     private JTable booksTable;               // Table to display book information
     private JScrollPane scrollPane;          // Scroll pane for the table
     private JButton searchButton;            // Button to trigger the search
     private JTextField searchTextField;      // Text field for entering search queries
+    private CatalogTableModel tableModel;    // Model resolving table rows to books and copies on demand
+    private RankedResultsTableModel rankedModel;  // Model showing the ranked books of a query
+    private LiveSearch<SearchResult> liveSearch;  // Searches in the background while the visitor types
+
+    private String shownQuery = "";          // The query whose results are shown
+    private long nextCursor;                 // Cursor of the next page of the shown query
+    private boolean hasMore;                 // Whether the shown query has more pages
+    private boolean loadingPage;             // Whether a page is being fetched
+    private long pageGeneration;             // Incremented when a new query is shown; late pages of older queries are dropped
 
     public SearchBooksPannel() {
         // Set the layout of the panel to BorderLayout
@@ -39,16 +62,9 @@ public class SearchBooksPannel extends JPanel {
         buttonPanel.add(searchButton);
         add(buttonPanel, BorderLayout.NORTH);
 
-        // Define column names for the table
-        String[] columnNames = {
-                "Title", "Author",
-                "ISBN", "Type",
-                "Section", "Copy ID",
-                "Status"
-        };
-
-        // Initialize the table and its model
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
+        // Initialize the table and its model (read-only, without the operation column)
+        tableModel = new CatalogTableModel(false);
+        rankedModel = new RankedResultsTableModel();
         booksTable = new JTable(tableModel);
         booksTable.setRowHeight(30);              // Set row height
         booksTable.setFillsViewportHeight(true);  // Fill the viewport height
@@ -57,48 +73,165 @@ public class SearchBooksPannel extends JPanel {
         scrollPane = new JScrollPane(booksTable);
         add(scrollPane, BorderLayout.CENTER);
 
-        // Load the book data initially
+        // Search while typing, fetch further pages while scrolling, and load the first page initially
+        BookDatabase bookDatabase = BookDatabase.getInstance();
+        liveSearch = new LiveSearch<>(searchTextField,
+                query -> {
+                    if (query.isEmpty()) {
+                        return new SearchResult(bookDatabase.findBooksPage(query, CatalogPage.START, PAGE_ROWS), null, null);
+                    }
+                    if (QueryParser.isStructured(query)) {
+                        return new SearchResult(null, null, bookDatabase.searchStructured(query));
+                    }
+                    return new SearchResult(null, bookDatabase.searchRanked(query, RANKED_LIMIT), null);
+                },
+                this::showResult,
+                bookDatabase::getVersion);
+        new AutocompletePopup(searchTextField,
+                text -> bookDatabase.suggest(text, SuggestionTrie.TOP_N), text -> updateTable());
+        ScrollPaging.install(scrollPane, this::loadNextPage);
         updateTable();
     }
 
+    /**
+     * Starts following catalog changes while the panel is displayed.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        BookDatabase.getInstance().addChangeListener(tableModel);
+        BookDatabase.getInstance().addChangeListener(rankedModel);
+    }
+
+    /**
+     * Stops following catalog changes once the panel is no longer displayed.
+     */
+    @Override
+    public void removeNotify() {
+        BookDatabase.getInstance().removeChangeListener(tableModel);
+        BookDatabase.getInstance().removeChangeListener(rankedModel);
+        super.removeNotify();
+    }
+
     /**
      * Updates the table based on the search query entered in the search field.
-     * It supports fuzzy matching for title, author, or ISBN.
+     * It matches title, author, or ISBN terms and tolerates small typos in titles and authors.
+     * The search runs in the background and the table is filled once it completes.
      */
     private void updateTable() {
-        String searchQuery = searchTextField.getText().trim();  // Get the search query entered by the user
-        BookDatabase bookDatabase = BookDatabase.getInstance(); // Get the book database instance
-        List<BookBase> books = bookDatabase.getAllBooks();      // Get all books in the database
-
-        // Get the table model and clear existing data
-        DefaultTableModel tableModel = (DefaultTableModel) booksTable.getModel();
-        tableModel.setRowCount(0);
-
-        // Loop through all books
-        for (BookBase book : books) {
-            // Check if the book matches the search query
-            boolean matchesSearch = searchQuery.isEmpty()
-                    || book.getTitle().toLowerCase().contains(searchQuery.toLowerCase())
-                    || book.getAuthor().toLowerCase().contains(searchQuery.toLowerCase())
-                    || book.getIsbn().toLowerCase().contains(searchQuery.toLowerCase());
-
-            if (!matchesSearch){
-                continue; // Skip books that do not match the search query
+        liveSearch.searchNow();
+    }
+
+    /**
+     * Shows the results of a new query, switching between ranked books and copies.
+     *
+     * @param query  The query of the results
+     * @param result The ranked hits, the books of a structured query, or the first page of copies
+     */
+    private void showResult(String query, SearchResult result) {
+        if (result.hits != null) {
+            pageGeneration++;  // Drop any page still being fetched for the previous query
+            hasMore = false;
+            loadingPage = false;
+            rankedModel.setHits(result.hits);
+            if (booksTable.getModel() != rankedModel) {
+                booksTable.setModel(rankedModel);
+            }
+            return;
+        }
+        if (booksTable.getModel() != tableModel) {
+            booksTable.setModel(tableModel);
+        }
+        if (result.books != null) {
+            // Structured queries are answered in full by the planner, so there are no further pages
+            pageGeneration++;
+            shownQuery = query;
+            hasMore = false;
+            loadingPage = false;
+            tableModel.setBooks(result.books, QueryParser.parse(query)::matches);
+            return;
+        }
+        showFirstPage(query, result.page);
+    }
+
+    /**
+     * Shows the first page of a new query, replacing the previous results.
+     *
+     * @param query The query of the page
+     * @param page  The first page of results
+     */
+    private void showFirstPage(String query, CatalogPage page) {
+        pageGeneration++;
+        shownQuery = query;
+        nextCursor = page.getNextCursor();
+        hasMore = page.hasMore();
+        loadingPage = false;
+        // Changes to books beyond the loaded pages are left to the page that will contain them
+        tableModel.setBooks(page.getBooks(), book -> book.matchesQuery(shownQuery)
+                && (!hasMore || Long.compare(book.getIsbnKey(), nextCursor) <= 0));
+        loadMoreIfNeeded();
+    }
+
+    /**
+     * Fetches the next page of the shown query in the background and appends it to the table.
+     */
+    private void loadNextPage() {
+        if (loadingPage || !hasMore) {
+            return;
+        }
+        loadingPage = true;
+        long generation = pageGeneration;
+        String query = shownQuery;
+        long cursor = nextCursor;
+        new SwingWorker<CatalogPage, Void>() {
+            @Override
+            protected CatalogPage doInBackground() {
+                return BookDatabase.getInstance().findBooksPage(query, cursor, PAGE_ROWS);
             }
 
-            // If the book matches, add its copies to the table
-            for (BookCopy copy : book.getCopies()) {
-                Object[] rowData = {
-                        book.getTitle(),
-                        book.getAuthor(),
-                        book.getIsbn(),
-                        book.getType(),
-                        book.getSection(),
-                        copy.getCopyId(),
-                        copy.getStatus()
-                };
-                tableModel.addRow(rowData); // Add the row data to the table
+            @Override
+            protected void done() {
+                if (generation != pageGeneration) {
+                    return;  // A new query replaced the one this page belongs to
+                }
+                loadingPage = false;
+                try {
+                    CatalogPage page = get();
+                    nextCursor = page.getNextCursor();
+                    hasMore = page.hasMore();
+                    tableModel.appendBooks(page.getBooks());
+                    loadMoreIfNeeded();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
             }
+        }.execute();
+    }
+
+    /**
+     * Fetches another page if the rows shown do not yet reach the end of the visible area.
+     */
+    private void loadMoreIfNeeded() {
+        // Wait for the table to be laid out with the new rows before measuring
+        SwingUtilities.invokeLater(() -> {
+            if (ScrollPaging.isNearEnd(scrollPane)) {
+                loadNextPage();
+            }
+        });
+    }
+
+    /**
+     * Holds the outcome of a background search; exactly one of the fields is set.
+     */
+    private static class SearchResult {
+        private final CatalogPage page;        // First page of copies, for an empty query
+        private final List<SearchHit> hits;    // Ranked books, for plain words
+        private final List<BookBase> books;    // All matching books, for a structured query
+
+        SearchResult(CatalogPage page, List<SearchHit> hits, List<BookBase> books) {
+            this.page = page;
+            this.hits = hits;
+            this.books = books;
         }
     }
 }